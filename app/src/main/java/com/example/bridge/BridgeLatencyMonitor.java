@@ -0,0 +1,100 @@
+package com.example.bridge;
+
+import com.example.utils.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Date;
+
+/**
+ * Time a byte spends inside the phone, per direction.
+ *
+ * Downlink runs from the return of {@code UsbSerialPort.read()} to the TCP socket write towards
+ * MavsdkServer; uplink from the socket read to {@code UsbSerialPort.write()}. Bytes are queued
+ * in batches, so each write records the age of the oldest byte it carries. Bulk uplink, e.g.
+ * GPS corrections, runs from its source read to {@code UsbSerialPort.write()}.
+ */
+public class BridgeLatencyMonitor {
+
+    private final LatencyHistogram mDownlink = new LatencyHistogram();
+    private final LatencyHistogram mUplink = new LatencyHistogram();
+    private final LatencyHistogram mBulk = new LatencyHistogram();
+
+    public static class Snapshot {
+        private final LatencyHistogram.Snapshot mDownlink;
+        private final LatencyHistogram.Snapshot mUplink;
+        private final LatencyHistogram.Snapshot mBulk;
+
+        Snapshot(LatencyHistogram.Snapshot downlink, LatencyHistogram.Snapshot uplink, LatencyHistogram.Snapshot bulk) {
+            mDownlink = downlink;
+            mUplink = uplink;
+            mBulk = bulk;
+        }
+
+        /**
+         * USB to MavsdkServer
+         */
+        public LatencyHistogram.Snapshot getDownlink() {
+            return mDownlink;
+        }
+
+        /**
+         * MavsdkServer to USB
+         */
+        public LatencyHistogram.Snapshot getUplink() {
+            return mUplink;
+        }
+
+        /**
+         * Bulk source to USB, the age of corrections when they reach the vehicle's link
+         */
+        public LatencyHistogram.Snapshot getBulk() {
+            return mBulk;
+        }
+
+        @Override
+        public String toString() {
+            return "downlink " + mDownlink + "\nuplink " + mUplink + "\nbulk " + mBulk;
+        }
+    }
+
+    public LatencyHistogram getDownlinkHistogram() {
+        return mDownlink;
+    }
+
+    public LatencyHistogram getUplinkHistogram() {
+        return mUplink;
+    }
+
+    public LatencyHistogram getBulkHistogram() {
+        return mBulk;
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(mDownlink.snapshot(), mUplink.snapshot(), mBulk.snapshot());
+    }
+
+    public void reset() {
+        mDownlink.reset();
+        mUplink.reset();
+        mBulk.reset();
+    }
+
+    /**
+     * Writes the summary and the raw buckets of both directions to file.
+     */
+    public void dump(File file) throws IOException {
+        Snapshot snapshot = snapshot();
+        try (Writer writer = new FileWriter(file)) {
+            writer.write("# bridge latency, " + new Date() + "\n");
+            writer.write("# downlink " + snapshot.getDownlink() + "\n");
+            writer.write(snapshot.getDownlink().bucketsToString());
+            writer.write("# uplink " + snapshot.getUplink() + "\n");
+            writer.write(snapshot.getUplink().bucketsToString());
+            writer.write("# bulk " + snapshot.getBulk() + "\n");
+            writer.write(snapshot.getBulk().bucketsToString());
+        }
+    }
+}
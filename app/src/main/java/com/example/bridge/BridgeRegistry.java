@@ -0,0 +1,303 @@
+package com.example.bridge;
+
+import android.util.Log;
+
+import com.example.utils.ThreadProfile;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps one {@link SerialTcpBridge} per attached autopilot, each on its own TCP port so each
+ * gets its own MavsdkServer.
+ *
+ * All bridges share one io pool and one small watchdog pool. A bridge reserves the io threads
+ * it occupies when it starts, twice over: the watchdog rebuilds a stage on a new thread while
+ * the old one drains, and a TCP re-listen and a serial reopen may run at once. It returns them
+ * when it stops. Helpers of the bridges, e.g. a {@link UdpRelay}, run on the same pool through
+ * {@link #getHelperExecutor()}. The pool follows the reservations up to a fixed limit, so the
+ * thread count grows with the attached vehicles and never beyond that limit.
+ */
+public class BridgeRegistry {
+
+    private static final String TAG = "LOG_" + BridgeRegistry.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_VEHICLES = 4;
+    // serial + tcp, and a spare for each while it is rebuilt
+    private static final int THREADS_PER_VEHICLE = 4;
+    // UDP relay sender and receiver, RTCM source, pause monitor
+    private static final int HELPER_THREADS = 4;
+    private static final int WATCHDOG_THREADS = 2;
+    private static final long IDLE_THREAD_SECONDS = 30;
+
+    public static final class Vehicle {
+        private final String mId;
+        private final SerialTcpBridge mBridge;
+        private int mReservedThreads; // Synchronized by the registry
+
+        private Vehicle(String id, SerialTcpBridge bridge) {
+            mId = id;
+            mBridge = bridge;
+        }
+
+        public String getId() {
+            return mId;
+        }
+
+        public SerialTcpBridge getBridge() {
+            return mBridge;
+        }
+
+        @Override
+        public String toString() {
+            return mId + " @ " + mBridge.getSystemAddress();
+        }
+    }
+
+    private final int mBasePort;
+    private final int mMaxVehicles;
+    private final int mMaxThreads;
+    private final ThreadPoolExecutor mIoExecutor;
+    private final ScheduledExecutorService mWatchdog;
+    private final Executor mHelperExecutor = this::executeHelper;
+
+    private final Map<String, Vehicle> mVehicles = new LinkedHashMap<>(); // Synchronized by 'this'
+    private int mReservedThreads; // Synchronized by 'this'
+    private ThreadProfile mSerialProfile; // Synchronized by 'this'
+    private ThreadProfile mTcpProfile; // Synchronized by 'this'
+
+    public BridgeRegistry(int basePort) {
+        this(basePort, DEFAULT_MAX_VEHICLES, DEFAULT_MAX_VEHICLES * THREADS_PER_VEHICLE + HELPER_THREADS);
+    }
+
+    /**
+     * @param basePort   TCP port of the first vehicle, the others get the next free ones
+     * @param maxThreads upper bound of the shared io pool
+     */
+    public BridgeRegistry(int basePort, int maxVehicles, int maxThreads) {
+        this(basePort, maxVehicles, maxThreads, namedThreads("bridge-io-"));
+    }
+
+    /**
+     * @param ioThreads creates the threads of the shared io pool; every stage applies its
+     *                  {@link ThreadProfile} on top while it runs
+     */
+    public BridgeRegistry(int basePort, int maxVehicles, int maxThreads, ThreadFactory ioThreads) {
+        mBasePort = basePort;
+        mMaxVehicles = maxVehicles;
+        mMaxThreads = maxThreads;
+        mIoExecutor = new ThreadPoolExecutor(1, 1, IDLE_THREAD_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), ioThreads);
+        mIoExecutor.allowCoreThreadTimeOut(true);
+        mWatchdog = Executors.newScheduledThreadPool(WATCHDOG_THREADS, namedThreads("bridge-watchdog-"));
+    }
+
+    /**
+     * Creates the bridge of a vehicle on the lowest free TCP port. Configure it, e.g. add
+     * redundant links, then {@link #start(Vehicle, UsbSerialPort)} it.
+     */
+    public synchronized Vehicle add(String id, SerialTcpBridge.SerialPortOpener portOpener) {
+        if (mVehicles.containsKey(id))
+            throw new IllegalStateException(id + " already bridged");
+        if (mVehicles.size() >= mMaxVehicles)
+            throw new IllegalStateException("at most " + mMaxVehicles + " vehicles");
+
+        int port = mBasePort;
+        while (isPortUsed(port))
+            port++;
+        SerialTcpBridge bridge = new SerialTcpBridge(portOpener, port);
+        bridge.setExecutors(mIoExecutor, mWatchdog);
+        if (mSerialProfile != null)
+            bridge.setThreadProfiles(mSerialProfile, mTcpProfile);
+        Vehicle vehicle = new Vehicle(id, bridge);
+        mVehicles.put(id, vehicle);
+        return vehicle;
+    }
+
+    /**
+     * Reserves the vehicle's threads and starts its bridge, see {@link SerialTcpBridge#start(UsbSerialPort)}.
+     */
+    public void start(Vehicle vehicle, UsbSerialPort firstPort) throws IOException {
+        synchronized (this) {
+            if (mVehicles.get(vehicle.mId) != vehicle)
+                throw new IllegalStateException(vehicle.mId + " was removed");
+            int threads = 2 * vehicle.mBridge.getThreadCount();
+            if (mReservedThreads + threads > mMaxThreads)
+                throw new IOException("thread limit of " + mMaxThreads + " reached");
+            vehicle.mReservedThreads = threads;
+            reserve(threads);
+        }
+        try {
+            vehicle.mBridge.start(firstPort);
+        } catch (IOException | RuntimeException e) {
+            synchronized (this) {
+                reserve(-vehicle.mReservedThreads);
+                vehicle.mReservedThreads = 0;
+            }
+            throw e;
+        }
+        Log.i(TAG, "Bridging " + vehicle);
+    }
+
+    /**
+     * Stops the vehicle's bridge and frees its TCP port.
+     *
+     * @return the removed vehicle, null if there was none
+     */
+    public Vehicle remove(String id) {
+        Vehicle vehicle;
+        synchronized (this) {
+            vehicle = mVehicles.remove(id);
+            if (vehicle == null)
+                return null;
+        }
+        vehicle.mBridge.stop();
+        synchronized (this) {
+            reserve(-vehicle.mReservedThreads);
+            vehicle.mReservedThreads = 0;
+        }
+        return vehicle;
+    }
+
+    public void removeAll() {
+        for (Vehicle vehicle : getVehicles())
+            remove(vehicle.mId);
+    }
+
+    /**
+     * Removes every vehicle and ends the shared threads; the registry can't be used afterwards.
+     */
+    public void shutdown() {
+        removeAll();
+        mWatchdog.shutdownNow();
+        mIoExecutor.shutdown();
+    }
+
+    /**
+     * @return runs long-lived helpers of the bridges on the shared io pool, e.g. a {@link UdpRelay}
+     * or an RTCM source; each task holds a reserved thread until it returns, and tasks beyond the
+     * thread limit are rejected with {@link RejectedExecutionException}
+     */
+    public Executor getHelperExecutor() {
+        return mHelperExecutor;
+    }
+
+    /**
+     * Scheduling of the stage threads of every bridge, see
+     * {@link SerialTcpBridge#setThreadProfiles(ThreadProfile, ThreadProfile)}.
+     */
+    public synchronized void setThreadProfiles(ThreadProfile serial, ThreadProfile tcp) {
+        mSerialProfile = serial;
+        mTcpProfile = tcp;
+        for (Vehicle vehicle : mVehicles.values())
+            vehicle.mBridge.setThreadProfiles(serial, tcp);
+    }
+
+    /**
+     * @return the scheduling every running stage thread actually got, by vehicle
+     */
+    public List<ThreadProfile.Applied> getAppliedProfiles() {
+        List<ThreadProfile.Applied> profiles = new ArrayList<>();
+        for (Vehicle vehicle : getVehicles())
+            profiles.addAll(vehicle.mBridge.getAppliedProfiles());
+        return profiles;
+    }
+
+    public synchronized Vehicle get(String id) {
+        return mVehicles.get(id);
+    }
+
+    /**
+     * @return the vehicles in the order they were added
+     */
+    public synchronized List<Vehicle> getVehicles() {
+        return new ArrayList<>(mVehicles.values());
+    }
+
+    public synchronized int size() {
+        return mVehicles.size();
+    }
+
+    public synchronized int getReservedThreads() {
+        return mReservedThreads;
+    }
+
+    public int getMaxThreads() {
+        return mMaxThreads;
+    }
+
+    /**
+     * @return io threads currently alive, at most {@link #getMaxThreads()}
+     */
+    public int getIoPoolSize() {
+        return mIoExecutor.getPoolSize();
+    }
+
+    private boolean isPortUsed(int port) {
+        for (Vehicle vehicle : mVehicles.values()) {
+            if (vehicle.mBridge.getTcpPort() == port)
+                return true;
+        }
+        return false;
+    }
+
+    private void executeHelper(Runnable task) {
+        synchronized (this) {
+            if (mReservedThreads + 1 > mMaxThreads)
+                throw new RejectedExecutionException("thread limit of " + mMaxThreads + " reached");
+            reserve(1);
+        }
+        try {
+            mIoExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    synchronized (BridgeRegistry.this) {
+                        reserve(-1);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                reserve(-1);
+            }
+            throw e;
+        }
+    }
+
+    // Synchronized by 'this'
+    private void reserve(int threads) {
+        mReservedThreads += threads;
+        int size = Math.max(1, mReservedThreads);
+        // core never exceeds max, whichever way the pool is resized
+        if (size > mIoExecutor.getMaximumPoolSize()) {
+            mIoExecutor.setMaximumPoolSize(size);
+            mIoExecutor.setCorePoolSize(size);
+        } else {
+            mIoExecutor.setCorePoolSize(size);
+            mIoExecutor.setMaximumPoolSize(size);
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+
+/**
+ * Recognizes a frame that already arrived over another link.
+ *
+ * The last frames are kept in a small ring as (sysid, compid, seq, msgid, checksum) packed into
+ * one long. Including the checksum keeps two different frames that happen to share the header
+ * apart; a sequence number only repeats for a component after 256 of its frames, far more
+ * than the window holds. Not thread safe.
+ */
+public class FrameDeduplicator {
+
+    public static final int DEFAULT_WINDOW = 128;
+
+    private final long[] mKeys;
+    private final long[] mArrivalNanos;
+    private int mNext;
+    private int mSize;
+
+    public FrameDeduplicator() {
+        this(DEFAULT_WINDOW);
+    }
+
+    public FrameDeduplicator(int window) {
+        mKeys = new long[window];
+        mArrivalNanos = new long[window];
+    }
+
+    /**
+     * @return -1 if the frame is new and now remembered, otherwise how long after the first
+     * copy this one arrived
+     */
+    public long check(MavlinkFrameParser frame, long arrivalNanos) {
+        long key = key(frame);
+        for (int i = 0; i < mSize; i++) {
+            if (mKeys[i] == key) {
+                return Math.max(0, arrivalNanos - mArrivalNanos[i]);
+            }
+        }
+        mKeys[mNext] = key;
+        mArrivalNanos[mNext] = arrivalNanos;
+        mNext = (mNext + 1) % mKeys.length;
+        if (mSize < mKeys.length) {
+            mSize++;
+        }
+        return -1;
+    }
+
+    public void reset() {
+        mSize = 0;
+        mNext = 0;
+    }
+
+    static long key(MavlinkFrameParser frame) {
+        byte[] buffer = frame.buffer();
+        int checksum = frame.payloadOffset() + frame.payloadLength();
+        return ((long) frame.sysId() << 56)
+                | ((long) frame.compId() << 48)
+                | ((long) frame.seq() << 40)
+                | ((long) (frame.msgId() & 0xFFFFFF) << 16)
+                | ((buffer[checksum] & 0xFF) << 8)
+                | (buffer[checksum + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.bridge;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Per-msgid forwarding rules: pass, drop, or decimate to a maximum rate.
+ *
+ * A filter is immutable apart from its decimation clock, which is only touched by the
+ * thread that calls {@link #accept(int, long)}. Give every stage its own instance.
+ */
+public final class MessageFilter {
+
+    public enum Action {
+        PASS,
+        DROP,
+        DECIMATE
+    }
+
+    private final Action mDefaultAction;
+    private final int[] mMsgIds; // sorted
+    private final Action[] mActions;
+    private final long[] mIntervalNanos;
+    private final long[] mLastPassNanos;
+
+    private MessageFilter(Builder builder) {
+        mDefaultAction = builder.mDefaultAction;
+        int size = builder.mRules.size();
+        mMsgIds = new int[size];
+        mActions = new Action[size];
+        mIntervalNanos = new long[size];
+        mLastPassNanos = new long[size];
+        Arrays.fill(mLastPassNanos, Long.MIN_VALUE);
+
+        int i = 0;
+        for (Map.Entry<Integer, Rule> entry : builder.mRules.entrySet()) {
+            mMsgIds[i] = entry.getKey();
+            mActions[i] = entry.getValue().action;
+            mIntervalNanos[i] = entry.getValue().intervalNanos;
+            i++;
+        }
+    }
+
+    public static MessageFilter passAll() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return true when a frame with msgId, seen at nowNanos, should be forwarded
+     */
+    public boolean accept(int msgId, long nowNanos) {
+        int i = Arrays.binarySearch(mMsgIds, msgId);
+        if (i < 0) {
+            return mDefaultAction != Action.DROP;
+        }
+        switch (mActions[i]) {
+            case DROP:
+                return false;
+            case DECIMATE:
+                if (mLastPassNanos[i] != Long.MIN_VALUE
+                        && nowNanos - mLastPassNanos[i] < mIntervalNanos[i]) {
+                    return false;
+                }
+                mLastPassNanos[i] = nowNanos;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * @return a filter with the same rules and a fresh decimation clock
+     */
+    public MessageFilter copy() {
+        Builder builder = new Builder().defaultAction(mDefaultAction);
+        for (int i = 0; i < mMsgIds.length; i++) {
+            builder.mRules.put(mMsgIds[i], new Rule(mActions[i], mIntervalNanos[i]));
+        }
+        return builder.build();
+    }
+
+    public Action getDefaultAction() {
+        return mDefaultAction;
+    }
+
+    public int getRuleCount() {
+        return mMsgIds.length;
+    }
+
+    private static final class Rule {
+        final Action action;
+        final long intervalNanos;
+
+        Rule(Action action, long intervalNanos) {
+            this.action = action;
+            this.intervalNanos = intervalNanos;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<Integer, Rule> mRules = new TreeMap<>();
+        private Action mDefaultAction = Action.PASS;
+
+        /**
+         * What to do with message ids that have no rule. Only PASS and DROP are meaningful.
+         */
+        public Builder defaultAction(Action action) {
+            if (action == Action.DECIMATE)
+                throw new IllegalArgumentException("default action can not be DECIMATE");
+            mDefaultAction = action;
+            return this;
+        }
+
+        public Builder pass(int msgId) {
+            mRules.put(msgId, new Rule(Action.PASS, 0));
+            return this;
+        }
+
+        public Builder drop(int msgId) {
+            mRules.put(msgId, new Rule(Action.DROP, 0));
+            return this;
+        }
+
+        public Builder decimate(int msgId, double maxRateHz) {
+            if (maxRateHz <= 0)
+                throw new IllegalArgumentException("maxRateHz must be positive");
+            mRules.put(msgId, new Rule(Action.DECIMATE, (long) (1_000_000_000L / maxRateHz)));
+            return this;
+        }
+
+        public MessageFilter build() {
+            return new MessageFilter(this);
+        }
+    }
+}
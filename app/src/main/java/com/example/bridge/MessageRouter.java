@@ -0,0 +1,185 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routing stage between the serial and TCP managers.
+ *
+ * Raw serial chunks are re-framed and every frame is checked against the current
+ * {@link MessageFilter} before it reaches the sink. The filter can be swapped from any thread
+ * while the bridge is running; the next frame simply sees the new rules.
+ */
+public class MessageRouter implements MavlinkFrameParser.Listener {
+
+    private static final int MSG_ID_HEARTBEAT = 0;
+
+    public interface Sink {
+        void write(byte[] data, int offset, int length, long originNanos);
+    }
+
+    public interface FrameListener {
+        /**
+         * Called on the link thread for every routed frame, after the sink. The frame is only
+         * valid during the call.
+         */
+        void onFrame(MavlinkFrameParser frame, long originNanos);
+    }
+
+    private static final FrameListener[] NO_FRAME_LISTENERS = new FrameListener[0];
+
+    private final MavlinkFrameParser mParser = new MavlinkFrameParser(this);
+    private final Sink mSink;
+    private volatile MessageFilter mFilter;
+    private volatile Sink mTap;
+    // Copied on write, so routing iterates without allocating
+    private volatile FrameListener[] mFrameListeners = NO_FRAME_LISTENERS;
+    private FrameDeduplicator mDeduplicator; // Synchronized by 'this'
+    private long mOriginNanos;
+
+    // Written under 'this' only
+    private volatile long mForwardedFrames;
+    private volatile long mDroppedFrames;
+    private volatile long mDuplicateFrames;
+    private volatile long mInjectedFrames;
+    private volatile long mLastHeartbeatNanos;
+
+    public MessageRouter(Sink sink) {
+        this(sink, MessageFilter.passAll());
+    }
+
+    public MessageRouter(Sink sink, MessageFilter filter) {
+        mSink = sink;
+        mFilter = filter;
+    }
+
+    public void setFilter(MessageFilter filter) {
+        mFilter = filter;
+    }
+
+    public MessageFilter getFilter() {
+        return mFilter;
+    }
+
+    /**
+     * Drops frames that already came in over another input link; null to route everything.
+     */
+    public synchronized void setDeduplicator(FrameDeduplicator deduplicator) {
+        mDeduplicator = deduplicator;
+    }
+
+    public synchronized void addFrameListener(FrameListener listener) {
+        FrameListener[] listeners = Arrays.copyOf(mFrameListeners, mFrameListeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+        mFrameListeners = listeners;
+    }
+
+    public synchronized void removeFrameListener(FrameListener listener) {
+        List<FrameListener> listeners = new ArrayList<>(Arrays.asList(mFrameListeners));
+        listeners.remove(listener);
+        mFrameListeners = listeners.toArray(NO_FRAME_LISTENERS);
+    }
+
+    /**
+     * @param tap sees every valid frame, including filtered ones, e.g. a recorder; null to remove
+     */
+    public void setTap(Sink tap) {
+        mTap = tap;
+    }
+
+    /**
+     * @param originNanos {@link System#nanoTime()} at which data was read from the link
+     */
+    public void onNewData(byte[] data, int offset, int length, long originNanos) {
+        mOriginNanos = originNanos;
+        mParser.parse(data, offset, length);
+    }
+
+    @Override
+    public void onFrame(MavlinkFrameParser frame) {
+        route(frame, mOriginNanos);
+    }
+
+    /**
+     * Routes a frame that was framed elsewhere, e.g. by one of several input links.
+     *
+     * @return -1 if the frame was routed, otherwise how long after its first copy it arrived
+     */
+    public synchronized long route(MavlinkFrameParser frame, long originNanos) {
+        if (mDeduplicator != null) {
+            long lagNanos = mDeduplicator.check(frame, originNanos);
+            if (lagNanos >= 0) {
+                mDuplicateFrames++;
+                return lagNanos;
+            }
+        }
+        if (frame.msgId() == MSG_ID_HEARTBEAT) {
+            mLastHeartbeatNanos = originNanos;
+        }
+        if (mFilter.accept(frame.msgId(), System.nanoTime())) {
+            mForwardedFrames++;
+            mSink.write(frame.buffer(), 0, frame.frameLength(), originNanos);
+        } else {
+            mDroppedFrames++;
+        }
+        // after forwarding, so the tap never delays the sink
+        final Sink tap = mTap;
+        if (tap != null) {
+            tap.write(frame.buffer(), 0, frame.frameLength(), originNanos);
+        }
+        for (FrameListener listener : mFrameListeners) {
+            listener.onFrame(frame, originNanos);
+        }
+        return -1;
+    }
+
+    /**
+     * Sends a complete frame of our own to the sink and the tap, bypassing the filter. Being
+     * synchronized with routing, it never lands inside a frame that is being forwarded.
+     */
+    public synchronized void inject(byte[] data, int offset, int length, long originNanos) {
+        mInjectedFrames++;
+        mSink.write(data, offset, length, originNanos);
+        final Sink tap = mTap;
+        if (tap != null) {
+            tap.write(data, offset, length, originNanos);
+        }
+    }
+
+    public long getForwardedFrames() {
+        return mForwardedFrames;
+    }
+
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    public long getDuplicateFrames() {
+        return mDuplicateFrames;
+    }
+
+    public long getInjectedFrames() {
+        return mInjectedFrames;
+    }
+
+    /**
+     * @return frames that were not duplicates, forwarded or filtered
+     */
+    public long getUniqueFrames() {
+        return mForwardedFrames + mDroppedFrames;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last HEARTBEAT from the link, filtered or not, 0 if none yet
+     */
+    public long getLastHeartbeatNanos() {
+        return mLastHeartbeatNanos;
+    }
+
+    public long getCrcErrors() {
+        return mParser.getCrcErrorCount();
+    }
+}
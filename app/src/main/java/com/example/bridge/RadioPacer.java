@@ -0,0 +1,184 @@
+package com.example.bridge;
+
+import android.util.Log;
+
+import com.hoho.android.usbserial.util.SerialInputOutputManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the uplink of one serial link to what its radio gets over the air.
+ *
+ * SiK radios report the free space of their transmit buffer in RADIO_STATUS, about once a
+ * second. Fed faster than the air link carries it, the buffer overflows, the radio drops data
+ * and MavsdkServer retries, so an upload ends up slower than a paced one. The pacer keeps the
+ * free space within a target band: below the band the write rate is cut to a share of what
+ * actually went out, above it the rate grows step by step until it limits nothing and pacing
+ * is turned off again. Without reports, e.g. a radio that sends none, the link stays unpaced.
+ *
+ * Reports arrive on the link thread, {@link #onTick(long)} on the watchdog.
+ */
+public class RadioPacer {
+
+    private static final String TAG = "LOG_" + RadioPacer.class.getSimpleName();
+
+    public static final int DEFAULT_LOW_FREE_PERCENT = 40;
+    public static final int DEFAULT_HIGH_FREE_PERCENT = 80;
+    private static final int CRITICAL_FREE_PERCENT = 15;
+    private static final double DECREASE = 0.75;
+    private static final double CRITICAL_DECREASE = 0.5;
+    private static final double INCREASE = 1.1;
+    private static final int MIN_INCREASE = 64;
+    // Keeps heartbeats and commands going however bad the link gets
+    private static final int MIN_RATE = 200;
+    // Beyond the fastest SiK air rate, pacing no longer does anything
+    private static final int MAX_RATE = 30000;
+    private static final long STATUS_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long THROUGHPUT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String mName;
+    private volatile int mLowFreePercent = DEFAULT_LOW_FREE_PERCENT;
+    private volatile int mHighFreePercent = DEFAULT_HIGH_FREE_PERCENT;
+    private volatile boolean mEnabled = true;
+
+    private SerialInputOutputManager mManager; // Synchronized by 'this'
+    private long mLastStatusNanos; // Synchronized by 'this'
+    private long mWindowStartNanos; // Synchronized by 'this'
+    private long mWindowStartBytes; // Synchronized by 'this'
+
+    private volatile int mRate;
+    private volatile int mTxBufFree = -1;
+    private volatile double mThroughput;
+    private volatile long mStatusCount;
+    private volatile long mSlowdowns;
+
+    public RadioPacer(String name) {
+        mName = name;
+    }
+
+    /**
+     * Keeps the radio's free transmit buffer between lowPercent and highPercent.
+     */
+    public void setTargetBand(int lowPercent, int highPercent) {
+        if (lowPercent < 0 || lowPercent >= highPercent || highPercent > 100)
+            throw new IllegalArgumentException("band " + lowPercent + ".." + highPercent + " %");
+        mLowFreePercent = lowPercent;
+        mHighFreePercent = highPercent;
+    }
+
+    /**
+     * Off, the link is never paced; the reports are still tracked.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        mEnabled = enabled;
+        if (!enabled)
+            apply(0);
+    }
+
+    /**
+     * Paces manager from now on, unpaced until the radio reports. Null when the link is closed.
+     */
+    synchronized void setManager(SerialInputOutputManager manager) {
+        mManager = manager;
+        mRate = 0;
+        mTxBufFree = -1;
+        mLastStatusNanos = 0;
+        mWindowStartNanos = System.nanoTime();
+        mWindowStartBytes = 0;
+        if (manager != null)
+            manager.setWriteRateLimit(0);
+    }
+
+    /**
+     * @param txBufFree free space of the radio's transmit buffer in %
+     */
+    synchronized void onRadioStatus(int txBufFree, long nowNanos) {
+        mStatusCount++;
+        mTxBufFree = txBufFree;
+        mLastStatusNanos = nowNanos;
+        if (!mEnabled || mManager == null)
+            return;
+
+        int rate = mRate;
+        if (txBufFree < mLowFreePercent) {
+            // cut from what the radio really took, a limit above that would not slow anything
+            int base = (int) mThroughput;
+            if (rate != 0 && (base == 0 || rate < base))
+                base = rate;
+            double factor = txBufFree < CRITICAL_FREE_PERCENT ? CRITICAL_DECREASE : DECREASE;
+            rate = Math.max(MIN_RATE, (int) (Math.max(base, MIN_RATE) * factor));
+            mSlowdowns++;
+        } else if (txBufFree > mHighFreePercent && rate != 0) {
+            rate = Math.max((int) (rate * INCREASE), rate + MIN_INCREASE);
+            if (rate > MAX_RATE)
+                rate = 0;
+        }
+        if (rate != mRate) {
+            apply(rate);
+            if (rate == 0)
+                Log.i(TAG, mName + " unpaced, radio buffer " + txBufFree + " % free");
+        }
+    }
+
+    /**
+     * Updates the throughput and lets go of the link once the reports stopped. Watchdog only.
+     */
+    synchronized void onTick(long nowNanos) {
+        SerialInputOutputManager manager = mManager;
+        if (manager == null)
+            return;
+        long elapsed = nowNanos - mWindowStartNanos;
+        if (elapsed >= THROUGHPUT_WINDOW_NANOS) {
+            long bytes = manager.getWrittenBytes();
+            mThroughput = (bytes - mWindowStartBytes) * 1e9 / elapsed;
+            mWindowStartNanos = nowNanos;
+            mWindowStartBytes = bytes;
+        }
+        if (mLastStatusNanos != 0 && nowNanos - mLastStatusNanos > STATUS_TIMEOUT_NANOS) {
+            mLastStatusNanos = 0;
+            mTxBufFree = -1;
+            if (mRate != 0) {
+                Log.i(TAG, mName + " unpaced, no radio status");
+                apply(0);
+            }
+        }
+    }
+
+    private void apply(int rate) {
+        mRate = rate;
+        if (mManager != null)
+            mManager.setWriteRateLimit(rate);
+    }
+
+    /**
+     * @return the current uplink limit in bytes per second, 0 if unpaced
+     */
+    public int getRate() {
+        return mRate;
+    }
+
+    /**
+     * @return free transmit buffer of the last report in %, -1 if none recently
+     */
+    public int getTxBufFree() {
+        return mTxBufFree;
+    }
+
+    /**
+     * @return bytes per second written to the link over the last second, bulk included
+     */
+    public double getThroughput() {
+        return mThroughput;
+    }
+
+    public long getStatusCount() {
+        return mStatusCount;
+    }
+
+    /**
+     * @return reports that made the pacer slow the link down
+     */
+    public long getSlowdowns() {
+        return mSlowdowns;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.bridge;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Which input links each MAVLink system and component was heard on, learned from the
+ * downlink the way mavlink-router does it.
+ *
+ * Entries are bit masks of link indexes in arrays indexed by system and component id, so
+ * learning and lookup are a couple of array reads per frame. A system's component row is
+ * allocated when the system is first heard of. Learning takes the lock only when a pair or a
+ * link is new; a lookup racing with that may miss the new route once, which just sends the
+ * frame the default way.
+ */
+public class RoutingTable {
+
+    public static final int MAX_LINKS = 32;
+
+    public static final class Route {
+        private final int mSystemId;
+        private final int mComponentId;
+        private final List<String> mLinks;
+        private final long mAgeMillis;
+
+        Route(int systemId, int componentId, List<String> links, long ageMillis) {
+            mSystemId = systemId;
+            mComponentId = componentId;
+            mLinks = links;
+            mAgeMillis = ageMillis;
+        }
+
+        public int getSystemId() {
+            return mSystemId;
+        }
+
+        public int getComponentId() {
+            return mComponentId;
+        }
+
+        /**
+         * @return names of the links the component was heard on
+         */
+        public List<String> getLinks() {
+            return mLinks;
+        }
+
+        /**
+         * @return ms since the component was last heard
+         */
+        public long getAgeMillis() {
+            return mAgeMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d/%d via %s, %d ms ago", mSystemId, mComponentId,
+                    String.join(",", mLinks), mAgeMillis);
+        }
+    }
+
+    private final long mStartNanos = System.nanoTime();
+    private final List<String> mLinkNames = new ArrayList<>(); // Synchronized by 'this'
+    private final int[] mSystemLinks = new int[256];
+    private final int[][] mComponentLinks = new int[256][];
+    // ms since mStartNanos, ints so writes from several link threads never tear
+    private final int[][] mLastSeen = new int[256][];
+
+    private volatile long mLookups;
+    private volatile long mMisses;
+
+    /**
+     * @return the index the link is learned and looked up by
+     */
+    public synchronized int addLink(String name) {
+        if (mLinkNames.size() == MAX_LINKS)
+            throw new IllegalStateException("at most " + MAX_LINKS + " links");
+        mLinkNames.add(name);
+        return mLinkNames.size() - 1;
+    }
+
+    /**
+     * Records that a frame from sysId/compId came in over link. Called on the link's thread.
+     */
+    public void learn(int sysId, int compId, int link, long nowNanos) {
+        int bit = 1 << link;
+        int[] components = mComponentLinks[sysId];
+        if (components == null || (components[compId] & bit) == 0) {
+            add(sysId, compId, bit);
+        }
+        int[] lastSeen = mLastSeen[sysId];
+        if (lastSeen != null)
+            lastSeen[compId] = (int) TimeUnit.NANOSECONDS.toMillis(nowNanos - mStartNanos);
+    }
+
+    private synchronized void add(int sysId, int compId, int bit) {
+        if (mComponentLinks[sysId] == null) {
+            mLastSeen[sysId] = new int[256];
+            mComponentLinks[sysId] = new int[256];
+        }
+        mComponentLinks[sysId][compId] |= bit;
+        mSystemLinks[sysId] |= bit;
+    }
+
+    /**
+     * @param compId the target component, 0 or {@link com.example.mavlink.MavlinkTargets#NONE}
+     *               for any component of the system
+     * @return mask of the links hosting the target, 0 if it was never heard of
+     */
+    public int lookup(int sysId, int compId) {
+        mLookups++;
+        int links;
+        if (compId <= 0) {
+            links = mSystemLinks[sysId];
+        } else {
+            int[] components = mComponentLinks[sysId];
+            links = components != null ? components[compId] : 0;
+        }
+        if (links == 0)
+            mMisses++;
+        return links;
+    }
+
+    /**
+     * @return targeted frames looked up
+     */
+    public long getLookups() {
+        return mLookups;
+    }
+
+    /**
+     * @return lookups of targets that were never heard of
+     */
+    public long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return every learned component, by system and component id
+     */
+    public synchronized List<Route> getRoutes() {
+        long nowMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - mStartNanos);
+        List<Route> routes = new ArrayList<>();
+        for (int sysId = 0; sysId < 256; sysId++) {
+            int[] components = mComponentLinks[sysId];
+            if (components == null)
+                continue;
+            for (int compId = 0; compId < 256; compId++) {
+                if (components[compId] == 0)
+                    continue;
+                List<String> links = new ArrayList<>();
+                for (int link = 0; link < mLinkNames.size(); link++) {
+                    if ((components[compId] & (1 << link)) != 0)
+                        links.add(mLinkNames.get(link));
+                }
+                routes.add(new Route(sysId, compId, links, nowMillis - mLastSeen[sysId][compId]));
+            }
+        }
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Route route : getRoutes()) {
+            builder.append(route).append('\n');
+        }
+        return builder.append(mLookups).append(" lookups, ").append(mMisses).append(" misses").toString();
+    }
+}
@@ -0,0 +1,969 @@
+package com.example.bridge;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.example.io.TcpInputOutputManager;
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.MavlinkTargets;
+import com.example.mavlink.message.Heartbeat;
+import com.example.mavlink.message.RadioStatus;
+import com.example.tlog.TlogRecorder;
+import com.example.utils.LatencyHistogram;
+import com.example.utils.ThreadProfile;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+import com.hoho.android.usbserial.util.SerialInputOutputManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards MAVLink between one or more serial links and the local TCP port MavsdkServer
+ * connects to.
+ *
+ * With several links (e.g. a SiK radio and a second telemetry path) the downlinks are merged
+ * into one stream and frames that already arrived over another link are dropped. Uplink goes
+ * to the healthiest link only, re-evaluated every second and switched at once when a link is
+ * lost.
+ *
+ * A watchdog restarts a stage whose thread died or stopped making progress, keeping the
+ * other stages, the TCP port and therefore MavsdkServer and its System untouched. A serial
+ * stage is rebuilt through its {@link SerialPortOpener}, the TCP stage re-listens on the same port.
+ *
+ * The uplink is re-framed too, so the bridge can put frames of its own between MavsdkServer's:
+ * a GCS HEARTBEAT while MavsdkServer is connected and the TIMESYNC requests of {@link TimeSync}.
+ *
+ * Each link's uplink is paced by a {@link RadioPacer} from the RADIO_STATUS its radio inserts
+ * into the downlink, and MavsdkServer's retransmissions are counted by an {@link UplinkRetryCounter}.
+ *
+ * Every system and component heard on a link is kept in a {@link RoutingTable}. A targeted
+ * uplink frame whose target sits behind other links only, e.g. a camera on a companion
+ * computer's own link, goes to the best of those instead of the uplink link.
+ */
+public class SerialTcpBridge {
+
+    private static final String TAG = "LOG_" + SerialTcpBridge.class.getSimpleName();
+
+    private static final long WATCHDOG_PERIOD_MILLIS = 100;
+    private static final long RETRY_DELAY_MILLIS = 500;
+    private static final long HEALTH_PERIOD_MILLIS = 1000;
+    private static final long LINK_TIMEOUT_MILLIS = 1500;
+    // Loss difference before uplink moves away from a link that is still alive
+    private static final float UPLINK_SWITCH_LOSS = 0.2f;
+    private static final long GCS_HEARTBEAT_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // MavsdkServer's own GCS identity is 245/190, the bridge is another component of it
+    public static final int GCS_SYSTEM_ID = 245;
+    public static final int MAV_COMP_ID_UART_BRIDGE = 241;
+    // MAV_COMP_ID_USER1. The RTCM injector numbers its frames itself and they queue behind the
+    // uplink, sharing 241 would look like loss and reordering to the vehicle
+    public static final int MAV_COMP_ID_RTCM_INJECTOR = 25;
+    private static final int MAV_TYPE_GCS = 6;
+    private static final int MAV_AUTOPILOT_INVALID = 8;
+    private static final int MAV_STATE_ACTIVE = 4;
+    private static final int MAVLINK_VERSION = 3;
+
+    public static final String TCP_LINK_NAME = "tcp";
+
+    public enum Stage {
+        SERIAL,
+        TCP
+    }
+
+    public interface SerialPortOpener {
+        /**
+         * @return an open and configured port, called again whenever the serial stage is rebuilt
+         */
+        UsbSerialPort open() throws IOException;
+    }
+
+    public interface Listener {
+        /**
+         * Called once per outage, from the watchdog thread.
+         *
+         * @param link name of the serial link, or {@link #TCP_LINK_NAME}
+         */
+        void onStageLost(Stage stage, String link, Exception e);
+
+        /**
+         * The rebuilt stage is up: the TCP port listens again, or the serial link read data.
+         */
+        void onStageRecovered(Stage stage, String link, long recoveryMillis);
+
+        /**
+         * Uplink moved to another serial link.
+         */
+        void onUplinkChanged(String link);
+    }
+
+    public static class LinkStats {
+        private final String mName;
+        private final boolean mAlive;
+        private final boolean mUplink;
+        private final long mFrames;
+        private final long mDuplicates;
+        private final long mCrcErrors;
+        private final float mLoss;
+        private final LatencyHistogram.Snapshot mLag;
+        private final int mTxBufFree;
+        private final int mUplinkRate;
+        private final double mUplinkThroughput;
+
+        LinkStats(String name, boolean alive, boolean uplink, long frames, long duplicates, long crcErrors,
+                  float loss, LatencyHistogram.Snapshot lag, RadioPacer pacer) {
+            mName = name;
+            mAlive = alive;
+            mUplink = uplink;
+            mFrames = frames;
+            mDuplicates = duplicates;
+            mCrcErrors = crcErrors;
+            mLoss = loss;
+            mLag = lag;
+            mTxBufFree = pacer.getTxBufFree();
+            mUplinkRate = pacer.getRate();
+            mUplinkThroughput = pacer.getThroughput();
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        /**
+         * @return true if the link delivered a frame recently
+         */
+        public boolean isAlive() {
+            return mAlive;
+        }
+
+        public boolean isUplink() {
+            return mUplink;
+        }
+
+        public long getFrames() {
+            return mFrames;
+        }
+
+        /**
+         * @return frames another link delivered first
+         */
+        public long getDuplicates() {
+            return mDuplicates;
+        }
+
+        public long getCrcErrors() {
+            return mCrcErrors;
+        }
+
+        /**
+         * @return share of the merged stream this link missed over the last second, 0..1
+         */
+        public float getLoss() {
+            return mLoss;
+        }
+
+        /**
+         * @return how far behind the first copy this link's duplicates arrived
+         */
+        public LatencyHistogram.Snapshot getLag() {
+            return mLag;
+        }
+
+        /**
+         * @return free transmit buffer the link's radio last reported in %, -1 if it reports none
+         */
+        public int getTxBufFree() {
+            return mTxBufFree;
+        }
+
+        /**
+         * @return the pace of writes to the link in bytes per second, 0 if unpaced
+         */
+        public int getUplinkRate() {
+            return mUplinkRate;
+        }
+
+        /**
+         * @return bytes per second actually written to the link over the last second
+         */
+        public double getUplinkThroughput() {
+            return mUplinkThroughput;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s%s%s frames=%d dup=%d crc=%d loss=%.1f%% lag p50=%dus p99=%dus"
+                            + " up=%.0fB/s pace=%dB/s txbuf=%d%%",
+                    mName, mAlive ? "" : " (down)", mUplink ? " (uplink)" : "",
+                    mFrames, mDuplicates, mCrcErrors, mLoss * 100, mLag.getP50Micros(), mLag.getP99Micros(),
+                    mUplinkThroughput, mUplinkRate, mTxBufFree);
+        }
+    }
+
+    /**
+     * Restart bookkeeping of one stage. Watchdog only, under mWatchdogLock.
+     */
+    private static class Recovery {
+        long mLostSinceMillis;
+        // No new attempt before this, whether the last one failed or is still coming up
+        long mNextRetryMillis;
+    }
+
+    private final class Link implements MavlinkFrameParser.Listener {
+        final String mName;
+        final int mIndex;
+        final SerialPortOpener mOpener;
+        final MavlinkFrameParser mParser = new MavlinkFrameParser(this);
+        final LatencyHistogram mLag = new LatencyHistogram();
+        final Recovery mRecovery = new Recovery();
+        final RadioPacer mPacer;
+        final RadioStatus mRadioStatus = new RadioStatus();
+        volatile SerialInputOutputManager mManager;
+        volatile boolean mOpening; // set by the watchdog, cleared by the io thread opening the port
+
+        // Written by the link thread only
+        long mOriginNanos;
+        volatile long mFrames;
+        volatile long mDuplicates;
+        volatile long mLastFrameNanos;
+
+        // Written by the watchdog only, under mWatchdogLock
+        long mFramesAtLastCheck;
+        volatile float mLoss;
+
+        Link(String name, int index, SerialPortOpener opener) {
+            mName = name;
+            mIndex = index;
+            mOpener = opener;
+            mPacer = new RadioPacer(name);
+        }
+
+        void onNewData(byte[] data, long originNanos) {
+            mOriginNanos = originNanos;
+            mParser.parse(data, 0, data.length);
+        }
+
+        @Override
+        public void onFrame(MavlinkFrameParser frame) {
+            mFrames++;
+            mLastFrameNanos = mOriginNanos;
+            mRoutingTable.learn(frame.sysId(), frame.compId(), mIndex, mOriginNanos);
+            if (mRadioStatus.wrap(frame) && frame.compId() == RadioStatus.COMP_ID_TELEMETRY_RADIO) {
+                mPacer.onRadioStatus(mRadioStatus.txBuf(), mOriginNanos);
+            }
+            long lagNanos = mMessageRouter.route(frame, mOriginNanos);
+            if (lagNanos >= 0) {
+                mDuplicates++;
+                mLag.recordNanos(lagNanos);
+            }
+        }
+
+        boolean isAlive(long now) {
+            return mManager != null && mLastFrameNanos != 0
+                    && now - mLastFrameNanos < TimeUnit.MILLISECONDS.toNanos(LINK_TIMEOUT_MILLIS);
+        }
+    }
+
+    private final int mTcpPort;
+    private final List<Link> mLinks = new CopyOnWriteArrayList<>();
+    private final MessageRouter mMessageRouter;
+    private final MessageRouter mUplinkRouter = new MessageRouter(this::writeToSerial);
+    private final TimeSync mTimeSync = new TimeSync();
+    private final UplinkRetryCounter mUplinkRetries = new UplinkRetryCounter();
+    private final RoutingTable mRoutingTable = new RoutingTable();
+    private final BridgeLatencyMonitor mLatencyMonitor = new BridgeLatencyMonitor();
+
+    private int mBufferSize = 2048;
+    private int mIoTimeout = 1000;
+    private long mStallMillis = 3000;
+    private volatile ThreadProfile mSerialProfile = new ThreadProfile("bridge-serial", Process.THREAD_PRIORITY_URGENT_AUDIO);
+    private volatile ThreadProfile mTcpProfile = new ThreadProfile("bridge-tcp", Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+    private volatile Link mUplink;
+    private volatile TcpInputOutputManager mTcpManager;
+    private volatile Listener mListener;
+    private volatile TlogRecorder mRecorder;
+    private volatile boolean mGcsEmitterEnabled = true;
+
+    private ExecutorService mExecutorService;
+    private ScheduledExecutorService mWatchdog;
+    private ScheduledFuture<?> mWatchdogTask;
+    private boolean mSharedExecutors;
+    private boolean mRunning; // Synchronized by 'this'
+    // A shared watchdog may run several threads, keeps check() and recover() of this bridge sequential
+    private final Object mWatchdogLock = new Object();
+
+    // Watchdog only, under mWatchdogLock
+    private final Recovery mTcpRecovery = new Recovery();
+    private long mNextHealthCheckMillis;
+    private long mUniqueFramesAtLastCheck;
+    private final MavlinkFrameWriter mFrameWriter = new MavlinkFrameWriter(GCS_SYSTEM_ID, MAV_COMP_ID_UART_BRIDGE);
+    private long mLastGcsHeartbeatNanos;
+
+    private volatile long mReroutedFrames; // Written under the uplink router's lock
+    private volatile int mRecoveryCount;
+    private volatile long mLastRecoveryMillis = -1;
+    private volatile long mMaxRecoveryMillis = -1;
+
+    /**
+     * Creates a bridge without links, see {@link #addLink(String, SerialPortOpener)}.
+     */
+    public SerialTcpBridge(int tcpPort) {
+        mTcpPort = tcpPort;
+        mMessageRouter = new MessageRouter(this::writeToTcp);
+        mMessageRouter.addFrameListener(mTimeSync);
+        mUplinkRouter.addFrameListener(mUplinkRetries);
+    }
+
+    /**
+     * Creates a bridge with a single serial link.
+     */
+    public SerialTcpBridge(SerialPortOpener portOpener, int tcpPort) {
+        this(tcpPort);
+        addLink("serial", portOpener);
+    }
+
+    /**
+     * Adds a redundant input link. The first link added gets uplink until another one proves
+     * healthier. Must be called before {@link #start()}.
+     */
+    public synchronized void addLink(String name, SerialPortOpener portOpener) {
+        if (mRunning)
+            throw new IllegalStateException("already started");
+        mLinks.add(new Link(name, mRoutingTable.addLink(name), portOpener));
+        if (mLinks.size() > 1) {
+            mMessageRouter.setDeduplicator(new FrameDeduplicator());
+        }
+    }
+
+    /**
+     * Runs the stages on executors shared with other bridges instead of creating own ones.
+     * The executors are not shut down by {@link #stop()}. Every serial link and the TCP stage
+     * occupy an io thread while running. Must be called before {@link #start()}.
+     */
+    public synchronized void setExecutors(ExecutorService io, ScheduledExecutorService watchdog) {
+        if (mRunning)
+            throw new IllegalStateException("already started");
+        mExecutorService = io;
+        mWatchdog = watchdog;
+        mSharedExecutors = io != null;
+    }
+
+    /**
+     * @return io threads the bridge occupies while running, one per serial link and the TCP stage
+     */
+    public int getThreadCount() {
+        return mLinks.size() + 1;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        mBufferSize = bufferSize;
+    }
+
+    public void setIoTimeout(int ioTimeout) {
+        mIoTimeout = ioTimeout;
+    }
+
+    /**
+     * Scheduling of the serial and TCP stage threads. Thread names get the link name or TCP port
+     * appended. Applies to stages started afterwards.
+     */
+    public void setThreadProfiles(ThreadProfile serial, ThreadProfile tcp) {
+        mSerialProfile = serial;
+        mTcpProfile = tcp;
+    }
+
+    /**
+     * @return the scheduling each running stage thread actually got, serial links first
+     */
+    public List<ThreadProfile.Applied> getAppliedProfiles() {
+        List<ThreadProfile.Applied> profiles = new ArrayList<>();
+        for (Link link : mLinks) {
+            SerialInputOutputManager manager = link.mManager;
+            ThreadProfile.Applied applied = manager != null ? manager.getAppliedProfile() : null;
+            if (applied != null)
+                profiles.add(applied);
+        }
+        TcpInputOutputManager tcpManager = mTcpManager;
+        ThreadProfile.Applied applied = tcpManager != null ? tcpManager.getAppliedProfile() : null;
+        if (applied != null)
+            profiles.add(applied);
+        return profiles;
+    }
+
+    /**
+     * A stage that has not looped for this long is considered stalled. Must exceed the
+     * read plus write timeout.
+     */
+    public void setStallMillis(long stallMillis) {
+        mStallMillis = stallMillis;
+    }
+
+    public void setMessageFilter(MessageFilter filter) {
+        mMessageRouter.setFilter(filter);
+    }
+
+    /**
+     * Records both directions into recorder; null stops recording. The caller owns the
+     * recorder's lifecycle.
+     */
+    public void setRecorder(TlogRecorder recorder) {
+        mRecorder = recorder;
+        MessageRouter.Sink tap = recorder == null ? null : recorder::record;
+        mMessageRouter.setTap(tap);
+        mUplinkRouter.setTap(tap);
+    }
+
+    public TlogRecorder getRecorder() {
+        return mRecorder;
+    }
+
+    public MessageRouter getMessageRouter() {
+        return mMessageRouter;
+    }
+
+    /**
+     * @return the router of the MavsdkServer to vehicle direction
+     */
+    public MessageRouter getUplinkRouter() {
+        return mUplinkRouter;
+    }
+
+    public TimeSync getTimeSync() {
+        return mTimeSync;
+    }
+
+    /**
+     * @return the systems and components heard on each link
+     */
+    public RoutingTable getRoutingTable() {
+        return mRoutingTable;
+    }
+
+    /**
+     * @return targeted uplink frames sent to another link than the uplink link
+     */
+    public long getReroutedFrames() {
+        return mReroutedFrames;
+    }
+
+    public UplinkRetryCounter getUplinkRetries() {
+        return mUplinkRetries;
+    }
+
+    /**
+     * Turns RADIO_STATUS based pacing of every link's uplink on or off, on by default.
+     */
+    public void setRadioPacingEnabled(boolean enabled) {
+        for (Link link : mLinks)
+            link.mPacer.setEnabled(enabled);
+    }
+
+    /**
+     * @return the pacer of the named link, null if there is no such link
+     */
+    public RadioPacer getRadioPacer(String link) {
+        for (Link l : mLinks) {
+            if (l.mName.equals(link))
+                return l.mPacer;
+        }
+        return null;
+    }
+
+    /**
+     * Turns the bridge's own HEARTBEAT and TIMESYNC frames on or off, on by default.
+     */
+    public void setGcsEmitterEnabled(boolean enabled) {
+        mGcsEmitterEnabled = enabled;
+    }
+
+    /**
+     * Sends a complete MAVLink frame to the vehicle over the current uplink, between the frames
+     * of MavsdkServer. Dropped if no link is open or its write buffer is full.
+     */
+    public void sendToVehicle(byte[] frame, int offset, int length) {
+        mUplinkRouter.inject(frame, offset, length, System.nanoTime());
+    }
+
+    /**
+     * Sends a complete frame of bulk traffic, e.g. GPS corrections, over the current uplink. It
+     * yields to MavsdkServer's frames, see {@link SerialInputOutputManager#writeBulkAsync}.
+     *
+     * @param originNanos {@link System#nanoTime()} at which the data entered the phone
+     * @return false if no link is open or its bulk buffer is full
+     */
+    public boolean sendBulkToVehicle(byte[] frame, int offset, int length, long originNanos) {
+        Link uplink = mUplink;
+        SerialInputOutputManager manager = uplink != null ? uplink.mManager : null;
+        return manager != null && manager.writeBulkAsync(frame, offset, length, originNanos);
+    }
+
+    public BridgeLatencyMonitor getLatencyMonitor() {
+        return mLatencyMonitor;
+    }
+
+    public int getTcpPort() {
+        return mTcpPort;
+    }
+
+    /**
+     * @return the MavsdkServer system address for this bridge
+     */
+    public String getSystemAddress() {
+        return "tcp://:" + mTcpPort;
+    }
+
+    /**
+     * Opens every link and starts all stages and the watchdog. Links that cannot be opened are
+     * retried by the watchdog, as long as at least one opens now.
+     */
+    public void start() throws IOException {
+        start(null);
+    }
+
+    /**
+     * Like {@link #start()}, but the first link uses a port the caller already opened. Its
+     * {@link SerialPortOpener} is still used when the serial stage has to be rebuilt.
+     */
+    public synchronized void start(UsbSerialPort firstPort) throws IOException {
+        if (mRunning)
+            throw new IllegalStateException("already started");
+        if (mLinks.isEmpty())
+            throw new IllegalStateException("no links");
+
+        UsbSerialPort[] ports = new UsbSerialPort[mLinks.size()];
+        IOException error = null;
+        for (int i = 0; i < ports.length; i++) {
+            try {
+                ports[i] = i == 0 && firstPort != null ? firstPort : mLinks.get(i).mOpener.open();
+            } catch (IOException e) {
+                Log.w(TAG, mLinks.get(i).mName + " not opened: " + e.getMessage());
+                if (error == null)
+                    error = e;
+            }
+        }
+        boolean anyOpen = false;
+        for (UsbSerialPort port : ports)
+            anyOpen |= port != null;
+        if (!anyOpen)
+            throw error;
+
+        if (!mSharedExecutors) {
+            mExecutorService = Executors.newCachedThreadPool();
+            mWatchdog = Executors.newSingleThreadScheduledExecutor();
+        }
+        mRunning = true;
+        mUplink = mLinks.get(0);
+        startTcp();
+        for (int i = 0; i < ports.length; i++) {
+            if (ports[i] != null)
+                startSerial(mLinks.get(i), ports[i]);
+        }
+
+        mWatchdogTask = mWatchdog.scheduleWithFixedDelay(this::check,
+                WATCHDOG_PERIOD_MILLIS, WATCHDOG_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (!mRunning)
+            return;
+        mRunning = false;
+        mWatchdogTask.cancel(false);
+        for (Link link : mLinks)
+            stopSerial(link);
+        mTcpManager.stop();
+        if (!mSharedExecutors) {
+            mWatchdog.shutdownNow();
+            mExecutorService.shutdown();
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    public int getRecoveryCount() {
+        return mRecoveryCount;
+    }
+
+    /**
+     * @return time from detecting the last fault to the rebuilt stage being up, -1 if none yet
+     */
+    public long getLastRecoveryMillis() {
+        return mLastRecoveryMillis;
+    }
+
+    public long getMaxRecoveryMillis() {
+        return mMaxRecoveryMillis;
+    }
+
+    /**
+     * @return name of the link carrying uplink, null before the bridge started
+     */
+    public String getUplinkLink() {
+        Link uplink = mUplink;
+        return uplink != null ? uplink.mName : null;
+    }
+
+    public List<LinkStats> getLinkStats() {
+        long now = System.nanoTime();
+        Link uplink = mUplink;
+        List<LinkStats> stats = new ArrayList<>();
+        for (Link link : mLinks) {
+            stats.add(new LinkStats(link.mName, link.isAlive(now), link == uplink,
+                    link.mFrames, link.mDuplicates, link.mParser.getCrcErrorCount(),
+                    link.mLoss, link.mLag.snapshot(), link.mPacer));
+        }
+        return stats;
+    }
+
+    private void startSerial(Link link, UsbSerialPort port) {
+        final SerialInputOutputManager manager = new SerialInputOutputManager(port);
+        manager.setReadTimeout(mIoTimeout);
+        manager.setReadBufferSize(mBufferSize);
+        manager.setWriteTimeout(mIoTimeout);
+        manager.setWriteBufferSize(mBufferSize);
+        manager.setWriteLatencyHistogram(mLatencyMonitor.getUplinkHistogram());
+        manager.setBulkLatencyHistogram(mLatencyMonitor.getBulkHistogram());
+        ThreadProfile profile = mSerialProfile;
+        manager.setThreadProfile(profile.withName(profile.getName() + "-" + link.mName));
+        manager.setListener(new SerialInputOutputManager.Listener() {
+            @Override
+            public void onNewData(byte[] data) {
+                // Sending Serial data to TCP, through de-duplication and the msgid filter
+                link.onNewData(data, manager.getLastReadNanos());
+            }
+
+            @Override
+            public void onRunError(Exception e) {
+                onStageError(link, manager, e);
+            }
+        });
+        link.mParser.reset();
+        link.mPacer.setManager(manager);
+        link.mManager = manager;
+        manager.start(mExecutorService);
+    }
+
+    private void startTcp() {
+        final TcpInputOutputManager manager = new TcpInputOutputManager(mTcpPort);
+        manager.setReadBufferSize(mBufferSize);
+        manager.setWriteBufferSize(mBufferSize);
+        manager.setWriteLatencyHistogram(mLatencyMonitor.getDownlinkHistogram());
+        ThreadProfile profile = mTcpProfile;
+        manager.setThreadProfile(profile.withName(profile.getName() + "-" + mTcpPort));
+        manager.setListener(new TcpInputOutputManager.Listener() {
+            @Override
+            public void onNewData(byte[] data) {
+                // Sending TCP data to the uplink Serial, frame by frame
+                mUplinkRouter.onNewData(data, 0, data.length, manager.getLastReadNanos());
+            }
+
+            @Override
+            public void onRunError(Exception e) {
+                onStageError(null, manager, e);
+            }
+        });
+        mTcpManager = manager;
+        mExecutorService.submit(manager);
+    }
+
+    private void stopSerial(Link link) {
+        SerialInputOutputManager manager = link.mManager;
+        if (manager == null)
+            return;
+        link.mManager = null;
+        link.mPacer.setManager(null);
+        manager.stop();
+        try {
+            // unblocks a pending read
+            manager.getSerialPort().close();
+        } catch (IOException e) {
+            Log.w(TAG, "Closing serial port: " + e.getMessage());
+        }
+    }
+
+    private void writeToSerial(byte[] data, int offset, int length, long originNanos) {
+        Link uplink = mLinks.size() > 1 ? routeUplink(data, offset) : mUplink;
+        SerialInputOutputManager manager = uplink != null ? uplink.mManager : null;
+        if (manager != null)
+            manager.writeAsync(data, offset, length, originNanos);
+    }
+
+    /**
+     * @return the link a frame to the vehicle goes out on: the uplink link, unless the frame
+     * has a target that was only heard on other links
+     */
+    private Link routeUplink(byte[] frame, int offset) {
+        Link uplink = mUplink;
+        int sysId = MavlinkTargets.targetSystem(frame, offset);
+        if (sysId == MavlinkTargets.NONE || sysId == MavlinkTargets.BROADCAST)
+            return uplink;
+        int links = mRoutingTable.lookup(sysId, MavlinkTargets.targetComponent(frame, offset));
+        if (links == 0 || (uplink != null && (links & (1 << uplink.mIndex)) != 0))
+            return uplink;
+
+        long now = System.nanoTime();
+        Link best = null;
+        for (int index = 0; index < mLinks.size(); index++) {
+            Link link = mLinks.get(index);
+            if ((links & (1 << index)) == 0 || !link.isAlive(now))
+                continue;
+            if (best == null || link.mLoss < best.mLoss)
+                best = link;
+        }
+        if (best == null)
+            return uplink;
+        mReroutedFrames++;
+        return best;
+    }
+
+    private void writeToTcp(byte[] data, int offset, int length, long originNanos) {
+        mTcpManager.writeAsync(data, offset, length, originNanos);
+    }
+
+    /**
+     * @param link the serial link, null for the TCP stage
+     */
+    private void onStageError(Link link, Object manager, Exception e) {
+        if (link != null ? manager != link.mManager : manager != mTcpManager)
+            return; // a stage that was already replaced
+        synchronized (this) {
+            if (!mRunning)
+                return;
+            // don't wait for the next watchdog tick
+            mWatchdog.execute(() -> {
+                synchronized (mWatchdogLock) {
+                    recover(link, e);
+                }
+            });
+        }
+    }
+
+    private void check() {
+        synchronized (mWatchdogLock) {
+            checkStages();
+        }
+    }
+
+    private void checkStages() {
+        long now = System.nanoTime();
+        long stallNanos = TimeUnit.MILLISECONDS.toNanos(mStallMillis);
+
+        for (Link link : mLinks) {
+            SerialInputOutputManager serial = link.mManager;
+            if (serial == null) {
+                recover(link, new IOException("not open"));
+            } else if (serial.getState() == SerialInputOutputManager.State.STOPPED
+                    && serial.getLastActivityNanos() != 0) {
+                recover(link, new IOException("serial thread ended"));
+            } else if (serial.getLastActivityNanos() != 0 && now - serial.getLastActivityNanos() > stallNanos) {
+                recover(link, new IOException("serial stalled"));
+            }
+            link.mPacer.onTick(now);
+        }
+
+        TcpInputOutputManager tcp = mTcpManager;
+        // a rebuilt manager that failed to bind ends before it was ever active
+        if (tcp.getState() == TcpInputOutputManager.State.STOPPED
+                && (tcp.getLastActivityNanos() != 0 || mTcpRecovery.mLostSinceMillis != 0)) {
+            recover(null, new IOException("tcp thread ended"));
+        } else if (tcp.isConnected() && now - tcp.getLastActivityNanos() > stallNanos) {
+            recover(null, new IOException("tcp stalled"));
+        }
+
+        for (Link link : mLinks) {
+            SerialInputOutputManager serial = link.mManager;
+            if (link.mRecovery.mLostSinceMillis != 0 && serial != null && serial.getLastReadNanos() != 0) {
+                onRecovered(Stage.SERIAL, link.mName, link.mRecovery);
+            }
+        }
+        tcp = mTcpManager;
+        if (mTcpRecovery.mLostSinceMillis != 0 && tcp.isListening()) {
+            onRecovered(Stage.TCP, TCP_LINK_NAME, mTcpRecovery);
+        }
+
+        if (mLinks.size() > 1) {
+            checkHealth(now);
+        }
+        if (mGcsEmitterEnabled) {
+            emit(now, tcp.isConnected());
+        }
+    }
+
+    /**
+     * Sends the bridge's own frames that are due. Watchdog only.
+     */
+    private void emit(long now, boolean gcsConnected) {
+        // only while MavsdkServer is there, so the vehicle's GCS loss failsafe still works
+        if (gcsConnected && now - mLastGcsHeartbeatNanos >= GCS_HEARTBEAT_PERIOD_NANOS) {
+            mLastGcsHeartbeatNanos = now;
+            int length = mFrameWriter.begin(Heartbeat.MSG_ID)
+                    .putInt32(0, 0)
+                    .putUint8(4, MAV_TYPE_GCS)
+                    .putUint8(5, MAV_AUTOPILOT_INVALID)
+                    .putUint8(7, MAV_STATE_ACTIVE)
+                    .putUint8(8, MAVLINK_VERSION)
+                    .finish();
+            sendToVehicle(mFrameWriter.buffer(), 0, length);
+        }
+        if (mTimeSync.isRequestDue(now)) {
+            // taken as late as possible, ts1 is the send time
+            int length = mTimeSync.writeRequest(mFrameWriter, System.nanoTime());
+            sendToVehicle(mFrameWriter.buffer(), 0, length);
+        }
+    }
+
+    /**
+     * Updates the loss of every link against the merged stream and moves uplink if needed.
+     */
+    private void checkHealth(long now) {
+        long nowMillis = TimeUnit.NANOSECONDS.toMillis(now);
+        if (nowMillis < mNextHealthCheckMillis)
+            return;
+        mNextHealthCheckMillis = nowMillis + HEALTH_PERIOD_MILLIS;
+
+        long uniqueFrames = mMessageRouter.getUniqueFrames();
+        long uniqueDelta = uniqueFrames - mUniqueFramesAtLastCheck;
+        mUniqueFramesAtLastCheck = uniqueFrames;
+        for (Link link : mLinks) {
+            long frames = link.mFrames;
+            long delta = frames - link.mFramesAtLastCheck;
+            link.mFramesAtLastCheck = frames;
+            if (uniqueDelta > 0) {
+                link.mLoss = Math.max(0, 1 - (float) delta / uniqueDelta);
+            }
+        }
+        selectUplink(now);
+    }
+
+    private void selectUplink(long now) {
+        Link current = mUplink;
+        Link best = null;
+        for (Link link : mLinks) {
+            if (link.isAlive(now) && (best == null || link.mLoss < best.mLoss))
+                best = link;
+        }
+        if (best == null || best == current)
+            return;
+        if (current != null && current.isAlive(now) && current.mLoss - best.mLoss < UPLINK_SWITCH_LOSS)
+            return;
+
+        mUplink = best;
+        Log.i(TAG, "Uplink moved to " + best.mName);
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onUplinkChanged(best.mName);
+    }
+
+    /**
+     * Rebuilds one stage, at most once per {@link #RETRY_DELAY_MILLIS}. The stage counts as
+     * recovered once {@link #checkStages()} sees it up. Runs on the watchdog only, under
+     * mWatchdogLock.
+     *
+     * @param link the serial link, null for the TCP stage
+     */
+    private void recover(Link link, Exception cause) {
+        Stage stage = link != null ? Stage.SERIAL : Stage.TCP;
+        String name = link != null ? link.mName : TCP_LINK_NAME;
+        Recovery recovery = link != null ? link.mRecovery : mTcpRecovery;
+
+        long nowMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        if (recovery.mLostSinceMillis == 0) {
+            recovery.mLostSinceMillis = nowMillis;
+            Log.w(TAG, name + " lost: " + cause.getMessage());
+            if (link != null && mLinks.size() > 1) {
+                link.mLoss = 1;
+                if (link == mUplink) {
+                    synchronized (this) {
+                        stopSerial(link); // not alive any more, so uplink can fail over right away
+                    }
+                    selectUplink(System.nanoTime());
+                }
+            }
+            Listener listener = mListener;
+            if (listener != null)
+                listener.onStageLost(stage, name, cause);
+        } else if (nowMillis < recovery.mNextRetryMillis) {
+            // the last attempt is still coming up, or failed too recently
+            return;
+        }
+        if (link != null && link.mOpening)
+            return;
+        recovery.mNextRetryMillis = nowMillis + RETRY_DELAY_MILLIS;
+
+        if (link == null) {
+            synchronized (this) {
+                if (!mRunning)
+                    return;
+                mTcpManager.stop();
+                startTcp();
+            }
+            return;
+        }
+        synchronized (this) {
+            if (!mRunning)
+                return;
+            stopSerial(link);
+            link.mOpening = true;
+            // on a spare io thread, opening can take seconds; the watchdog keeps checking
+            // the other stages and sending heartbeats meanwhile
+            mExecutorService.execute(() -> reopen(link));
+        }
+    }
+
+    /**
+     * Opens the port of a serial link again, outside the bridge lock so stop() doesn't wait for it.
+     */
+    private void reopen(Link link) {
+        UsbSerialPort port;
+        try {
+            port = link.mOpener.open();
+        } catch (IOException e) {
+            // e.g. the device is unplugged; keep the other stages alive and retry
+            Log.w(TAG, link.mName + " not reopened: " + e.getMessage());
+            link.mOpening = false;
+            return;
+        }
+        synchronized (this) {
+            link.mOpening = false;
+            if (mRunning && link.mManager == null) {
+                startSerial(link, port);
+                return;
+            }
+        }
+        try {
+            port.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Closing serial port: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Watchdog only, under mWatchdogLock.
+     */
+    private void onRecovered(Stage stage, String name, Recovery recovery) {
+        long recoveryMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) - recovery.mLostSinceMillis;
+        recovery.mLostSinceMillis = 0;
+        recovery.mNextRetryMillis = 0;
+        mRecoveryCount++;
+        mLastRecoveryMillis = recoveryMillis;
+        mMaxRecoveryMillis = Math.max(mMaxRecoveryMillis, recoveryMillis);
+        Log.i(TAG, name + " recovered in " + recoveryMillis + " ms");
+        Listener listener = mListener;
+        if (listener != null)
+            listener.onStageRecovered(stage, name, recoveryMillis);
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.message.Timesync;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates the offset between the autopilot's clock and {@link System#nanoTime()} from
+ * TIMESYNC exchanges.
+ *
+ * A request carries our send time in ts1, the autopilot answers with its own time in tc1 and
+ * ts1 echoed. Assuming a symmetric path, the autopilot read its clock half way through the
+ * round trip. Samples whose round trip is far above the recent minimum were queued somewhere
+ * and are discarded; the rest are smoothed, fast until the estimate settles, slowly after. A
+ * run of samples far off the estimate means the autopilot rebooted and starts it over.
+ *
+ * Requests are built on the bridge's watchdog thread, responses arrive on the link thread.
+ */
+public class TimeSync implements MessageRouter.FrameListener {
+
+    private static final int SETTLING_SAMPLES = 10;
+    private static final double SETTLING_ALPHA = 0.2;
+    private static final double ALPHA = 0.05;
+    private static final long RTT_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    // Lets the minimum round trip follow a link that got slower for good
+    private static final long MIN_RTT_DECAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long JUMP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int JUMPS_BEFORE_RESET = 3;
+    private static final long SETTLING_PERIOD_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long PERIOD_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Timesync mTimesync = new Timesync();
+
+    // Watchdog thread only
+    private long mLastRequestNanos;
+
+    private volatile long mPendingTs1;
+
+    // Written by the link thread only
+    private long mMinRttNanos = Long.MAX_VALUE;
+    private int mJumps;
+    private volatile long mOffsetNanos;
+    private volatile long mRttNanos;
+    private volatile int mSamples;
+    private volatile long mRejectedSamples;
+    private volatile long mResets;
+
+    /**
+     * @return true if the next request is due, every second until the estimate settled,
+     * every five seconds after
+     */
+    public boolean isRequestDue(long nowNanos) {
+        long period = mSamples < SETTLING_SAMPLES ? SETTLING_PERIOD_NANOS : PERIOD_NANOS;
+        return mLastRequestNanos == 0 || nowNanos - mLastRequestNanos >= period;
+    }
+
+    /**
+     * Builds a request into writer, to be sent right away. An unanswered earlier request is abandoned.
+     *
+     * @return the frame length
+     */
+    public int writeRequest(MavlinkFrameWriter writer, long nowNanos) {
+        mLastRequestNanos = nowNanos;
+        mPendingTs1 = nowNanos;
+        return writer.begin(Timesync.MSG_ID)
+                .putInt64(0, 0)
+                .putInt64(8, nowNanos)
+                .finish();
+    }
+
+    @Override
+    public void onFrame(MavlinkFrameParser frame, long originNanos) {
+        if (!mTimesync.wrap(frame)) {
+            return;
+        }
+        long tc1 = mTimesync.tc1();
+        long ts1 = mTimesync.ts1();
+        // requests have tc1 == 0, answers to MavsdkServer's requests carry its ts1
+        if (tc1 == 0 || ts1 != mPendingTs1 || ts1 == 0) {
+            return;
+        }
+        mPendingTs1 = 0;
+        onSample(ts1, tc1, originNanos);
+    }
+
+    /**
+     * @param sentNanos  our clock when the request was sent
+     * @param remoteNanos the autopilot's clock when it answered
+     * @param receivedNanos our clock when the answer was read from the link
+     */
+    void onSample(long sentNanos, long remoteNanos, long receivedNanos) {
+        long rtt = receivedNanos - sentNanos;
+        if (rtt < 0) {
+            return;
+        }
+        if (mMinRttNanos != Long.MAX_VALUE) {
+            mMinRttNanos += MIN_RTT_DECAY_NANOS;
+        }
+        mMinRttNanos = Math.min(mMinRttNanos, rtt);
+        if (rtt > 2 * mMinRttNanos + RTT_SLACK_NANOS) {
+            mRejectedSamples++;
+            return;
+        }
+
+        long offset = remoteNanos - (sentNanos + rtt / 2);
+        int samples = mSamples;
+        if (samples > 0 && Math.abs(offset - mOffsetNanos) > JUMP_NANOS) {
+            if (++mJumps < JUMPS_BEFORE_RESET) {
+                mRejectedSamples++;
+                return;
+            }
+            // the autopilot's clock restarted
+            mResets++;
+            samples = 0;
+            mMinRttNanos = rtt;
+        }
+        mJumps = 0;
+        if (samples == 0) {
+            mOffsetNanos = offset;
+            mRttNanos = rtt;
+        } else {
+            double alpha = samples < SETTLING_SAMPLES ? SETTLING_ALPHA : ALPHA;
+            mOffsetNanos += Math.round(alpha * (offset - mOffsetNanos));
+            mRttNanos += Math.round(alpha * (rtt - mRttNanos));
+        }
+        mSamples = samples + 1;
+    }
+
+    public boolean isSynced() {
+        return mSamples > 0;
+    }
+
+    /**
+     * @return autopilot time minus {@link System#nanoTime()}, valid once {@link #isSynced()}
+     */
+    public long getOffsetNanos() {
+        return mOffsetNanos;
+    }
+
+    /**
+     * @return smoothed round trip of the accepted exchanges
+     */
+    public long getRttNanos() {
+        return mRttNanos;
+    }
+
+    /**
+     * @return samples accepted since the last reset
+     */
+    public int getSamples() {
+        return mSamples;
+    }
+
+    public long getRejectedSamples() {
+        return mRejectedSamples;
+    }
+
+    /**
+     * @return how often the autopilot's clock was seen restarting
+     */
+    public long getResets() {
+        return mResets;
+    }
+
+    public long toVehicleNanos(long localNanos) {
+        return localNanos + mOffsetNanos;
+    }
+
+    /**
+     * @param vehicleNanos autopilot time, e.g. time_boot_ms * 1000000
+     * @return the {@link System#nanoTime()} it corresponds to
+     */
+    public long toLocalNanos(long vehicleNanos) {
+        return vehicleNanos - mOffsetNanos;
+    }
+
+    @Override
+    public String toString() {
+        if (!isSynced()) {
+            return "not synced";
+        }
+        return "offset " + TimeUnit.NANOSECONDS.toMicros(mOffsetNanos) + " us, rtt "
+                + TimeUnit.NANOSECONDS.toMicros(mRttNanos) + " us, " + mSamples + " samples, "
+                + mRejectedSamples + " rejected, " + mResets + " resets";
+    }
+}
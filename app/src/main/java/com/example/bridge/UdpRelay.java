@@ -0,0 +1,456 @@
+package com.example.bridge;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.utils.ThreadProfile;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Forwards the vehicle's validated frames to other ground stations on the LAN over UDP, e.g.
+ * a second screen or a logging laptop, unicast or multicast.
+ *
+ * The relay listens on the downlink router like any other frame listener, after MavsdkServer's
+ * sink. On the link thread it only filters, rate limits and copies the frame into the
+ * endpoint's bounded queue; a full queue drops the frame. Sending happens on a thread of the
+ * relay, so a slow network never holds up the primary path.
+ *
+ * One unicast endpoint may be designated for uplink: its datagrams are framed and routed to
+ * the vehicle like MavsdkServer's, frame by frame, so they never interleave with them.
+ */
+public class UdpRelay implements MessageRouter.FrameListener {
+
+    private static final String TAG = "LOG_" + UdpRelay.class.getSimpleName();
+
+    public static final int DEFAULT_QUEUE_FRAMES = 64;
+    private static final int DATAGRAM_SIZE = 2048;
+    // Burst a rate-capped endpoint may send at once
+    private static final long BURST_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final ThreadProfile SENDER_PROFILE = new ThreadProfile("udp-relay-tx", Process.THREAD_PRIORITY_DEFAULT);
+    private static final ThreadProfile RECEIVER_PROFILE = new ThreadProfile("udp-relay-rx", Process.THREAD_PRIORITY_DEFAULT);
+
+    public static class EndpointStats {
+        private final String mName;
+        private final InetSocketAddress mAddress;
+        private final boolean mUplink;
+        private final long mSentFrames;
+        private final long mSentBytes;
+        private final long mFiltered;
+        private final long mRateLimited;
+        private final long mQueueDropped;
+        private final long mSendErrors;
+
+        EndpointStats(String name, InetSocketAddress address, boolean uplink, long sentFrames, long sentBytes,
+                      long filtered, long rateLimited, long queueDropped, long sendErrors) {
+            mName = name;
+            mAddress = address;
+            mUplink = uplink;
+            mSentFrames = sentFrames;
+            mSentBytes = sentBytes;
+            mFiltered = filtered;
+            mRateLimited = rateLimited;
+            mQueueDropped = queueDropped;
+            mSendErrors = sendErrors;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public InetSocketAddress getAddress() {
+            return mAddress;
+        }
+
+        public boolean isUplink() {
+            return mUplink;
+        }
+
+        public long getSentFrames() {
+            return mSentFrames;
+        }
+
+        public long getSentBytes() {
+            return mSentBytes;
+        }
+
+        /**
+         * @return frames the endpoint's message filter dropped
+         */
+        public long getFiltered() {
+            return mFiltered;
+        }
+
+        /**
+         * @return frames dropped because the endpoint was at its rate cap
+         */
+        public long getRateLimited() {
+            return mRateLimited;
+        }
+
+        /**
+         * @return frames dropped because the send queue was full
+         */
+        public long getQueueDropped() {
+            return mQueueDropped;
+        }
+
+        public long getSendErrors() {
+            return mSendErrors;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s %s%s: sent %d (%d B), filtered %d, rate limited %d, queue full %d, errors %d",
+                    mName, mAddress, mUplink ? " (uplink)" : "", mSentFrames, mSentBytes,
+                    mFiltered, mRateLimited, mQueueDropped, mSendErrors);
+        }
+    }
+
+    private static final class Endpoint {
+        final String mName;
+        final InetSocketAddress mAddress;
+        final DatagramPacket mPacket = new DatagramPacket(new byte[MavlinkFrameParser.MAX_FRAME_LENGTH], 0);
+
+        // Link thread only
+        final MessageFilter mFilter;
+        final long mMaxBytesPerSecond;
+        final long mBurstBytes;
+        long mTokens;
+        long mLastRefillNanos;
+
+        // Ring of frames, synchronized by mQueueLock
+        final byte[][] mFrames;
+        final int[] mLengths;
+        int mHead;
+        int mCount;
+        long mQueueDropped;
+
+        volatile long mFiltered;
+        volatile long mRateLimited;
+        volatile long mSentFrames; // Sender thread only
+        volatile long mSentBytes; // Sender thread only
+        volatile long mSendErrors; // Sender thread only
+
+        Endpoint(String name, InetSocketAddress address, MessageFilter filter, int maxBytesPerSecond, int queueFrames) {
+            mName = name;
+            mAddress = address;
+            mPacket.setSocketAddress(address);
+            mFilter = filter;
+            mMaxBytesPerSecond = maxBytesPerSecond;
+            mBurstBytes = Math.max(MavlinkFrameParser.MAX_FRAME_LENGTH, maxBytesPerSecond * BURST_NANOS / NANOS_PER_SECOND);
+            mTokens = mBurstBytes;
+            mFrames = new byte[queueFrames][MavlinkFrameParser.MAX_FRAME_LENGTH];
+            mLengths = new int[queueFrames];
+        }
+
+        /**
+         * Token bucket in bytes. Link thread only.
+         */
+        boolean takeTokens(int length, long nowNanos) {
+            if (mMaxBytesPerSecond <= 0)
+                return true;
+            if (mLastRefillNanos == 0) {
+                mLastRefillNanos = nowNanos;
+            } else {
+                long refill = (nowNanos - mLastRefillNanos) * mMaxBytesPerSecond / NANOS_PER_SECOND;
+                // below a byte the time is kept for the next frame
+                if (refill > 0) {
+                    mTokens = Math.min(mBurstBytes, mTokens + refill);
+                    mLastRefillNanos = nowNanos;
+                }
+            }
+            if (mTokens < length)
+                return false;
+            mTokens -= length;
+            return true;
+        }
+    }
+
+    private final int mLocalPort;
+    private final List<Endpoint> mEndpoints = new ArrayList<>(); // Fixed once started
+    private volatile Endpoint[] mEndpointArray = new Endpoint[0];
+    private Endpoint mUplinkEndpoint; // Synchronized by 'this'
+    private final Object mQueueLock = new Object();
+
+    private DatagramSocket mSocket; // Synchronized by 'this'
+    private volatile boolean mRunning;
+    private volatile MessageRouter mUplinkRouter;
+    private final MavlinkFrameParser mUplinkParser = new MavlinkFrameParser(this::onUplinkFrame);
+    private long mUplinkReadNanos; // Receiver thread only
+
+    private volatile long mUplinkFrames;
+    private volatile long mRejectedDatagrams;
+
+    /**
+     * @param localPort UDP port the relay sends from and the uplink endpoint sends to, 0 for any
+     */
+    public UdpRelay(int localPort) {
+        mLocalPort = localPort;
+    }
+
+    /**
+     * Adds a destination. Must be called before {@link #start()}.
+     *
+     * @param filter            which frames the endpoint gets, copied; may differ from MavsdkServer's
+     * @param maxBytesPerSecond rate cap of the endpoint, 0 for none
+     * @param queueFrames       frames waiting to be sent before new ones are dropped
+     */
+    public synchronized void addEndpoint(String name, InetSocketAddress address, MessageFilter filter,
+                                         int maxBytesPerSecond, int queueFrames) {
+        if (mSocket != null)
+            throw new IllegalStateException("already started");
+        if (address.isUnresolved())
+            throw new IllegalArgumentException(address + " is not resolved");
+        if (queueFrames < 1)
+            throw new IllegalArgumentException("queueFrames must be positive");
+        mEndpoints.add(new Endpoint(name, address, filter.copy(), maxBytesPerSecond, queueFrames));
+    }
+
+    /**
+     * Accepts uplink from the endpoint called name, from any port of its host. Null for none.
+     * Must be called before {@link #start()}.
+     */
+    public synchronized void setUplinkEndpoint(String name) {
+        if (mSocket != null)
+            throw new IllegalStateException("already started");
+        if (name == null) {
+            mUplinkEndpoint = null;
+            return;
+        }
+        for (Endpoint endpoint : mEndpoints) {
+            if (endpoint.mName.equals(name)) {
+                if (endpoint.mAddress.getAddress().isMulticastAddress())
+                    throw new IllegalArgumentException("uplink from multicast " + endpoint.mAddress);
+                mUplinkEndpoint = endpoint;
+                return;
+            }
+        }
+        throw new IllegalArgumentException("no endpoint " + name);
+    }
+
+    /**
+     * Binds the local port and relays on two threads of its own.
+     */
+    public void start() throws SocketException {
+        start(runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Binds the local port and relays on two threads of executor, e.g. the bridges' io pool,
+     * see {@link BridgeRegistry#getHelperExecutor()}. Both return once the relay is closed.
+     */
+    public synchronized void start(Executor executor) throws SocketException {
+        if (mSocket != null)
+            throw new IllegalStateException("already started");
+        DatagramSocket socket = new DatagramSocket(mLocalPort);
+        mSocket = socket;
+        mEndpointArray = mEndpoints.toArray(new Endpoint[0]);
+        mRunning = true;
+        try {
+            executor.execute(() -> run(SENDER_PROFILE, () -> sendLoop(socket)));
+            executor.execute(() -> run(RECEIVER_PROFILE, () -> receiveLoop(socket)));
+        } catch (RejectedExecutionException e) {
+            close();
+            throw e;
+        }
+        Log.i(TAG, "Relaying to " + mEndpoints.size() + " endpoints from port " + socket.getLocalPort());
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (mSocket == null)
+                return;
+            mRunning = false;
+            mSocket.close();
+        }
+        synchronized (mQueueLock) {
+            mQueueLock.notifyAll();
+        }
+    }
+
+    /**
+     * Starts relaying the downlink of a bridge and routing uplink into it, see
+     * {@link SerialTcpBridge#getMessageRouter()} and {@link SerialTcpBridge#getUplinkRouter()}.
+     */
+    public void attach(MessageRouter downlink, MessageRouter uplink) {
+        mUplinkRouter = uplink;
+        downlink.addFrameListener(this);
+    }
+
+    public void detach(MessageRouter downlink) {
+        downlink.removeFrameListener(this);
+        mUplinkRouter = null;
+    }
+
+    /**
+     * @return the bound UDP port, -1 before {@link #start()}
+     */
+    public synchronized int getLocalPort() {
+        return mSocket != null ? mSocket.getLocalPort() : -1;
+    }
+
+    public long getUplinkFrames() {
+        return mUplinkFrames;
+    }
+
+    /**
+     * @return datagrams from hosts other than the uplink endpoint, ignored
+     */
+    public long getRejectedDatagrams() {
+        return mRejectedDatagrams;
+    }
+
+    public synchronized List<EndpointStats> getEndpointStats() {
+        List<EndpointStats> stats = new ArrayList<>();
+        for (Endpoint endpoint : mEndpointArray) {
+            long queueDropped;
+            synchronized (mQueueLock) {
+                queueDropped = endpoint.mQueueDropped;
+            }
+            stats.add(new EndpointStats(endpoint.mName, endpoint.mAddress, endpoint == mUplinkEndpoint,
+                    endpoint.mSentFrames, endpoint.mSentBytes, endpoint.mFiltered,
+                    endpoint.mRateLimited, queueDropped, endpoint.mSendErrors));
+        }
+        return stats;
+    }
+
+    /**
+     * Called on the link thread, after MavsdkServer's sink. Never blocks.
+     */
+    @Override
+    public void onFrame(MavlinkFrameParser frame, long originNanos) {
+        if (!mRunning)
+            return;
+        long now = System.nanoTime();
+        int length = frame.frameLength();
+        for (Endpoint endpoint : mEndpointArray) {
+            if (!endpoint.mFilter.accept(frame.msgId(), now)) {
+                endpoint.mFiltered++;
+                continue;
+            }
+            if (!endpoint.takeTokens(length, now)) {
+                endpoint.mRateLimited++;
+                continue;
+            }
+            synchronized (mQueueLock) {
+                if (endpoint.mCount == endpoint.mFrames.length) {
+                    endpoint.mQueueDropped++;
+                    continue;
+                }
+                int tail = (endpoint.mHead + endpoint.mCount) % endpoint.mFrames.length;
+                System.arraycopy(frame.buffer(), 0, endpoint.mFrames[tail], 0, length);
+                endpoint.mLengths[tail] = length;
+                // the sender only waits while every queue is empty
+                if (endpoint.mCount++ == 0)
+                    mQueueLock.notify();
+            }
+        }
+    }
+
+    private static void run(ThreadProfile profile, Runnable loop) {
+        ThreadProfile.Applied applied = profile.apply();
+        try {
+            loop.run();
+        } finally {
+            applied.restore();
+        }
+    }
+
+    private void sendLoop(DatagramSocket socket) {
+        Endpoint[] endpoints = mEndpointArray;
+        try {
+            while (mRunning) {
+                boolean sent = false;
+                // one frame per endpoint and round, so a busy endpoint doesn't starve the others
+                for (Endpoint endpoint : endpoints) {
+                    synchronized (mQueueLock) {
+                        if (endpoint.mCount == 0)
+                            continue;
+                        int length = endpoint.mLengths[endpoint.mHead];
+                        System.arraycopy(endpoint.mFrames[endpoint.mHead], 0, endpoint.mPacket.getData(), 0, length);
+                        endpoint.mPacket.setLength(length);
+                        endpoint.mHead = (endpoint.mHead + 1) % endpoint.mFrames.length;
+                        endpoint.mCount--;
+                    }
+                    try {
+                        socket.send(endpoint.mPacket);
+                        endpoint.mSentFrames++;
+                        endpoint.mSentBytes += endpoint.mPacket.getLength();
+                    } catch (IOException e) {
+                        if (socket.isClosed())
+                            return;
+                        // e.g. no route while the WiFi reconnects; the next frame tries again
+                        endpoint.mSendErrors++;
+                    }
+                    sent = true;
+                }
+                if (!sent) {
+                    synchronized (mQueueLock) {
+                        while (mRunning && isEmpty(endpoints))
+                            mQueueLock.wait();
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Synchronized by mQueueLock
+    private static boolean isEmpty(Endpoint[] endpoints) {
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.mCount > 0)
+                return false;
+        }
+        return true;
+    }
+
+    private void receiveLoop(DatagramSocket socket) {
+        Endpoint uplink;
+        synchronized (this) {
+            uplink = mUplinkEndpoint;
+        }
+        DatagramPacket packet = new DatagramPacket(new byte[DATAGRAM_SIZE], DATAGRAM_SIZE);
+        while (mRunning) {
+            try {
+                packet.setLength(DATAGRAM_SIZE);
+                socket.receive(packet);
+            } catch (IOException e) {
+                if (mRunning)
+                    Log.w(TAG, "Receive failed: " + e.getMessage());
+                return;
+            }
+            if (uplink == null || !uplink.mAddress.getAddress().equals(packet.getAddress())) {
+                mRejectedDatagrams++;
+                continue;
+            }
+            mUplinkReadNanos = System.nanoTime();
+            mUplinkParser.parse(packet.getData(), packet.getOffset(), packet.getLength());
+        }
+    }
+
+    private void onUplinkFrame(MavlinkFrameParser frame) {
+        MessageRouter uplinkRouter = mUplinkRouter;
+        if (uplinkRouter == null)
+            return;
+        mUplinkFrames++;
+        uplinkRouter.route(frame, mUplinkReadNanos);
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts MavsdkServer's retransmissions on the uplink, a sign of the radio losing data.
+ *
+ * A COMMAND_LONG retry carries a confirmation above zero. Parameter and mission transfer
+ * messages are sent again unchanged, so they count when the same message with the same
+ * payload was already sent within the last few seconds. Streamed messages such as HEARTBEAT
+ * or setpoints repeat by design and are not looked at.
+ */
+public class UplinkRetryCounter implements MessageRouter.FrameListener {
+
+    private static final int MSG_ID_PARAM_REQUEST_READ = 20;
+    private static final int MSG_ID_PARAM_REQUEST_LIST = 21;
+    private static final int MSG_ID_PARAM_SET = 23;
+    private static final int MSG_ID_MISSION_ITEM = 39;
+    private static final int MSG_ID_MISSION_REQUEST_LIST = 43;
+    private static final int MSG_ID_MISSION_COUNT = 44;
+    private static final int MSG_ID_MISSION_CLEAR_ALL = 45;
+    private static final int MSG_ID_MISSION_ITEM_INT = 73;
+    private static final int MSG_ID_COMMAND_INT = 75;
+    private static final int MSG_ID_COMMAND_LONG = 76;
+    private static final int COMMAND_LONG_CONFIRMATION = 32;
+
+    private static final int HISTORY = 64;
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    // Link thread only, under the uplink router's lock
+    private final long[] mHashes = new long[HISTORY];
+    private final long[] mSentNanos = new long[HISTORY];
+    private int mNext;
+
+    private final long[] mRetriesByMsgId = new long[256];
+    private volatile long mFrames;
+    private volatile long mRetries;
+
+    @Override
+    public void onFrame(MavlinkFrameParser frame, long originNanos) {
+        int msgId = frame.msgId();
+        if (msgId == MSG_ID_COMMAND_LONG) {
+            mFrames++;
+            if (frame.payloadLength() > COMMAND_LONG_CONFIRMATION
+                    && frame.buffer()[frame.payloadOffset() + COMMAND_LONG_CONFIRMATION] != 0)
+                countRetry(msgId);
+            return;
+        }
+        if (!isTransfer(msgId))
+            return;
+        mFrames++;
+
+        long hash = hash(frame);
+        for (int i = 0; i < HISTORY; i++) {
+            if (mHashes[i] == hash && mSentNanos[i] != 0 && originNanos - mSentNanos[i] < WINDOW_NANOS) {
+                mSentNanos[i] = originNanos;
+                countRetry(msgId);
+                return;
+            }
+        }
+        mHashes[mNext] = hash;
+        mSentNanos[mNext] = originNanos;
+        mNext = (mNext + 1) % HISTORY;
+    }
+
+    private static boolean isTransfer(int msgId) {
+        switch (msgId) {
+            case MSG_ID_PARAM_REQUEST_READ:
+            case MSG_ID_PARAM_REQUEST_LIST:
+            case MSG_ID_PARAM_SET:
+            case MSG_ID_MISSION_ITEM:
+            case MSG_ID_MISSION_REQUEST_LIST:
+            case MSG_ID_MISSION_COUNT:
+            case MSG_ID_MISSION_CLEAR_ALL:
+            case MSG_ID_MISSION_ITEM_INT:
+            case MSG_ID_COMMAND_INT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void countRetry(int msgId) {
+        synchronized (mRetriesByMsgId) {
+            mRetriesByMsgId[msgId & 0xFF]++;
+        }
+        mRetries++;
+    }
+
+    /**
+     * FNV-1a over the ids and the payload, the MAVLink sequence number left out.
+     */
+    private static long hash(MavlinkFrameParser frame) {
+        long hash = 0xcbf29ce484222325L;
+        hash = (hash ^ frame.msgId()) * 0x100000001b3L;
+        hash = (hash ^ frame.sysId()) * 0x100000001b3L;
+        hash = (hash ^ frame.compId()) * 0x100000001b3L;
+        byte[] buffer = frame.buffer();
+        int end = frame.payloadOffset() + frame.payloadLength();
+        for (int i = frame.payloadOffset(); i < end; i++) {
+            hash = (hash ^ (buffer[i] & 0xFF)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * @return command, parameter and mission frames seen
+     */
+    public long getFrames() {
+        return mFrames;
+    }
+
+    public long getRetries() {
+        return mRetries;
+    }
+
+    public long getRetries(int msgId) {
+        synchronized (mRetriesByMsgId) {
+            return mRetriesByMsgId[msgId & 0xFF];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mRetries + " retries in " + mFrames + " frames";
+    }
+}
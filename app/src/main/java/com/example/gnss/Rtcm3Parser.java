@@ -0,0 +1,123 @@
+package com.example.gnss;
+
+/**
+ * Incremental RTCM 3 framer: preamble 0xD3, 6 reserved bits and a 10 bit length, the message,
+ * then a CRC-24Q over all of it.
+ *
+ * Bytes can arrive in any chunking. Garbage and frames with a bad CRC are skipped by
+ * resynchronizing on the next preamble. Not thread safe.
+ */
+public final class Rtcm3Parser {
+
+    public static final int PREAMBLE = 0xD3;
+    public static final int HEADER_LENGTH = 3;
+    public static final int CRC_LENGTH = 3;
+    public static final int MAX_MESSAGE_LENGTH = 1023;
+    public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + MAX_MESSAGE_LENGTH + CRC_LENGTH;
+
+    private static final int CRC24Q_POLY = 0x1864CFB;
+
+    public interface Listener {
+        /**
+         * Called for every frame with a valid CRC, preamble to CRC included. The buffer is
+         * only valid during the call.
+         */
+        void onRtcm(byte[] frame, int offset, int length);
+    }
+
+    private final Listener mListener;
+    private final byte[] mFrame = new byte[MAX_FRAME_LENGTH];
+    private int mLength;
+    private int mExpected;
+
+    private long mFrameCount;
+    private long mCrcErrorCount;
+    private long mDiscardedBytes;
+
+    public Rtcm3Parser(Listener listener) {
+        mListener = listener;
+    }
+
+    public void parse(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(data[i]);
+        }
+    }
+
+    private void add(byte b) {
+        if (mLength == 0) {
+            if ((b & 0xFF) != PREAMBLE) {
+                mDiscardedBytes++;
+                return;
+            }
+        }
+        mFrame[mLength++] = b;
+        if (mLength == HEADER_LENGTH) {
+            if ((mFrame[1] & 0xFC) != 0) {
+                // reserved bits set, not a frame start
+                resync(1);
+                return;
+            }
+            mExpected = HEADER_LENGTH + (((mFrame[1] & 0x03) << 8) | (mFrame[2] & 0xFF)) + CRC_LENGTH;
+        }
+        if (mLength < HEADER_LENGTH || mLength < mExpected) {
+            return;
+        }
+        int end = mExpected - CRC_LENGTH;
+        int crc = ((mFrame[end] & 0xFF) << 16) | ((mFrame[end + 1] & 0xFF) << 8) | (mFrame[end + 2] & 0xFF);
+        if (crc24q(mFrame, 0, end) == crc) {
+            mFrameCount++;
+            mLength = 0;
+            mListener.onRtcm(mFrame, 0, mExpected);
+        } else {
+            mCrcErrorCount++;
+            resync(1);
+        }
+    }
+
+    /**
+     * Drops the first skip bytes of the buffered frame and feeds the rest in again.
+     */
+    private void resync(int skip) {
+        int length = mLength;
+        mDiscardedBytes += skip;
+        mLength = 0;
+        mExpected = 0;
+        byte[] rest = new byte[length - skip];
+        System.arraycopy(mFrame, skip, rest, 0, rest.length);
+        for (byte b : rest) {
+            add(b);
+        }
+    }
+
+    public void reset() {
+        mLength = 0;
+        mExpected = 0;
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getCrcErrorCount() {
+        return mCrcErrorCount;
+    }
+
+    public long getDiscardedBytes() {
+        return mDiscardedBytes;
+    }
+
+    public static int crc24q(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 16;
+            for (int bit = 0; bit < 8; bit++) {
+                crc <<= 1;
+                if ((crc & 0x1000000) != 0) {
+                    crc ^= CRC24Q_POLY;
+                }
+            }
+        }
+        return crc & 0xFFFFFF;
+    }
+}
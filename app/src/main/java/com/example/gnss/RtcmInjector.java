@@ -0,0 +1,346 @@
+package com.example.gnss;
+
+import android.os.Process;
+import android.util.Log;
+
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.message.GpsRtcmData;
+import com.example.utils.ThreadProfile;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds RTCM 3 corrections to the vehicle as GPS_RTCM_DATA.
+ *
+ * Corrections come from a TCP stream, e.g. a local NTRIP caster stand-in or str2str, or from a
+ * recorded file played back at a fixed rate. The stream is split into whole RTCM frames; each
+ * is sent in up to {@link GpsRtcmData#MAX_FRAGMENTS} fragments that share a 5 bit sequence id,
+ * the way the autopilot reassembles them. A frame too long for that is dropped and counted.
+ *
+ * The frames go to a {@link Sink} that queues them behind the regular uplink, see
+ * {@link com.example.bridge.SerialTcpBridge#sendBulkToVehicle}. Every frame carries the time
+ * its correction was read from the source, so the bridge can tell how old corrections are by
+ * the time they reach the radio.
+ */
+public class RtcmInjector implements Rtcm3Parser.Listener {
+
+    private static final String TAG = "LOG_" + RtcmInjector.class.getSimpleName();
+
+    private static final int READ_BUFFER_SIZE = 1024;
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final ThreadProfile SOURCE_PROFILE = new ThreadProfile("rtcm-source", Process.THREAD_PRIORITY_DEFAULT);
+
+    public interface Sink {
+        /**
+         * @return false if the frame was dropped
+         */
+        boolean write(byte[] frame, int offset, int length, long originNanos);
+    }
+
+    private final Sink mSink;
+    private final MavlinkFrameWriter mWriter;
+    private final Rtcm3Parser mParser = new Rtcm3Parser(this);
+
+    private Executor mExecutor; // Synchronized by 'this'
+    private boolean mStarted; // Synchronized by 'this'
+    private Thread mThread; // runs the source until stopped, synchronized by 'this'
+    private volatile boolean mRunning;
+    private volatile String mSource;
+    private volatile Socket mSocket;
+
+    // Source thread only
+    private long mReadNanos;
+    private int mSequence;
+    private long mWindowStartNanos;
+    private long mWindowBytes;
+
+    private volatile long mMessages;
+    private volatile long mOversizedMessages;
+    private volatile long mSentFrames;
+    private volatile long mSentBytes;
+    private volatile long mDroppedFrames;
+    private volatile long mLastMessageNanos;
+    private volatile double mBytesPerSecond;
+
+    /**
+     * @param sysId  and compId the GPS_RTCM_DATA frames are sent as; the injector has its own
+     *               sequence, so no other sender may use the same pair
+     */
+    public RtcmInjector(Sink sink, int sysId, int compId) {
+        mSink = sink;
+        mWriter = new MavlinkFrameWriter(sysId, compId);
+    }
+
+    /**
+     * Reads the source on a thread of executor instead of an own one, e.g. the bridges' io pool,
+     * see {@link com.example.bridge.BridgeRegistry#getHelperExecutor()}. Must be called before
+     * the injection starts.
+     */
+    public synchronized void setExecutor(Executor executor) {
+        if (mStarted)
+            throw new IllegalStateException("already started");
+        mExecutor = executor;
+    }
+
+    /**
+     * Reads corrections from a TCP caster, reconnecting until {@link #stop()}.
+     */
+    public synchronized void startTcp(String host, int port) {
+        start(host + ":" + port, () -> {
+            while (mRunning) {
+                try (Socket socket = new Socket()) {
+                    mSocket = socket;
+                    if (!mRunning)
+                        break;
+                    socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+                    Log.i(TAG, "Corrections from " + mSource);
+                    pump(socket.getInputStream());
+                } catch (IOException e) {
+                    if (mRunning)
+                        Log.w(TAG, mSource + ": " + e.getMessage());
+                }
+                mParser.reset();
+                sleep(RECONNECT_DELAY_MILLIS);
+            }
+        });
+    }
+
+    /**
+     * Plays a recorded RTCM 3 stream at bytesPerSecond, once.
+     */
+    public synchronized void startFile(File file, int bytesPerSecond) {
+        if (bytesPerSecond <= 0)
+            throw new IllegalArgumentException("bytesPerSecond must be positive");
+        start(file.getName(), () -> {
+            try (InputStream in = new FileInputStream(file)) {
+                byte[] buffer = new byte[Math.max(1, Math.min(READ_BUFFER_SIZE, bytesPerSecond / 10))];
+                long start = System.nanoTime();
+                long played = 0;
+                int length;
+                while (mRunning && (length = in.read(buffer)) > 0) {
+                    long due = start + played * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+                    long wait = due - System.nanoTime();
+                    if (wait > 0)
+                        sleep(TimeUnit.NANOSECONDS.toMillis(wait));
+                    onSourceData(buffer, length);
+                    played += length;
+                }
+                Log.i(TAG, mSource + " played, " + this);
+            } catch (IOException e) {
+                Log.w(TAG, mSource + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void start(String source, Runnable loop) {
+        if (mStarted)
+            throw new IllegalStateException("already started");
+        mSource = source;
+        mStarted = true;
+        mRunning = true;
+        Runnable task = () -> run(loop);
+        if (mExecutor != null) {
+            try {
+                mExecutor.execute(task);
+            } catch (RuntimeException e) {
+                mStarted = false;
+                mRunning = false;
+                throw e;
+            }
+            return;
+        }
+        Thread thread = new Thread(task, getClass().getSimpleName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(Runnable loop) {
+        synchronized (this) {
+            // stopped before the executor got to it, or started again meanwhile
+            if (!mRunning || mThread != null)
+                return;
+            mThread = Thread.currentThread();
+        }
+        ThreadProfile.Applied applied = SOURCE_PROFILE.apply();
+        try {
+            loop.run();
+        } finally {
+            synchronized (this) {
+                if (mThread == Thread.currentThread())
+                    mThread = null;
+                // the interrupt of stop() must not hit the next task of a pooled thread
+                Thread.interrupted();
+            }
+            applied.restore();
+        }
+    }
+
+    public void stop() {
+        synchronized (this) {
+            if (!mStarted)
+                return;
+            mStarted = false;
+            mRunning = false;
+            // unblocks the sleep between reconnects and a pending read
+            if (mThread != null) {
+                mThread.interrupt();
+                mThread = null;
+            }
+        }
+        Socket socket = mSocket;
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    private void pump(InputStream in) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int length;
+        while (mRunning && (length = in.read(buffer)) > 0) {
+            onSourceData(buffer, length);
+        }
+    }
+
+    /**
+     * Feeds raw source bytes, on the source thread. Package-private for tests.
+     */
+    void onSourceData(byte[] data, int length) {
+        mReadNanos = System.nanoTime();
+        mParser.parse(data, 0, length);
+    }
+
+    @Override
+    public void onRtcm(byte[] frame, int offset, int length) {
+        mMessages++;
+        mLastMessageNanos = mReadNanos;
+        int fragments = (length + GpsRtcmData.MAX_DATA_LENGTH - 1) / GpsRtcmData.MAX_DATA_LENGTH;
+        // a fragmented message that ends on a full fragment is closed by an empty one
+        boolean terminator = fragments > 1 && length % GpsRtcmData.MAX_DATA_LENGTH == 0;
+        if (fragments + (terminator ? 1 : 0) > GpsRtcmData.MAX_FRAGMENTS) {
+            mOversizedMessages++;
+            return;
+        }
+        int sequence = mSequence;
+        mSequence = (mSequence + 1) & 0x1F;
+        if (fragments == 1) {
+            send(sequence << 3, frame, offset, length);
+            return;
+        }
+        int fragment = 0;
+        for (int sent = 0; sent < length || terminator; fragment++) {
+            int chunk = Math.min(GpsRtcmData.MAX_DATA_LENGTH, length - sent);
+            if (chunk == 0)
+                terminator = false;
+            send(GpsRtcmData.FLAG_FRAGMENTED | (fragment << 1) | (sequence << 3), frame, offset + sent, chunk);
+            sent += chunk;
+        }
+    }
+
+    private void send(int flags, byte[] data, int offset, int length) {
+        int frameLength = mWriter.begin(GpsRtcmData.MSG_ID)
+                .putUint8(0, flags)
+                .putUint8(1, length)
+                .putBytes(2, data, offset, length)
+                .finish();
+        if (!mSink.write(mWriter.buffer(), 0, frameLength, mReadNanos)) {
+            mDroppedFrames++;
+            return;
+        }
+        mSentFrames++;
+        mSentBytes += frameLength;
+
+        long now = System.nanoTime();
+        mWindowBytes += frameLength;
+        if (mWindowStartNanos == 0) {
+            mWindowStartNanos = now;
+        } else if (now - mWindowStartNanos >= RATE_WINDOW_NANOS) {
+            mBytesPerSecond = mWindowBytes * 1e9 / (now - mWindowStartNanos);
+            mWindowStartNanos = now;
+            mWindowBytes = 0;
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return where corrections come from, null before the first start
+     */
+    public String getSource() {
+        return mSource;
+    }
+
+    public long getMessages() {
+        return mMessages;
+    }
+
+    public long getCrcErrors() {
+        return mParser.getCrcErrorCount();
+    }
+
+    /**
+     * @return RTCM frames longer than four GPS_RTCM_DATA fragments carry, not sent
+     */
+    public long getOversizedMessages() {
+        return mOversizedMessages;
+    }
+
+    public long getSentFrames() {
+        return mSentFrames;
+    }
+
+    public long getSentBytes() {
+        return mSentBytes;
+    }
+
+    /**
+     * @return GPS_RTCM_DATA frames the sink refused, e.g. because the bulk buffer was full
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    /**
+     * @return GPS_RTCM_DATA bytes per second over the last second with traffic
+     */
+    public double getBytesPerSecond() {
+        return mBytesPerSecond;
+    }
+
+    /**
+     * @return ms since the newest correction was read from the source, -1 if none yet
+     */
+    public long getCorrectionAgeMillis() {
+        long last = mLastMessageNanos;
+        return last == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s: %d messages (%d crc errors, %d oversized), %d frames sent, %d dropped, %.0f B/s, age %d ms",
+                mSource, mMessages, getCrcErrors(), mOversizedMessages, mSentFrames, mDroppedFrames,
+                mBytesPerSecond, getCorrectionAgeMillis());
+    }
+}
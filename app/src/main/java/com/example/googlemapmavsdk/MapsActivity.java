@@ -1,8 +1,13 @@
 package com.example.googlemapmavsdk;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.Observer;
 
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Toast;
@@ -17,13 +22,15 @@ import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
 import com.example.googlemapmavsdk.databinding.ActivityMapsBinding;
 
+import com.example.models.ConnectionProgress;
+import com.example.models.VehicleState;
 import com.example.repositories.DroneRepository;
+import com.example.service.ConnectionService;
 
 import java.lang.reflect.Array;
 import java.net.InterfaceAddress;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicReference;
 
 public class MapsActivity extends AppCompatActivity implements OnMapReadyCallback {
 
@@ -33,34 +40,42 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
     private List<Marker> missionMarkers = new ArrayList<Marker>();
     private List<LatLng> missionLatLngs = new ArrayList<LatLng>();
 
+    private ConnectionService mConnectionService;
     private DroneRepository mDroneRepository;
 
-    private AtomicReference<Double> currentLat = new AtomicReference<>((double) 37.2974);
-    private AtomicReference<Double> currentLong = new AtomicReference<>((double) 126.8356);
-    private AtomicReference<Float> currentAlt = new AtomicReference<>((float) -1f);
-
-    private AtomicReference<String> mFlightMode = new AtomicReference<>((String) "Preparing... Press Again.");
-
-    private AtomicReference<Float> batteryPercentage = new AtomicReference<>((float) -1f);
-    private AtomicReference<Float> batteryVoltage = new AtomicReference<>((float) -1f);
-
-    private AtomicReference<Float> speedXY = new AtomicReference<>((float) -1f);
-    private AtomicReference<Float> speedZ = new AtomicReference<>((float) -1f);
-
-    private AtomicReference<Float> eulerPitch = new AtomicReference<>((float) -999f);
-    private AtomicReference<Float> eulerRoll = new AtomicReference<>((float) -999f);
-    private AtomicReference<Float> eulerYaw = new AtomicReference<>((float) -999f);
-
-    private AtomicReference<Boolean> rcOnceAvailable = new AtomicReference<>((boolean) false);
-    private AtomicReference<Boolean> rcIsAvailable = new AtomicReference<>((boolean) false);
-    private AtomicReference<Float> rcSignalStrength = new AtomicReference<>((float) -1f);
+    private final Observer<ConnectionProgress> mProgressObserver = progress -> {
+        if (progress.getState() == ConnectionProgress.State.READY) {
+            Toast.makeText(getApplication(), "Ready in " + progress.getTotalMillis() + " ms", Toast.LENGTH_SHORT).show();
+        }
+    };
+    private final Observer<VehicleState> mVehicleStateObserver = this::onVehicleStateChanged;
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mConnectionService = ((ConnectionService.LocalBinder) service).getService();
+            mDroneRepository = mConnectionService.getDroneRepository();
+            // the same observer instances each time, so binding again doesn't add observers
+            mDroneRepository.getConnectionProgress().observe(MapsActivity.this, mProgressObserver);
+            mDroneRepository.getVehicleState().observe(MapsActivity.this, mVehicleStateObserver);
+            mConnectionService.setUiVisible(true);
+        }
 
-    private AtomicReference<Boolean> droneConnectionState = new AtomicReference<>((boolean) false);
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            mConnectionService = null;
+        }
+    };
 
-    private AtomicReference<Integer> totalMission = new AtomicReference<>((int) -1);
-    private AtomicReference<Integer> currentMission = new AtomicReference<>((int) -1);
+    // Latest vehicle state, copied once per change on the main thread
+    private final VehicleState.Snapshot mState = new VehicleState.Snapshot();
+    private boolean mFollowDrone;
+    private boolean mReturnAtMissionEnd;
+    private double mMarkerLat = Double.NaN;
+    private double mMarkerLong = Double.NaN;
 
-    private AtomicReference<Boolean> isMissionFinished = new AtomicReference<>((boolean) false);
+    private static final double INITIAL_LAT = 37.2974;
+    private static final double INITIAL_LONG = 126.8356;
 
     private static final float ZOOM_SCALE = 19f;
     private static final float MISSION_MARKER_COLOR = 180f;
@@ -79,7 +94,30 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                 .findFragmentById(R.id.map);
         mapFragment.getMapAsync(this);
 
-        mDroneRepository = new DroneRepository(getApplication());
+        // The connection lives in the service, so it survives the activity being stopped or recreated
+        bindService(new Intent(this, ConnectionService.class), mConnection, BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (mConnectionService != null) {
+            mConnectionService.setUiVisible(true);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (mConnectionService != null) {
+            mConnectionService.setUiVisible(false);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        unbindService(mConnection);
     }
 
     /**
@@ -96,7 +134,7 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         mMap = googleMap;
 
         // Add a marker in Sydney and move the camera
-        LatLng initialPoint = new LatLng(currentLat.get(), currentLong.get());
+        LatLng initialPoint = new LatLng(INITIAL_LAT, INITIAL_LONG);
         mMarker = mMap.addMarker(new MarkerOptions().position(initialPoint).title("Marker in ERICA"));
         mMap.moveCamera(CameraUpdateFactory.newLatLng(initialPoint));
         mMap.moveCamera(CameraUpdateFactory.zoomTo(ZOOM_SCALE));
@@ -116,6 +154,30 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
         });
     }
 
+    /**
+     * One call per coalesced change of any telemetry value, however many streams changed.
+     */
+    private void onVehicleStateChanged(VehicleState state) {
+        state.read(mState);
+        if (mFollowDrone && mMap != null && mState.has(VehicleState.POSITION)
+                && (mState.getLatitudeDeg() != mMarkerLat || mState.getLongitudeDeg() != mMarkerLong)) {
+            mMarkerLat = mState.getLatitudeDeg();
+            mMarkerLong = mState.getLongitudeDeg();
+            LatLng newPosition = new LatLng(mMarkerLat, mMarkerLong);
+            mMarker.setPosition(newPosition);
+            mMarker.setTitle("DRONE");
+            mMap.moveCamera(CameraUpdateFactory.newLatLng(newPosition));
+        }
+        if (mReturnAtMissionEnd && mState.has(VehicleState.MISSION_PROGRESS)) {
+            int total = mState.getMissionTotal();
+            int current = mState.getMissionCurrent();
+            if (total == current && current > 0) {
+                mReturnAtMissionEnd = false;
+                mDroneRepository.return0(RTL_RETURN_HEIGHT);
+            }
+        }
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_maps, menu);
@@ -124,30 +186,36 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
 
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        if (mDroneRepository == null) {
+            Toast.makeText(getApplication(), "Connection service not ready", Toast.LENGTH_SHORT).show();
+            return true;
+        }
         // Handle item selection
         switch (item.getItemId()) {
             case R.id.connect:
                 mDroneRepository.connect();
                 break;
+            case R.id.nextVehicle:
+                List<String> vehicleIds = mDroneRepository.getVehicleIds().getValue();
+                if (vehicleIds == null || vehicleIds.size() < 2) {
+                    Toast.makeText(getApplication(), "No other vehicle", Toast.LENGTH_SHORT).show();
+                } else {
+                    int next = (vehicleIds.indexOf(mDroneRepository.getSelectedVehicleId()) + 1) % vehicleIds.size();
+                    mDroneRepository.selectVehicle(vehicleIds.get(next));
+                    // the mission being watched belongs to the previous vehicle
+                    mReturnAtMissionEnd = false;
+                    Toast.makeText(getApplication(), "Vehicle " + vehicleIds.get(next), Toast.LENGTH_SHORT).show();
+                }
+                break;
             case R.id.where:
-                try {
-                    mDroneRepository.getPosition().observe(this, position -> {
-                        currentLat.set(position.getLatitudeDeg());
-                        currentLong.set(position.getLongitudeDeg());
-                        currentAlt.set(position.getRelativeAltitudeM());
-
-                        mMarker.remove();
-                        LatLng newPosition = new LatLng(currentLat.get(), currentLong.get());
-                        mMarker = mMap.addMarker(new MarkerOptions().position(newPosition).title("DRONE"));
-
-                        mMap.moveCamera(CameraUpdateFactory.newLatLng(
-                                new LatLng(currentLat.get(), currentLong.get())
-                        ));
-                        mMap.moveCamera(CameraUpdateFactory.zoomTo(ZOOM_SCALE));
-                    });
-
-                    Toast.makeText(getApplication(), "Alt : " + currentAlt.get(), Toast.LENGTH_SHORT).show();
-                } catch (Exception e) {
+                mFollowDrone = true;
+                if (mMap != null) {
+                    mMap.moveCamera(CameraUpdateFactory.zoomTo(ZOOM_SCALE));
+                }
+                if (mState.has(VehicleState.POSITION)) {
+                    Toast.makeText(getApplication(), "Alt : " + mState.getRelativeAltitudeM(), Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(), "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.printErrorMessage:
@@ -170,7 +238,9 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                 break;
             case R.id.uploadMission:
                 if (missionLatLngs.size() >= 1) {
-                    missionLatLngs.add(0, new LatLng(currentLat.get(), currentLong.get()));
+                    missionLatLngs.add(0, mState.has(VehicleState.POSITION)
+                            ? new LatLng(mState.getLatitudeDeg(), mState.getLongitudeDeg())
+                            : new LatLng(INITIAL_LAT, INITIAL_LONG));
                     mDroneRepository.uploadMission(missionLatLngs);
                 } else {
                     Toast.makeText(getApplication(), "No Mission Item", Toast.LENGTH_SHORT).show();
@@ -186,145 +256,82 @@ public class MapsActivity extends AppCompatActivity implements OnMapReadyCallbac
                 mDroneRepository.clearMission();
                 break;
             case R.id.missionProgress:
-                try {
-                    mDroneRepository.getMissionProgress().observe(this, missionProgress -> {
-                        totalMission.set(missionProgress.getTotal());
-                        currentMission.set(missionProgress.getCurrent());
-
-                        int temp_total = totalMission.get();
-                        int temp_current = currentMission.get();
-
-                        if (temp_total == temp_current) {
-                            if ((temp_current > 0) && (temp_total > 0))  {
-                                mDroneRepository.return0(RTL_RETURN_HEIGHT);
-                            }
-                        }
-                    });
+                // returns once the last item is reached
+                mReturnAtMissionEnd = true;
+                if (mState.has(VehicleState.MISSION_PROGRESS)) {
                     Toast.makeText(getApplication(),
-                            "Total: " + totalMission.get()
-                                    + " Current: " + currentMission.get(),
+                            "Total: " + mState.getMissionTotal()
+                                    + " Current: " + mState.getMissionCurrent(),
                             Toast.LENGTH_SHORT).show();
-
-                    /*if(totalMission.get() == currentMission.get()){
-                        Toast.makeText(getApplication(),"Mission Finished", Toast.LENGTH_SHORT).show();
-                    }*/
-                } catch (Exception e) {
+                } else {
+                    Toast.makeText(getApplication(), "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.isMissionFinished:
-                try {
-                    mDroneRepository.isMissionFinished().observe(this, missionFinished -> {
-                        isMissionFinished.set(missionFinished);
-                    });
-                    if (isMissionFinished.get() == true) {
-                        Toast.makeText(getApplication(), "Mission Finished", Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
+                if (mState.has(VehicleState.MISSION_FINISHED) && mState.isMissionFinished()) {
+                    Toast.makeText(getApplication(), "Mission Finished", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.camera:
                 mDroneRepository.camera();
                 break;
             case R.id.flightMode:
-                try {
-                    mDroneRepository.getFlightMode().observe(this, flightMode -> {
-                        mFlightMode.set(flightMode.name());
-                    });
-                    Toast.makeText(getApplication(), mFlightMode.get(), Toast.LENGTH_SHORT).show();
-                } catch (Exception e) {
+                if (mState.getFlightMode() == null) {
+                    Toast.makeText(getApplication(), "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(), mState.getFlightMode().name(), Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.battery:
-                try {
-                    mDroneRepository.getBattery().observe(this, battery -> {
-                        batteryPercentage.set(battery.getRemainingPercent() * 100);
-                        batteryVoltage.set(battery.getVoltageV());
-                    });
-                    if ((batteryPercentage.get() == -1f)
-                            && (batteryVoltage.get() == -1f)) {
-                        Toast.makeText(getApplication(), "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getApplication(), batteryPercentage + "% :: " + batteryVoltage + "V", Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
+                if (!mState.has(VehicleState.BATTERY)) {
+                    Toast.makeText(getApplication(), "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(), mState.getBatteryRemaining() * 100 + "% :: "
+                            + mState.getBatteryVoltageV() + "V", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.speed:
-                try {
-                    mDroneRepository.getSpeed().observe(this, speed -> {
-                        speedXY.set(speed.getHspeed());
-                        speedZ.set(speed.getVspeed());
-                    });
-                    if ((speedXY.get() == -1f)
-                            && (speedZ.get() == -1f)) {
-                        Toast.makeText(getApplication(),
-                                "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getApplication(),
-                                "SpeedXY : " + speedXY + " m/s", Toast.LENGTH_SHORT).show();
-                        Toast.makeText(getApplication(),
-                                "SpeedZ : " + speedZ + " m/s", Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
+                if (!mState.has(VehicleState.SPEED)) {
+                    Toast.makeText(getApplication(),
+                            "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(),
+                            "SpeedXY : " + mState.getHorizontalSpeed() + " m/s", Toast.LENGTH_SHORT).show();
+                    Toast.makeText(getApplication(),
+                            "SpeedZ : " + mState.getVerticalSpeed() + " m/s", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.attitude:
-                try {
-                    mDroneRepository.getAttitude().observe(this, eulerAngle -> {
-                        eulerPitch.set(eulerAngle.getPitchDeg());
-                        eulerRoll.set(eulerAngle.getRollDeg());
-                        eulerYaw.set(eulerAngle.getYawDeg());
-                    });
-                    if ((eulerRoll.get() == -999f)
-                            && (eulerPitch.get() == -999f)
-                            && (eulerYaw.get() == -999f)) {
-                        Toast.makeText(getApplication(),
-                                "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getApplication(),
-                                eulerRoll.get() + "° : "
-                                        + eulerPitch.get() + "° : "
-                                        + eulerYaw.get() + "°",
-                                Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
+                if (!mState.has(VehicleState.ATTITUDE)) {
+                    Toast.makeText(getApplication(),
+                            "Preparing... Press Again.", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(),
+                            mState.getRollDeg() + "° : "
+                                    + mState.getPitchDeg() + "° : "
+                                    + mState.getYawDeg() + "°",
+                            Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.rcStatus:
-                try {
-                    mDroneRepository.getRcStatus().observe(this, rcStatus -> {
-                        rcOnceAvailable.set(rcStatus.getWasAvailableOnce());
-                        rcIsAvailable.set(rcStatus.getIsAvailable());
-                        rcSignalStrength.set(rcStatus.getSignalStrengthPercent());
-                    });
-                    if (rcOnceAvailable.get() == false) {
-                        Toast.makeText(getApplication(),
-                                "Rc Contorl Waiting for Connection...", Toast.LENGTH_SHORT).show();
-                    } else {
-                        if (rcIsAvailable.get() == true) {
-                            Toast.makeText(getApplication(),
-                                    "Rc Control Available : " + rcSignalStrength.get() + "%",
-                                    Toast.LENGTH_SHORT).show();
-                        } else {
-                            Toast.makeText(getApplication(),
-                                    "** RC Control Disconnected!! **",
-                                    Toast.LENGTH_SHORT).show();
-                        }
-                    }
-                } catch (Exception e) {
+                if (!mState.has(VehicleState.RC_STATUS) || !mState.isRcWasAvailableOnce()) {
+                    Toast.makeText(getApplication(),
+                            "Rc Contorl Waiting for Connection...", Toast.LENGTH_SHORT).show();
+                } else if (mState.isRcAvailable()) {
+                    Toast.makeText(getApplication(),
+                            "Rc Control Available : " + mState.getRcSignalStrengthPercent() + "%",
+                            Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(),
+                            "** RC Control Disconnected!! **",
+                            Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.droneConnectionState:
-                try {
-                    mDroneRepository.getDroneConnectionState().observe(this, connectionState -> {
-                        droneConnectionState.set(connectionState.getIsConnected());
-                    });
-                    if (droneConnectionState.get()) {
-                        Toast.makeText(getApplication(), "Drone is found and connected", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(getApplication(), "Waiting for any Drone or System to connect...", Toast.LENGTH_SHORT).show();
-                    }
-                } catch (Exception e) {
+                if (mState.has(VehicleState.CONNECTION) && mState.isConnected()) {
+                    Toast.makeText(getApplication(), "Drone is found and connected", Toast.LENGTH_SHORT).show();
+                } else {
+                    Toast.makeText(getApplication(), "Waiting for any Drone or System to connect...", Toast.LENGTH_SHORT).show();
                 }
                 break;
             case R.id.setGeofence:
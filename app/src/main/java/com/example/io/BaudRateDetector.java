@@ -0,0 +1,170 @@
+package com.example.io;
+
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+import com.hoho.android.usbserial.util.MonotonicClock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the baud rate of a telemetry radio by listening for CRC-valid MAVLink frames.
+ *
+ * Each candidate rate is tried for at most {@link #setListenMillis(int)} ms, the preferred
+ * (last known good) rate first, so the whole detection is bounded by
+ * candidates * listenMillis, seconds with the defaults, so it refuses to run on the main
+ * thread. Must run before a {@link com.hoho.android.usbserial.util.SerialInputOutputManager}
+ * is started on the port.
+ */
+public class BaudRateDetector {
+
+    private static final String TAG = "LOG_" + BaudRateDetector.class.getSimpleName();
+
+    public static final int[] DEFAULT_BAUD_RATES = {57600, 115200, 921600, 460800, 230400, 38400, 19200};
+
+    private static final int BUFFER_SIZE = 2048;
+    private static final int READ_TIMEOUT = 100;
+
+    private final UsbSerialPort mSerialPort;
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+
+    private int[] mBaudRates = DEFAULT_BAUD_RATES;
+    private int mListenMillis = 1200; // HEARTBEAT is only guaranteed at 1 Hz
+    private int mMinValidFrames = 2;
+
+    public static class Result {
+        private final int mBaudRate;
+        private final int mAttempts;
+        private final long mElapsedMillis;
+
+        Result(int baudRate, int attempts, long elapsedMillis) {
+            mBaudRate = baudRate;
+            mAttempts = attempts;
+            mElapsedMillis = elapsedMillis;
+        }
+
+        public boolean isDetected() {
+            return mBaudRate > 0;
+        }
+
+        /**
+         * @return the detected rate, or -1
+         */
+        public int getBaudRate() {
+            return mBaudRate;
+        }
+
+        public int getAttempts() {
+            return mAttempts;
+        }
+
+        public long getElapsedMillis() {
+            return mElapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return (isDetected() ? mBaudRate + " baud" : "no MAVLink")
+                    + " after " + mAttempts + " rates in " + mElapsedMillis + " ms";
+        }
+    }
+
+    public BaudRateDetector(UsbSerialPort serialPort) {
+        mSerialPort = serialPort;
+    }
+
+    public void setBaudRates(int[] baudRates) {
+        mBaudRates = baudRates.clone();
+    }
+
+    public void setListenMillis(int listenMillis) {
+        mListenMillis = listenMillis;
+    }
+
+    public void setMinValidFrames(int minValidFrames) {
+        mMinValidFrames = minValidFrames;
+    }
+
+    /**
+     * @return the worst case duration of {@link #detect(int)}
+     */
+    public long getMaxDetectMillis() {
+        return (long) (mBaudRates.length + 1) * mListenMillis;
+    }
+
+    /**
+     * Cycles through the candidate rates and leaves the port configured at the first one that
+     * produces valid frames. When nothing is found the port is left at preferredBaudRate.
+     *
+     * @param preferredBaudRate rate to try first, usually the last successful one for this device
+     * @throws IllegalStateException on the main thread
+     */
+    public Result detect(int preferredBaudRate) throws IOException {
+        Looper mainLooper = Looper.getMainLooper(); // null in local unit tests
+        if (mainLooper != null && mainLooper.isCurrentThread()) {
+            throw new IllegalStateException("Baud rate detection blocks for up to "
+                    + getMaxDetectMillis() + " ms, not on the main thread");
+        }
+        long start = MonotonicClock.millis();
+        List<Integer> order = new ArrayList<>();
+        order.add(preferredBaudRate);
+        for (int baudRate : mBaudRates) {
+            if (!order.contains(baudRate))
+                order.add(baudRate);
+        }
+
+        int attempts = 0;
+        for (int baudRate : order) {
+            attempts++;
+            if (listen(baudRate)) {
+                Result result = new Result(baudRate, attempts, MonotonicClock.millis() - start);
+                Log.i(TAG, "Detected " + result);
+                return result;
+            }
+        }
+
+        setParameters(preferredBaudRate);
+        Result result = new Result(-1, attempts, MonotonicClock.millis() - start);
+        Log.w(TAG, "Detection failed, " + result + ", falling back to " + preferredBaudRate);
+        return result;
+    }
+
+    private boolean listen(int baudRate) throws IOException {
+        setParameters(baudRate);
+        try {
+            mSerialPort.purgeHwBuffers(true, true);
+        } catch (UnsupportedOperationException ignored) {
+            // stale bytes from the previous rate only cost a few CRC errors
+        }
+
+        final int[] validFrames = {0};
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (frame.isCrcChecked())
+                validFrames[0]++;
+        });
+
+        long deadline = MonotonicClock.millis() + mListenMillis;
+        long remaining;
+        while ((remaining = deadline - MonotonicClock.millis()) > 0) {
+            int len = mSerialPort.read(mBuffer, (int) Math.min(remaining, READ_TIMEOUT));
+            if (len > 0) {
+                parser.parse(mBuffer, 0, len);
+                if (validFrames[0] >= mMinValidFrames)
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private void setParameters(int baudRate) throws IOException {
+        mSerialPort.setParameters(
+                baudRate,
+                UsbSerialPort.DATABITS_8,
+                UsbSerialPort.STOPBITS_1,
+                UsbSerialPort.PARITY_NONE);
+    }
+}
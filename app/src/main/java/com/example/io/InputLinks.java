@@ -0,0 +1,63 @@
+package com.example.io;
+
+import com.example.bridge.SerialTcpBridge;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Builds the input link of a bridge from an address, in MAVSDK's connection URL style:
+ * <ul>
+ * <li>udp://:14550 or udp://192.168.4.2:14550 listens, see {@link UdpSerialPort#listen}</li>
+ * <li>udpout://192.168.4.1:14555 sends to the vehicle first, see {@link UdpSerialPort#connect}</li>
+ * <li>tcp://192.168.4.1:5760 connects, see {@link TcpClientSerialPort}</li>
+ * </ul>
+ * USB radios are not built here, they need the USB permission flow of the repository.
+ */
+public final class InputLinks {
+
+    public static final int CONNECT_TIMEOUT_MILLIS = 3000;
+
+    private InputLinks() {
+    }
+
+    /**
+     * @return an opener that creates a fresh port for the address every time the bridge
+     * (re)builds the link
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    public static SerialTcpBridge.SerialPortOpener opener(String address) {
+        int separator = address.indexOf("://");
+        int colon = address.lastIndexOf(':');
+        if (separator < 0 || colon <= separator)
+            throw new IllegalArgumentException("not scheme://host:port: " + address);
+        String scheme = address.substring(0, separator);
+        String host = address.substring(separator + 3, colon);
+        int port;
+        try {
+            port = Integer.parseInt(address.substring(colon + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad port: " + address);
+        }
+        if (port < 0 || port > 0xFFFF)
+            throw new IllegalArgumentException("bad port: " + address);
+
+        switch (scheme) {
+            case "udp":
+            case "udpin":
+                return () -> UdpSerialPort.listen(host.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(host, port));
+            case "udpout":
+                requireHost(host, address);
+                return () -> UdpSerialPort.connect(new InetSocketAddress(host, port));
+            case "tcp":
+                requireHost(host, address);
+                return () -> new TcpClientSerialPort(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MILLIS);
+            default:
+                throw new IllegalArgumentException("unknown link type " + scheme + ": " + address);
+        }
+    }
+
+    private static void requireHost(String host, String address) {
+        if (host.isEmpty())
+            throw new IllegalArgumentException("no host: " + address);
+    }
+}
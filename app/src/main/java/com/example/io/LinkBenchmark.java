@@ -0,0 +1,150 @@
+package com.example.io;
+
+import com.example.bridge.SerialTcpBridge;
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.message.Heartbeat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures an input link the way the app uses it, so USB, UDP and TCP links compare on equal
+ * terms: the link is opened by a {@link SerialTcpBridge} and read by a TCP client in
+ * MavsdkServer's place.
+ *
+ * Time to first heartbeat runs from starting the bridge, link opening included, to the first
+ * vehicle HEARTBEAT reaching the client. Throughput is what the client received from then on
+ * until the end of the run.
+ */
+public final class LinkBenchmark {
+
+    private static final int READ_TIMEOUT_MILLIS = 50;
+
+    public static final class Result {
+        private final String mLink;
+        private final long mFirstHeartbeatMicros;
+        private final long mFrames;
+        private final long mBytes;
+        private final long mCrcErrors;
+        private final long mNanos;
+
+        Result(String link, long firstHeartbeatMicros, long frames, long bytes, long crcErrors, long nanos) {
+            mLink = link;
+            mFirstHeartbeatMicros = firstHeartbeatMicros;
+            mFrames = frames;
+            mBytes = bytes;
+            mCrcErrors = crcErrors;
+            mNanos = nanos;
+        }
+
+        public String getLink() {
+            return mLink;
+        }
+
+        /**
+         * @return -1 if no heartbeat came
+         */
+        public long getFirstHeartbeatMicros() {
+            return mFirstHeartbeatMicros;
+        }
+
+        public long getFrames() {
+            return mFrames;
+        }
+
+        public long getBytes() {
+            return mBytes;
+        }
+
+        public long getCrcErrors() {
+            return mCrcErrors;
+        }
+
+        public double getFramesPerSecond() {
+            return mNanos > 0 ? mFrames * 1e9 / mNanos : 0;
+        }
+
+        public double getBytesPerSecond() {
+            return mNanos > 0 ? mBytes * 1e9 / mNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-24s first heartbeat %6.1f ms, %8.0f frames/s, %9.0f B/s, %d crc errors",
+                    mLink, mFirstHeartbeatMicros / 1000.0, getFramesPerSecond(), getBytesPerSecond(), mCrcErrors);
+        }
+    }
+
+    private LinkBenchmark() {
+    }
+
+    /**
+     * Runs a bridge over the link for durationMillis; the vehicle must be sending meanwhile.
+     */
+    public static Result run(String link, SerialTcpBridge.SerialPortOpener opener, long durationMillis)
+            throws IOException, InterruptedException {
+        int tcpPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            tcpPort = probe.getLocalPort();
+        }
+        SerialTcpBridge bridge = new SerialTcpBridge(opener, tcpPort);
+        bridge.setIoTimeout(100);
+
+        long[] firstHeartbeatNanos = {0};
+        long[] frames = {0};
+        long[] bytes = {0};
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (firstHeartbeatNanos[0] == 0) {
+                if (frame.msgId() != Heartbeat.MSG_ID)
+                    return;
+                firstHeartbeatNanos[0] = System.nanoTime();
+            }
+            frames[0]++;
+            bytes[0] += frame.frameLength();
+        });
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        bridge.start();
+        try (Socket client = connect(tcpPort, end)) {
+            client.setSoTimeout(READ_TIMEOUT_MILLIS);
+            InputStream in = client.getInputStream();
+            byte[] buffer = new byte[4096];
+            while (System.nanoTime() < end) {
+                int length;
+                try {
+                    length = in.read(buffer);
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+                if (length < 0)
+                    break;
+                parser.parse(buffer, 0, length);
+            }
+        } finally {
+            bridge.stop();
+        }
+        long firstHeartbeat = firstHeartbeatNanos[0];
+        return new Result(link,
+                firstHeartbeat == 0 ? -1 : TimeUnit.NANOSECONDS.toMicros(firstHeartbeat - start),
+                frames[0], bytes[0], parser.getCrcErrorCount(),
+                firstHeartbeat == 0 ? 0 : end - firstHeartbeat);
+    }
+
+    private static Socket connect(int port, long deadlineNanos) throws IOException, InterruptedException {
+        while (true) {
+            try {
+                return new Socket("127.0.0.1", port);
+            } catch (IOException e) {
+                if (System.nanoTime() > deadlineNanos)
+                    throw e;
+                Thread.sleep(1);
+            }
+        }
+    }
+}
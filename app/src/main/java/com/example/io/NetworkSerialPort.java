@@ -0,0 +1,158 @@
+package com.example.io;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+import com.hoho.android.usbserial.driver.UsbSerialDriver;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+
+import java.io.IOException;
+import java.util.EnumSet;
+
+/**
+ * Base of the serial ports without a USB radio behind them: MAVLink over the network, e.g. from
+ * a WiFi or ESP8266 telemetry bridge, or played back from a file by
+ * {@link com.example.tlog.TlogReplayPort}.
+ *
+ * Handed to {@link com.example.bridge.SerialTcpBridge} through a
+ * {@link com.example.bridge.SerialTcpBridge.SerialPortOpener}, such a port goes through the
+ * same framing, stats, watchdog and forwarding as a USB port; see {@link InputLinks}. The
+ * port is open from construction, there are no serial parameters or control lines: lines
+ * read as off, and setting them, purging and breaks do nothing.
+ */
+public abstract class NetworkSerialPort implements UsbSerialPort {
+
+    private final String mAddress;
+    protected volatile boolean mOpen = true;
+    protected volatile long mReadBytes;
+    protected volatile long mWrittenBytes;
+
+    protected NetworkSerialPort(String address) {
+        mAddress = address;
+    }
+
+    /**
+     * @return the address the port was created for, e.g. udp://:14550
+     */
+    public String getAddress() {
+        return mAddress;
+    }
+
+    public long getReadBytes() {
+        return mReadBytes;
+    }
+
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    @Override
+    public void open(UsbDeviceConnection connection) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        mOpen = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public void setParameters(int baudRate, int dataBits, int stopBits, int parity) {
+    }
+
+    @Override
+    public UsbSerialDriver getDriver() {
+        return null;
+    }
+
+    @Override
+    public UsbDevice getDevice() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Override
+    public UsbEndpoint getWriteEndpoint() {
+        return null;
+    }
+
+    @Override
+    public UsbEndpoint getReadEndpoint() {
+        return null;
+    }
+
+    @Override
+    public String getSerial() {
+        return mAddress;
+    }
+
+    @Override
+    public boolean getCD() {
+        return false;
+    }
+
+    @Override
+    public boolean getCTS() {
+        return false;
+    }
+
+    @Override
+    public boolean getDSR() {
+        return false;
+    }
+
+    @Override
+    public boolean getDTR() {
+        return false;
+    }
+
+    @Override
+    public void setDTR(boolean value) {
+    }
+
+    @Override
+    public boolean getRI() {
+        return false;
+    }
+
+    @Override
+    public boolean getRTS() {
+        return false;
+    }
+
+    @Override
+    public void setRTS(boolean value) {
+    }
+
+    @Override
+    public EnumSet<ControlLine> getControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public EnumSet<ControlLine> getSupportedControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public void purgeHwBuffers(boolean purgeWriteBuffers, boolean purgeReadBuffers) {
+    }
+
+    @Override
+    public void setBreak(boolean value) {
+    }
+
+    @Override
+    public String toString() {
+        return mAddress;
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * MAVLink over a TCP connection to a telemetry bridge, e.g. mavesp8266 or a companion
+ * computer's mavlink-router on port 5760.
+ *
+ * The connection is made when the port is created. When the other side closes it, reads
+ * fail, so the bridge's watchdog rebuilds the link and connects again.
+ */
+public class TcpClientSerialPort extends NetworkSerialPort {
+
+    private final Socket mSocket;
+    private final InputStream mInputStream;
+    private final OutputStream mOutputStream;
+    private int mSoTimeout = -1; // Reader thread only
+
+    public TcpClientSerialPort(InetSocketAddress remote, int connectTimeoutMillis) throws IOException {
+        super("tcp://" + remote.getHostString() + ":" + remote.getPort());
+        mSocket = new Socket();
+        try {
+            mSocket.connect(remote, connectTimeoutMillis);
+            // frames are written whole, waiting for more only adds latency
+            mSocket.setTcpNoDelay(true);
+            mInputStream = mSocket.getInputStream();
+            mOutputStream = mSocket.getOutputStream();
+        } catch (IOException e) {
+            mSocket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] dest, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        if (timeout != mSoTimeout) {
+            mSocket.setSoTimeout(timeout);
+            mSoTimeout = timeout;
+        }
+        int length;
+        try {
+            length = mInputStream.read(dest);
+        } catch (SocketTimeoutException e) {
+            return 0;
+        }
+        if (length < 0)
+            throw new IOException(getAddress() + " closed by peer");
+        mReadBytes += length;
+        return length;
+    }
+
+    @Override
+    public void write(byte[] src, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        mOutputStream.write(src);
+        mWrittenBytes += src.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        // unblocks a pending read
+        mSocket.close();
+    }
+}
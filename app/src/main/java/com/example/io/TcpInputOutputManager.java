@@ -5,9 +5,13 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.example.utils.LatencyHistogram;
+import com.example.utils.ThreadProfile;
+
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.ByteBuffer;
@@ -23,6 +27,11 @@ public class TcpInputOutputManager implements Runnable {
 
     private ByteBuffer mReadBuffer = ByteBuffer.allocate(BUFFER_SIZE);
     private ByteBuffer mWriteBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private long mWritePendingSinceNanos; // origin of the oldest byte in mWriteBuffer, synchronized by mWriteBufferLock
+    private long mDroppedBytes; // Synchronized by mWriteBufferLock
+    private long mLastReadNanos;
+    private volatile long mLastActivityNanos;
+    private volatile LatencyHistogram mWriteLatency;
 
     public enum State {
         STOPPED,
@@ -31,14 +40,15 @@ public class TcpInputOutputManager implements Runnable {
     }
 
     private final int mServerPort;
-    private ServerSocket mServerSocket;
-    private Socket mSocket;
+    private ServerSocket mServerSocket; // Synchronized by 'this'
+    private Socket mSocket; // Synchronized by 'this'
     private Listener mListener;
     private DataInputStream mInputStream;
     private DataOutputStream mOutputStream;
 
     private State mState = State.STOPPED; // Synchronized by 'this'
-    private int mThreadPriority = Process.THREAD_PRIORITY_URGENT_AUDIO;
+    private ThreadProfile mThreadProfile = new ThreadProfile(null, Process.THREAD_PRIORITY_URGENT_AUDIO);
+    private volatile ThreadProfile.Applied mAppliedProfile;
 
     public interface Listener {
         void onNewData(byte[] data);
@@ -64,9 +74,28 @@ public class TcpInputOutputManager implements Runnable {
     }
 
     public void setThreadPriority(int threadPriority) {
+        setThreadProfile(mThreadProfile.withPriority(threadPriority));
+    }
+
+    /**
+     * Name and priority the run() thread takes on while serving, back to the previous ones afterwards
+     */
+    public void setThreadProfile(ThreadProfile profile) {
         if (mState != State.STOPPED)
-            throw new IllegalStateException("threadPriority only configurable before TcpInputOutputManager is started");
-        mThreadPriority = threadPriority;
+            throw new IllegalStateException("threadProfile only configurable before TcpInputOutputManager is started");
+        mThreadProfile = profile;
+    }
+
+    public ThreadProfile getThreadProfile() {
+        return mThreadProfile;
+    }
+
+    /**
+     * @return the scheduling the thread actually got, null before start
+     */
+    @Nullable
+    public ThreadProfile.Applied getAppliedProfile() {
+        return mAppliedProfile;
     }
 
     public void setReadBufferSize(int bufferSize) {
@@ -97,46 +126,97 @@ public class TcpInputOutputManager implements Runnable {
     }
 
     public void writeAsync(byte[] data) {
+        writeAsync(data, 0, data.length);
+    }
+
+    public void writeAsync(byte[] data, int offset, int length) {
+        writeAsync(data, offset, length, System.nanoTime());
+    }
+
+    /**
+     * @param originNanos {@link System#nanoTime()} at which data entered the phone, used for
+     *                    the write latency histogram
+     */
+    public void writeAsync(byte[] data, int offset, int length, long originNanos) {
         synchronized (mWriteBufferLock) {
-            mWriteBuffer.put(data);
+            if (mWriteBuffer.remaining() < length) {
+                // MavsdkServer is not reading (yet); stale telemetry is worth less than the bridge thread
+                mDroppedBytes += length;
+                return;
+            }
+            if (mWriteBuffer.position() == 0)
+                mWritePendingSinceNanos = originNanos;
+            mWriteBuffer.put(data, offset, length);
         }
     }
 
+    /**
+     * @return bytes discarded by {@link #writeAsync} because the write buffer was full
+     */
+    public long getDroppedBytes() {
+        synchronized (mWriteBufferLock) {
+            return mDroppedBytes;
+        }
+    }
+
+    /**
+     * Histogram receiving, for every socket write, the time the oldest written byte spent queued.
+     */
+    public void setWriteLatencyHistogram(@Nullable LatencyHistogram histogram) {
+        mWriteLatency = histogram;
+    }
+
+    /**
+     * {@link System#nanoTime()} taken when the last socket read returned data.
+     * Meant to be read from {@link Listener#onNewData(byte[])}.
+     */
+    public long getLastReadNanos() {
+        return mLastReadNanos;
+    }
+
+    /**
+     * stop TcpInputOutputManager thread, also interrupting a pending accept()
+     */
     public synchronized void stop() {
         if (getState() == State.RUNNING) {
             Log.i(TAG, "Stop requested");
             mState = State.STOPPING;
-            try {
-                mSocket.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            closeSockets();
         }
     }
 
-    public synchronized State getState() {
-        return mState;
+    public int getServerPort() {
+        return mServerPort;
     }
 
-    @Override
-    public void run() {
-        try {
-            mServerSocket = new ServerSocket(mServerPort);
-            mServerSocket.setReceiveBufferSize(BUFFER_SIZE);
+    /**
+     * @return true once MavsdkServer has connected and until the thread stops
+     */
+    public synchronized boolean isConnected() {
+        return mState == State.RUNNING && mSocket != null;
+    }
 
-            mSocket = mServerSocket.accept();
-            mSocket.setReceiveBufferSize(getReadBufferSize());
-            mSocket.setSendBufferSize(getWriteBufferSize());
+    /**
+     * @return true once the server port is bound, also while a client is connected
+     */
+    public synchronized boolean isListening() {
+        return mState == State.RUNNING && (mSocket != null || (mServerSocket != null && mServerSocket.isBound()));
+    }
 
-            mInputStream = new DataInputStream(mSocket.getInputStream());
-            mOutputStream = new DataOutputStream(mSocket.getOutputStream());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * {@link System#nanoTime()} of the last pass through the service loop, 0 before connecting.
+     * A stale value while connected means the thread is blocked in a write.
+     */
+    public long getLastActivityNanos() {
+        return mLastActivityNanos;
+    }
 
-        if (mThreadPriority != Process.THREAD_PRIORITY_DEFAULT)
-            setThreadPriority(mThreadPriority);
+    public synchronized State getState() {
+        return mState;
+    }
 
+    @Override
+    public void run() {
         synchronized (this) {
             if (getState() != State.STOPPED) {
                 throw new IllegalStateException("Already running");
@@ -144,13 +224,17 @@ public class TcpInputOutputManager implements Runnable {
             mState = State.RUNNING;
         }
 
-        Log.i(TAG, "Running ...");
+        final ThreadProfile.Applied applied = mThreadProfile.apply();
+        mAppliedProfile = applied;
+        Log.i(TAG, "Running ... " + applied);
         try {
+            accept();
             while (true) {
                 if (getState() != State.RUNNING) {
                     Log.i(TAG, "Stopping mState=" + getState());
                     break;
                 }
+                mLastActivityNanos = System.nanoTime();
                 step();
             }
         } catch (Exception e) {
@@ -162,23 +246,64 @@ public class TcpInputOutputManager implements Runnable {
         } finally {
             synchronized (this) {
                 mState = State.STOPPED;
-                try {
-                    mSocket.close();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+                closeSockets();
                 Log.i(TAG, "Stopped");
             }
+            applied.restore();
+        }
+    }
+
+    private void accept() throws IOException {
+        // SO_REUSEADDR lets a restarted manager take the port back while the old
+        // connection is still in TIME_WAIT, so MavsdkServer can keep its address.
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.setReceiveBufferSize(BUFFER_SIZE);
+        synchronized (this) {
+            if (getState() != State.RUNNING) {
+                serverSocket.close();
+                return;
+            }
+            mServerSocket = serverSocket;
+        }
+        serverSocket.bind(new InetSocketAddress(mServerPort));
+
+        Socket socket = serverSocket.accept();
+        socket.setReceiveBufferSize(getReadBufferSize());
+        socket.setSendBufferSize(getWriteBufferSize());
+        mInputStream = new DataInputStream(socket.getInputStream());
+        mOutputStream = new DataOutputStream(socket.getOutputStream());
+
+        synchronized (this) {
+            mSocket = socket;
+            // Only one client, MavsdkServer, is served; free the listening port right away.
+            mServerSocket = null;
+        }
+        serverSocket.close();
+    }
+
+    private void closeSockets() {
+        try {
+            if (mServerSocket != null)
+                mServerSocket.close();
+            if (mSocket != null)
+                mSocket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
         }
+        mServerSocket = null;
+        mSocket = null;
     }
 
     private void step() throws IOException {
         // Handle outgoing data.
         byte[] buffer = null;
         int len;
+        long pendingSinceNanos = 0;
         synchronized (mWriteBufferLock) {
             len = mWriteBuffer.position();
             if (len > 0) {
+                pendingSinceNanos = mWritePendingSinceNanos;
                 buffer = new byte[len];
                 mWriteBuffer.rewind();
                 mWriteBuffer.get(buffer, 0, len);
@@ -190,6 +315,10 @@ public class TcpInputOutputManager implements Runnable {
                 Log.d(TAG, "Writing data len=" + len);
             }
             mOutputStream.write(buffer);
+            final LatencyHistogram writeLatency = mWriteLatency;
+            if (writeLatency != null) {
+                writeLatency.recordNanos(System.nanoTime() - pendingSinceNanos);
+            }
         }
 
         // Handle incoming data.
@@ -202,6 +331,7 @@ public class TcpInputOutputManager implements Runnable {
         }
         len = mInputStream.read(buffer);
         if (len > 0) {
+            mLastReadNanos = System.nanoTime();
             if (DEBUG) Log.d(TAG, "Read data len=" + len);
             final Listener listener = getListener();
             if (listener != null) {
@@ -0,0 +1,120 @@
+package com.example.io;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+
+/**
+ * MAVLink over UDP, the way WiFi telemetry bridges such as mavesp8266 talk.
+ *
+ * Listening, the port takes datagrams from anyone and answers the last sender, so uplink
+ * starts with the vehicle's first datagram and writes before that are dropped. Connected,
+ * it sends to a fixed address and only takes datagrams from that host. Every read returns
+ * one datagram; a datagram longer than the read buffer is cut, so the buffer should hold
+ * the largest one the bridge sends.
+ */
+public class UdpSerialPort extends NetworkSerialPort {
+
+    private final DatagramSocket mSocket;
+    private final boolean mFixedPeer;
+    private final DatagramPacket mReceivePacket = new DatagramPacket(new byte[0], 0); // Reader thread only
+    private int mSoTimeout = -1; // Reader thread only
+
+    private volatile InetSocketAddress mPeer;
+    private volatile long mDroppedWrites;
+    private volatile long mRejectedDatagrams;
+
+    private UdpSerialPort(String address, DatagramSocket socket, InetSocketAddress peer) {
+        super(address);
+        mSocket = socket;
+        mFixedPeer = peer != null;
+        mPeer = peer;
+    }
+
+    /**
+     * Waits for the vehicle on local, e.g. port 14550 on all interfaces.
+     */
+    public static UdpSerialPort listen(InetSocketAddress local) throws IOException {
+        return new UdpSerialPort("udp://" + (local.getAddress().isAnyLocalAddress() ? "" : local.getHostString())
+                + ":" + local.getPort(), new DatagramSocket(local), null);
+    }
+
+    /**
+     * Sends to remote from an ephemeral port, e.g. a bridge that waits for the GCS to speak first.
+     */
+    public static UdpSerialPort connect(InetSocketAddress remote) throws IOException {
+        if (remote.isUnresolved())
+            throw new IOException("unknown host " + remote.getHostString());
+        return new UdpSerialPort("udpout://" + remote.getHostString() + ":" + remote.getPort(),
+                new DatagramSocket(), remote);
+    }
+
+    @Override
+    public int read(byte[] dest, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        if (timeout != mSoTimeout) {
+            mSocket.setSoTimeout(timeout);
+            mSoTimeout = timeout;
+        }
+        mReceivePacket.setData(dest);
+        try {
+            mSocket.receive(mReceivePacket);
+        } catch (SocketTimeoutException e) {
+            return 0;
+        }
+        InetAddress sender = mReceivePacket.getAddress();
+        InetSocketAddress peer = mPeer;
+        if (mFixedPeer) {
+            if (!sender.equals(peer.getAddress())) {
+                mRejectedDatagrams++;
+                return 0;
+            }
+        } else if (peer == null || mReceivePacket.getPort() != peer.getPort() || !sender.equals(peer.getAddress())) {
+            mPeer = new InetSocketAddress(sender, mReceivePacket.getPort());
+        }
+        mReadBytes += mReceivePacket.getLength();
+        return mReceivePacket.getLength();
+    }
+
+    @Override
+    public void write(byte[] src, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        InetSocketAddress peer = mPeer;
+        if (peer == null) {
+            mDroppedWrites++;
+            return;
+        }
+        mSocket.send(new DatagramPacket(src, src.length, peer));
+        mWrittenBytes += src.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        // unblocks a pending receive
+        mSocket.close();
+    }
+
+    public int getLocalPort() {
+        return mSocket.getLocalPort();
+    }
+
+    /**
+     * @return writes dropped because no datagram came in yet to tell where to send
+     */
+    public long getDroppedWrites() {
+        return mDroppedWrites;
+    }
+
+    /**
+     * @return datagrams from another host than the connected one
+     */
+    public long getRejectedDatagrams() {
+        return mRejectedDatagrams;
+    }
+}
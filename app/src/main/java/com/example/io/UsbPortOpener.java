@@ -0,0 +1,165 @@
+package com.example.io;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbManager;
+import android.util.Log;
+
+import com.example.bridge.SerialTcpBridge;
+import com.hoho.android.usbserial.driver.UsbSerialDriver;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+import com.hoho.android.usbserial.driver.UsbSerialProber;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Opens one port of an attached USB serial device. Called by the bridge on start and again
+ * when it rebuilds the serial stage, so the device is probed again each time (it changes
+ * when re-plugged). Identical devices are told apart by their order in the probe.
+ *
+ * The first open detects the baud rate, starting with the one that worked last time for this
+ * device model and port.
+ */
+public class UsbPortOpener implements SerialTcpBridge.SerialPortOpener {
+
+    private static final String TAG = "LOG_" + UsbPortOpener.class.getSimpleName();
+
+    public static final int DEFAULT_BAUD_RATE = 57600;
+    private static final String PREFS_NAME = "drone_repository";
+    private static final String PREF_BAUD_RATE_PREFIX = "baud_rate_";
+
+    private final Context mContext;
+    private final UsbManager mManager;
+    private final String mId;
+    private final int mVendorId;
+    private final int mProductId;
+    private final int mOrdinal;
+    private final int mPortNumber;
+    private volatile UsbDevice mDevice;
+    private volatile BaudRateDetector.Result mBaudRateResult;
+    private volatile int mBaudRate = DEFAULT_BAUD_RATE;
+
+    public UsbPortOpener(Context context, UsbManager manager, UsbDevice device, int ordinal, int portNumber) {
+        mContext = context.getApplicationContext();
+        mManager = manager;
+        mDevice = device;
+        mVendorId = device.getVendorId();
+        mProductId = device.getProductId();
+        mOrdinal = ordinal;
+        mPortNumber = portNumber;
+        mId = String.format(Locale.US, "usb-%04x:%04x-%d.%d", mVendorId, mProductId, ordinal, portNumber);
+    }
+
+    /**
+     * @return an opener for every port of every attached USB serial device, at most max
+     */
+    public static List<UsbPortOpener> probe(Context context, UsbManager manager, int max) {
+        List<UsbPortOpener> openers = new ArrayList<>();
+        Map<String, Integer> ordinals = new HashMap<>();
+        for (UsbSerialDriver driver : UsbSerialProber.getDefaultProber().findAllDrivers(manager)) {
+            UsbDevice device = driver.getDevice();
+            String model = String.format(Locale.US, "%04x:%04x", device.getVendorId(), device.getProductId());
+            Integer ordinal = ordinals.get(model);
+            ordinal = ordinal == null ? 0 : ordinal + 1;
+            ordinals.put(model, ordinal);
+            for (int port = 0; port < driver.getPorts().size(); port++) {
+                openers.add(new UsbPortOpener(context, manager, device, ordinal, port));
+            }
+        }
+        if (openers.size() > max) {
+            Log.w(TAG, openers.size() + " serial ports, bridging the first " + max);
+            return new ArrayList<>(openers.subList(0, max));
+        }
+        return openers;
+    }
+
+    /**
+     * @return e.g. usb-1209:5740-0.0, stable across re-plugging
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * @return the device as last probed
+     */
+    public UsbDevice getDevice() {
+        return mDevice;
+    }
+
+    /**
+     * @return outcome of the baud rate detection, null before the first open
+     */
+    public BaudRateDetector.Result getBaudRateResult() {
+        return mBaudRateResult;
+    }
+
+    @Override
+    public UsbSerialPort open() throws IOException {
+        UsbSerialDriver driver = findDriver();
+        if (driver == null) {
+            throw new IOException("USB device not found");
+        }
+        mDevice = driver.getDevice();
+        if (!mManager.hasPermission(mDevice)) {
+            throw new IOException("No USB permission");
+        }
+        UsbDeviceConnection connection = mManager.openDevice(mDevice);
+        if (connection == null) {
+            throw new IOException("Opening USB device failed");
+        }
+
+        UsbSerialPort usbSerialPort = driver.getPorts().get(mPortNumber);
+        try {
+            usbSerialPort.open(connection);
+            if (mBaudRateResult == null) {
+                detectBaudRate(usbSerialPort);
+            } else {
+                // Reconnecting: skip detection to keep recovery short
+                usbSerialPort.setParameters(
+                        mBaudRate,
+                        UsbSerialPort.DATABITS_8,
+                        UsbSerialPort.STOPBITS_1,
+                        UsbSerialPort.PARITY_NONE);
+            }
+        } catch (IOException e) {
+            usbSerialPort.close();
+            throw e;
+        }
+        return usbSerialPort;
+    }
+
+    private UsbSerialDriver findDriver() {
+        int ordinal = 0;
+        for (UsbSerialDriver driver : UsbSerialProber.getDefaultProber().findAllDrivers(mManager)) {
+            UsbDevice device = driver.getDevice();
+            if (device.getVendorId() != mVendorId || device.getProductId() != mProductId) {
+                continue;
+            }
+            if (ordinal++ == mOrdinal) {
+                return mPortNumber < driver.getPorts().size() ? driver : null;
+            }
+        }
+        return null;
+    }
+
+    private void detectBaudRate(UsbSerialPort usbSerialPort) throws IOException {
+        SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String key = PREF_BAUD_RATE_PREFIX + mVendorId + "_" + mProductId + "_" + usbSerialPort.getPortNumber();
+        int lastBaudRate = prefs.getInt(key, DEFAULT_BAUD_RATE);
+
+        BaudRateDetector.Result result = new BaudRateDetector(usbSerialPort).detect(lastBaudRate);
+        mBaudRate = result.isDetected() ? result.getBaudRate() : lastBaudRate;
+        mBaudRateResult = result;
+        if (result.isDetected()) {
+            prefs.edit().putInt(key, mBaudRate).apply();
+        }
+    }
+}
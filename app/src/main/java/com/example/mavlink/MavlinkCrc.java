@@ -0,0 +1,104 @@
+package com.example.mavlink;
+
+import java.util.Arrays;
+
+/**
+ * X.25 checksum used by MAVLink frames, plus the per-message CRC_EXTRA seeds.
+ *
+ * Only the messages a PX4/ArduPilot vehicle streams to a GCS are listed. Frames whose
+ * message id is unknown here are still framed, but their checksum cannot be verified.
+ */
+public final class MavlinkCrc {
+
+    public static final int CRC_INIT = 0xFFFF;
+    public static final int CRC_EXTRA_UNKNOWN = -1;
+
+    private static final int[] CRC_EXTRA = new int[256];
+
+    static {
+        Arrays.fill(CRC_EXTRA, CRC_EXTRA_UNKNOWN);
+        CRC_EXTRA[0] = 50;      // HEARTBEAT
+        CRC_EXTRA[1] = 124;     // SYS_STATUS
+        CRC_EXTRA[2] = 137;     // SYSTEM_TIME
+        CRC_EXTRA[4] = 237;     // PING
+        CRC_EXTRA[11] = 89;     // SET_MODE
+        CRC_EXTRA[20] = 214;    // PARAM_REQUEST_READ
+        CRC_EXTRA[21] = 159;    // PARAM_REQUEST_LIST
+        CRC_EXTRA[22] = 220;    // PARAM_VALUE
+        CRC_EXTRA[23] = 168;    // PARAM_SET
+        CRC_EXTRA[24] = 24;     // GPS_RAW_INT
+        CRC_EXTRA[25] = 23;     // GPS_STATUS
+        CRC_EXTRA[26] = 170;    // SCALED_IMU
+        CRC_EXTRA[27] = 144;    // RAW_IMU
+        CRC_EXTRA[29] = 115;    // SCALED_PRESSURE
+        CRC_EXTRA[30] = 39;     // ATTITUDE
+        CRC_EXTRA[31] = 246;    // ATTITUDE_QUATERNION
+        CRC_EXTRA[32] = 185;    // LOCAL_POSITION_NED
+        CRC_EXTRA[33] = 104;    // GLOBAL_POSITION_INT
+        CRC_EXTRA[35] = 244;    // RC_CHANNELS_RAW
+        CRC_EXTRA[36] = 222;    // SERVO_OUTPUT_RAW
+        CRC_EXTRA[39] = 254;    // MISSION_ITEM
+        CRC_EXTRA[40] = 230;    // MISSION_REQUEST
+        CRC_EXTRA[41] = 28;     // MISSION_SET_CURRENT
+        CRC_EXTRA[42] = 28;     // MISSION_CURRENT
+        CRC_EXTRA[43] = 132;    // MISSION_REQUEST_LIST
+        CRC_EXTRA[44] = 221;    // MISSION_COUNT
+        CRC_EXTRA[45] = 232;    // MISSION_CLEAR_ALL
+        CRC_EXTRA[46] = 11;     // MISSION_ITEM_REACHED
+        CRC_EXTRA[47] = 153;    // MISSION_ACK
+        CRC_EXTRA[49] = 39;     // GPS_GLOBAL_ORIGIN
+        CRC_EXTRA[51] = 196;    // MISSION_REQUEST_INT
+        CRC_EXTRA[62] = 183;    // NAV_CONTROLLER_OUTPUT
+        CRC_EXTRA[65] = 118;    // RC_CHANNELS
+        CRC_EXTRA[66] = 148;    // REQUEST_DATA_STREAM
+        CRC_EXTRA[69] = 243;    // MANUAL_CONTROL
+        CRC_EXTRA[70] = 124;    // RC_CHANNELS_OVERRIDE
+        CRC_EXTRA[73] = 38;     // MISSION_ITEM_INT
+        CRC_EXTRA[74] = 20;     // VFR_HUD
+        CRC_EXTRA[75] = 158;    // COMMAND_INT
+        CRC_EXTRA[76] = 152;    // COMMAND_LONG
+        CRC_EXTRA[77] = 143;    // COMMAND_ACK
+        CRC_EXTRA[84] = 143;    // SET_POSITION_TARGET_LOCAL_NED
+        CRC_EXTRA[86] = 5;      // SET_POSITION_TARGET_GLOBAL_INT
+        CRC_EXTRA[105] = 93;    // HIGHRES_IMU
+        CRC_EXTRA[109] = 185;   // RADIO_STATUS
+        CRC_EXTRA[111] = 34;    // TIMESYNC
+        CRC_EXTRA[125] = 203;   // POWER_STATUS
+        CRC_EXTRA[141] = 47;    // ALTITUDE
+        CRC_EXTRA[147] = 154;   // BATTERY_STATUS
+        CRC_EXTRA[148] = 178;   // AUTOPILOT_VERSION
+        CRC_EXTRA[230] = 163;   // ESTIMATOR_STATUS
+        CRC_EXTRA[233] = 35;    // GPS_RTCM_DATA
+        CRC_EXTRA[241] = 90;    // VIBRATION
+        CRC_EXTRA[242] = 104;   // HOME_POSITION
+        CRC_EXTRA[244] = 95;    // MESSAGE_INTERVAL
+        CRC_EXTRA[245] = 130;   // EXTENDED_SYS_STATE
+        CRC_EXTRA[253] = 83;    // STATUSTEXT
+    }
+
+    private MavlinkCrc() {
+    }
+
+    public static int accumulate(int b, int crc) {
+        int tmp = (b ^ crc) & 0xFF;
+        tmp = (tmp ^ (tmp << 4)) & 0xFF;
+        return ((crc >> 8) ^ (tmp << 8) ^ (tmp << 3) ^ (tmp >> 4)) & 0xFFFF;
+    }
+
+    public static int accumulate(byte[] buffer, int offset, int length, int crc) {
+        for (int i = offset; i < offset + length; i++) {
+            crc = accumulate(buffer[i], crc);
+        }
+        return crc;
+    }
+
+    /**
+     * @return the CRC_EXTRA seed for msgId, or {@link #CRC_EXTRA_UNKNOWN}
+     */
+    public static int crcExtra(int msgId) {
+        if (msgId < 0 || msgId >= CRC_EXTRA.length) {
+            return CRC_EXTRA_UNKNOWN;
+        }
+        return CRC_EXTRA[msgId];
+    }
+}
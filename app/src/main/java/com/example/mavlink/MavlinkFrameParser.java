@@ -0,0 +1,274 @@
+package com.example.mavlink;
+
+/**
+ * Incremental MAVLink v1/v2 framer.
+ *
+ * Bytes are fed in whatever chunks the link delivers; every complete frame is handed to the
+ * {@link Listener} in place. The parser itself acts as the view of the current frame, so the
+ * accessors are only valid inside {@link Listener#onFrame(MavlinkFrameParser)}.
+ *
+ * A frame whose message id has no known CRC_EXTRA can't be checked, and a stray magic byte
+ * could claim up to {@link #MAX_FRAME_LENGTH} bytes that way. Such a frame is held until it is
+ * clear whether a checked frame starts inside it; if one does, the parser resyncs there,
+ * otherwise the frame is passed on and counted in {@link #getUncheckedFrameCount()}.
+ */
+public final class MavlinkFrameParser {
+
+    public static final int MAGIC_V1 = 0xFE;
+    public static final int MAGIC_V2 = 0xFD;
+    public static final int MAX_FRAME_LENGTH = 280;
+
+    private static final int HEADER_LENGTH_V1 = 6;
+    private static final int HEADER_LENGTH_V2 = 10;
+    private static final int CHECKSUM_LENGTH = 2;
+    private static final int SIGNATURE_LENGTH = 13;
+    private static final int INCOMPAT_FLAG_SIGNED = 0x01;
+
+    public interface Listener {
+        /**
+         * Called for every complete frame. The frame buffer is reused once this returns.
+         */
+        void onFrame(MavlinkFrameParser frame);
+    }
+
+    // room for a whole frame that starts inside an unchecked one
+    private final byte[] mFrame = new byte[2 * MAX_FRAME_LENGTH];
+    private int mLength;
+    private int mFrameLength;
+    private boolean mCrcChecked;
+
+    private long mFrameCount;
+    private long mCrcErrorCount;
+    private long mUncheckedFrameCount;
+    private long mDiscardedBytes;
+
+    private Listener mListener;
+
+    public MavlinkFrameParser() {
+    }
+
+    public MavlinkFrameParser(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void parse(byte[] data) {
+        parse(data, 0, data.length);
+    }
+
+    public void parse(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            if (mLength == 0 && !isMagic(data[i])) {
+                mDiscardedBytes++;
+                continue;
+            }
+            mFrame[mLength++] = data[i];
+            process();
+        }
+    }
+
+    /**
+     * Drops any partially received frame.
+     */
+    public void reset() {
+        mLength = 0;
+    }
+
+    private void process() {
+        while (mLength > 0) {
+            if (!isMagic(mFrame[0])) {
+                int next = 1;
+                while (next < mLength && !isMagic(mFrame[next])) {
+                    next++;
+                }
+                mDiscardedBytes += next;
+                consume(next);
+                continue;
+            }
+            if (mLength < 3) {
+                return;
+            }
+            int expected = expectedLength();
+            if (mLength < expected) {
+                return;
+            }
+            mFrameLength = expected;
+            if (checkCrc()) {
+                if (!mCrcChecked) {
+                    int resync = findCheckedFrame(expected);
+                    if (resync < 0) {
+                        return;
+                    }
+                    if (resync > 0) {
+                        // The unchecked start was a stray magic byte in front of real frames
+                        mDiscardedBytes += resync;
+                        consume(resync);
+                        continue;
+                    }
+                    mUncheckedFrameCount++;
+                }
+                mFrameCount++;
+                final Listener listener = mListener;
+                if (listener != null) {
+                    listener.onFrame(this);
+                }
+                consume(expected);
+            } else {
+                // Not a frame after all; rescan from the byte after this false start.
+                mCrcErrorCount++;
+                mDiscardedBytes++;
+                consume(1);
+            }
+        }
+    }
+
+    private int expectedLength() {
+        return expectedLength(0);
+    }
+
+    private int expectedLength(int start) {
+        int payloadLength = mFrame[start + 1] & 0xFF;
+        if (!isV2(start)) {
+            return HEADER_LENGTH_V1 + payloadLength + CHECKSUM_LENGTH;
+        }
+        int signature = (mFrame[start + 2] & INCOMPAT_FLAG_SIGNED) != 0 ? SIGNATURE_LENGTH : 0;
+        return HEADER_LENGTH_V2 + payloadLength + CHECKSUM_LENGTH + signature;
+    }
+
+    private boolean checkCrc() {
+        int crcExtra = MavlinkCrc.crcExtra(msgId());
+        if (crcExtra == MavlinkCrc.CRC_EXTRA_UNKNOWN) {
+            mCrcChecked = false;
+            return true;
+        }
+        mCrcChecked = true;
+        return crcMatches(0, crcExtra);
+    }
+
+    private boolean crcMatches(int start, int crcExtra) {
+        int end = start + headerLength(start) + (mFrame[start + 1] & 0xFF);
+        int crc = MavlinkCrc.accumulate(mFrame, start + 1, end - start - 1, MavlinkCrc.CRC_INIT);
+        crc = MavlinkCrc.accumulate(crcExtra, crc);
+        int received = (mFrame[end] & 0xFF) | ((mFrame[end + 1] & 0xFF) << 8);
+        return crc == received;
+    }
+
+    /**
+     * Looks for a frame with a valid checksum that starts inside the unchecked frame at 0.
+     *
+     * @return its offset, 0 if there is none, -1 if more bytes are needed to tell
+     */
+    private int findCheckedFrame(int end) {
+        for (int start = 1; start < end; start++) {
+            if (!isMagic(mFrame[start])) {
+                continue;
+            }
+            if (mLength < start + headerLength(start)) {
+                return -1;
+            }
+            int crcExtra = MavlinkCrc.crcExtra(msgId(start));
+            if (crcExtra == MavlinkCrc.CRC_EXTRA_UNKNOWN) {
+                continue;
+            }
+            if (mLength < start + expectedLength(start)) {
+                return -1;
+            }
+            if (crcMatches(start, crcExtra)) {
+                return start;
+            }
+        }
+        return 0;
+    }
+
+    private void consume(int count) {
+        mLength -= count;
+        if (mLength > 0) {
+            System.arraycopy(mFrame, count, mFrame, 0, mLength);
+        }
+    }
+
+    private static boolean isMagic(byte b) {
+        int value = b & 0xFF;
+        return value == MAGIC_V1 || value == MAGIC_V2;
+    }
+
+    public byte[] buffer() {
+        return mFrame;
+    }
+
+    public int frameLength() {
+        return mFrameLength;
+    }
+
+    public boolean isV2() {
+        return isV2(0);
+    }
+
+    private boolean isV2(int start) {
+        return (mFrame[start] & 0xFF) == MAGIC_V2;
+    }
+
+    private int headerLength(int start) {
+        return isV2(start) ? HEADER_LENGTH_V2 : HEADER_LENGTH_V1;
+    }
+
+    /**
+     * @return true when the checksum was verified, false when the message id has no known CRC_EXTRA
+     */
+    public boolean isCrcChecked() {
+        return mCrcChecked;
+    }
+
+    public int payloadOffset() {
+        return isV2() ? HEADER_LENGTH_V2 : HEADER_LENGTH_V1;
+    }
+
+    public int payloadLength() {
+        return mFrame[1] & 0xFF;
+    }
+
+    public int seq() {
+        return mFrame[isV2() ? 4 : 2] & 0xFF;
+    }
+
+    public int sysId() {
+        return mFrame[isV2() ? 5 : 3] & 0xFF;
+    }
+
+    public int compId() {
+        return mFrame[isV2() ? 6 : 4] & 0xFF;
+    }
+
+    public int msgId() {
+        return msgId(0);
+    }
+
+    private int msgId(int start) {
+        if (!isV2(start)) {
+            return mFrame[start + 5] & 0xFF;
+        }
+        return (mFrame[start + 7] & 0xFF) | ((mFrame[start + 8] & 0xFF) << 8) | ((mFrame[start + 9] & 0xFF) << 16);
+    }
+
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    public long getCrcErrorCount() {
+        return mCrcErrorCount;
+    }
+
+    /**
+     * @return frames passed on without a checksum check, their message id having no known CRC_EXTRA
+     */
+    public long getUncheckedFrameCount() {
+        return mUncheckedFrameCount;
+    }
+
+    public long getDiscardedBytes() {
+        return mDiscardedBytes;
+    }
+}
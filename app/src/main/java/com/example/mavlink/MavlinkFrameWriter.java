@@ -0,0 +1,119 @@
+package com.example.mavlink;
+
+/**
+ * Builds MAVLink v2 frames the bridge sends on its own behalf, into one reused buffer.
+ *
+ * Call {@link #begin(int)}, put the payload fields at their wire offsets, then {@link #finish()}.
+ * Trailing zero bytes of the payload are truncated as MAVLink 2 allows, which keeps the frames
+ * short on a slow radio link. Not thread safe.
+ */
+public final class MavlinkFrameWriter {
+
+    private static final int HEADER_LENGTH = 10;
+    private static final int CHECKSUM_LENGTH = 2;
+    private static final int MAX_PAYLOAD_LENGTH = 255;
+
+    private final byte[] mFrame = new byte[MavlinkFrameParser.MAX_FRAME_LENGTH];
+    private final int mSysId;
+    private final int mCompId;
+    private int mSeq;
+    private int mMsgId;
+    private int mPayloadLength;
+    private int mFrameLength;
+
+    public MavlinkFrameWriter(int sysId, int compId) {
+        mSysId = sysId;
+        mCompId = compId;
+    }
+
+    /**
+     * Starts a frame with an all-zero payload.
+     */
+    public MavlinkFrameWriter begin(int msgId) {
+        if (MavlinkCrc.crcExtra(msgId) == MavlinkCrc.CRC_EXTRA_UNKNOWN) {
+            throw new IllegalArgumentException("no CRC_EXTRA for message " + msgId);
+        }
+        mMsgId = msgId;
+        mPayloadLength = 0;
+        mFrameLength = 0;
+        for (int i = HEADER_LENGTH; i < HEADER_LENGTH + MAX_PAYLOAD_LENGTH; i++) {
+            mFrame[i] = 0;
+        }
+        return this;
+    }
+
+    public MavlinkFrameWriter putUint8(int index, int value) {
+        mFrame[HEADER_LENGTH + index] = (byte) value;
+        mPayloadLength = Math.max(mPayloadLength, index + 1);
+        return this;
+    }
+
+    public MavlinkFrameWriter putUint16(int index, int value) {
+        putUint8(index, value);
+        return putUint8(index + 1, value >> 8);
+    }
+
+    public MavlinkFrameWriter putInt32(int index, int value) {
+        putUint16(index, value);
+        return putUint16(index + 2, value >> 16);
+    }
+
+    public MavlinkFrameWriter putInt64(int index, long value) {
+        putInt32(index, (int) value);
+        return putInt32(index + 4, (int) (value >> 32));
+    }
+
+    public MavlinkFrameWriter putFloat(int index, float value) {
+        return putInt32(index, Float.floatToIntBits(value));
+    }
+
+    /**
+     * Copies length bytes of src into an array field starting at index.
+     */
+    public MavlinkFrameWriter putBytes(int index, byte[] src, int offset, int length) {
+        System.arraycopy(src, offset, mFrame, HEADER_LENGTH + index, length);
+        mPayloadLength = Math.max(mPayloadLength, index + length);
+        return this;
+    }
+
+    /**
+     * Completes the header and checksum.
+     *
+     * @return the frame length, the frame starts at offset 0 of {@link #buffer()}
+     */
+    public int finish() {
+        int payloadLength = mPayloadLength;
+        // MAVLink 2 payloads keep at least one byte
+        while (payloadLength > 1 && mFrame[HEADER_LENGTH + payloadLength - 1] == 0) {
+            payloadLength--;
+        }
+        payloadLength = Math.max(payloadLength, 1);
+        mFrame[0] = (byte) MavlinkFrameParser.MAGIC_V2;
+        mFrame[1] = (byte) payloadLength;
+        mFrame[2] = 0;
+        mFrame[3] = 0;
+        mFrame[4] = (byte) mSeq;
+        mFrame[5] = (byte) mSysId;
+        mFrame[6] = (byte) mCompId;
+        mFrame[7] = (byte) mMsgId;
+        mFrame[8] = (byte) (mMsgId >> 8);
+        mFrame[9] = (byte) (mMsgId >> 16);
+        mSeq = (mSeq + 1) & 0xFF;
+
+        int end = HEADER_LENGTH + payloadLength;
+        int crc = MavlinkCrc.accumulate(mFrame, 1, end - 1, MavlinkCrc.CRC_INIT);
+        crc = MavlinkCrc.accumulate(MavlinkCrc.crcExtra(mMsgId), crc);
+        mFrame[end] = (byte) crc;
+        mFrame[end + 1] = (byte) (crc >> 8);
+        mFrameLength = end + CHECKSUM_LENGTH;
+        return mFrameLength;
+    }
+
+    public byte[] buffer() {
+        return mFrame;
+    }
+
+    public int frameLength() {
+        return mFrameLength;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.mavlink;
+
+import java.util.Arrays;
+
+/**
+ * Payload offsets of target_system and target_component, for routing frames without decoding
+ * them.
+ *
+ * Only the messages a GCS sends to a vehicle are listed. Other messages have no target and
+ * are meant for everyone. A target field cut off by MAVLink 2 payload truncation was zero,
+ * which is the broadcast id anyway.
+ */
+public final class MavlinkTargets {
+
+    public static final int NONE = -1;
+    public static final int BROADCAST = 0;
+
+    private static final int HEADER_LENGTH_V1 = 6;
+    private static final int HEADER_LENGTH_V2 = 10;
+
+    private static final int[] TARGET_SYSTEM = new int[256];
+    private static final int[] TARGET_COMPONENT = new int[256];
+
+    static {
+        Arrays.fill(TARGET_SYSTEM, NONE);
+        Arrays.fill(TARGET_COMPONENT, NONE);
+        put(4, 12, 13);     // PING
+        put(11, 4, NONE);   // SET_MODE
+        put(20, 2, 3);      // PARAM_REQUEST_READ
+        put(21, 0, 1);      // PARAM_REQUEST_LIST
+        put(23, 4, 5);      // PARAM_SET
+        put(39, 32, 33);    // MISSION_ITEM
+        put(40, 2, 3);      // MISSION_REQUEST
+        put(41, 2, 3);      // MISSION_SET_CURRENT
+        put(43, 0, 1);      // MISSION_REQUEST_LIST
+        put(44, 2, 3);      // MISSION_COUNT
+        put(45, 0, 1);      // MISSION_CLEAR_ALL
+        put(47, 0, 1);      // MISSION_ACK
+        put(51, 2, 3);      // MISSION_REQUEST_INT
+        put(66, 2, 3);      // REQUEST_DATA_STREAM
+        put(69, 10, NONE);  // MANUAL_CONTROL
+        put(70, 16, 17);    // RC_CHANNELS_OVERRIDE
+        put(73, 32, 33);    // MISSION_ITEM_INT
+        put(75, 30, 31);    // COMMAND_INT
+        put(76, 30, 31);    // COMMAND_LONG
+        put(77, 8, 9);      // COMMAND_ACK, extension fields
+        put(84, 50, 51);    // SET_POSITION_TARGET_LOCAL_NED
+        put(86, 50, 51);    // SET_POSITION_TARGET_GLOBAL_INT
+        put(111, 16, 17);   // TIMESYNC, extension fields
+    }
+
+    private static void put(int msgId, int targetSystem, int targetComponent) {
+        TARGET_SYSTEM[msgId] = targetSystem;
+        TARGET_COMPONENT[msgId] = targetComponent;
+    }
+
+    private MavlinkTargets() {
+    }
+
+    /**
+     * @param frame  buffer holding a complete, valid frame at offset
+     * @return the target system, {@link #BROADCAST} for all, {@link #NONE} if the message has no target
+     */
+    public static int targetSystem(byte[] frame, int offset) {
+        return field(frame, offset, TARGET_SYSTEM);
+    }
+
+    /**
+     * @return the target component, {@link #BROADCAST} for all, {@link #NONE} if the message has none
+     */
+    public static int targetComponent(byte[] frame, int offset) {
+        return field(frame, offset, TARGET_COMPONENT);
+    }
+
+    private static int field(byte[] frame, int offset, int[] offsets) {
+        boolean v2 = (frame[offset] & 0xFF) == MavlinkFrameParser.MAGIC_V2;
+        int msgId;
+        if (v2) {
+            if ((frame[offset + 8] | frame[offset + 9]) != 0)
+                return NONE;
+            msgId = frame[offset + 7] & 0xFF;
+        } else {
+            msgId = frame[offset + 5] & 0xFF;
+        }
+        int fieldOffset = offsets[msgId];
+        if (fieldOffset == NONE)
+            return NONE;
+        int payloadLength = frame[offset + 1] & 0xFF;
+        if (fieldOffset >= payloadLength)
+            return BROADCAST;
+        return frame[offset + (v2 ? HEADER_LENGTH_V2 : HEADER_LENGTH_V1) + fieldOffset] & 0xFF;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.mavlink.message;
+
+/**
+ * ATTITUDE (#30), angles in rad, rates in rad/s
+ */
+public final class Attitude extends MessageFlyweight {
+
+    public static final int MSG_ID = 30;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public long timeBootMs() {
+        return uint32(0);
+    }
+
+    public float roll() {
+        return float32(4);
+    }
+
+    public float pitch() {
+        return float32(8);
+    }
+
+    public float yaw() {
+        return float32(12);
+    }
+
+    public float rollSpeed() {
+        return float32(16);
+    }
+
+    public float pitchSpeed() {
+        return float32(20);
+    }
+
+    public float yawSpeed() {
+        return float32(24);
+    }
+}
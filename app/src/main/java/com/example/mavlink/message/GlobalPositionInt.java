@@ -0,0 +1,70 @@
+package com.example.mavlink.message;
+
+/**
+ * GLOBAL_POSITION_INT (#33)
+ */
+public final class GlobalPositionInt extends MessageFlyweight {
+
+    public static final int MSG_ID = 33;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public long timeBootMs() {
+        return uint32(0);
+    }
+
+    public int latE7() {
+        return int32(4);
+    }
+
+    public int lonE7() {
+        return int32(8);
+    }
+
+    /**
+     * @return MSL altitude in mm
+     */
+    public int altMm() {
+        return int32(12);
+    }
+
+    /**
+     * @return altitude above home in mm
+     */
+    public int relativeAltMm() {
+        return int32(16);
+    }
+
+    /**
+     * @return velocity north in cm/s
+     */
+    public int vx() {
+        return int16(20);
+    }
+
+    public int vy() {
+        return int16(22);
+    }
+
+    public int vz() {
+        return int16(24);
+    }
+
+    /**
+     * @return heading in cdeg, 65535 if unknown
+     */
+    public int hdg() {
+        return uint16(26);
+    }
+
+    public double latitudeDeg() {
+        return latE7() * 1e-7;
+    }
+
+    public double longitudeDeg() {
+        return lonE7() * 1e-7;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.mavlink.message;
+
+/**
+ * GPS_RAW_INT (#24)
+ */
+public final class GpsRawInt extends MessageFlyweight {
+
+    public static final int MSG_ID = 24;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public long timeUsec() {
+        return int64(0);
+    }
+
+    public int latE7() {
+        return int32(8);
+    }
+
+    public int lonE7() {
+        return int32(12);
+    }
+
+    /**
+     * @return MSL altitude in mm
+     */
+    public int altMm() {
+        return int32(16);
+    }
+
+    public int eph() {
+        return uint16(20);
+    }
+
+    public int epv() {
+        return uint16(22);
+    }
+
+    /**
+     * @return ground speed in cm/s
+     */
+    public int vel() {
+        return uint16(24);
+    }
+
+    /**
+     * @return course over ground in cdeg
+     */
+    public int cog() {
+        return uint16(26);
+    }
+
+    public int fixType() {
+        return uint8(28);
+    }
+
+    public int satellitesVisible() {
+        return uint8(29);
+    }
+}
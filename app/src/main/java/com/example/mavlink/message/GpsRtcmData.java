@@ -0,0 +1,44 @@
+package com.example.mavlink.message;
+
+/**
+ * GPS_RTCM_DATA (#233)
+ */
+public final class GpsRtcmData extends MessageFlyweight {
+
+    public static final int MSG_ID = 233;
+    public static final int MAX_DATA_LENGTH = 180;
+    public static final int MAX_FRAGMENTS = 4;
+    public static final int FLAG_FRAGMENTED = 0x01;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    /**
+     * @return bit 0 fragmented, bits 1-2 fragment id, bits 3-7 sequence id
+     */
+    public int flags() {
+        return uint8(0);
+    }
+
+    public int len() {
+        return uint8(1);
+    }
+
+    public boolean isFragmented() {
+        return (flags() & FLAG_FRAGMENTED) != 0;
+    }
+
+    public int fragmentId() {
+        return (flags() >> 1) & 0x03;
+    }
+
+    public int sequenceId() {
+        return (flags() >> 3) & 0x1F;
+    }
+
+    public int data(int index) {
+        return uint8(2 + index);
+    }
+}
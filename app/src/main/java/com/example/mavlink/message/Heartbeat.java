@@ -0,0 +1,43 @@
+package com.example.mavlink.message;
+
+/**
+ * HEARTBEAT (#0)
+ */
+public final class Heartbeat extends MessageFlyweight {
+
+    public static final int MSG_ID = 0;
+    public static final int MAV_MODE_FLAG_SAFETY_ARMED = 0x80;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public long customMode() {
+        return uint32(0);
+    }
+
+    public int type() {
+        return uint8(4);
+    }
+
+    public int autopilot() {
+        return uint8(5);
+    }
+
+    public int baseMode() {
+        return uint8(6);
+    }
+
+    public int systemStatus() {
+        return uint8(7);
+    }
+
+    public int mavlinkVersion() {
+        return uint8(8);
+    }
+
+    public boolean isArmed() {
+        return (baseMode() & MAV_MODE_FLAG_SAFETY_ARMED) != 0;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.mavlink.message;
+
+import com.example.mavlink.MavlinkFrameParser;
+
+/**
+ * Reads the fields of one message type in place, straight from a frame buffer.
+ *
+ * A flyweight is wrapped around a frame and reused for the next one, so decoding allocates
+ * nothing. Fields are little-endian at their wire offsets; fields beyond the received payload
+ * length were truncated by MAVLink 2 and read as zero. The view is only valid as long as the
+ * wrapped buffer is, e.g. inside {@link MavlinkFrameParser.Listener#onFrame(MavlinkFrameParser)}.
+ */
+public abstract class MessageFlyweight {
+
+    private byte[] mBuffer;
+    private int mOffset;
+    private int mLength;
+
+    /**
+     * @return the MAVLink message id this flyweight decodes
+     */
+    public abstract int getMsgId();
+
+    /**
+     * @return false, leaving the flyweight unchanged, if the frame carries another message
+     */
+    public boolean wrap(MavlinkFrameParser frame) {
+        if (frame.msgId() != getMsgId()) {
+            return false;
+        }
+        wrap(frame.buffer(), frame.payloadOffset(), frame.payloadLength());
+        return true;
+    }
+
+    public void wrap(byte[] buffer, int payloadOffset, int payloadLength) {
+        mBuffer = buffer;
+        mOffset = payloadOffset;
+        mLength = payloadLength;
+    }
+
+    protected final int uint8(int index) {
+        return index < mLength ? mBuffer[mOffset + index] & 0xFF : 0;
+    }
+
+    protected final int int8(int index) {
+        return index < mLength ? mBuffer[mOffset + index] : 0;
+    }
+
+    protected final int uint16(int index) {
+        return uint8(index) | (uint8(index + 1) << 8);
+    }
+
+    protected final int int16(int index) {
+        return (short) uint16(index);
+    }
+
+    protected final int int32(int index) {
+        return uint16(index) | (uint16(index + 2) << 16);
+    }
+
+    protected final long uint32(int index) {
+        return int32(index) & 0xFFFFFFFFL;
+    }
+
+    protected final long int64(int index) {
+        return uint32(index) | ((long) int32(index + 4) << 32);
+    }
+
+    protected final float float32(int index) {
+        return Float.intBitsToFloat(int32(index));
+    }
+}
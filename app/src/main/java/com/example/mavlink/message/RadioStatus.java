@@ -0,0 +1,47 @@
+package com.example.mavlink.message;
+
+/**
+ * RADIO_STATUS (#109), inserted into the stream by SiK radios
+ */
+public final class RadioStatus extends MessageFlyweight {
+
+    public static final int MSG_ID = 109;
+    // MAV_COMP_ID_TELEMETRY_RADIO, 'D' in SiK's '3'/'D' identity
+    public static final int COMP_ID_TELEMETRY_RADIO = 68;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public int rxErrors() {
+        return uint16(0);
+    }
+
+    public int fixed() {
+        return uint16(2);
+    }
+
+    public int rssi() {
+        return uint8(4);
+    }
+
+    public int remRssi() {
+        return uint8(5);
+    }
+
+    /**
+     * @return free space of the radio's transmit buffer in %
+     */
+    public int txBuf() {
+        return uint8(6);
+    }
+
+    public int noise() {
+        return uint8(7);
+    }
+
+    public int remNoise() {
+        return uint8(8);
+    }
+}
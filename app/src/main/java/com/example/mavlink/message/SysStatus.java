@@ -0,0 +1,62 @@
+package com.example.mavlink.message;
+
+/**
+ * SYS_STATUS (#1)
+ */
+public final class SysStatus extends MessageFlyweight {
+
+    public static final int MSG_ID = 1;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public long sensorsPresent() {
+        return uint32(0);
+    }
+
+    public long sensorsEnabled() {
+        return uint32(4);
+    }
+
+    public long sensorsHealth() {
+        return uint32(8);
+    }
+
+    /**
+     * @return maximum main loop usage in 0.1 %
+     */
+    public int load() {
+        return uint16(12);
+    }
+
+    public int voltageBatteryMv() {
+        return uint16(14);
+    }
+
+    /**
+     * @return battery current in 10 mA, -1 if unknown
+     */
+    public int currentBatteryCa() {
+        return int16(16);
+    }
+
+    /**
+     * @return communication drop rate in 0.01 %
+     */
+    public int dropRateComm() {
+        return uint16(18);
+    }
+
+    public int errorsComm() {
+        return uint16(20);
+    }
+
+    /**
+     * @return remaining battery in %, -1 if unknown
+     */
+    public int batteryRemaining() {
+        return int8(30);
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.mavlink.message;
+
+/**
+ * TIMESYNC (#111)
+ */
+public final class Timesync extends MessageFlyweight {
+
+    public static final int MSG_ID = 111;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    /**
+     * @return the responder's time in ns, 0 in a request
+     */
+    public long tc1() {
+        return int64(0);
+    }
+
+    /**
+     * @return the requester's time in ns, echoed unchanged in the response
+     */
+    public long ts1() {
+        return int64(8);
+    }
+
+    public int targetSystem() {
+        return uint8(16);
+    }
+
+    public int targetComponent() {
+        return uint8(17);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.mavlink.message;
+
+/**
+ * VFR_HUD (#74)
+ */
+public final class VfrHud extends MessageFlyweight {
+
+    public static final int MSG_ID = 74;
+
+    @Override
+    public int getMsgId() {
+        return MSG_ID;
+    }
+
+    public float airspeed() {
+        return float32(0);
+    }
+
+    public float groundspeed() {
+        return float32(4);
+    }
+
+    public float alt() {
+        return float32(8);
+    }
+
+    public float climb() {
+        return float32(12);
+    }
+
+    public int heading() {
+        return int16(16);
+    }
+
+    public int throttle() {
+        return uint16(18);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.models;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+public class ConnectionProgress {
+
+    public enum Stage {
+        PROBE,
+        PERMISSION,
+        OPEN,
+        BRIDGE,
+        SERVER,
+        FIRST_HEARTBEAT
+    }
+
+    public enum State {
+        IN_PROGRESS,
+        READY,
+        FAILED
+    }
+
+    private final Stage stage;
+    private final State state;
+    private final long[] stageMillis;
+    private final String error;
+
+    public ConnectionProgress(Stage stage, State state, long[] stageMillis, String error) {
+        this.stage = stage;
+        this.state = state;
+        this.stageMillis = stageMillis.clone();
+        this.error = error;
+    }
+
+    /**
+     * @return the stage running, or the last one reached when READY or FAILED
+     */
+    public Stage getStage() {
+        return stage;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return duration of a finished stage, -1 if it has not finished
+     */
+    public long getStageMillis(Stage stage) {
+        return stageMillis[stage.ordinal()];
+    }
+
+    public long getTotalMillis() {
+        long total = 0;
+        for (long millis : stageMillis) {
+            if (millis > 0) {
+                total += millis;
+            }
+        }
+        return total;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(state).append(' ').append(stage);
+        if (error != null) {
+            builder.append(": ").append(error);
+        }
+        for (Stage s : Stage.values()) {
+            if (stageMillis[s.ordinal()] >= 0) {
+                builder.append(String.format(Locale.US, "\n%s %d ms", s, stageMillis[s.ordinal()]));
+            }
+        }
+        return builder.toString();
+    }
+
+    public static long[] emptyTimings() {
+        long[] timings = new long[Stage.values().length];
+        Arrays.fill(timings, -1);
+        return timings;
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.models;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.mavsdk.telemetry.Telemetry;
+
+/**
+ * The selected vehicle's telemetry in one place, as primitives updated in place.
+ *
+ * There is a single writer: all setters must be called from the same thread. Each setter bumps
+ * a sequence number around its writes, odd while writing, so readers copy a consistent
+ * {@link Snapshot} without locking and retry if a write overlapped (a seqlock). Listeners are
+ * notified through the notify executor, at most once per pending notification however many
+ * setters ran in between, so the UI sees one change per frame and not one per stream.
+ */
+public class VehicleState {
+
+    // Groups for Snapshot.has(), set once the group was written
+    public static final int POSITION = 1;
+    public static final int BATTERY = 1 << 1;
+    public static final int SPEED = 1 << 2;
+    public static final int ATTITUDE = 1 << 3;
+    public static final int RC_STATUS = 1 << 4;
+    public static final int FLIGHT_MODE = 1 << 5;
+    public static final int CONNECTION = 1 << 6;
+    public static final int MISSION_PROGRESS = 1 << 7;
+    public static final int MISSION_FINISHED = 1 << 8;
+
+    public interface Listener {
+        /**
+         * Called on the notify executor; take a snapshot with {@link #read(Snapshot)}.
+         */
+        void onVehicleStateChanged(VehicleState state);
+    }
+
+    private final Executor mNotifyExecutor;
+    private final AtomicBoolean mNotifyPending = new AtomicBoolean();
+    private final Runnable mNotify = this::notifyListener;
+    private volatile Listener mListener;
+
+    private volatile long mSequence;
+    private volatile int mUpdated;
+
+    private volatile double mLatitudeDeg;
+    private volatile double mLongitudeDeg;
+    private volatile float mAbsoluteAltitudeM;
+    private volatile float mRelativeAltitudeM;
+    private volatile float mBatteryRemaining;
+    private volatile float mBatteryVoltageV;
+    private volatile float mHorizontalSpeed;
+    private volatile float mVerticalSpeed;
+    private volatile float mRollDeg;
+    private volatile float mPitchDeg;
+    private volatile float mYawDeg;
+    private volatile boolean mRcWasAvailableOnce;
+    private volatile boolean mRcAvailable;
+    private volatile float mRcSignalStrengthPercent;
+    private volatile Telemetry.FlightMode mFlightMode;
+    private volatile boolean mConnected;
+    private volatile int mMissionCurrent;
+    private volatile int mMissionTotal;
+    private volatile boolean mMissionFinished;
+
+    /**
+     * @param notifyExecutor runs the listener, e.g. posts to the main thread
+     */
+    public VehicleState(Executor notifyExecutor) {
+        mNotifyExecutor = notifyExecutor;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    public void setPosition(double latitudeDeg, double longitudeDeg, float absoluteAltitudeM, float relativeAltitudeM) {
+        long sequence = beginWrite();
+        mLatitudeDeg = latitudeDeg;
+        mLongitudeDeg = longitudeDeg;
+        mAbsoluteAltitudeM = absoluteAltitudeM;
+        mRelativeAltitudeM = relativeAltitudeM;
+        endWrite(sequence, POSITION);
+    }
+
+    /**
+     * @param remaining 0 to 1
+     */
+    public void setBattery(float remaining, float voltageV) {
+        long sequence = beginWrite();
+        mBatteryRemaining = remaining;
+        mBatteryVoltageV = voltageV;
+        endWrite(sequence, BATTERY);
+    }
+
+    /**
+     * Takes the velocity in the NED frame and keeps horizontal and vertical speed.
+     */
+    public void setVelocity(float northMS, float eastMS, float downMS) {
+        long sequence = beginWrite();
+        mHorizontalSpeed = (float) Math.hypot(northMS, eastMS);
+        mVerticalSpeed = Math.abs(downMS);
+        endWrite(sequence, SPEED);
+    }
+
+    public void setAttitude(float rollDeg, float pitchDeg, float yawDeg) {
+        long sequence = beginWrite();
+        mRollDeg = rollDeg;
+        mPitchDeg = pitchDeg;
+        mYawDeg = yawDeg;
+        endWrite(sequence, ATTITUDE);
+    }
+
+    public void setRcStatus(boolean wasAvailableOnce, boolean available, float signalStrengthPercent) {
+        long sequence = beginWrite();
+        mRcWasAvailableOnce = wasAvailableOnce;
+        mRcAvailable = available;
+        mRcSignalStrengthPercent = signalStrengthPercent;
+        endWrite(sequence, RC_STATUS);
+    }
+
+    public void setFlightMode(Telemetry.FlightMode flightMode) {
+        long sequence = beginWrite();
+        mFlightMode = flightMode;
+        endWrite(sequence, FLIGHT_MODE);
+    }
+
+    public void setConnected(boolean connected) {
+        long sequence = beginWrite();
+        mConnected = connected;
+        endWrite(sequence, CONNECTION);
+    }
+
+    public void setMissionProgress(int current, int total) {
+        long sequence = beginWrite();
+        mMissionCurrent = current;
+        mMissionTotal = total;
+        endWrite(sequence, MISSION_PROGRESS);
+    }
+
+    public void setMissionFinished(boolean finished) {
+        long sequence = beginWrite();
+        mMissionFinished = finished;
+        endWrite(sequence, MISSION_FINISHED);
+    }
+
+    /**
+     * Forgets everything, e.g. when another vehicle is selected. Writer thread only, like the setters.
+     */
+    public void clear() {
+        long sequence = beginWrite();
+        mUpdated = 0;
+        mLatitudeDeg = 0;
+        mLongitudeDeg = 0;
+        mAbsoluteAltitudeM = 0;
+        mRelativeAltitudeM = 0;
+        mBatteryRemaining = 0;
+        mBatteryVoltageV = 0;
+        mHorizontalSpeed = 0;
+        mVerticalSpeed = 0;
+        mRollDeg = 0;
+        mPitchDeg = 0;
+        mYawDeg = 0;
+        mRcWasAvailableOnce = false;
+        mRcAvailable = false;
+        mRcSignalStrengthPercent = 0;
+        mFlightMode = null;
+        mConnected = false;
+        mMissionCurrent = 0;
+        mMissionTotal = 0;
+        mMissionFinished = false;
+        endWrite(sequence, 0);
+    }
+
+    /**
+     * @return increases with every write, odd while one is in progress
+     */
+    public long getSequence() {
+        return mSequence;
+    }
+
+    /**
+     * Copies a consistent state into snapshot, retrying while a write overlaps.
+     *
+     * @return the sequence number the snapshot was taken at
+     */
+    public long read(Snapshot snapshot) {
+        while (true) {
+            long sequence = mSequence;
+            if ((sequence & 1) == 0) {
+                snapshot.mUpdated = mUpdated;
+                snapshot.mLatitudeDeg = mLatitudeDeg;
+                snapshot.mLongitudeDeg = mLongitudeDeg;
+                snapshot.mAbsoluteAltitudeM = mAbsoluteAltitudeM;
+                snapshot.mRelativeAltitudeM = mRelativeAltitudeM;
+                snapshot.mBatteryRemaining = mBatteryRemaining;
+                snapshot.mBatteryVoltageV = mBatteryVoltageV;
+                snapshot.mHorizontalSpeed = mHorizontalSpeed;
+                snapshot.mVerticalSpeed = mVerticalSpeed;
+                snapshot.mRollDeg = mRollDeg;
+                snapshot.mPitchDeg = mPitchDeg;
+                snapshot.mYawDeg = mYawDeg;
+                snapshot.mRcWasAvailableOnce = mRcWasAvailableOnce;
+                snapshot.mRcAvailable = mRcAvailable;
+                snapshot.mRcSignalStrengthPercent = mRcSignalStrengthPercent;
+                snapshot.mFlightMode = mFlightMode;
+                snapshot.mConnected = mConnected;
+                snapshot.mMissionCurrent = mMissionCurrent;
+                snapshot.mMissionTotal = mMissionTotal;
+                snapshot.mMissionFinished = mMissionFinished;
+                // the fields are volatile, so this read can't move above the copies
+                if (mSequence == sequence) {
+                    snapshot.mSequence = sequence;
+                    return sequence;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    private long beginWrite() {
+        // single writer, so no read-modify-write race
+        long sequence = mSequence + 1;
+        mSequence = sequence;
+        return sequence;
+    }
+
+    private void endWrite(long sequence, int updated) {
+        if (updated != 0) {
+            mUpdated |= updated;
+        }
+        mSequence = sequence + 1;
+        if (mListener != null && mNotifyPending.compareAndSet(false, true)) {
+            mNotifyExecutor.execute(mNotify);
+        }
+    }
+
+    private void notifyListener() {
+        // cleared first, so a write during the callback schedules another one
+        mNotifyPending.set(false);
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onVehicleStateChanged(this);
+        }
+    }
+
+    /**
+     * A reusable copy of the state, consistent as of one sequence number.
+     */
+    public static class Snapshot {
+
+        private long mSequence;
+        private int mUpdated;
+        private double mLatitudeDeg;
+        private double mLongitudeDeg;
+        private float mAbsoluteAltitudeM;
+        private float mRelativeAltitudeM;
+        private float mBatteryRemaining;
+        private float mBatteryVoltageV;
+        private float mHorizontalSpeed;
+        private float mVerticalSpeed;
+        private float mRollDeg;
+        private float mPitchDeg;
+        private float mYawDeg;
+        private boolean mRcWasAvailableOnce;
+        private boolean mRcAvailable;
+        private float mRcSignalStrengthPercent;
+        private Telemetry.FlightMode mFlightMode;
+        private boolean mConnected;
+        private int mMissionCurrent;
+        private int mMissionTotal;
+        private boolean mMissionFinished;
+
+        public long getSequence() {
+            return mSequence;
+        }
+
+        /**
+         * @param groups bits such as {@link #POSITION}
+         * @return true if all of them were received since the vehicle was selected
+         */
+        public boolean has(int groups) {
+            return (mUpdated & groups) == groups;
+        }
+
+        public double getLatitudeDeg() {
+            return mLatitudeDeg;
+        }
+
+        public double getLongitudeDeg() {
+            return mLongitudeDeg;
+        }
+
+        public float getAbsoluteAltitudeM() {
+            return mAbsoluteAltitudeM;
+        }
+
+        public float getRelativeAltitudeM() {
+            return mRelativeAltitudeM;
+        }
+
+        /**
+         * @return 0 to 1
+         */
+        public float getBatteryRemaining() {
+            return mBatteryRemaining;
+        }
+
+        public float getBatteryVoltageV() {
+            return mBatteryVoltageV;
+        }
+
+        public float getHorizontalSpeed() {
+            return mHorizontalSpeed;
+        }
+
+        public float getVerticalSpeed() {
+            return mVerticalSpeed;
+        }
+
+        public float getRollDeg() {
+            return mRollDeg;
+        }
+
+        public float getPitchDeg() {
+            return mPitchDeg;
+        }
+
+        public float getYawDeg() {
+            return mYawDeg;
+        }
+
+        public boolean isRcWasAvailableOnce() {
+            return mRcWasAvailableOnce;
+        }
+
+        public boolean isRcAvailable() {
+            return mRcAvailable;
+        }
+
+        public float getRcSignalStrengthPercent() {
+            return mRcSignalStrengthPercent;
+        }
+
+        /**
+         * @return null until received
+         */
+        public Telemetry.FlightMode getFlightMode() {
+            return mFlightMode;
+        }
+
+        public boolean isConnected() {
+            return mConnected;
+        }
+
+        public int getMissionCurrent() {
+            return mMissionCurrent;
+        }
+
+        public int getMissionTotal() {
+            return mMissionTotal;
+        }
+
+        public boolean isMissionFinished() {
+            return mMissionFinished;
+        }
+    }
+}
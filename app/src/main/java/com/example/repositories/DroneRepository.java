@@ -2,34 +2,66 @@ package com.example.repositories;
 
 import android.app.Application;
 import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.hardware.usb.UsbDevice;
-import android.hardware.usb.UsbDeviceConnection;
 import android.hardware.usb.UsbManager;
+import android.os.SystemClock;
+import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.LiveDataReactiveStreams;
-
+import androidx.lifecycle.MutableLiveData;
+
+import com.example.bridge.BridgeLatencyMonitor;
+import com.example.bridge.BridgeRegistry;
+import com.example.bridge.MessageFilter;
+import com.example.bridge.RoutingTable;
+import com.example.bridge.SerialTcpBridge;
+import com.example.bridge.TimeSync;
+import com.example.bridge.UdpRelay;
+import com.example.gnss.RtcmInjector;
 import com.example.googlemapmavsdk.BuildConfig;
 import com.example.googlemapmavsdk.R;
-import com.example.io.TcpInputOutputManager;
+import com.example.io.BaudRateDetector;
+import com.example.io.InputLinks;
+import com.example.io.UsbPortOpener;
+import com.example.mavlink.message.GlobalPositionInt;
+import com.example.models.ConnectionProgress;
 import com.example.models.Speed;
+import com.example.models.VehicleState;
+import com.example.service.BridgeServiceClient;
+import com.example.telemetry.DirectTelemetry;
+import com.example.telemetry.LinkRateMeter;
+import com.example.telemetry.PositionPathBenchmark;
+import com.example.telemetry.TelemetryRateProfile;
+import com.example.tlog.TlogRecorder;
+import com.example.tlog.TlogReplayPort;
+import com.example.utils.AppSchedulers;
+import com.example.utils.LatencyHistogram;
+import com.example.utils.PauseMonitor;
+import com.example.utils.SubscriptionRegistry;
+import com.example.utils.ThreadProfile;
 import com.google.android.gms.maps.model.LatLng;
-import com.hoho.android.usbserial.driver.UsbSerialDriver;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
-import com.hoho.android.usbserial.driver.UsbSerialProber;
-import com.hoho.android.usbserial.util.SerialInputOutputManager;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 import io.mavsdk.System;
@@ -37,15 +69,15 @@ import io.mavsdk.action.Action;
 import io.mavsdk.camera.Camera;
 import io.mavsdk.core.Core;
 import io.mavsdk.geofence.Geofence;
-import io.mavsdk.mavsdkserver.MavsdkServer;
 import io.mavsdk.mission.Mission;
 import io.mavsdk.mission_raw.MissionRaw;
 import io.mavsdk.telemetry.Telemetry;
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
 import io.reactivex.Single;
 import io.reactivex.disposables.CompositeDisposable;
-import io.reactivex.disposables.Disposable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.processors.BehaviorProcessor;
 
 import android.os.Handler;
 import android.os.Looper;
@@ -53,23 +85,71 @@ import android.os.Looper;
 public class  DroneRepository {
     private static final String TAG = "LOG_" + DroneRepository.class.getSimpleName();
 
-    private static final String MAVSDK_SERVER_IP = "127.0.0.1";
-    private static final int USB_BAUD_RATE = 57600;
     private static final int BUFFER_SIZE = 2048;
     private static final int IO_TIMEOUT = 1000;
-    private static final long THROTTLE_TIME_MILLIS = 100;
+    // How long each (re)connect is measured at the autopilot's own rates before the profile is applied
+    private static final long RATE_BASELINE_SECONDS = 5;
+    private static final long PERMISSION_TIMEOUT_SECONDS = 30;
+    private static final long HEARTBEAT_POLL_MILLIS = 10;
+    private static final long BRIDGE_SERVICE_TIMEOUT_MILLIS = 5000;
 
-    private int TCP_SERVER_PORT = 8888;
+    private static final int TCP_SERVER_PORT = 8888;
+    private static final String TLOG_DIRECTORY = "tlog";
+    private static final String TLOG_NAME = "usb";
+    private static final String REPLAY_VEHICLE_ID = "replay";
 
     private final Context mAppContext;
     private final CompositeDisposable mCompositeDisposable;
     private System mDrone;
-    private MavsdkServer mMavsdkServer;
-    private SerialInputOutputManager mSerialManager;
-    private TcpInputOutputManager mTcpManager;
+    private final BehaviorProcessor<System> mDroneProcessor = BehaviorProcessor.create();
+    // One bridge, MavsdkServer and DirectTelemetry per attached autopilot, keyed by vehicle id
+    private final BridgeRegistry mBridgeRegistry = new BridgeRegistry(TCP_SERVER_PORT);
+    private final Map<String, MavsdkLifecycleManager.Session> mVehicleSessions = new ConcurrentHashMap<>();
+    private final Map<String, DirectTelemetry> mVehicleTelemetry = new ConcurrentHashMap<>();
+    private final MutableLiveData<List<String>> mVehicleIds = new MutableLiveData<>(new ArrayList<>());
+    private volatile String mSelectedVehicleId;
+    // Bridge of the selected vehicle
+    private volatile SerialTcpBridge mBridge;
+    // Bridge of the first vehicle, the only one recorded and the one redundant links belong to
+    private volatile SerialTcpBridge mPrimaryBridge;
+    private volatile TlogRecorder mRecorder;
+    private volatile UdpRelay mUdpRelay;
+    private volatile RtcmInjector mRtcmInjector;
+    private final Map<String, SerialTcpBridge.SerialPortOpener> mRedundantLinks = new ConcurrentHashMap<>();
+    private volatile DirectTelemetry mDirectTelemetry = new DirectTelemetry();
+    private final DirectTelemetry.Listener mDirectTelemetryListener;
+    private final PositionPathBenchmark mPositionPathBenchmark = new PositionPathBenchmark();
+    private final MutableLiveData<LatLng> mDirectPosition = new MutableLiveData<>();
+    // At most one post in flight, however many GLOBAL_POSITION_INT came in meanwhile
+    private final AtomicBoolean mDirectPositionPending = new AtomicBoolean();
+    private final Runnable mPublishDirectPosition = this::publishDirectPosition;
+    private MessageFilter mMessageFilter = MessageFilter.passAll();
 
     private static final String INTENT_ACTION_GRANT_USB = BuildConfig.APPLICATION_ID + ".GRANT_USB";
 
+    // Telemetry, command and bulk threads; the telemetry thread is the single writer of mVehicleState
+    private final AppSchedulers mSchedulers = new AppSchedulers();
+    private final VehicleState mVehicleState;
+    private final MutableLiveData<VehicleState> mVehicleStateLiveData = new MutableLiveData<>();
+
+    private volatile TelemetryRateProfile mTelemetryRateProfile = TelemetryRateProfile.DISPLAY;
+    private final Map<String, LinkRateMeter> mLinkRateMeters = new ConcurrentHashMap<>();
+
+    // Shared telemetry streams and the subscriptions of the repository's own consumers
+    private static final String VEHICLE_STATE_CONSUMER = "vehicle-state";
+    // Subscribed once per vehicle, the stream is the vehicle id
+    private static final String TELEMETRY_RATES_CONSUMER = "telemetry-rates";
+    private final SubscriptionRegistry mSubscriptions = new SubscriptionRegistry();
+    private Flowable<Telemetry.Position> mPositionStream;
+    private Flowable<Telemetry.Battery> mBatteryStream;
+    private Flowable<Telemetry.PositionVelocityNed> mVelocityStream;
+    private Flowable<Telemetry.EulerAngle> mAttitudeStream;
+    private Flowable<Telemetry.RcStatus> mRcStatusStream;
+    private Flowable<Telemetry.FlightMode> mFlightModeStream;
+    private Flowable<Core.ConnectionState> mConnectionStateStream;
+    private Flowable<MissionRaw.MissionProgress> mMissionProgressStream;
+    private Flowable<Boolean> mMissionFinishedStream;
+
     private LiveData<Speed> mSpeedLiveData;
     private LiveData<Telemetry.Battery> mBatteryLiveData;
     private LiveData<Telemetry.Position> mPositionLiveData;
@@ -83,68 +163,460 @@ public class  DroneRepository {
     private CountDownLatch latch = new CountDownLatch(0);
 
     private boolean usbConnectionStatus = false;
+    private volatile boolean mConnecting;
+    private volatile boolean mConnectCancelled;
+    private final ExecutorService mConnectExecutor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<ConnectionProgress> mConnectionProgress = new MutableLiveData<>();
 
-    private UsbSerialDriver mDriver;
     private UsbManager mManager;
-    private UsbDevice mDevice;
-    private String systemAddress;
 
-    private UsbSerialPort mUsbSerialPort;
+    private volatile BaudRateDetector.Result mBaudRateResult;
+
+    // Bridges in BridgeService's process instead of this one, see setBridgeIsolated
+    private volatile boolean mBridgeIsolated;
+    private volatile BridgeServiceClient mBridgeClient;
+    private volatile IsolatedConnect mIsolatedConnect;
+    private final List<String> mIsolatedVehicleIds = new CopyOnWriteArrayList<>();
+    private final PauseMonitor mPauseMonitor = new PauseMonitor();
 
     private static final float MISSION_HEIGHT = 5f;
     private static final float MISSION_SPEED = 2f;
 
     private String completeErrorMessage;
 
-    ExecutorService mExecutorService;
-
     private final Handler mainLooper;
 
     public DroneRepository(Application application) {
         mAppContext = application.getApplicationContext();
         mCompositeDisposable = new CompositeDisposable();
+        mainLooper = new Handler(Looper.getMainLooper());
 
-        connect();
+        mDirectTelemetryListener = (telemetry, msgId, originNanos) -> {
+            // every vehicle decodes, only the selected one feeds the UI
+            if (msgId == GlobalPositionInt.MSG_ID && telemetry == mDirectTelemetry) {
+                mPositionPathBenchmark.onUpdate(telemetry, msgId, originNanos);
+                if (mDirectPositionPending.compareAndSet(false, true)) {
+                    mainLooper.post(mPublishDirectPosition);
+                }
+            }
+        };
 
-        mainLooper = new Handler(Looper.getMainLooper());
+        // LiveData dispatches the same object again, one notification per coalesced change
+        mVehicleState = new VehicleState(mainLooper::post);
+        mVehicleState.setListener(mVehicleStateLiveData::setValue);
+        createSharedStreams();
+        subscribeVehicleState();
+
+        connect();
     }
 
+    /**
+     * Starts the staged connection on a background thread. Progress and per-stage timings are
+     * published through {@link #getConnectionProgress()}; READY means the first vehicle is up.
+     * Every further attached USB serial port is bridged as another vehicle afterwards, see
+     * {@link #getVehicleIds()}.
+     */
     public void connect() {
-        if (usbConnectionStatus) {
+        if (usbConnectionStatus || mConnecting) {
             Toast.makeText(mAppContext, "Working Connection Exist", Toast.LENGTH_SHORT).show();
             return;
         }
+        mConnecting = true;
+        mConnectCancelled = false;
+        mPauseMonitor.start(mBridgeRegistry.getHelperExecutor());
+        mConnectExecutor.execute(() -> {
+            if (mBridgeIsolated) {
+                runIsolatedConnectStages();
+            } else {
+                runConnectStages(null, null);
+            }
+        });
+    }
+
+    /**
+     * Runs the USB bridges in {@link BridgeService}'s own process from the next {@link #connect()}
+     * on, so garbage collections of the map UI and MAVSDK's streams don't pause forwarding.
+     * MavsdkServer stays here and connects to the bridges over TCP as before. Features that
+     * hook into the bridge itself (direct telemetry, link stats, recording, relay, RTCM
+     * injection, redundant links) need the bridge in this process and are off while isolated.
+     */
+    public void setBridgeIsolated(boolean isolated) {
+        mBridgeIsolated = isolated;
+    }
 
-        mSpeedLiveData = null;
-        mBatteryLiveData = null;
-        mPositionLiveData = null;
-        mFlightModeLiveData = null;
-        mAttitudeLiveData = null;
-        mRcStatusLiveData = null;
-        mDroneConnectionStateLiveData = null;
-        mMissionProgressLiveData = null;
-        mIsMissionFinishedLiveData = null;
+    public boolean isBridgeIsolated() {
+        return mBridgeIsolated;
+    }
 
-        if (initializeUSB()) {
-            initializeTCP();
-            initializeServerAndDrone(systemAddress);
+    /**
+     * Connects to a recorded .tlog instead of the USB radio, through the same bridge, server and
+     * LiveData, e.g. to exercise the app on an emulator.
+     *
+     * @param speed see {@link TlogReplayPort#setSpeed(double)}
+     */
+    public void connectReplay(File tlog, double speed) {
+        if (usbConnectionStatus || mConnecting) {
+            Toast.makeText(mAppContext, "Working Connection Exist", Toast.LENGTH_SHORT).show();
+            return;
         }
+        mConnecting = true;
+        mConnectCancelled = false;
+        mConnectExecutor.execute(() -> runConnectStages(REPLAY_VEHICLE_ID, () -> {
+            TlogReplayPort port = new TlogReplayPort(tlog);
+            port.setSpeed(speed);
+            return port;
+        }));
     }
 
-    private void disconnect() {
-        usbConnectionStatus = false;
-        TCP_SERVER_PORT += 1;
+    /**
+     * Connects to a vehicle over the network instead of the USB radio, e.g. a WiFi telemetry
+     * bridge, through the same bridge, server and LiveData. The address doubles as vehicle id.
+     *
+     * @param address see {@link InputLinks#opener(String)}
+     * @throws IllegalArgumentException if the address is malformed
+     */
+    public void connectNetwork(String address) {
+        SerialTcpBridge.SerialPortOpener opener = InputLinks.opener(address);
+        if (usbConnectionStatus || mConnecting) {
+            Toast.makeText(mAppContext, "Working Connection Exist", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mConnecting = true;
+        mConnectCancelled = false;
+        mConnectExecutor.execute(() -> runConnectStages(address, opener));
+    }
+
+    public LiveData<ConnectionProgress> getConnectionProgress() {
+        return mConnectionProgress;
+    }
 
-        mTcpManager.stop();
+    private interface ConnectStage {
+        void run() throws Exception;
+    }
 
+    /**
+     * probe -> permission -> open -> bridge -> server -> first heartbeat for the first vehicle,
+     * on mConnectExecutor. Probe and permission only apply to USB.
+     *
+     * @param opener null to connect the attached USB devices
+     */
+    private void runConnectStages(String id, SerialTcpBridge.SerialPortOpener opener) {
+        long[] timings = ConnectionProgress.emptyTimings();
+        final UsbSerialPort[] port = new UsbSerialPort[1];
+        final List<UsbPortOpener> usbPorts = new ArrayList<>();
+        final SerialTcpBridge.SerialPortOpener[] portOpener = {opener};
+        final String[] vehicleId = {id};
+        final BridgeRegistry.Vehicle[] vehicle = new BridgeRegistry.Vehicle[1];
+        ConnectionProgress.Stage stage = ConnectionProgress.Stage.PROBE;
         try {
-            mUsbSerialPort.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            if (opener == null) {
+                runStage(stage, timings, () -> {
+                    mManager = (UsbManager) mAppContext.getSystemService(Context.USB_SERVICE);
+                    usbPorts.addAll(UsbPortOpener.probe(mAppContext, mManager, BridgeRegistry.DEFAULT_MAX_VEHICLES));
+                    if (usbPorts.isEmpty()) {
+                        throw new IOException(mAppContext.getString(R.string.str_usb_device_not_found));
+                    }
+                    portOpener[0] = usbPorts.get(0);
+                    vehicleId[0] = usbPorts.get(0).getId();
+                });
+
+                stage = ConnectionProgress.Stage.PERMISSION;
+                runStage(stage, timings, () -> awaitUsbPermission(usbPorts.get(0).getDevice()));
+            }
+
+            stage = ConnectionProgress.Stage.OPEN;
+            runStage(stage, timings, () -> {
+                mBaudRateResult = null;
+                port[0] = portOpener[0].open();
+                if (!usbPorts.isEmpty()) {
+                    mBaudRateResult = usbPorts.get(0).getBaudRateResult();
+                }
+            });
+
+            stage = ConnectionProgress.Stage.BRIDGE;
+            runStage(stage, timings, () -> {
+                vehicle[0] = initializeBridge(vehicleId[0], portOpener[0], true);
+                mBridgeRegistry.start(vehicle[0], port[0]);
+            });
+
+            stage = ConnectionProgress.Stage.SERVER;
+            runStage(stage, timings, () -> initializeServerAndDrone(vehicle[0]));
+
+            stage = ConnectionProgress.Stage.FIRST_HEARTBEAT;
+            runStage(stage, timings, () -> awaitFirstHeartbeat(vehicle[0].getBridge()));
+
+            mConnectionProgress.postValue(new ConnectionProgress(
+                    stage, ConnectionProgress.State.READY, timings, null));
+
+            if (usbPorts.size() > 1) {
+                connectMoreVehicles(usbPorts.subList(1, usbPorts.size()));
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Connect failed at " + stage + ": " + e.getMessage());
+            if (stage.compareTo(ConnectionProgress.Stage.SERVER) < 0) {
+                if (vehicle[0] != null) {
+                    if (vehicle[0].getBridge().isRunning()) {
+                        port[0] = null; // closed when the bridge stops
+                    }
+                    mBridgeRegistry.remove(vehicle[0].getId());
+                }
+                if (port[0] != null) {
+                    try {
+                        port[0].close();
+                    } catch (IOException ignored) {
+                    }
+                }
+            }
+            mConnectionProgress.postValue(new ConnectionProgress(
+                    stage, ConnectionProgress.State.FAILED, timings, e.getMessage()));
+            mainLooper.post(() ->
+                    Toast.makeText(mAppContext, e.getMessage(), Toast.LENGTH_SHORT).show());
+        } finally {
+            mConnecting = false;
+        }
+    }
+
+    /**
+     * Progress of one isolated connect, fed by the {@link BridgeServiceClient} on the main thread.
+     */
+    private static final class IsolatedConnect {
+        private final CountDownLatch mVehicle = new CountDownLatch(1);
+        private final CountDownLatch mHeartbeat = new CountDownLatch(1);
+        private volatile String mVehicleId;
+        private volatile int mTcpPort;
+        private volatile String mError;
+
+        /**
+         * @return false if the first vehicle is already known
+         */
+        boolean offerVehicle(String vehicleId, int tcpPort) {
+            if (mVehicle.getCount() == 0) {
+                return false;
+            }
+            mVehicleId = vehicleId;
+            mTcpPort = tcpPort;
+            mVehicle.countDown();
+            return true;
+        }
+
+        void onHeartbeat(String vehicleId) {
+            if (vehicleId.equals(mVehicleId)) {
+                mHeartbeat.countDown();
+            }
+        }
+
+        void fail(String error) {
+            mError = error;
+            mVehicle.countDown();
+            mHeartbeat.countDown();
+        }
+    }
+
+    /**
+     * Like {@link #runConnectStages}, with OPEN and BRIDGE done by {@link BridgeService}. Probe
+     * and permission stay here, where the permission dialog can show; the permission is the
+     * app's, so the bridge process can open the ports.
+     */
+    private void runIsolatedConnectStages() {
+        long[] timings = ConnectionProgress.emptyTimings();
+        final List<UsbPortOpener> usbPorts = new ArrayList<>();
+        final IsolatedConnect attempt = new IsolatedConnect();
+        mIsolatedConnect = attempt;
+        ConnectionProgress.Stage stage = ConnectionProgress.Stage.PROBE;
+        try {
+            runStage(stage, timings, () -> {
+                mManager = (UsbManager) mAppContext.getSystemService(Context.USB_SERVICE);
+                usbPorts.addAll(UsbPortOpener.probe(mAppContext, mManager, BridgeRegistry.DEFAULT_MAX_VEHICLES));
+                if (usbPorts.isEmpty()) {
+                    throw new IOException(mAppContext.getString(R.string.str_usb_device_not_found));
+                }
+            });
+
+            stage = ConnectionProgress.Stage.PERMISSION;
+            runStage(stage, timings, () -> {
+                awaitUsbPermission(usbPorts.get(0).getDevice());
+                for (UsbPortOpener opener : usbPorts.subList(1, usbPorts.size())) {
+                    try {
+                        awaitUsbPermission(opener.getDevice());
+                    } catch (IOException e) {
+                        Log.w(TAG, opener.getId() + " not bridged: " + e.getMessage());
+                    }
+                }
+            });
+
+            stage = ConnectionProgress.Stage.BRIDGE;
+            runStage(stage, timings, () -> {
+                BridgeServiceClient client = bridgeClient();
+                client.bind(BRIDGE_SERVICE_TIMEOUT_MILLIS);
+                client.connect(TCP_SERVER_PORT);
+                awaitIsolated(attempt, attempt.mVehicle);
+            });
+
+            stage = ConnectionProgress.Stage.SERVER;
+            runStage(stage, timings, () -> {
+                attachIsolatedVehicle(attempt.mVehicleId, attempt.mTcpPort);
+                selectVehicle(attempt.mVehicleId);
+                mainLooper.post(() -> {
+                    if (mConnectCancelled) {
+                        return;
+                    }
+                    usbConnectionStatus = true;
+                    Toast.makeText(mAppContext, "Usb Connected in bridge process", Toast.LENGTH_SHORT).show();
+                });
+            });
+
+            stage = ConnectionProgress.Stage.FIRST_HEARTBEAT;
+            runStage(stage, timings, () -> awaitIsolated(attempt, attempt.mHeartbeat));
+
+            mConnectionProgress.postValue(new ConnectionProgress(
+                    stage, ConnectionProgress.State.READY, timings, null));
+        } catch (Exception e) {
+            Log.w(TAG, "Connect failed at " + stage + ": " + e.getMessage());
+            if (stage.compareTo(ConnectionProgress.Stage.SERVER) < 0 && mBridgeClient != null) {
+                mBridgeClient.unbind();
+            }
+            mConnectionProgress.postValue(new ConnectionProgress(
+                    stage, ConnectionProgress.State.FAILED, timings, e.getMessage()));
+            mainLooper.post(() ->
+                    Toast.makeText(mAppContext, e.getMessage(), Toast.LENGTH_SHORT).show());
+        } finally {
+            mConnecting = false;
+        }
+    }
+
+    private void awaitIsolated(IsolatedConnect attempt, CountDownLatch latch) throws IOException, InterruptedException {
+        while (!latch.await(HEARTBEAT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (mConnectCancelled) {
+                throw new IOException("Connect cancelled");
+            }
         }
+        if (attempt.mError != null) {
+            throw new IOException(attempt.mError);
+        }
+    }
+
+    private BridgeServiceClient bridgeClient() {
+        if (mBridgeClient == null) {
+            mBridgeClient = new BridgeServiceClient(mAppContext, new BridgeServiceClient.Listener() {
+                @Override
+                public void onVehicle(String vehicleId, int tcpPort) {
+                    IsolatedConnect attempt = mIsolatedConnect;
+                    if (attempt != null && attempt.offerVehicle(vehicleId, tcpPort)) {
+                        return;
+                    }
+                    // further ports of the same connect, after the first vehicle's stages
+                    mConnectExecutor.execute(() -> attachIsolatedVehicle(vehicleId, tcpPort));
+                    Toast.makeText(mAppContext, "Vehicle " + vehicleId, Toast.LENGTH_SHORT).show();
+                }
+
+                @Override
+                public void onFirstHeartbeat(String vehicleId) {
+                    IsolatedConnect attempt = mIsolatedConnect;
+                    if (attempt != null) {
+                        attempt.onHeartbeat(vehicleId);
+                    }
+                }
+
+                @Override
+                public void onError(String error) {
+                    IsolatedConnect attempt = mIsolatedConnect;
+                    if (attempt != null) {
+                        attempt.fail(error);
+                    }
+                    Toast.makeText(mAppContext, error, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }
+        return mBridgeClient;
+    }
+
+    /**
+     * Starts MavsdkServer against a bridge of the bridge process. Its DirectTelemetry stays empty,
+     * the frames are decoded over there.
+     */
+    private void attachIsolatedVehicle(String vehicleId, int tcpPort) {
+        if (mConnectCancelled) {
+            return;
+        }
+        mIsolatedVehicleIds.add(vehicleId);
+        mVehicleTelemetry.put(vehicleId, new DirectTelemetry());
+        acquireSession(vehicleId, "tcp://:" + tcpPort);
+        publishVehicleIds();
+    }
+
+    private void runStage(ConnectionProgress.Stage stage, long[] timings, ConnectStage connectStage) throws Exception {
+        if (mConnectCancelled) {
+            throw new IOException("Connect cancelled");
+        }
+        mConnectionProgress.postValue(new ConnectionProgress(
+                stage, ConnectionProgress.State.IN_PROGRESS, timings, null));
+        long start = SystemClock.elapsedRealtime();
+        connectStage.run();
+        timings[stage.ordinal()] = SystemClock.elapsedRealtime() - start;
+    }
+
+    private void awaitUsbPermission(UsbDevice device) throws IOException, InterruptedException {
+        if (mManager.hasPermission(device)) {
+            return;
+        }
+
+        final CountDownLatch permissionLatch = new CountDownLatch(1);
+        final boolean[] granted = new boolean[1];
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                granted[0] = intent.getBooleanExtra(UsbManager.EXTRA_PERMISSION_GRANTED, false);
+                permissionLatch.countDown();
+            }
+        };
+        mAppContext.registerReceiver(receiver, new IntentFilter(INTENT_ACTION_GRANT_USB));
+        try {
+            PendingIntent usbPermissionIntent = PendingIntent.getBroadcast(mAppContext, 0, new Intent(INTENT_ACTION_GRANT_USB), 0);
+            mManager.requestPermission(device, usbPermissionIntent);
+            if (!permissionLatch.await(PERMISSION_TIMEOUT_SECONDS, TimeUnit.SECONDS) || !granted[0]) {
+                throw new IOException("Usb permission denied");
+            }
+        } finally {
+            mAppContext.unregisterReceiver(receiver);
+        }
+    }
+
+    private void awaitFirstHeartbeat(SerialTcpBridge bridge) throws IOException, InterruptedException {
+        while (bridge.getMessageRouter().getLastHeartbeatNanos() == 0) {
+            if (mConnectCancelled || !bridge.isRunning()) {
+                throw new IOException("Connect cancelled");
+            }
+            Thread.sleep(HEARTBEAT_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Tears the whole link down. Link faults don't need this, the bridge watchdog rebuilds the
+     * failed stage in place.
+     */
+    public void disconnect() {
+        usbConnectionStatus = false;
+        mConnectCancelled = true;
+        // queued behind a running connect, which notices the cancel flag
+        mPauseMonitor.stop();
+        mConnectExecutor.execute(() -> {
+            mBridgeRegistry.removeAll();
+            if (mBridgeClient != null) {
+                mBridgeClient.unbind();
+            }
+            mIsolatedVehicleIds.clear();
+            mIsolatedConnect = null;
 
-        //mMavsdkServer.stop();
-        mDrone.dispose();
+            // The TCP ports are reused on the next connect, so the old servers must not linger on them
+            for (MavsdkLifecycleManager.Session session : mVehicleSessions.values()) {
+                MavsdkLifecycleManager.getInstance().release(session);
+            }
+            mVehicleSessions.clear();
+            mVehicleTelemetry.clear();
+            mSubscriptions.unsubscribeAll(TELEMETRY_RATES_CONSUMER);
+            mLinkRateMeters.clear();
+            mVehicleIds.postValue(new ArrayList<>());
+        });
 
         /*
         mPositionRelativeLiveData.removeObservers((LifecycleOwner) mAppContext);
@@ -158,98 +630,549 @@ public class  DroneRepository {
          */
     }
 
-    private boolean initializeUSB() {
-        mManager = (UsbManager) mAppContext.getSystemService(Context.USB_SERVICE);
-        List<UsbSerialDriver> driverList = UsbSerialProber.getDefaultProber().findAllDrivers(mManager);
-        if (driverList.isEmpty()) {
-            Toast.makeText(mAppContext, R.string.str_usb_device_not_found, Toast.LENGTH_SHORT).show();
-            return false;
+    /**
+     * Disconnects and ends the connect thread; the repository can't be used afterwards.
+     */
+    public void close() {
+        disconnect();
+        mConnectExecutor.shutdown();
+        mCompositeDisposable.dispose();
+        mSubscriptions.clear();
+        mSchedulers.shutdown();
+    }
+
+    /**
+     * Bridges every further USB serial port as a vehicle of its own, with its own MavsdkServer.
+     * A port that fails is skipped, the others still connect.
+     */
+    private void connectMoreVehicles(List<UsbPortOpener> openers) {
+        for (UsbPortOpener opener : openers) {
+            if (mConnectCancelled) {
+                return;
+            }
+            UsbSerialPort port = null;
+            try {
+                // asks once per device, the other ports of a multi-port adapter pass right away
+                awaitUsbPermission(opener.getDevice());
+                port = opener.open();
+                BridgeRegistry.Vehicle vehicle = initializeBridge(opener.getId(), opener, false);
+                try {
+                    mBridgeRegistry.start(vehicle, port);
+                } catch (IOException | RuntimeException e) {
+                    mBridgeRegistry.remove(opener.getId());
+                    throw e;
+                }
+                port = null; // owned by the bridge now
+                acquireSession(opener.getId(), vehicle.getBridge().getSystemAddress());
+                publishVehicleIds();
+                mainLooper.post(() ->
+                        Toast.makeText(mAppContext, "Vehicle " + vehicle, Toast.LENGTH_SHORT).show());
+            } catch (Exception e) {
+                Log.w(TAG, opener.getId() + " not bridged: " + e.getMessage());
+                if (port != null) {
+                    try {
+                        port.close();
+                    } catch (IOException ignored) {
+                    }
+                }
+                mainLooper.post(() ->
+                        Toast.makeText(mAppContext, opener.getId() + ": " + e.getMessage(), Toast.LENGTH_SHORT).show());
+            }
+        }
+    }
+
+    /**
+     * @param primary the first vehicle, which gets the redundant links and the recorder
+     */
+    private BridgeRegistry.Vehicle initializeBridge(String vehicleId, SerialTcpBridge.SerialPortOpener portOpener,
+                                                    boolean primary) {
+        BridgeRegistry.Vehicle vehicle = mBridgeRegistry.add(vehicleId, portOpener);
+        SerialTcpBridge bridge = vehicle.getBridge();
+        if (primary) {
+            for (Map.Entry<String, SerialTcpBridge.SerialPortOpener> link : mRedundantLinks.entrySet()) {
+                bridge.addLink(link.getKey(), link.getValue());
+            }
+            bridge.setRecorder(mRecorder);
+            UdpRelay relay = mUdpRelay;
+            if (relay != null) {
+                relay.attach(bridge.getMessageRouter(), bridge.getUplinkRouter());
+            }
+            mPrimaryBridge = bridge;
         }
+        bridge.setBufferSize(BUFFER_SIZE);
+        bridge.setIoTimeout(IO_TIMEOUT);
+        DirectTelemetry telemetry = new DirectTelemetry();
+        telemetry.setListener(mDirectTelemetryListener);
+        bridge.getMessageRouter().addFrameListener(telemetry);
+        LinkRateMeter rateMeter = new LinkRateMeter();
+        bridge.getMessageRouter().addFrameListener(rateMeter);
+        mLinkRateMeters.put(vehicleId, rateMeter);
+        mVehicleTelemetry.put(vehicleId, telemetry);
+        bridge.setMessageFilter(mMessageFilter.copy());
+        bridge.setListener(new SerialTcpBridge.Listener() {
+            @Override
+            public void onStageLost(SerialTcpBridge.Stage stage, String link, Exception e) {
+                mainLooper.post(() ->
+                        Toast.makeText(mAppContext, label(link) + " Error, reconnecting...", Toast.LENGTH_SHORT).show());
+            }
 
-        mDriver = driverList.get(0);
-        mDevice = mDriver.getDevice();
-        boolean hasPermission = mManager.hasPermission(mDevice);
+            @Override
+            public void onStageRecovered(SerialTcpBridge.Stage stage, String link, long recoveryMillis) {
+                mainLooper.post(() ->
+                        Toast.makeText(mAppContext, label(link) + " Recovered in " + recoveryMillis + " ms", Toast.LENGTH_SHORT).show());
+            }
 
-        if (!hasPermission) {
-            PendingIntent usbPermissionIntent = PendingIntent.getBroadcast(mAppContext, 0, new Intent(INTENT_ACTION_GRANT_USB), 0);
-            mManager.requestPermission(mDevice, usbPermissionIntent);
+            @Override
+            public void onUplinkChanged(String link) {
+                mainLooper.post(() ->
+                        Toast.makeText(mAppContext, "Uplink via " + label(link), Toast.LENGTH_SHORT).show());
+            }
+
+            private String label(String link) {
+                return mBridgeRegistry.size() > 1 ? vehicleId + " " + link : link;
+            }
+        });
+        return vehicle;
+    }
+
+    /**
+     * @return outcome and duration of the first vehicle's baud rate detection, or null before the first connect
+     */
+    public BaudRateDetector.Result getBaudRateDetection() {
+        return mBaudRateResult;
+    }
+
+    private void initializeServerAndDrone(BridgeRegistry.Vehicle vehicle) {
+        acquireSession(vehicle.getId(), vehicle.getBridge().getSystemAddress());
+        selectVehicle(vehicle.getId());
+        publishVehicleIds();
+
+        final BaudRateDetector.Result baudRateResult = mBaudRateResult;
+        mainLooper.post(() -> {
+            if (mConnectCancelled) {
+                return;
+            }
+            usbConnectionStatus = true;
+            Toast.makeText(mAppContext, baudRateResult != null ? "Usb Connected: " + baudRateResult : "Replay Connected",
+                    Toast.LENGTH_SHORT).show();
+        });
+    }
+
+    private void acquireSession(String vehicleId, String systemAddress) {
+        MavsdkLifecycleManager.Session session = MavsdkLifecycleManager.getInstance().acquire(systemAddress);
+        mVehicleSessions.put(vehicleId, session);
+        watchTelemetryRates(vehicleId, session.getSystem());
+    }
+
+    /**
+     * Applies the telemetry rate profile every time MAVSDK sees the vehicle connect, since an
+     * autopilot that rebooted or lost the link may have dropped the message intervals. The link
+     * is measured at the autopilot's own rates for a while first, for the before/after report.
+     */
+    private void watchTelemetryRates(String vehicleId, System system) {
+        Flowable<Core.ConnectionState> connectionState = mSubscriptions.share("connection_state:" + vehicleId,
+                system.getCore().getConnectionState().subscribeOn(mSchedulers.telemetry()));
+        // a new System of the same vehicle replaces the old subscription
+        mSubscriptions.unsubscribe(TELEMETRY_RATES_CONSUMER, vehicleId);
+        mSubscriptions.subscribe(TELEMETRY_RATES_CONSUMER, vehicleId, connectionState
+                .map(Core.ConnectionState::getIsConnected)
+                .distinctUntilChanged()
+                .filter(connected -> connected)
+                .switchMapCompletable(connected -> {
+                    LinkRateMeter meter = mLinkRateMeters.get(vehicleId);
+                    if (meter != null) {
+                        meter.start();
+                    }
+                    return Completable.timer(RATE_BASELINE_SECONDS, TimeUnit.SECONDS, mSchedulers.commands())
+                            .andThen(applyTelemetryRates(vehicleId, system));
+                })
+                .toFlowable(),
+                ignored -> { }, throwable -> Log.w(TAG, vehicleId + " connection state: " + throwable.getMessage()));
+    }
+
+    private Completable applyTelemetryRates(String vehicleId, System system) {
+        TelemetryRateProfile profile = mTelemetryRateProfile;
+        return Completable.defer(() -> profile.apply(system.getTelemetry()))
+                // a rejected rate leaves the others applied
+                .doOnError(throwable -> Log.w(TAG, vehicleId + " rejected a telemetry rate: " + throwable.getMessage()))
+                .onErrorComplete()
+                .doOnComplete(() -> {
+                    LinkRateMeter meter = mLinkRateMeters.get(vehicleId);
+                    if (meter != null) {
+                        meter.markApplied();
+                    }
+                    Log.i(TAG, vehicleId + " telemetry rates " + profile + ", link " + (meter != null ? meter : "not measured"));
+                });
+    }
+
+    private void publishVehicleIds() {
+        List<String> ids = new ArrayList<>();
+        for (BridgeRegistry.Vehicle vehicle : mBridgeRegistry.getVehicles()) {
+            if (mVehicleSessions.containsKey(vehicle.getId())) {
+                ids.add(vehicle.getId());
+            }
+        }
+        for (String id : mIsolatedVehicleIds) {
+            if (mVehicleSessions.containsKey(id)) {
+                ids.add(id);
+            }
+        }
+        mVehicleIds.postValue(ids);
+    }
+
+    /**
+     * @return ids of the bridged vehicles, the first one is connected by {@link #connect()} itself
+     */
+    public LiveData<List<String>> getVehicleIds() {
+        return mVehicleIds;
+    }
+
+    public String getSelectedVehicleId() {
+        return mSelectedVehicleId;
+    }
+
+    /**
+     * Points actions, the telemetry LiveData and the direct telemetry at another bridged vehicle.
+     * Observers stay attached and follow it.
+     *
+     * @return false if no such vehicle is bridged
+     */
+    public boolean selectVehicle(String vehicleId) {
+        MavsdkLifecycleManager.Session session = mVehicleSessions.get(vehicleId);
+        BridgeRegistry.Vehicle vehicle = mBridgeRegistry.get(vehicleId);
+        DirectTelemetry telemetry = mVehicleTelemetry.get(vehicleId);
+        if (session == null || (vehicle == null && !mIsolatedVehicleIds.contains(vehicleId)) || telemetry == null) {
             return false;
         }
-        //Log.d(TAG, "initializeUsbDevice: hasPermission: " + mManager.hasPermission(mDevice));
+        mSelectedVehicleId = vehicleId;
+        // null for a vehicle bridged in the bridge process
+        mBridge = vehicle != null ? vehicle.getBridge() : null;
+        mDirectTelemetry = telemetry;
+        mPositionPathBenchmark.setTimeSync(vehicle != null ? vehicle.getBridge().getTimeSync() : null);
+        if (session.getSystem() != mDrone) {
+            mDrone = session.getSystem();
+            // Existing LiveData follow the new System, observers stay attached
+            mDroneProcessor.onNext(mDrone);
+            mSchedulers.getTelemetryExecutor().execute(this::resetVehicleState);
+        }
         return true;
     }
 
-    private void initializeTCP() {
-        mUsbSerialPort = mDriver.getPorts().get(0);
-        UsbDeviceConnection connection = mManager.openDevice(mDevice);
+    /**
+     * @return latest values of one vehicle decoded by its bridge, null if it is not bridged
+     */
+    public DirectTelemetry getDirectTelemetry(String vehicleId) {
+        return mVehicleTelemetry.get(vehicleId);
+    }
+
+    /**
+     * Replaces the downlink msgid rules. Takes effect on the next frame, without pausing the bridge,
+     * and is kept for later reconnects.
+     */
+    public void setMessageFilter(@NonNull MessageFilter filter) {
+        mMessageFilter = filter;
+        for (BridgeRegistry.Vehicle vehicle : mBridgeRegistry.getVehicles()) {
+            vehicle.getBridge().setMessageFilter(filter.copy());
+        }
+    }
+
+    /**
+     * @return bridge latency per direction of the selected vehicle, or null before the first connect
+     */
+    public BridgeLatencyMonitor.Snapshot getLatencySnapshot() {
+        return mBridge != null ? mBridge.getLatencyMonitor().snapshot() : null;
+    }
+
+    /**
+     * Starts the latency histograms of the selected vehicle over, e.g. to measure one period alone.
+     */
+    public void resetLatency() {
+        SerialTcpBridge bridge = mBridge;
+        if (bridge != null) {
+            bridge.getLatencyMonitor().reset();
+        }
+    }
+
+    /**
+     * Adds a telemetry path that carries the same vehicle as the USB radio. Its downlink is
+     * merged with de-duplication, uplink follows the healthiest path. Applies from the next connect.
+     */
+    public void addRedundantLink(String name, SerialTcpBridge.SerialPortOpener portOpener) {
+        mRedundantLinks.put(name, portOpener);
+    }
+
+    /**
+     * @return per-link frames, duplicates, loss and lag, empty before the first connect
+     */
+    public List<SerialTcpBridge.LinkStats> getLinkStats() {
+        SerialTcpBridge bridge = mBridge;
+        return bridge != null ? bridge.getLinkStats() : new ArrayList<>();
+    }
+
+    /**
+     * @return systems and components heard on each link of the selected vehicle, e.g. autopilot,
+     * companion computer, camera and gimbal; empty before the first connect
+     */
+    public List<RoutingTable.Route> getRoutes() {
+        SerialTcpBridge bridge = mBridge;
+        return bridge != null ? bridge.getRoutingTable().getRoutes() : new ArrayList<>();
+    }
 
+    private void publishDirectPosition() {
+        // cleared first, so a frame during setValue posts another one
+        mDirectPositionPending.set(false);
+        DirectTelemetry telemetry = mDirectTelemetry;
+        mDirectPosition.setValue(new LatLng(telemetry.getLatitudeDeg(), telemetry.getLongitudeDeg()));
+    }
+
+    /**
+     * Position decoded by the bridge itself, without the MavsdkServer and gRPC hops and without
+     * throttling. Works for any connected bridge.
+     */
+    public LiveData<LatLng> getDirectPosition() {
+        return mDirectPosition;
+    }
+
+    /**
+     * @return latest values of the selected vehicle decoded by its bridge, read without allocation
+     */
+    public DirectTelemetry getDirectTelemetry() {
+        return mDirectTelemetry;
+    }
+
+    /**
+     * @return position age on arrival, gRPC path vs. direct path
+     */
+    public PositionPathBenchmark getPositionPathBenchmark() {
+        return mPositionPathBenchmark;
+    }
+
+    /**
+     * @return the autopilot clock estimate of the selected vehicle, null before the first connect;
+     * convert vehicle timestamps with {@link TimeSync#toLocalNanos(long)} once it is synced
+     */
+    public TimeSync getTimeSync() {
+        SerialTcpBridge bridge = mBridge;
+        return bridge != null ? bridge.getTimeSync() : null;
+    }
+
+    /**
+     * @return how many bridge stages were rebuilt in place and how long the last rebuild took
+     */
+    public String getRecoveryStats() {
+        if (mBridge == null) {
+            return "not connected";
+        }
+        return mBridge.getRecoveryCount() + " recoveries, last " + mBridge.getLastRecoveryMillis()
+                + " ms, max " + mBridge.getMaxRecoveryMillis() + " ms";
+    }
+
+    /**
+     * @return name, requested and granted priority of every bridge thread; a thread that did not
+     * get its priority is also logged when it starts
+     */
+    public List<ThreadProfile.Applied> getBridgeScheduling() {
+        return mBridgeRegistry.getAppliedProfiles();
+    }
+
+    /**
+     * @return pauses of this process while connected, e.g. from garbage collection; with the
+     * bridge in this process these are the pauses it suffers
+     */
+    public LatencyHistogram.Snapshot getPauses() {
+        return mPauseMonitor.snapshot();
+    }
+
+    /**
+     * Asks the bridge process for its pauses and per-vehicle stats, to compare with
+     * {@link #getPauses()} while the UI is idle and under load.
+     *
+     * @return false if the bridge does not run isolated
+     */
+    public boolean requestBridgeProcessStats(BridgeServiceClient.StatsCallback callback) {
+        BridgeServiceClient client = mBridgeClient;
+        if (client == null || mIsolatedVehicleIds.isEmpty()) {
+            return false;
+        }
         try {
-            mUsbSerialPort.open(connection);
-            mUsbSerialPort.setParameters(
-                    USB_BAUD_RATE,
-                    UsbSerialPort.DATABITS_8,
-                    UsbSerialPort.STOPBITS_1,
-                    UsbSerialPort.PARITY_NONE);
+            client.requestStats(callback);
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.w(TAG, "No bridge process stats: " + e.getMessage());
+            return false;
         }
+    }
 
-        mSerialManager = new SerialInputOutputManager(mUsbSerialPort);
-        mSerialManager.setReadTimeout(IO_TIMEOUT);
-        mSerialManager.setReadBufferSize(BUFFER_SIZE);
-        mSerialManager.setWriteTimeout(IO_TIMEOUT);
-        mSerialManager.setWriteBufferSize(BUFFER_SIZE);
+    /**
+     * Starts recording both directions of the first vehicle's bridge as .tlog segments in the
+     * app's external files directory. Recording carries over reconnects until {@link #stopRecording()}.
+     */
+    public void startRecording() throws IOException {
+        if (mRecorder != null) {
+            return;
+        }
+        TlogRecorder recorder = new TlogRecorder(
+                new File(mAppContext.getExternalFilesDir(null), TLOG_DIRECTORY), TLOG_NAME);
+        recorder.start();
+        mRecorder = recorder;
+        SerialTcpBridge bridge = mPrimaryBridge;
+        if (bridge != null) {
+            bridge.setRecorder(recorder);
+        }
+    }
 
-        mTcpManager = new TcpInputOutputManager(TCP_SERVER_PORT);
-        mTcpManager.setReadBufferSize(BUFFER_SIZE);
-        mTcpManager.setWriteBufferSize(BUFFER_SIZE);
+    /**
+     * @return the recorded segments, empty if not recording
+     */
+    public List<File> stopRecording() throws IOException {
+        TlogRecorder recorder = mRecorder;
+        if (recorder == null) {
+            return new ArrayList<>();
+        }
+        mRecorder = null;
+        SerialTcpBridge bridge = mPrimaryBridge;
+        if (bridge != null) {
+            bridge.setRecorder(null);
+        }
+        recorder.close();
+        Log.i(TAG, "Recorded " + recorder.getRecordedFrames() + " frames, dropped " + recorder.getDroppedFrames());
+        return recorder.getFiles();
+    }
 
-        mSerialManager.setListener(new SerialInputOutputManager.Listener() {
-            @Override
-            public void onNewData(byte[] data) {
-                // Sending Serial data to TCP
-                mTcpManager.writeAsync(data);
-            }
+    /**
+     * Sends RTCM 3 corrections from a TCP caster to every connected vehicle, behind the regular
+     * uplink. Replaces a running injection.
+     */
+    public void startRtcmInjection(String host, int port) {
+        RtcmInjector injector = newRtcmInjector();
+        injector.startTcp(host, port);
+    }
 
-            @Override
-            public void onRunError(Exception e) {
-                mainLooper.post(() -> {
-                    Toast.makeText(mAppContext, "Serial Error", Toast.LENGTH_SHORT).show();
-                    disconnect();
-                });
-            }
-        });
+    /**
+     * Plays recorded RTCM 3 corrections to every connected vehicle at bytesPerSecond.
+     */
+    public void startRtcmInjection(File file, int bytesPerSecond) {
+        RtcmInjector injector = newRtcmInjector();
+        injector.startFile(file, bytesPerSecond);
+    }
 
-        mTcpManager.setListener(new TcpInputOutputManager.Listener() {
-            @Override
-            public void onNewData(byte[] data) {
-                // Sending TCP data to Serial
-                mSerialManager.writeAsync(data);
-            }
+    public void stopRtcmInjection() {
+        RtcmInjector injector = mRtcmInjector;
+        if (injector != null) {
+            injector.stop();
+            Log.i(TAG, "RTCM injection stopped, " + injector);
+        }
+    }
 
-            @Override
-            public void onRunError(Exception e) {
-                mainLooper.post(() -> {
-                    Toast.makeText(mAppContext, "Tcp Error", Toast.LENGTH_SHORT).show();
-                    disconnect();
-                });
+    /**
+     * @return the current or last injection with its throughput and correction age, null if none;
+     * the age on arrival at the radio is {@link BridgeLatencyMonitor.Snapshot#getBulk()}
+     */
+    public RtcmInjector getRtcmInjector() {
+        return mRtcmInjector;
+    }
+
+    private RtcmInjector newRtcmInjector() {
+        stopRtcmInjection();
+        RtcmInjector injector = new RtcmInjector((frame, offset, length, originNanos) -> {
+            boolean sent = false;
+            for (BridgeRegistry.Vehicle vehicle : mBridgeRegistry.getVehicles()) {
+                sent |= vehicle.getBridge().sendBulkToVehicle(frame, offset, length, originNanos);
             }
-        });
+            return sent;
+        }, SerialTcpBridge.GCS_SYSTEM_ID, SerialTcpBridge.MAV_COMP_ID_RTCM_INJECTOR);
+        injector.setExecutor(mBridgeRegistry.getHelperExecutor());
+        mRtcmInjector = injector;
+        return injector;
+    }
 
-        mExecutorService = Executors.newFixedThreadPool(2);
-        mExecutorService.submit(mSerialManager);
-        mExecutorService.submit(mTcpManager);
+    /**
+     * Relays the first vehicle's downlink to other ground stations on the LAN and takes uplink
+     * from the relay's uplink endpoint. Carries over reconnects; null stops relaying. The caller
+     * starts the relay, on {@link #getBridgeHelperExecutor()} to stay within the bridges' thread
+     * limit, and closes it.
+     */
+    public void setUdpRelay(UdpRelay relay) {
+        UdpRelay previous = mUdpRelay;
+        mUdpRelay = relay;
+        SerialTcpBridge bridge = mPrimaryBridge;
+        if (bridge == null) {
+            return;
+        }
+        if (previous != null) {
+            previous.detach(bridge.getMessageRouter());
+        }
+        if (relay != null) {
+            relay.attach(bridge.getMessageRouter(), bridge.getUplinkRouter());
+        }
+    }
+
+    public UdpRelay getUdpRelay() {
+        return mUdpRelay;
+    }
+
+    /**
+     * @return runs helpers of the bridges, e.g. a {@link UdpRelay}, on the bridges' io pool
+     */
+    public Executor getBridgeHelperExecutor() {
+        return mBridgeRegistry.getHelperExecutor();
+    }
+
+    /**
+     * Writes the bridge latency histograms to the app's external files directory.
+     *
+     * @return the report file
+     */
+    public File dumpLatencyReport() throws IOException {
+        if (mBridge == null) {
+            throw new IOException("Usb not connected");
+        }
+        File file = new File(mAppContext.getExternalFilesDir(null),
+                "bridge_latency_" + java.lang.System.currentTimeMillis() + ".txt");
+        mBridge.getLatencyMonitor().dump(file);
+        return file;
+    }
 
-        systemAddress = "tcp://:" + TCP_SERVER_PORT;
+    /**
+     * @return resident MavsdkServer count and process memory
+     */
+    public MavsdkLifecycleManager.Stats getMavsdkStats() {
+        return MavsdkLifecycleManager.getInstance().getStats();
     }
 
-    private void initializeServerAndDrone(@NonNull String systemAddress) {
-        mMavsdkServer = new MavsdkServer();
-        int mavsdkServerPort = mMavsdkServer.run(systemAddress);
-        mDrone = new System(MAVSDK_SERVER_IP, mavsdkServerPort);
+    /**
+     * Sets the rates the autopilots send telemetry at, applied to every connected vehicle now and
+     * again on each reconnect. Defaults to {@link TelemetryRateProfile#DISPLAY}.
+     */
+    public void setTelemetryRateProfile(@NonNull TelemetryRateProfile profile) {
+        mTelemetryRateProfile = profile;
+        for (Map.Entry<String, MavsdkLifecycleManager.Session> vehicle : mVehicleSessions.entrySet()) {
+            applyTelemetryRates(vehicle.getKey(), vehicle.getValue().getSystem())
+                    .subscribeOn(mSchedulers.commands())
+                    .subscribe();
+        }
+    }
+
+    public TelemetryRateProfile getTelemetryRateProfile() {
+        return mTelemetryRateProfile;
+    }
 
-        usbConnectionStatus = true;
-        Toast.makeText(mAppContext, "Usb Connected", Toast.LENGTH_SHORT).show();
+    /**
+     * @return downlink bytes per second of the selected vehicle before and since the rate profile
+     * was last applied; not measured for a vehicle bridged in the bridge process
+     */
+    public String getTelemetryRateReport() {
+        String vehicleId = mSelectedVehicleId;
+        LinkRateMeter meter = vehicleId != null ? mLinkRateMeters.get(vehicleId) : null;
+        return meter != null ? meter.toString() : "not measured";
+    }
+
+    /**
+     * @return threads, queue depth and task wait and run times of the telemetry, command and
+     * bulk schedulers
+     */
+    public String getSchedulerStats() {
+        return mSchedulers.toString();
     }
 
     public void printCompleteErrorMessage() {
@@ -272,6 +1195,7 @@ public class  DroneRepository {
                         completeErrorMessage = "Arm Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Arm Error: " + ((Action.ActionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -300,6 +1224,7 @@ public class  DroneRepository {
                                 completeErrorMessage = "Take off Done")
                         .doOnError(throwable ->
                                 completeErrorMessage = "Take off Error: " + ((Action.ActionException) throwable).getCode().toString()))
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -313,6 +1238,7 @@ public class  DroneRepository {
                         completeErrorMessage = "Disarm Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Disarm Error: " + ((Action.ActionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -326,6 +1252,7 @@ public class  DroneRepository {
                         completeErrorMessage = "Land Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Land Error: " + ((Action.ActionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -345,6 +1272,7 @@ public class  DroneRepository {
                                 completeErrorMessage = "Return Done")
                         .doOnError(throwable ->
                                 completeErrorMessage = "Return Error: " + ((Action.ActionException) throwable).getCode().toString()))
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -446,6 +1374,7 @@ public class  DroneRepository {
                 .doOnComplete(() -> completeErrorMessage = "Upload Mission Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Upload Mission Error: " + ((MissionRaw.MissionRawException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.bulk())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -463,6 +1392,7 @@ public class  DroneRepository {
                 .doOnError(throwable ->
                         completeErrorMessage = "Start Mission Error: "
                                 + ((Mission.MissionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -478,6 +1408,7 @@ public class  DroneRepository {
                 .doOnError(throwable ->
                         completeErrorMessage = "Pause Mission Error: "
                                 + ((Mission.MissionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -492,6 +1423,7 @@ public class  DroneRepository {
                 .doOnComplete(() -> completeErrorMessage = "Clear Mission Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Clear Mission Error: " + ((Mission.MissionException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -506,6 +1438,7 @@ public class  DroneRepository {
                 .doOnComplete(() -> completeErrorMessage = "Camera Take Photo Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Camera Take Photo Error: " + ((Camera.CameraException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -528,6 +1461,7 @@ public class  DroneRepository {
                 .doOnComplete(() -> completeErrorMessage = "Set Geofence Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Set Geofence Error: " + ((Geofence.GeofenceException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.bulk())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
@@ -553,23 +1487,138 @@ public class  DroneRepository {
                 .doOnComplete(() -> completeErrorMessage = "Clear Geofence Done")
                 .doOnError(throwable ->
                         completeErrorMessage = "Clear Geofence Error: " + ((Geofence.GeofenceException) throwable).getCode().toString())
+                .subscribeOn(mSchedulers.commands())
                 .subscribe(latch::getCount, throwable -> latch.getCount());
     }
 
+    /**
+     * The selected vehicle's telemetry as one primitive store, see {@link VehicleState}. The
+     * value is always the same store; it is set again at most once per main thread turn,
+     * whichever of the streams changed. Read it with {@link VehicleState#read}.
+     */
+    public LiveData<VehicleState> getVehicleState() {
+        return mVehicleStateLiveData;
+    }
+
+    /**
+     * @return live subscriptions of the repository's consumers and upstream gRPC subscriptions
+     * per telemetry stream, which should stay at 1 however many observers there are
+     */
+    public String getSubscriptionStats() {
+        return mSubscriptions.toString();
+    }
+
+    public SubscriptionRegistry getSubscriptions() {
+        return mSubscriptions;
+    }
+
+    /**
+     * One shared stream per telemetry kind of the selected System. The store and every LiveData
+     * below subscribe to these, so MavsdkServer streams each kind once over gRPC.
+     */
+    private void createSharedStreams() {
+        mPositionStream = mSubscriptions.share("position", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getPosition())
+                .subscribeOn(mSchedulers.telemetry()));
+        mBatteryStream = mSubscriptions.share("battery", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getBattery())
+                .subscribeOn(mSchedulers.telemetry()));
+        mVelocityStream = mSubscriptions.share("velocity", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getPositionVelocityNed())
+                .subscribeOn(mSchedulers.telemetry()));
+        mAttitudeStream = mSubscriptions.share("attitude", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getAttitudeEuler())
+                .subscribeOn(mSchedulers.telemetry()));
+        mRcStatusStream = mSubscriptions.share("rc_status", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getRcStatus())
+                .subscribeOn(mSchedulers.telemetry()));
+        mFlightModeStream = mSubscriptions.share("flight_mode", mDroneProcessor
+                .switchMap(drone -> drone.getTelemetry().getFlightMode())
+                .distinctUntilChanged()
+                .subscribeOn(mSchedulers.telemetry()));
+        mConnectionStateStream = mSubscriptions.share("connection_state", mDroneProcessor
+                .switchMap(drone -> drone.getCore().getConnectionState())
+                .distinctUntilChanged()
+                .subscribeOn(mSchedulers.telemetry()));
+        mMissionProgressStream = mSubscriptions.share("mission_progress", mDroneProcessor
+                .switchMap(drone -> drone.getMissionRaw().getMissionProgress())
+                .distinctUntilChanged()
+                .subscribeOn(mSchedulers.telemetry()));
+        mMissionFinishedStream = mSubscriptions.share("mission_finished", mDroneProcessor
+                .switchMap(drone -> drone.getMission().isMissionFinished().toFlowable())
+                .distinctUntilChanged()
+                .subscribeOn(mSchedulers.telemetry()));
+    }
+
+    /**
+     * Feeds the shared streams into mVehicleState, unthrottled: a write is a few field stores
+     * and the UI notification is coalesced anyway.
+     */
+    private void subscribeVehicleState() {
+        Scheduler writer = mSchedulers.telemetry();
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "position",
+                mPositionStream.onBackpressureLatest().observeOn(writer),
+                position -> {
+                    mPositionPathBenchmark.onGrpcPosition(position.getLatitudeDeg(), position.getLongitudeDeg());
+                    mVehicleState.setPosition(position.getLatitudeDeg(), position.getLongitudeDeg(),
+                            position.getAbsoluteAltitudeM(), position.getRelativeAltitudeM());
+                }, this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "battery",
+                mBatteryStream.onBackpressureLatest().observeOn(writer),
+                battery -> mVehicleState.setBattery(battery.getRemainingPercent(), battery.getVoltageV()),
+                this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "velocity",
+                mVelocityStream.onBackpressureLatest().observeOn(writer),
+                positionVelocityNed -> {
+                    Telemetry.VelocityNed velocity = positionVelocityNed.getVelocity();
+                    mVehicleState.setVelocity(velocity.getNorthMS(), velocity.getEastMS(), velocity.getDownMS());
+                }, this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "attitude",
+                mAttitudeStream.onBackpressureLatest().observeOn(writer),
+                angle -> mVehicleState.setAttitude(angle.getRollDeg(), angle.getPitchDeg(), angle.getYawDeg()),
+                this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "rc_status",
+                mRcStatusStream.onBackpressureLatest().observeOn(writer),
+                rcStatus -> mVehicleState.setRcStatus(rcStatus.getWasAvailableOnce(),
+                        rcStatus.getIsAvailable(), rcStatus.getSignalStrengthPercent()),
+                this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "flight_mode",
+                mFlightModeStream.observeOn(writer),
+                mVehicleState::setFlightMode, this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "connection_state",
+                mConnectionStateStream.observeOn(writer),
+                state -> mVehicleState.setConnected(state.getIsConnected()), this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "mission_progress",
+                mMissionProgressStream.observeOn(writer),
+                progress -> mVehicleState.setMissionProgress(progress.getCurrent(), progress.getTotal()),
+                this::onVehicleStateError);
+        mSubscriptions.subscribe(VEHICLE_STATE_CONSUMER, "mission_finished",
+                mMissionFinishedStream.observeOn(writer),
+                mVehicleState::setMissionFinished, this::onVehicleStateError);
+    }
+
+    /**
+     * Starts the store over for another vehicle, on the telemetry thread. Dropping the
+     * subscriptions first discards what the previous vehicle left queued for the writer, so
+     * nothing of it lands after the clear; the new ones start from the latest shared values.
+     */
+    private void resetVehicleState() {
+        mSubscriptions.unsubscribeAll(VEHICLE_STATE_CONSUMER);
+        mVehicleState.clear();
+        subscribeVehicleState();
+    }
+
+    private void onVehicleStateError(Throwable throwable) {
+        Log.w(TAG, "Vehicle state stream ended: " + throwable.getMessage());
+    }
+
     public LiveData<MissionRaw.MissionProgress> getMissionProgress() {
         if (usbConnectionStatus == false) {
             Toast.makeText(mAppContext, "Usb not connected", Toast.LENGTH_SHORT).show();
             return null;
         }
         if (mMissionProgressLiveData == null) {
-            Flowable<MissionRaw.MissionProgress> missionProgressFlowable;
-
-            missionProgressFlowable = mDrone.getMissionRaw()
-                    .getMissionProgress()
-                    .distinctUntilChanged()
-                    .subscribeOn(Schedulers.io());
-
-            mMissionProgressLiveData = LiveDataReactiveStreams.fromPublisher(missionProgressFlowable);
+            mMissionProgressLiveData = LiveDataReactiveStreams.fromPublisher(mMissionProgressStream);
         }
 
         return mMissionProgressLiveData;
@@ -580,17 +1629,8 @@ public class  DroneRepository {
             Toast.makeText(mAppContext, "Usb not connected", Toast.LENGTH_SHORT).show();
             return null;
         }
-
         if (mIsMissionFinishedLiveData == null) {
-            Flowable<Boolean> isMissionFinishedFlowable;
-
-            isMissionFinishedFlowable = mDrone.getMission()
-                    .isMissionFinished()
-                    .toFlowable()
-                    .distinctUntilChanged()
-                    .subscribeOn(Schedulers.io());
-
-            mIsMissionFinishedLiveData = LiveDataReactiveStreams.fromPublisher(isMissionFinishedFlowable);
+            mIsMissionFinishedLiveData = LiveDataReactiveStreams.fromPublisher(mMissionFinishedStream);
         }
 
         return mIsMissionFinishedLiveData;
@@ -602,13 +1642,7 @@ public class  DroneRepository {
             return null;
         }
         if (mFlightModeLiveData == null) {
-            Flowable<Telemetry.FlightMode> flightModeFlowable;
-
-            flightModeFlowable = mDrone.getTelemetry().getFlightMode()
-                    .distinctUntilChanged()
-                    .subscribeOn(Schedulers.io());
-
-            mFlightModeLiveData = LiveDataReactiveStreams.fromPublisher(flightModeFlowable);
+            mFlightModeLiveData = LiveDataReactiveStreams.fromPublisher(mFlightModeStream);
         }
 
         return mFlightModeLiveData;
@@ -620,13 +1654,7 @@ public class  DroneRepository {
             return null;
         }
         if (mPositionLiveData == null) {
-            Flowable<Telemetry.Position> positionFlowable;
-
-            positionFlowable = mDrone.getTelemetry().getPosition()
-                    .throttleLast(THROTTLE_TIME_MILLIS, TimeUnit.MILLISECONDS)
-                    .subscribeOn(Schedulers.io());
-
-            mPositionLiveData = LiveDataReactiveStreams.fromPublisher(positionFlowable);
+            mPositionLiveData = LiveDataReactiveStreams.fromPublisher(mPositionStream);
         }
 
         return mPositionLiveData;
@@ -638,12 +1666,7 @@ public class  DroneRepository {
             return null;
         }
         if (mBatteryLiveData == null) {
-            Flowable<Telemetry.Battery> batteryFlowable;
-            batteryFlowable = mDrone.getTelemetry().getBattery()
-                    .throttleLast(THROTTLE_TIME_MILLIS, TimeUnit.MILLISECONDS)
-                    .subscribeOn(Schedulers.io());
-
-            mBatteryLiveData = LiveDataReactiveStreams.fromPublisher(batteryFlowable);
+            mBatteryLiveData = LiveDataReactiveStreams.fromPublisher(mBatteryStream);
         }
 
         return mBatteryLiveData;
@@ -655,19 +1678,13 @@ public class  DroneRepository {
             return null;
         }
         if (mSpeedLiveData == null) {
-            Flowable<Speed> speedFlowable;
-
-            speedFlowable = mDrone.getTelemetry().getPositionVelocityNed()
-                    .throttleLast(THROTTLE_TIME_MILLIS, TimeUnit.MILLISECONDS)
+            mSpeedLiveData = LiveDataReactiveStreams.fromPublisher(mVelocityStream
                     .map(positionVelocityNed -> {
                         float hspeed = (float) Math.hypot(positionVelocityNed.getVelocity().getNorthMS(),
                                 positionVelocityNed.getVelocity().getEastMS());
                         float vspeed = Math.abs(positionVelocityNed.getVelocity().getDownMS());
                         return new Speed(hspeed, vspeed);
-                    })
-                    .subscribeOn(Schedulers.io());
-
-            mSpeedLiveData = LiveDataReactiveStreams.fromPublisher(speedFlowable);
+                    }));
         }
 
         return mSpeedLiveData;
@@ -679,12 +1696,7 @@ public class  DroneRepository {
             return null;
         }
         if (mAttitudeLiveData == null) {
-            Flowable<Telemetry.EulerAngle> attitudeFlowable;
-            attitudeFlowable = mDrone.getTelemetry().getAttitudeEuler()
-                    .throttleLast(THROTTLE_TIME_MILLIS, TimeUnit.MILLISECONDS)
-                    .subscribeOn(Schedulers.io());
-
-            mAttitudeLiveData = LiveDataReactiveStreams.fromPublisher(attitudeFlowable);
+            mAttitudeLiveData = LiveDataReactiveStreams.fromPublisher(mAttitudeStream);
         }
 
         return mAttitudeLiveData;
@@ -696,12 +1708,7 @@ public class  DroneRepository {
             return null;
         }
         if (mRcStatusLiveData == null) {
-            Flowable<Telemetry.RcStatus> rcStatusFlowable;
-            rcStatusFlowable = mDrone.getTelemetry().getRcStatus()
-                    .throttleLast(THROTTLE_TIME_MILLIS, TimeUnit.MILLISECONDS)
-                    .subscribeOn(Schedulers.io());
-
-            mRcStatusLiveData = LiveDataReactiveStreams.fromPublisher(rcStatusFlowable);
+            mRcStatusLiveData = LiveDataReactiveStreams.fromPublisher(mRcStatusStream);
         }
 
         return mRcStatusLiveData;
@@ -713,12 +1720,7 @@ public class  DroneRepository {
             return null;
         }
         if (mDroneConnectionStateLiveData == null) {
-            Flowable<Core.ConnectionState> droneConnectionStateFlowable;
-            droneConnectionStateFlowable = mDrone.getCore().getConnectionState()
-                    .distinctUntilChanged()
-                    .subscribeOn(Schedulers.io());
-
-            mDroneConnectionStateLiveData = LiveDataReactiveStreams.fromPublisher(droneConnectionStateFlowable);
+            mDroneConnectionStateLiveData = LiveDataReactiveStreams.fromPublisher(mConnectionStateStream);
         }
 
         return mDroneConnectionStateLiveData;
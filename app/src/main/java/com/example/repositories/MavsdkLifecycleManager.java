@@ -0,0 +1,218 @@
+package com.example.repositories;
+
+import android.os.Debug;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import io.mavsdk.System;
+import io.mavsdk.mavsdkserver.MavsdkServer;
+
+/**
+ * Owns the native MavsdkServer instances of the process, exactly one per vehicle link.
+ *
+ * A link is identified by its system address. As long as the bridge behind an address is
+ * rebuilt on the same TCP port, the server reconnects to it by itself, so a reconnect just
+ * acquires the session that is already running instead of starting another server.
+ *
+ * Starting a server blocks until it is up, so it happens outside the manager's lock: the first
+ * caller for an address starts it, later callers for the same address wait for that start, and
+ * callers for other addresses don't wait at all.
+ */
+public final class MavsdkLifecycleManager {
+
+    private static final String TAG = "LOG_" + MavsdkLifecycleManager.class.getSimpleName();
+    private static final String MAVSDK_SERVER_IP = "127.0.0.1";
+
+    private static final MavsdkLifecycleManager INSTANCE = new MavsdkLifecycleManager();
+
+    private final Map<String, Session> mSessions = new HashMap<>(); // Synchronized by 'this'
+    private int mServersStarted; // Synchronized by 'this'
+
+    public static final class Session {
+        private final String mSystemAddress;
+        private final FutureTask<Void> mStart = new FutureTask<>(this::startServer, null);
+        // Written by mStart, read once it is done
+        private MavsdkServer mServer;
+        private System mSystem;
+        private int mServerPort;
+        private int mReferences; // Synchronized by the manager
+
+        private Session(String systemAddress) {
+            mSystemAddress = systemAddress;
+        }
+
+        private void startServer() {
+            mServer = new MavsdkServer();
+            mServerPort = mServer.run(mSystemAddress);
+            mSystem = new System(MAVSDK_SERVER_IP, mServerPort);
+        }
+
+        public String getSystemAddress() {
+            return mSystemAddress;
+        }
+
+        public System getSystem() {
+            return mSystem;
+        }
+
+        /**
+         * @return the gRPC port of the server
+         */
+        public int getServerPort() {
+            return mServerPort;
+        }
+    }
+
+    public static final class Stats {
+        private final int mResidentServers;
+        private final int mServersStarted;
+        private final long mNativeHeapBytes;
+        private final long mJavaHeapBytes;
+        private final int mThreadCount;
+
+        Stats(int residentServers, int serversStarted, long nativeHeapBytes, long javaHeapBytes, int threadCount) {
+            mResidentServers = residentServers;
+            mServersStarted = serversStarted;
+            mNativeHeapBytes = nativeHeapBytes;
+            mJavaHeapBytes = javaHeapBytes;
+            mThreadCount = threadCount;
+        }
+
+        public int getResidentServers() {
+            return mResidentServers;
+        }
+
+        /**
+         * @return servers started since process start; more than resident ones means restarts
+         */
+        public int getServersStarted() {
+            return mServersStarted;
+        }
+
+        /**
+         * @return native heap in use, where MavsdkServer allocates
+         */
+        public long getNativeHeapBytes() {
+            return mNativeHeapBytes;
+        }
+
+        public long getJavaHeapBytes() {
+            return mJavaHeapBytes;
+        }
+
+        public int getThreadCount() {
+            return mThreadCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "servers=%d (started %d) native=%.1fMB java=%.1fMB threads=%d",
+                    mResidentServers, mServersStarted,
+                    mNativeHeapBytes / 1048576f, mJavaHeapBytes / 1048576f, mThreadCount);
+        }
+    }
+
+    private MavsdkLifecycleManager() {
+    }
+
+    public static MavsdkLifecycleManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the running session for systemAddress, starting a server only if there is none.
+     * Every call must be paired with {@link #release(Session)}.
+     *
+     * @throws IllegalStateException if the server could not be started
+     */
+    public Session acquire(String systemAddress) {
+        Session session;
+        boolean start;
+        synchronized (this) {
+            session = mSessions.get(systemAddress);
+            start = session == null;
+            if (start) {
+                session = new Session(systemAddress);
+                mSessions.put(systemAddress, session);
+            }
+            session.mReferences++;
+        }
+        if (start) {
+            session.mStart.run();
+        }
+        try {
+            awaitStart(session);
+        } catch (IllegalStateException e) {
+            synchronized (this) {
+                mSessions.remove(systemAddress, session);
+            }
+            throw e;
+        }
+        if (start) {
+            synchronized (this) {
+                mServersStarted++;
+            }
+            Log.i(TAG, "Started MavsdkServer for " + systemAddress + " on port " + session.mServerPort);
+        }
+        return session;
+    }
+
+    private static void awaitStart(Session session) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    session.mStart.get();
+                    return;
+                } catch (InterruptedException e) {
+                    // the server starts anyway, and the caller needs it
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("MavsdkServer for " + session.mSystemAddress
+                            + " not started", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the server and disposes its System once the last holder releases it.
+     */
+    public synchronized void release(Session session) {
+        if (--session.mReferences > 0) {
+            return;
+        }
+        // only this session, the address may already belong to a newer one
+        mSessions.remove(session.getSystemAddress(), session);
+        session.mSystem.dispose();
+        session.mServer.stop();
+        Log.i(TAG, "Stopped MavsdkServer for " + session.getSystemAddress());
+    }
+
+    public synchronized int getResidentServerCount() {
+        return mSessions.size();
+    }
+
+    public Stats getStats() {
+        Runtime runtime = Runtime.getRuntime();
+        int residentServers;
+        int serversStarted;
+        synchronized (this) {
+            residentServers = mSessions.size();
+            serversStarted = mServersStarted;
+        }
+        return new Stats(residentServers, serversStarted,
+                Debug.getNativeHeapAllocatedSize(),
+                runtime.totalMemory() - runtime.freeMemory(),
+                Thread.activeCount());
+    }
+}
@@ -0,0 +1,135 @@
+package com.example.service;
+
+import android.os.Bundle;
+
+import com.example.bridge.BridgeRegistry;
+import com.example.bridge.SerialTcpBridge;
+import com.example.utils.LatencyHistogram;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Stats of the bridge process as they cross the binder: its pauses and, per vehicle, frames,
+ * CRC errors and downlink latency. Flat arrays in a Bundle keep the parcel small.
+ */
+public final class BridgeProcessStats {
+
+    private static final String KEY_PAUSE_COUNT = "pause_count";
+    private static final String KEY_PAUSE_P50 = "pause_p50";
+    private static final String KEY_PAUSE_P99 = "pause_p99";
+    private static final String KEY_PAUSE_MAX = "pause_max";
+    private static final String KEY_VEHICLE_IDS = "vehicle_ids";
+    private static final String KEY_FRAMES = "frames";
+    private static final String KEY_CRC_ERRORS = "crc_errors";
+    private static final String KEY_DOWNLINK_P99 = "downlink_p99";
+
+    private final long mPauseCount;
+    private final long mPauseP50Micros;
+    private final long mPauseP99Micros;
+    private final long mPauseMaxMicros;
+    private final String[] mVehicleIds;
+    private final long[] mFrames;
+    private final long[] mCrcErrors;
+    private final long[] mDownlinkP99Micros;
+
+    private BridgeProcessStats(Bundle bundle) {
+        mPauseCount = bundle.getLong(KEY_PAUSE_COUNT);
+        mPauseP50Micros = bundle.getLong(KEY_PAUSE_P50);
+        mPauseP99Micros = bundle.getLong(KEY_PAUSE_P99);
+        mPauseMaxMicros = bundle.getLong(KEY_PAUSE_MAX);
+        String[] ids = bundle.getStringArray(KEY_VEHICLE_IDS);
+        mVehicleIds = ids != null ? ids : new String[0];
+        mFrames = orEmpty(bundle.getLongArray(KEY_FRAMES), mVehicleIds.length);
+        mCrcErrors = orEmpty(bundle.getLongArray(KEY_CRC_ERRORS), mVehicleIds.length);
+        mDownlinkP99Micros = orEmpty(bundle.getLongArray(KEY_DOWNLINK_P99), mVehicleIds.length);
+    }
+
+    static BridgeProcessStats fromBundle(Bundle bundle) {
+        return new BridgeProcessStats(bundle);
+    }
+
+    /**
+     * @param registry null when nothing is bridged
+     */
+    static Bundle toBundle(LatencyHistogram.Snapshot pauses, BridgeRegistry registry) {
+        Bundle bundle = new Bundle();
+        bundle.putLong(KEY_PAUSE_COUNT, pauses.getCount());
+        bundle.putLong(KEY_PAUSE_P50, pauses.getP50Micros());
+        bundle.putLong(KEY_PAUSE_P99, pauses.getP99Micros());
+        bundle.putLong(KEY_PAUSE_MAX, pauses.getMaxMicros());
+        if (registry == null)
+            return bundle;
+
+        List<BridgeRegistry.Vehicle> vehicles = registry.getVehicles();
+        String[] ids = new String[vehicles.size()];
+        long[] frames = new long[ids.length];
+        long[] crcErrors = new long[ids.length];
+        long[] downlinkP99 = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            SerialTcpBridge bridge = vehicles.get(i).getBridge();
+            ids[i] = vehicles.get(i).getId();
+            for (SerialTcpBridge.LinkStats link : bridge.getLinkStats()) {
+                frames[i] += link.getFrames();
+                crcErrors[i] += link.getCrcErrors();
+            }
+            downlinkP99[i] = bridge.getLatencyMonitor().snapshot().getDownlink().getP99Micros();
+        }
+        bundle.putStringArray(KEY_VEHICLE_IDS, ids);
+        bundle.putLongArray(KEY_FRAMES, frames);
+        bundle.putLongArray(KEY_CRC_ERRORS, crcErrors);
+        bundle.putLongArray(KEY_DOWNLINK_P99, downlinkP99);
+        return bundle;
+    }
+
+    private static long[] orEmpty(long[] values, int length) {
+        return values != null && values.length == length ? values : new long[length];
+    }
+
+    /**
+     * @return sleeps the bridge process' pause monitor took, see {@link com.example.utils.PauseMonitor}
+     */
+    public long getPauseCount() {
+        return mPauseCount;
+    }
+
+    public long getPauseP50Micros() {
+        return mPauseP50Micros;
+    }
+
+    public long getPauseP99Micros() {
+        return mPauseP99Micros;
+    }
+
+    public long getPauseMaxMicros() {
+        return mPauseMaxMicros;
+    }
+
+    public String[] getVehicleIds() {
+        return mVehicleIds.clone();
+    }
+
+    public long getFrames(int vehicle) {
+        return mFrames[vehicle];
+    }
+
+    public long getCrcErrors(int vehicle) {
+        return mCrcErrors[vehicle];
+    }
+
+    public long getDownlinkP99Micros(int vehicle) {
+        return mDownlinkP99Micros[vehicle];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "pauses p50 %d us, p99 %d us, max %d us over %d samples",
+                mPauseP50Micros, mPauseP99Micros, mPauseMaxMicros, mPauseCount));
+        for (int i = 0; i < mVehicleIds.length; i++) {
+            builder.append(String.format(Locale.US, "\n%s: %d frames, %d crc errors, downlink p99 %d us",
+                    mVehicleIds[i], mFrames[i], mCrcErrors[i], mDownlinkP99Micros[i]));
+        }
+        return builder.toString();
+    }
+}
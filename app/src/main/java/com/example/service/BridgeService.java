@@ -0,0 +1,243 @@
+package com.example.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.usb.UsbManager;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.bridge.BridgeRegistry;
+import com.example.bridge.MessageRouter;
+import com.example.googlemapmavsdk.R;
+import com.example.io.UsbPortOpener;
+import com.example.utils.PauseMonitor;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the USB serial bridges in a process of their own (android:process=":bridge"), away
+ * from the heap of the map UI and MAVSDK's streams, so their garbage collections don't pause
+ * forwarding.
+ *
+ * Nothing but control and stats cross the process boundary: MavsdkServer in the UI process
+ * connects to the bridge TCP ports as before. The UI talks to the service through a
+ * {@link Messenger}, see {@link BridgeServiceClient}; USB permission is per app, so the UI
+ * asks for it and the service opens the ports.
+ */
+public class BridgeService extends Service {
+
+    private static final String TAG = "LOG_" + BridgeService.class.getSimpleName();
+
+    // client -> service
+    static final int MSG_CONNECT = 1; // arg1 = TCP port of the first vehicle
+    static final int MSG_DISCONNECT = 2;
+    static final int MSG_GET_STATS = 3;
+    // service -> client
+    static final int MSG_VEHICLE = 10;
+    static final int MSG_FIRST_HEARTBEAT = 11;
+    static final int MSG_ERROR = 12;
+    static final int MSG_STATS = 13;
+
+    static final String KEY_VEHICLE_ID = "vehicle_id";
+    static final String KEY_TCP_PORT = "tcp_port";
+    static final String KEY_ERROR = "error";
+
+    private static final String CHANNEL_ID = "bridge";
+    private static final int NOTIFICATION_ID = 1;
+    // the UI gives up on a first heartbeat only when told so
+    private static final long FIRST_HEARTBEAT_TIMEOUT_MILLIS = 15_000;
+
+    private HandlerThread mWorkerThread;
+    private Handler mWorker;
+    private Messenger mMessenger;
+    private final PauseMonitor mPauseMonitor = new PauseMonitor();
+    // Worker thread only
+    private BridgeRegistry mRegistry;
+    private Messenger mClient;
+    private final Map<String, MessageRouter.FrameListener> mAwaitingHeartbeat = new HashMap<>();
+    private final Runnable mHeartbeatTimeout = this::onHeartbeatTimeout;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mWorkerThread = new HandlerThread(getClass().getSimpleName());
+        mWorkerThread.start();
+        mWorker = new Handler(mWorkerThread.getLooper(), this::handleMessage);
+        mMessenger = new Messenger(mWorker);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        startForeground(NOTIFICATION_ID, buildNotification());
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mMessenger.getBinder();
+    }
+
+    @Override
+    public void onDestroy() {
+        mWorker.post(this::disconnect);
+        mWorkerThread.quitSafely();
+        super.onDestroy();
+    }
+
+    private Notification buildNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                getString(R.string.str_bridge_channel), NotificationManager.IMPORTANCE_LOW));
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setContentTitle(getString(R.string.str_bridge_running))
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setOngoing(true)
+                .build();
+    }
+
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MSG_CONNECT:
+                mClient = msg.replyTo;
+                connect(msg.arg1);
+                return true;
+            case MSG_DISCONNECT:
+                disconnect();
+                return true;
+            case MSG_GET_STATS:
+                reply(msg.replyTo, MSG_STATS, BridgeProcessStats.toBundle(mPauseMonitor.snapshot(), mRegistry));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void connect(int basePort) {
+        disconnect();
+        mRegistry = new BridgeRegistry(basePort);
+        // samples on the bridges' pool, within its thread limit
+        mPauseMonitor.start(mRegistry.getHelperExecutor());
+        UsbManager usbManager = (UsbManager) getSystemService(Context.USB_SERVICE);
+        List<UsbPortOpener> openers = UsbPortOpener.probe(this, usbManager, BridgeRegistry.DEFAULT_MAX_VEHICLES);
+        if (openers.isEmpty()) {
+            sendError(getString(R.string.str_usb_device_not_found));
+            return;
+        }
+        // only reported if no port at all could be bridged
+        String error = getString(R.string.str_usb_permission_not_granted);
+        for (UsbPortOpener opener : openers) {
+            if (!usbManager.hasPermission(opener.getDevice())) {
+                Log.w(TAG, opener.getId() + " has no USB permission");
+                continue;
+            }
+            BridgeRegistry.Vehicle vehicle = mRegistry.add(opener.getId(), opener);
+            try {
+                mRegistry.start(vehicle, opener.open());
+            } catch (Exception e) {
+                Log.w(TAG, opener.getId() + " not bridged: " + e.getMessage());
+                mRegistry.remove(opener.getId());
+                error = opener.getId() + ": " + e.getMessage();
+                continue;
+            }
+            Bundle data = new Bundle();
+            data.putString(KEY_VEHICLE_ID, vehicle.getId());
+            data.putInt(KEY_TCP_PORT, vehicle.getBridge().getTcpPort());
+            reply(mClient, MSG_VEHICLE, data);
+            awaitFirstHeartbeat(vehicle);
+        }
+        if (mRegistry.size() == 0) {
+            sendError(error);
+        } else {
+            mWorker.postDelayed(mHeartbeatTimeout, FIRST_HEARTBEAT_TIMEOUT_MILLIS);
+        }
+    }
+
+    /**
+     * The router tells on its link thread when the first HEARTBEAT came in, the reply goes out
+     * from the worker.
+     */
+    private void awaitFirstHeartbeat(BridgeRegistry.Vehicle vehicle) {
+        String id = vehicle.getId();
+        MessageRouter router = vehicle.getBridge().getMessageRouter();
+        AtomicBoolean seen = new AtomicBoolean();
+        MessageRouter.FrameListener listener = (frame, originNanos) -> {
+            if (router.getLastHeartbeatNanos() != 0 && seen.compareAndSet(false, true)) {
+                mWorker.post(() -> onFirstHeartbeat(id, router));
+            }
+        };
+        mAwaitingHeartbeat.put(id, listener);
+        router.addFrameListener(listener);
+        // the link has been reading since start()
+        if (router.getLastHeartbeatNanos() != 0 && seen.compareAndSet(false, true)) {
+            mWorker.post(() -> onFirstHeartbeat(id, router));
+        }
+    }
+
+    private void onFirstHeartbeat(String id, MessageRouter router) {
+        MessageRouter.FrameListener listener = mAwaitingHeartbeat.remove(id);
+        if (listener == null) {
+            // disconnected or timed out meanwhile
+            return;
+        }
+        router.removeFrameListener(listener);
+        if (mAwaitingHeartbeat.isEmpty()) {
+            mWorker.removeCallbacks(mHeartbeatTimeout);
+        }
+        Bundle data = new Bundle();
+        data.putString(KEY_VEHICLE_ID, id);
+        reply(mClient, MSG_FIRST_HEARTBEAT, data);
+    }
+
+    private void onHeartbeatTimeout() {
+        for (Map.Entry<String, MessageRouter.FrameListener> awaiting : mAwaitingHeartbeat.entrySet()) {
+            BridgeRegistry.Vehicle vehicle = mRegistry != null ? mRegistry.get(awaiting.getKey()) : null;
+            if (vehicle != null) {
+                vehicle.getBridge().getMessageRouter().removeFrameListener(awaiting.getValue());
+            }
+            Log.w(TAG, awaiting.getKey() + ": no heartbeat in " + FIRST_HEARTBEAT_TIMEOUT_MILLIS + " ms");
+            sendError(awaiting.getKey() + ": no heartbeat");
+        }
+        mAwaitingHeartbeat.clear();
+    }
+
+    private void disconnect() {
+        mWorker.removeCallbacks(mHeartbeatTimeout);
+        mAwaitingHeartbeat.clear();
+        mPauseMonitor.stop();
+        if (mRegistry != null) {
+            mRegistry.shutdown();
+            mRegistry = null;
+        }
+    }
+
+    private void sendError(String error) {
+        Bundle data = new Bundle();
+        data.putString(KEY_ERROR, error);
+        reply(mClient, MSG_ERROR, data);
+    }
+
+    private static void reply(Messenger client, int what, Bundle data) {
+        if (client == null)
+            return;
+        Message msg = Message.obtain(null, what);
+        msg.setData(data);
+        try {
+            client.send(msg);
+        } catch (RemoteException e) {
+            Log.w(TAG, "Client gone: " + e.getMessage());
+        }
+    }
+}
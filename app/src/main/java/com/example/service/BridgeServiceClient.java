@@ -0,0 +1,155 @@
+package com.example.service;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UI side of {@link BridgeService}. Starts the service in the foreground, binds to it and
+ * turns its messages into {@link Listener} calls on the main thread.
+ */
+public class BridgeServiceClient {
+
+    private static final String TAG = "LOG_" + BridgeServiceClient.class.getSimpleName();
+
+    public interface Listener {
+        /**
+         * A vehicle is bridged; MavsdkServer can connect to tcp://:tcpPort.
+         */
+        void onVehicle(String vehicleId, int tcpPort);
+
+        void onFirstHeartbeat(String vehicleId);
+
+        void onError(String error);
+    }
+
+    public interface StatsCallback {
+        void onStats(BridgeProcessStats stats);
+    }
+
+    private final Context mContext;
+    private final Listener mListener;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper(), this::handleMessage);
+    private final Messenger mReplyTo = new Messenger(mMainHandler);
+    private volatile CountDownLatch mBound = new CountDownLatch(1);
+    private volatile Messenger mService;
+    private StatsCallback mStatsCallback; // Main thread only
+    private boolean mBinding; // Synchronized by 'this'
+
+    private final ServiceConnection mConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            mService = new Messenger(service);
+            mBound.countDown();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            // the bridge process died, its TCP ports are gone with it
+            mService = null;
+            mListener.onError("Bridge process stopped");
+        }
+    };
+
+    public BridgeServiceClient(Context context, Listener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+    }
+
+    /**
+     * Starts and binds the service, waiting at most timeoutMillis for it to come up.
+     */
+    public void bind(long timeoutMillis) throws IOException, InterruptedException {
+        synchronized (this) {
+            if (!mBinding) {
+                mBound = new CountDownLatch(1);
+                Intent intent = new Intent(mContext, BridgeService.class);
+                mContext.startForegroundService(intent);
+                if (!mContext.bindService(intent, mConnection, Context.BIND_AUTO_CREATE | Context.BIND_IMPORTANT))
+                    throw new IOException("Bridge service not found");
+                mBinding = true;
+            }
+        }
+        if (!mBound.await(timeoutMillis, TimeUnit.MILLISECONDS))
+            throw new IOException("Bridge service did not start");
+    }
+
+    /**
+     * Unbinds and stops the service, which closes every bridge.
+     */
+    public synchronized void unbind() {
+        if (!mBinding)
+            return;
+        mBinding = false;
+        mContext.unbindService(mConnection);
+        mContext.stopService(new Intent(mContext, BridgeService.class));
+        mService = null;
+    }
+
+    /**
+     * Bridges every attached USB serial port with permission, the first one on basePort.
+     */
+    public void connect(int basePort) throws IOException {
+        send(Message.obtain(null, BridgeService.MSG_CONNECT, basePort, 0));
+    }
+
+    public void disconnect() throws IOException {
+        send(Message.obtain(null, BridgeService.MSG_DISCONNECT));
+    }
+
+    /**
+     * Asks for the stats of the bridge process; callback runs on the main thread.
+     */
+    public void requestStats(StatsCallback callback) throws IOException {
+        mMainHandler.post(() -> mStatsCallback = callback);
+        send(Message.obtain(null, BridgeService.MSG_GET_STATS));
+    }
+
+    private void send(Message msg) throws IOException {
+        Messenger service = mService;
+        if (service == null)
+            throw new IOException("Bridge service not bound");
+        msg.replyTo = mReplyTo;
+        try {
+            service.send(msg);
+        } catch (RemoteException e) {
+            throw new IOException("Bridge service gone", e);
+        }
+    }
+
+    private boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case BridgeService.MSG_VEHICLE:
+                mListener.onVehicle(msg.getData().getString(BridgeService.KEY_VEHICLE_ID),
+                        msg.getData().getInt(BridgeService.KEY_TCP_PORT));
+                return true;
+            case BridgeService.MSG_FIRST_HEARTBEAT:
+                mListener.onFirstHeartbeat(msg.getData().getString(BridgeService.KEY_VEHICLE_ID));
+                return true;
+            case BridgeService.MSG_ERROR:
+                mListener.onError(msg.getData().getString(BridgeService.KEY_ERROR));
+                return true;
+            case BridgeService.MSG_STATS:
+                StatsCallback callback = mStatsCallback;
+                mStatsCallback = null;
+                if (callback != null)
+                    callback.onStats(BridgeProcessStats.fromBundle(msg.getData()));
+                return true;
+            default:
+                Log.w(TAG, "Unknown message " + msg.what);
+                return false;
+        }
+    }
+}
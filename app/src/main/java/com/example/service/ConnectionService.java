@@ -0,0 +1,232 @@
+package com.example.service;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.net.wifi.WifiManager;
+import android.os.Binder;
+import android.os.IBinder;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.lifecycle.Observer;
+
+import com.example.bridge.BridgeLatencyMonitor;
+import com.example.bridge.SerialTcpBridge;
+import com.example.googlemapmavsdk.R;
+import com.example.repositories.DroneRepository;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Hosts the connection stack, {@link DroneRepository} with its USB ports, bridges, MavsdkServer
+ * and System, so the link outlives the activity: screen off, another app in front or the
+ * activity recreated. The activity binds to it for the repository.
+ *
+ * The service goes to the foreground as soon as a vehicle is bridged and back when the last
+ * one is gone; only then can it be stopped. While in the foreground it holds the locks of its
+ * {@link WakeLockPolicy}, and the notification can disconnect.
+ */
+public class ConnectionService extends Service {
+
+    private static final String TAG = "LOG_" + ConnectionService.class.getSimpleName();
+
+    private static final String ACTION_FOREGROUND = "com.example.service.action.FOREGROUND";
+    private static final String ACTION_DISCONNECT = "com.example.service.action.DISCONNECT";
+    private static final String CHANNEL_ID = "connection";
+    private static final int NOTIFICATION_ID = 2;
+
+    public enum WakeLockPolicy {
+        /**
+         * The CPU may sleep with the screen off, stalling the bridge
+         */
+        NONE,
+        /**
+         * Keeps the CPU awake while connected
+         */
+        CPU,
+        /**
+         * Also keeps WiFi out of power save while connected, for network links
+         */
+        CPU_AND_WIFI
+    }
+
+    public class LocalBinder extends Binder {
+        public ConnectionService getService() {
+            return ConnectionService.this;
+        }
+    }
+
+    private final IBinder mBinder = new LocalBinder();
+    private DroneRepository mDroneRepository;
+    private final Observer<List<String>> mVehicleObserver = this::onVehiclesChanged;
+    private WakeLockPolicy mWakeLockPolicy = WakeLockPolicy.CPU; // Main thread only
+    private PowerManager.WakeLock mWakeLock;
+    private WifiManager.WifiLock mWifiLock;
+    private boolean mForeground; // Main thread only
+
+    // Main thread only
+    private boolean mUiVisible;
+    private long mUiPhaseStartMillis;
+    private long mUiPhaseStartFrames;
+    private String mVisibleStats = "not measured";
+    private String mHiddenStats = "not measured";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mDroneRepository = new DroneRepository(getApplication());
+        mDroneRepository.getVehicleIds().observeForever(mVehicleObserver);
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        mWakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, getPackageName() + ":link");
+        mWakeLock.setReferenceCounted(false);
+        WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        mWifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL_HIGH_PERF, getPackageName() + ":link");
+        mWifiLock.setReferenceCounted(false);
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_DISCONNECT.equals(action)) {
+            mDroneRepository.disconnect();
+        } else if (ACTION_FOREGROUND.equals(action)) {
+            startForeground(NOTIFICATION_ID, buildNotification());
+        }
+        // the repository's state is gone with the process, a restart would not bring the link back
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return mBinder;
+    }
+
+    @Override
+    public void onDestroy() {
+        mDroneRepository.getVehicleIds().removeObserver(mVehicleObserver);
+        mDroneRepository.close();
+        releaseLocks();
+        super.onDestroy();
+    }
+
+    public DroneRepository getDroneRepository() {
+        return mDroneRepository;
+    }
+
+    public void setWakeLockPolicy(WakeLockPolicy policy) {
+        mWakeLockPolicy = policy;
+        if (mForeground) {
+            acquireLocks();
+        }
+    }
+
+    public WakeLockPolicy getWakeLockPolicy() {
+        return mWakeLockPolicy;
+    }
+
+    /**
+     * Called by the activity on start and stop. Ends a measuring period: frames per second and
+     * bridge latency of the selected vehicle while the UI was visible or hidden, to check the
+     * link does not suffer in the background.
+     */
+    public void setUiVisible(boolean visible) {
+        long now = SystemClock.elapsedRealtime();
+        long frames = countFrames();
+        if (mUiPhaseStartMillis != 0) {
+            BridgeLatencyMonitor.Snapshot latency = mDroneRepository.getLatencySnapshot();
+            long millis = Math.max(1, now - mUiPhaseStartMillis);
+            String stats = String.format(Locale.US, "%d s, %.1f frames/s, %s", millis / 1000,
+                    Math.max(0, frames - mUiPhaseStartFrames) * 1000.0 / millis, latency != null ? latency : "no bridge");
+            if (mUiVisible) {
+                mVisibleStats = stats;
+            } else {
+                mHiddenStats = stats;
+            }
+            Log.i(TAG, (mUiVisible ? "UI visible " : "UI hidden ") + stats);
+        }
+        mDroneRepository.resetLatency();
+        mUiVisible = visible;
+        mUiPhaseStartMillis = now;
+        mUiPhaseStartFrames = frames;
+    }
+
+    /**
+     * @return forwarding of the last period with the UI visible and the last one with it hidden
+     */
+    public String getVisibilityStats() {
+        return "visible: " + mVisibleStats + "\nhidden: " + mHiddenStats;
+    }
+
+    private long countFrames() {
+        long frames = 0;
+        for (SerialTcpBridge.LinkStats link : mDroneRepository.getLinkStats()) {
+            frames += link.getFrames();
+        }
+        return frames;
+    }
+
+    private void onVehiclesChanged(List<String> vehicleIds) {
+        boolean connected = vehicleIds != null && !vehicleIds.isEmpty();
+        if (connected && !mForeground) {
+            mForeground = true;
+            // started, not only bound, so the link survives the activity unbinding
+            startForegroundService(new Intent(this, ConnectionService.class).setAction(ACTION_FOREGROUND));
+            acquireLocks();
+        } else if (!connected && mForeground) {
+            mForeground = false;
+            releaseLocks();
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            // keeps running while the activity is bound
+            stopSelf();
+        }
+    }
+
+    private void acquireLocks() {
+        // held until disconnect however long the flight, hence no timeout
+        if (mWakeLockPolicy != WakeLockPolicy.NONE) {
+            mWakeLock.acquire();
+        } else if (mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+        if (mWakeLockPolicy == WakeLockPolicy.CPU_AND_WIFI) {
+            mWifiLock.acquire();
+        } else if (mWifiLock.isHeld()) {
+            mWifiLock.release();
+        }
+        Log.i(TAG, "Wake lock policy " + mWakeLockPolicy);
+    }
+
+    private void releaseLocks() {
+        if (mWakeLock.isHeld()) {
+            mWakeLock.release();
+        }
+        if (mWifiLock.isHeld()) {
+            mWifiLock.release();
+        }
+    }
+
+    private Notification buildNotification() {
+        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+        manager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+                getString(R.string.str_connection_channel), NotificationManager.IMPORTANCE_LOW));
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                getPackageManager().getLaunchIntentForPackage(getPackageName()), PendingIntent.FLAG_IMMUTABLE);
+        PendingIntent disconnect = PendingIntent.getService(this, 0,
+                new Intent(this, ConnectionService.class).setAction(ACTION_DISCONNECT), PendingIntent.FLAG_IMMUTABLE);
+        return new Notification.Builder(this, CHANNEL_ID)
+                .setContentTitle(getString(R.string.str_connection_running))
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentIntent(open)
+                .addAction(new Notification.Action.Builder(null, getString(R.string.str_connection_disconnect), disconnect).build())
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.telemetry;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.message.Attitude;
+import com.example.mavlink.message.GlobalPositionInt;
+import com.example.mavlink.message.Heartbeat;
+import com.example.mavlink.message.SysStatus;
+import com.example.mavlink.message.VfrHud;
+
+/**
+ * Vehicle telemetry decoded straight from the bridge's frames, bypassing MavsdkServer and gRPC.
+ *
+ * Registered as a {@link MessageRouter.FrameListener}, it decodes a handful of messages of the
+ * autopilot in place with flyweights and keeps the latest values as primitives, so the hot
+ * path allocates nothing. Values of one message are written together, but other threads may
+ * see them half updated.
+ */
+public class DirectTelemetry implements MessageRouter.FrameListener {
+
+    public static final int MAV_COMP_ID_AUTOPILOT1 = 1;
+
+    public interface Listener {
+        /**
+         * Called on the link thread right after a message was decoded; read the getters, don't block.
+         */
+        void onUpdate(DirectTelemetry telemetry, int msgId, long originNanos);
+    }
+
+    private final Heartbeat mHeartbeat = new Heartbeat();
+    private final SysStatus mSysStatus = new SysStatus();
+    private final Attitude mAttitude = new Attitude();
+    private final GlobalPositionInt mPosition = new GlobalPositionInt();
+    private final VfrHud mVfrHud = new VfrHud();
+
+    private volatile Listener mListener;
+
+    private volatile int mLatE7;
+    private volatile int mLonE7;
+    private volatile int mAltMm;
+    private volatile int mRelativeAltMm;
+    private volatile int mHeadingCdeg;
+    private volatile long mPositionNanos;
+    private volatile long mPositionTimeBootMs;
+
+    private volatile float mRoll;
+    private volatile float mPitch;
+    private volatile float mYaw;
+
+    private volatile boolean mArmed;
+    private volatile long mCustomMode;
+    private volatile int mSystemStatus;
+
+    private volatile int mVoltageMv;
+    private volatile int mBatteryRemaining = -1;
+
+    private volatile float mGroundspeed;
+    private volatile float mClimb;
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    @Override
+    public void onFrame(MavlinkFrameParser frame, long originNanos) {
+        if (frame.compId() != MAV_COMP_ID_AUTOPILOT1) {
+            return;
+        }
+        int msgId = frame.msgId();
+        switch (msgId) {
+            case GlobalPositionInt.MSG_ID:
+                mPosition.wrap(frame);
+                mLatE7 = mPosition.latE7();
+                mLonE7 = mPosition.lonE7();
+                mAltMm = mPosition.altMm();
+                mRelativeAltMm = mPosition.relativeAltMm();
+                mHeadingCdeg = mPosition.hdg();
+                mPositionNanos = originNanos;
+                mPositionTimeBootMs = mPosition.timeBootMs();
+                break;
+            case Attitude.MSG_ID:
+                mAttitude.wrap(frame);
+                mRoll = mAttitude.roll();
+                mPitch = mAttitude.pitch();
+                mYaw = mAttitude.yaw();
+                break;
+            case Heartbeat.MSG_ID:
+                mHeartbeat.wrap(frame);
+                mArmed = mHeartbeat.isArmed();
+                mCustomMode = mHeartbeat.customMode();
+                mSystemStatus = mHeartbeat.systemStatus();
+                break;
+            case SysStatus.MSG_ID:
+                mSysStatus.wrap(frame);
+                mVoltageMv = mSysStatus.voltageBatteryMv();
+                mBatteryRemaining = mSysStatus.batteryRemaining();
+                break;
+            case VfrHud.MSG_ID:
+                mVfrHud.wrap(frame);
+                mGroundspeed = mVfrHud.groundspeed();
+                mClimb = mVfrHud.climb();
+                break;
+            default:
+                return;
+        }
+        Listener listener = mListener;
+        if (listener != null) {
+            listener.onUpdate(this, msgId, originNanos);
+        }
+    }
+
+    public int getLatE7() {
+        return mLatE7;
+    }
+
+    public int getLonE7() {
+        return mLonE7;
+    }
+
+    public double getLatitudeDeg() {
+        return mLatE7 * 1e-7;
+    }
+
+    public double getLongitudeDeg() {
+        return mLonE7 * 1e-7;
+    }
+
+    public float getAbsoluteAltitudeM() {
+        return mAltMm / 1000f;
+    }
+
+    public float getRelativeAltitudeM() {
+        return mRelativeAltMm / 1000f;
+    }
+
+    /**
+     * @return heading in cdeg, 65535 if unknown
+     */
+    public int getHeadingCdeg() {
+        return mHeadingCdeg;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} at which the last position was read from the link, 0 if none yet
+     */
+    public long getPositionNanos() {
+        return mPositionNanos;
+    }
+
+    /**
+     * @return the autopilot's time_boot_ms of the last position
+     */
+    public long getPositionTimeBootMs() {
+        return mPositionTimeBootMs;
+    }
+
+    public float getRollDeg() {
+        return (float) Math.toDegrees(mRoll);
+    }
+
+    public float getPitchDeg() {
+        return (float) Math.toDegrees(mPitch);
+    }
+
+    public float getYawDeg() {
+        return (float) Math.toDegrees(mYaw);
+    }
+
+    public boolean isArmed() {
+        return mArmed;
+    }
+
+    public long getCustomMode() {
+        return mCustomMode;
+    }
+
+    public int getSystemStatus() {
+        return mSystemStatus;
+    }
+
+    public float getVoltageV() {
+        return mVoltageMv / 1000f;
+    }
+
+    /**
+     * @return remaining battery in %, -1 if unknown
+     */
+    public int getBatteryRemaining() {
+        return mBatteryRemaining;
+    }
+
+    public float getGroundspeedMS() {
+        return mGroundspeed;
+    }
+
+    public float getClimbRateMS() {
+        return mClimb;
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.telemetry;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.MavlinkFrameParser;
+
+import java.util.Locale;
+
+/**
+ * Downlink bytes per second of one vehicle before and after a {@link TelemetryRateProfile} was
+ * applied. Counts every routed frame, filtered ones included, since they crossed the radio all
+ * the same.
+ *
+ * {@link #start()} begins the baseline period, {@link #markApplied()} ends it and begins the
+ * period after, which runs until now.
+ */
+public class LinkRateMeter implements MessageRouter.FrameListener {
+
+    private volatile long mBytes; // Link thread only writes
+
+    // Synchronized by 'this'
+    private long mMarkBytes;
+    private long mMarkNanos;
+    private double mBeforeBytesPerSecond = -1;
+    private boolean mApplied;
+
+    @Override
+    public void onFrame(MavlinkFrameParser frame, long originNanos) {
+        mBytes += frame.frameLength();
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public void start() {
+        start(System.nanoTime());
+    }
+
+    public void markApplied() {
+        markApplied(System.nanoTime());
+    }
+
+    synchronized void start(long nowNanos) {
+        mMarkBytes = mBytes;
+        mMarkNanos = nowNanos;
+        mBeforeBytesPerSecond = -1;
+        mApplied = false;
+    }
+
+    synchronized void markApplied(long nowNanos) {
+        mBeforeBytesPerSecond = mMarkNanos != 0 ? rateSinceMark(nowNanos) : -1;
+        mMarkBytes = mBytes;
+        mMarkNanos = nowNanos;
+        mApplied = true;
+    }
+
+    /**
+     * @return bytes per second of the baseline period, -1 if there was none
+     */
+    public synchronized double getBeforeBytesPerSecond() {
+        return mBeforeBytesPerSecond;
+    }
+
+    /**
+     * @return bytes per second since the profile was applied, -1 before
+     */
+    public double getAfterBytesPerSecond() {
+        return getAfterBytesPerSecond(System.nanoTime());
+    }
+
+    synchronized double getAfterBytesPerSecond(long nowNanos) {
+        return mApplied ? rateSinceMark(nowNanos) : -1;
+    }
+
+    private double rateSinceMark(long nowNanos) {
+        long nanos = nowNanos - mMarkNanos;
+        return nanos > 0 ? (mBytes - mMarkBytes) * 1e9 / nanos : 0;
+    }
+
+    @Override
+    public String toString() {
+        double before = getBeforeBytesPerSecond();
+        double after = getAfterBytesPerSecond();
+        return String.format(Locale.US, "before %s, after %s",
+                before < 0 ? "-" : String.format(Locale.US, "%.0f B/s", before),
+                after < 0 ? "-" : String.format(Locale.US, "%.0f B/s", after));
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.telemetry;
+
+import com.example.bridge.TimeSync;
+import com.example.mavlink.message.GlobalPositionInt;
+import com.example.utils.LatencyHistogram;
+
+/**
+ * Compares the age of a position when it reaches the app over MavsdkServer and gRPC with the
+ * age it has on the {@link DirectTelemetry} path.
+ *
+ * Both paths start at the USB read of the same GLOBAL_POSITION_INT frame. gRPC positions are
+ * matched to their frame by latitude and longitude, which round-trip exactly through MAVSDK's
+ * degrees, so the vehicle should move (or a tlog be replayed) while measuring.
+ *
+ * With a {@link TimeSync} the part before the USB read is measured too, from the frame's
+ * time_boot_ms in autopilot time.
+ */
+public class PositionPathBenchmark implements DirectTelemetry.Listener {
+
+    private static final int WINDOW = 64;
+
+    private final LatencyHistogram mDirect = new LatencyHistogram();
+    private final LatencyHistogram mGrpc = new LatencyHistogram();
+    private final LatencyHistogram mVehicle = new LatencyHistogram();
+
+    private volatile TimeSync mTimeSync;
+
+    // Synchronized by 'this'
+    private final long[] mKeys = new long[WINDOW];
+    private final long[] mOriginNanos = new long[WINDOW];
+    private int mNext;
+    private int mSize;
+
+    private volatile long mUnmatched;
+
+    @Override
+    public void onUpdate(DirectTelemetry telemetry, int msgId, long originNanos) {
+        if (msgId != GlobalPositionInt.MSG_ID) {
+            return;
+        }
+        onDirectPosition(telemetry.getLatE7(), telemetry.getLonE7(), originNanos);
+        TimeSync timeSync = mTimeSync;
+        if (timeSync != null && timeSync.isSynced()) {
+            long sampledNanos = timeSync.toLocalNanos(telemetry.getPositionTimeBootMs() * 1_000_000);
+            mVehicle.recordNanos(originNanos - sampledNanos);
+        }
+    }
+
+    /**
+     * @param timeSync clock of the autopilot the positions come from, null to stop measuring
+     *                 from the vehicle
+     */
+    public void setTimeSync(TimeSync timeSync) {
+        mTimeSync = timeSync;
+    }
+
+    /**
+     * @param originNanos {@link System#nanoTime()} of the USB read of the frame
+     */
+    public void onDirectPosition(int latE7, int lonE7, long originNanos) {
+        mDirect.recordNanos(System.nanoTime() - originNanos);
+        synchronized (this) {
+            mKeys[mNext] = key(latE7, lonE7);
+            mOriginNanos[mNext] = originNanos;
+            mNext = (mNext + 1) % WINDOW;
+            if (mSize < WINDOW) {
+                mSize++;
+            }
+        }
+    }
+
+    /**
+     * Called where a gRPC position is handed to the app.
+     */
+    public void onGrpcPosition(double latitudeDeg, double longitudeDeg) {
+        long key = key((int) Math.round(latitudeDeg * 1e7), (int) Math.round(longitudeDeg * 1e7));
+        long originNanos = 0;
+        synchronized (this) {
+            // newest first
+            for (int i = 1; i <= mSize; i++) {
+                int index = (mNext - i + WINDOW) % WINDOW;
+                if (mKeys[index] == key) {
+                    originNanos = mOriginNanos[index];
+                    break;
+                }
+            }
+        }
+        if (originNanos == 0) {
+            mUnmatched++;
+            return;
+        }
+        mGrpc.recordNanos(System.nanoTime() - originNanos);
+    }
+
+    public LatencyHistogram.Snapshot getDirect() {
+        return mDirect.snapshot();
+    }
+
+    public LatencyHistogram.Snapshot getGrpc() {
+        return mGrpc.snapshot();
+    }
+
+    /**
+     * @return from the autopilot sampling a position to its USB read, empty without a synced {@link TimeSync}
+     */
+    public LatencyHistogram.Snapshot getVehicle() {
+        return mVehicle.snapshot();
+    }
+
+    /**
+     * @return gRPC positions whose frame had already left the window
+     */
+    public long getUnmatched() {
+        return mUnmatched;
+    }
+
+    public void reset() {
+        mDirect.reset();
+        mGrpc.reset();
+        mVehicle.reset();
+        mUnmatched = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "vehicle " + getVehicle() + "\ndirect " + getDirect() + "\ngrpc " + getGrpc() + "\nunmatched " + mUnmatched;
+    }
+
+    private static long key(int latE7, int lonE7) {
+        return ((long) latE7 << 32) | (lonE7 & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.telemetry;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import io.mavsdk.telemetry.Telemetry;
+import io.reactivex.Completable;
+
+/**
+ * Rates in Hz at which the autopilot should send the telemetry the app shows. Applied through
+ * MAVSDK's Telemetry.setRate*, i.e. MAV_CMD_SET_MESSAGE_INTERVAL, so what isn't needed never
+ * takes up the radio, instead of being thrown away on the phone.
+ *
+ * Autopilots forget the intervals when they reboot, so the profile has to be applied again on
+ * every reconnect.
+ */
+public class TelemetryRateProfile {
+
+    /**
+     * What the map UI displays: position, speed and attitude at 10 Hz, battery and RC at 1 Hz
+     */
+    public static final TelemetryRateProfile DISPLAY = new TelemetryRateProfile(10, 10, 10, 1, 1);
+
+    private final double mPositionHz;
+    private final double mVelocityHz;
+    private final double mAttitudeHz;
+    private final double mBatteryHz;
+    private final double mRcStatusHz;
+
+    public TelemetryRateProfile(double positionHz, double velocityHz, double attitudeHz, double batteryHz,
+                                double rcStatusHz) {
+        mPositionHz = positionHz;
+        mVelocityHz = velocityHz;
+        mAttitudeHz = attitudeHz;
+        mBatteryHz = batteryHz;
+        mRcStatusHz = rcStatusHz;
+    }
+
+    public TelemetryRateProfile withPosition(double hz) {
+        return new TelemetryRateProfile(hz, mVelocityHz, mAttitudeHz, mBatteryHz, mRcStatusHz);
+    }
+
+    public TelemetryRateProfile withVelocity(double hz) {
+        return new TelemetryRateProfile(mPositionHz, hz, mAttitudeHz, mBatteryHz, mRcStatusHz);
+    }
+
+    public TelemetryRateProfile withAttitude(double hz) {
+        return new TelemetryRateProfile(mPositionHz, mVelocityHz, hz, mBatteryHz, mRcStatusHz);
+    }
+
+    public TelemetryRateProfile withBattery(double hz) {
+        return new TelemetryRateProfile(mPositionHz, mVelocityHz, mAttitudeHz, hz, mRcStatusHz);
+    }
+
+    public TelemetryRateProfile withRcStatus(double hz) {
+        return new TelemetryRateProfile(mPositionHz, mVelocityHz, mAttitudeHz, mBatteryHz, hz);
+    }
+
+    public double getPositionHz() {
+        return mPositionHz;
+    }
+
+    public double getVelocityHz() {
+        return mVelocityHz;
+    }
+
+    public double getAttitudeHz() {
+        return mAttitudeHz;
+    }
+
+    public double getBatteryHz() {
+        return mBatteryHz;
+    }
+
+    public double getRcStatusHz() {
+        return mRcStatusHz;
+    }
+
+    /**
+     * Sets every rate, all at once. A rate the autopilot rejects doesn't keep the others from
+     * being set; the error is reported when all are done.
+     */
+    public Completable apply(Telemetry telemetry) {
+        return Completable.mergeDelayError(Arrays.asList(
+                telemetry.setRatePosition(mPositionHz),
+                telemetry.setRatePositionVelocityNed(mVelocityHz),
+                telemetry.setRateAttitude(mAttitudeHz),
+                telemetry.setRateBattery(mBatteryHz),
+                telemetry.setRateRcStatus(mRcStatusHz)));
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "position %.1f Hz, velocity %.1f Hz, attitude %.1f Hz, battery %.1f Hz, rc %.1f Hz",
+                mPositionHz, mVelocityHz, mAttitudeHz, mBatteryHz, mRcStatusHz);
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.tlog;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records MAVLink frames in the .tlog layout: an 8 byte big-endian timestamp in microseconds
+ * since the epoch, followed by the raw frame.
+ *
+ * Frames are copied into a memory-mapped, pre-allocated segment file, so {@link #record} is a
+ * bounded copy without allocation or system calls. A background flusher syncs the current
+ * segment, trims segments that were rolled over and maps the spare the next rollover switches
+ * to. If the spare is not ready yet the frame is dropped rather than blocking the caller.
+ * Records never span segments, so every segment is a valid tlog on its own.
+ */
+public class TlogRecorder {
+
+    private static final String TAG = "LOG_" + TlogRecorder.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = ".tlog";
+    public static final int TIMESTAMP_LENGTH = 8;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final long DEFAULT_FLUSH_MILLIS = 1000;
+
+    private static final class Segment {
+        final File mFile;
+        final RandomAccessFile mRandomAccessFile;
+        final MappedByteBuffer mBuffer;
+
+        Segment(File file, int size) throws IOException {
+            mFile = file;
+            mRandomAccessFile = new RandomAccessFile(file, "rw");
+            try {
+                mBuffer = mRandomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } catch (IOException e) {
+                mRandomAccessFile.close();
+                throw e;
+            }
+            mBuffer.order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    private final File mDirectory;
+    private final String mName;
+    private int mSegmentSize = DEFAULT_SEGMENT_SIZE;
+    private long mFlushMillis = DEFAULT_FLUSH_MILLIS;
+
+    // epoch time of a System.nanoTime() reading, to stamp frames with their read time
+    private final long mBaseEpochMicros;
+    private final long mBaseNanos;
+
+    private Segment mCurrent; // Synchronized by 'this'
+    private Segment mFinished; // Synchronized by 'this'
+    private volatile Segment mSpare;
+    private int mSegmentIndex; // Synchronized by 'this'
+    private final List<File> mFiles = new ArrayList<>(); // Synchronized by 'this'
+
+    private ScheduledExecutorService mFlusher;
+
+    private volatile long mRecordedFrames;
+    private volatile long mRecordedBytes;
+    private volatile long mDroppedFrames;
+
+    /**
+     * @param name prefix of the segment files, e.g. a link name
+     */
+    public TlogRecorder(File directory, String name) {
+        mDirectory = directory;
+        mName = name;
+        mBaseEpochMicros = System.currentTimeMillis() * 1000;
+        mBaseNanos = System.nanoTime();
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        if (segmentSize <= TIMESTAMP_LENGTH)
+            throw new IllegalArgumentException("segment too small");
+        mSegmentSize = segmentSize;
+    }
+
+    public void setFlushMillis(long flushMillis) {
+        mFlushMillis = flushMillis;
+    }
+
+    /**
+     * Maps the first segment and its spare and starts the flusher.
+     */
+    public synchronized void start() throws IOException {
+        if (mFlusher != null)
+            throw new IllegalStateException("already started");
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs())
+            throw new IOException("Cannot create " + mDirectory);
+
+        mCurrent = newSegment();
+        mSpare = newSegment();
+
+        mFlusher = Executors.newSingleThreadScheduledExecutor();
+        mFlusher.scheduleWithFixedDelay(this::flush, mFlushMillis, mFlushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends one frame. Safe to call from both bridge directions; never blocks on I/O.
+     *
+     * @param originNanos {@link System#nanoTime()} at which the frame was read from its link
+     * @return false if the frame was dropped
+     */
+    public boolean record(byte[] data, int offset, int length, long originNanos) {
+        long timeMicros = mBaseEpochMicros + (originNanos - mBaseNanos) / 1000;
+        synchronized (this) {
+            Segment segment = mCurrent;
+            if (segment == null) {
+                return false;
+            }
+            if (segment.mBuffer.remaining() < TIMESTAMP_LENGTH + length) {
+                Segment spare = mSpare;
+                if (spare == null || mFinished != null || TIMESTAMP_LENGTH + length > mSegmentSize) {
+                    mDroppedFrames++;
+                    return false;
+                }
+                mFinished = segment;
+                mSpare = null;
+                mCurrent = spare;
+                segment = spare;
+            }
+            segment.mBuffer.putLong(timeMicros);
+            segment.mBuffer.put(data, offset, length);
+            mRecordedFrames++;
+            mRecordedBytes += TIMESTAMP_LENGTH + length;
+        }
+        return true;
+    }
+
+    /**
+     * Stops the flusher, trims the current segment to its content and deletes the spare.
+     */
+    public void close() throws IOException {
+        ScheduledExecutorService flusher;
+        synchronized (this) {
+            flusher = mFlusher;
+            if (flusher == null)
+                return;
+            mFlusher = null;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(mFlushMillis + 1000, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Segment current;
+        Segment finished;
+        synchronized (this) {
+            current = mCurrent;
+            finished = mFinished;
+            mCurrent = null;
+            mFinished = null;
+        }
+
+        if (finished != null) {
+            finish(finished);
+        }
+        finish(current);
+        Segment spare = mSpare;
+        mSpare = null;
+        if (spare != null) {
+            spare.mRandomAccessFile.close();
+            if (!spare.mFile.delete()) {
+                Log.w(TAG, "Cannot delete " + spare.mFile);
+            }
+            synchronized (this) {
+                mFiles.remove(spare.mFile);
+            }
+        }
+    }
+
+    /**
+     * @return segment files written so far, oldest first
+     */
+    public synchronized List<File> getFiles() {
+        return new ArrayList<>(mFiles);
+    }
+
+    public long getRecordedFrames() {
+        return mRecordedFrames;
+    }
+
+    public long getRecordedBytes() {
+        return mRecordedBytes;
+    }
+
+    /**
+     * @return frames lost because no spare segment was mapped in time
+     */
+    public long getDroppedFrames() {
+        return mDroppedFrames;
+    }
+
+    private void flush() {
+        Segment current;
+        Segment finished;
+        synchronized (this) {
+            current = mCurrent;
+            finished = mFinished;
+        }
+        try {
+            if (finished != null) {
+                finish(finished);
+                synchronized (this) {
+                    mFinished = null;
+                }
+            }
+            if (mSpare == null) {
+                mSpare = newSegment();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Rolling over: " + e.getMessage());
+        }
+        if (current != null) {
+            // msync only, the position is not touched
+            current.mBuffer.force();
+        }
+    }
+
+    private void finish(Segment segment) throws IOException {
+        int length;
+        synchronized (this) {
+            length = segment.mBuffer.position();
+        }
+        segment.mBuffer.force();
+        segment.mRandomAccessFile.getChannel().truncate(length);
+        segment.mRandomAccessFile.close();
+    }
+
+    private Segment newSegment() throws IOException {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US)
+                .format(new Date(mBaseEpochMicros / 1000));
+        File file;
+        synchronized (this) {
+            file = new File(mDirectory, String.format(Locale.US, "%s-%s-%03d%s",
+                    mName, stamp, mSegmentIndex++, FILE_EXTENSION));
+            mFiles.add(file);
+        }
+        return new Segment(file, mSegmentSize);
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.tlog;
+
+import com.example.io.NetworkSerialPort;
+import com.example.mavlink.MavlinkFrameParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A serial port that plays back a .tlog instead of talking to a radio.
+ *
+ * Handing it to {@link com.example.bridge.SerialTcpBridge} drives the very pipeline a USB
+ * radio would, down to MavsdkServer and the UI, without hardware. Frames come out paced by
+ * their recorded timestamps, scaled by {@link #setSpeed(double)}, or back to back with
+ * {@link #AS_FAST_AS_POSSIBLE}. The file is memory-mapped and frames are copied straight into
+ * the reader's buffer, so playback allocates nothing per frame. Bytes written to the port are
+ * counted and discarded.
+ */
+public class TlogReplayPort extends NetworkSerialPort {
+
+    public static final double REAL_TIME = 1;
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    private static final int HEADER_LENGTH_V1 = 6;
+    private static final int HEADER_LENGTH_V2 = 10;
+    private static final int CHECKSUM_LENGTH = 2;
+    private static final int SIGNATURE_LENGTH = 13;
+    private static final int INCOMPAT_FLAG_SIGNED = 0x01;
+
+    private final File mFile;
+    private final MappedByteBuffer mBuffer; // Reader thread only
+
+    private volatile double mSpeed = REAL_TIME;
+    private volatile boolean mLoop;
+
+    // Reader thread only
+    private long mStartNanos;
+    private long mFirstMicros;
+
+    private volatile long mReplayedFrames;
+    private volatile long mSkippedBytes;
+    private volatile int mLoops;
+
+    public TlogReplayPort(File file) throws IOException {
+        super(file.getPath());
+        mFile = file;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+            // the mapping stays valid after the channel is closed
+            mBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, randomAccessFile.length());
+        }
+        mBuffer.order(ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @param speed replay rate relative to the recording, {@link #AS_FAST_AS_POSSIBLE} for no pacing
+     */
+    public void setSpeed(double speed) {
+        if (speed < 0)
+            throw new IllegalArgumentException("speed < 0");
+        mSpeed = speed;
+    }
+
+    /**
+     * Restarts from the first frame at the end of the file, e.g. to use the port as load generator.
+     */
+    public void setLoop(boolean loop) {
+        mLoop = loop;
+    }
+
+    public File getFile() {
+        return mFile;
+    }
+
+    /**
+     * @return true once the whole file was played and looping is off
+     */
+    public boolean isFinished() {
+        return !mLoop && !hasRecord();
+    }
+
+    public long getReplayedFrames() {
+        return mReplayedFrames;
+    }
+
+    /**
+     * @return bytes skipped because they did not start a frame where a record should start
+     */
+    public long getSkippedBytes() {
+        return mSkippedBytes;
+    }
+
+    public int getLoops() {
+        return mLoops;
+    }
+
+    /**
+     * Copies all frames that are due and fit into dest, waiting up to timeout for the first one.
+     */
+    @Override
+    public int read(byte[] dest, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+
+        if (!seekRecord()) {
+            if (mLoop && mBuffer.limit() > 0) {
+                mBuffer.position(0);
+                mStartNanos = 0;
+                mLoops++;
+            } else {
+                sleepQuietly(timeout == 0 ? 100 : timeout);
+                return 0;
+            }
+            if (!seekRecord()) {
+                sleepQuietly(timeout == 0 ? 100 : timeout);
+                return 0;
+            }
+        }
+
+        if (mStartNanos == 0) {
+            mStartNanos = System.nanoTime();
+            mFirstMicros = mBuffer.getLong(mBuffer.position());
+        }
+        long waitNanos = dueNanos(mBuffer.getLong(mBuffer.position())) - System.nanoTime();
+        if (waitNanos > 0) {
+            long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout == 0 ? Long.MAX_VALUE / 1_000_000 : timeout);
+            try {
+                TimeUnit.NANOSECONDS.sleep(Math.min(waitNanos, timeoutNanos));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+            if (waitNanos > timeoutNanos)
+                return 0;
+        }
+
+        int length = 0;
+        long now = System.nanoTime();
+        while (seekRecord()) {
+            int position = mBuffer.position();
+            int frameLength = frameLength(position + TlogRecorder.TIMESTAMP_LENGTH);
+            if (length + frameLength > dest.length)
+                break;
+            if (length > 0 && dueNanos(mBuffer.getLong(position)) > now)
+                break;
+            mBuffer.position(position + TlogRecorder.TIMESTAMP_LENGTH);
+            mBuffer.get(dest, length, frameLength);
+            length += frameLength;
+            mReplayedFrames++;
+        }
+        mReadBytes += length;
+        return length;
+    }
+
+    @Override
+    public void write(byte[] src, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        mWrittenBytes += src.length;
+    }
+
+    private long dueNanos(long timeMicros) {
+        double speed = mSpeed;
+        if (speed == AS_FAST_AS_POSSIBLE)
+            return 0;
+        return mStartNanos + (long) ((timeMicros - mFirstMicros) * 1000 / speed);
+    }
+
+    private boolean hasRecord() {
+        return mBuffer.remaining() > TlogRecorder.TIMESTAMP_LENGTH;
+    }
+
+    /**
+     * Moves to the next position holding a timestamp and a complete frame.
+     */
+    private boolean seekRecord() {
+        while (hasRecord()) {
+            int position = mBuffer.position();
+            int frameLength = frameLength(position + TlogRecorder.TIMESTAMP_LENGTH);
+            if (frameLength > 0 && position + TlogRecorder.TIMESTAMP_LENGTH + frameLength <= mBuffer.limit())
+                return true;
+            mBuffer.position(position + 1);
+            mSkippedBytes++;
+        }
+        return false;
+    }
+
+    /**
+     * @return length of the frame starting at index, 0 if there is no frame start
+     */
+    private int frameLength(int index) {
+        if (index + 3 > mBuffer.limit())
+            return 0;
+        int magic = mBuffer.get(index) & 0xFF;
+        int payloadLength = mBuffer.get(index + 1) & 0xFF;
+        if (magic == MavlinkFrameParser.MAGIC_V1)
+            return HEADER_LENGTH_V1 + payloadLength + CHECKSUM_LENGTH;
+        if (magic != MavlinkFrameParser.MAGIC_V2)
+            return 0;
+        int signature = (mBuffer.get(index + 2) & INCOMPAT_FLAG_SIGNED) != 0 ? SIGNATURE_LENGTH : 0;
+        return HEADER_LENGTH_V2 + payloadLength + CHECKSUM_LENGTH + signature;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
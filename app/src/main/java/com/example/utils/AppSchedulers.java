@@ -0,0 +1,72 @@
+package com.example.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * The few named threads MAVSDK work runs on, instead of Schedulers.io(), whose cached pool grows
+ * a thread per concurrent subscription. The thread count stays the same however many streams
+ * and commands there are; queue depth and task latency of each show how busy it is.
+ */
+public class AppSchedulers {
+
+    // One thread: it is also the single writer of the vehicle state
+    private final MeteredExecutor mTelemetry = new MeteredExecutor("telemetry", 1);
+    // One thread, so commands are issued in the order they were given
+    private final MeteredExecutor mCommands = new MeteredExecutor("commands", 1);
+    private final MeteredExecutor mBulk = new MeteredExecutor("bulk", 1);
+
+    private final Scheduler mTelemetryScheduler = Schedulers.from(mTelemetry);
+    private final Scheduler mCommandScheduler = Schedulers.from(mCommands);
+    private final Scheduler mBulkScheduler = Schedulers.from(mBulk);
+
+    /**
+     * Subscribes the telemetry streams and takes in their values
+     */
+    public Scheduler telemetry() {
+        return mTelemetryScheduler;
+    }
+
+    /**
+     * Actions, mission start/pause/clear, rate and camera commands
+     */
+    public Scheduler commands() {
+        return mCommandScheduler;
+    }
+
+    /**
+     * Mission and geofence uploads, which take many round trips over the radio
+     */
+    public Scheduler bulk() {
+        return mBulkScheduler;
+    }
+
+    public MeteredExecutor getTelemetryExecutor() {
+        return mTelemetry;
+    }
+
+    public List<MeteredExecutor> getExecutors() {
+        return Arrays.asList(mTelemetry, mCommands, mBulk);
+    }
+
+    public void shutdown() {
+        for (MeteredExecutor executor : getExecutors()) {
+            executor.shutdown();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (MeteredExecutor executor : getExecutors()) {
+            if (builder.length() > 0) {
+                builder.append('\n');
+            }
+            builder.append(executor);
+        }
+        return builder.toString();
+    }
+}
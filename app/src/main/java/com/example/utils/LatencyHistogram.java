@@ -0,0 +1,152 @@
+package com.example.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-memory log-linear histogram of microsecond latencies.
+ *
+ * Every power of two is split into {@link #SUB_BUCKETS} linear buckets, so the relative error
+ * of a reported percentile stays below 1/16 from 1 us up to several days. Recording never
+ * allocates and is safe from any thread; snapshots are taken without stopping the writers.
+ */
+public final class LatencyHistogram {
+
+    public static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mMax = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1000);
+    }
+
+    public void recordMicros(long micros) {
+        if (micros < 0) {
+            micros = 0;
+        }
+        mCounts.incrementAndGet(bucketIndex(micros));
+        long max;
+        while (micros > (max = mMax.get())) {
+            if (mMax.compareAndSet(max, micros)) {
+                break;
+            }
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts.set(i, 0);
+        }
+        mMax.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, mMax.get());
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKET_COUNT - 1;
+        }
+        int mantissa = (int) (micros >> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa;
+    }
+
+    /**
+     * @return the highest value that falls into bucket index
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int mantissa = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + mantissa) << (exponent - SUB_BUCKET_BITS);
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] mCounts;
+        private final long mTotal;
+        private final long mMax;
+
+        private Snapshot(long[] counts, long total, long max) {
+            mCounts = counts;
+            mTotal = total;
+            mMax = max;
+        }
+
+        public long getCount() {
+            return mTotal;
+        }
+
+        public long getMaxMicros() {
+            return mMax;
+        }
+
+        /**
+         * @param quantile between 0 and 1, e.g. 0.999
+         * @return upper bound of the bucket holding the quantile, capped at the observed max
+         */
+        public long getPercentileMicros(double quantile) {
+            if (mTotal == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * mTotal);
+            long seen = 0;
+            for (int i = 0; i < mCounts.length; i++) {
+                seen += mCounts[i];
+                if (seen >= rank && mCounts[i] > 0) {
+                    return Math.min(bucketUpperBound(i), mMax);
+                }
+            }
+            return mMax;
+        }
+
+        public long getP50Micros() {
+            return getPercentileMicros(0.50);
+        }
+
+        public long getP99Micros() {
+            return getPercentileMicros(0.99);
+        }
+
+        public long getP999Micros() {
+            return getPercentileMicros(0.999);
+        }
+
+        /**
+         * Non-empty buckets as "upperBoundUs count" lines, for offline analysis.
+         */
+        public String bucketsToString() {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < mCounts.length; i++) {
+                if (mCounts[i] > 0) {
+                    builder.append(bucketUpperBound(i)).append(' ').append(mCounts[i]).append('\n');
+                }
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "n=%d p50=%dus p99=%dus p99.9=%dus max=%dus",
+                    mTotal, getP50Micros(), getP99Micros(), getP999Micros(), mMax);
+        }
+    }
+}
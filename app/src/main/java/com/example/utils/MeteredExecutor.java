@@ -0,0 +1,106 @@
+package com.example.utils;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed number of named threads that measures itself: how many tasks wait, how long they
+ * wait before they run and how long they run. The queue is unbounded, so a task is never
+ * rejected; a queue that keeps growing shows in {@link #getMaxQueueDepth()} instead.
+ */
+public class MeteredExecutor implements Executor {
+
+    private final String mName;
+    private final ThreadPoolExecutor mPool;
+    private final LatencyHistogram mWait = new LatencyHistogram();
+    private final LatencyHistogram mRun = new LatencyHistogram();
+    private final AtomicInteger mMaxQueueDepth = new AtomicInteger();
+
+    /**
+     * @param name prefix of the thread names, e.g. telemetry-1
+     */
+    public MeteredExecutor(String name, int threads) {
+        mName = name;
+        AtomicInteger count = new AtomicInteger();
+        mPool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long queuedNanos = System.nanoTime();
+        mPool.execute(() -> {
+            long startNanos = System.nanoTime();
+            mWait.recordNanos(startNanos - queuedNanos);
+            try {
+                task.run();
+            } finally {
+                mRun.recordNanos(System.nanoTime() - startNanos);
+            }
+        });
+        mMaxQueueDepth.accumulateAndGet(mPool.getQueue().size(), Math::max);
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return tasks waiting for a thread right now
+     */
+    public int getQueueDepth() {
+        return mPool.getQueue().size();
+    }
+
+    public int getMaxQueueDepth() {
+        return mMaxQueueDepth.get();
+    }
+
+    /**
+     * @return threads started so far, never more than asked for
+     */
+    public int getThreadCount() {
+        return mPool.getPoolSize();
+    }
+
+    /**
+     * @return time from {@link #execute} until the task started
+     */
+    public LatencyHistogram.Snapshot getWaitSnapshot() {
+        return mWait.snapshot();
+    }
+
+    /**
+     * @return time the tasks ran
+     */
+    public LatencyHistogram.Snapshot getRunSnapshot() {
+        return mRun.snapshot();
+    }
+
+    public void reset() {
+        mWait.reset();
+        mRun.reset();
+        mMaxQueueDepth.set(0);
+    }
+
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot wait = mWait.snapshot();
+        LatencyHistogram.Snapshot run = mRun.snapshot();
+        return String.format(Locale.US, "%s: %d threads, queue %d (max %d), %d tasks, wait p50=%dus p99=%dus, run p50=%dus p99=%dus",
+                mName, getThreadCount(), getQueueDepth(), getMaxQueueDepth(), run.getCount(),
+                wait.getP50Micros(), wait.getP99Micros(), run.getP50Micros(), run.getP99Micros());
+    }
+}
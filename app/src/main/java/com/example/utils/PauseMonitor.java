@@ -0,0 +1,119 @@
+package com.example.utils;
+
+import android.os.Process;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the threads of a process get held up, e.g. by garbage collection, by
+ * sleeping for a fixed interval over and over and recording how much later than asked each
+ * sleep returns. A stop-the-world pause shows up as one long overshoot; so does a CPU the
+ * scheduler gave to someone else.
+ *
+ * The sampling thread runs at the priority of the bridge threads, so what it sees is what they
+ * see. Compare the snapshots of two processes, or of one process with the UI idle and under load.
+ */
+public class PauseMonitor {
+
+    public static final long DEFAULT_INTERVAL_MICROS = 1000;
+
+    private static final ThreadProfile PROFILE = new ThreadProfile("pause-monitor", Process.THREAD_PRIORITY_URGENT_AUDIO);
+
+    private final long mIntervalMicros;
+    private final LatencyHistogram mPauses = new LatencyHistogram();
+    private boolean mRunning; // Synchronized by 'this'
+    private Thread mThread; // samples until stopped, synchronized by 'this'
+
+    public PauseMonitor() {
+        this(DEFAULT_INTERVAL_MICROS);
+    }
+
+    public PauseMonitor(long intervalMicros) {
+        mIntervalMicros = intervalMicros;
+    }
+
+    /**
+     * Samples on a thread of its own.
+     */
+    public void start() {
+        start(runnable -> {
+            Thread thread = new Thread(runnable, getClass().getSimpleName());
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Samples on a thread of executor, e.g. the bridges' io pool, until {@link #stop()}.
+     */
+    public synchronized void start(Executor executor) {
+        if (mRunning)
+            return;
+        mRunning = true;
+        try {
+            executor.execute(this::run);
+        } catch (RuntimeException e) {
+            mRunning = false;
+            throw e;
+        }
+    }
+
+    public synchronized void stop() {
+        if (!mRunning)
+            return;
+        mRunning = false;
+        if (mThread != null) {
+            mThread.interrupt();
+            mThread = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return mRunning;
+    }
+
+    /**
+     * @return overshoot of every sleep beyond the interval
+     */
+    public LatencyHistogram.Snapshot snapshot() {
+        return mPauses.snapshot();
+    }
+
+    public void reset() {
+        mPauses.reset();
+    }
+
+    private void run() {
+        synchronized (this) {
+            // stopped before the executor got to it, or started again meanwhile
+            if (!mRunning || mThread != null)
+                return;
+            mThread = Thread.currentThread();
+        }
+        ThreadProfile.Applied applied = PROFILE.apply();
+        try {
+            sample();
+        } finally {
+            synchronized (this) {
+                if (mThread == Thread.currentThread())
+                    mThread = null;
+                // the interrupt of stop() must not hit the next task of a pooled thread
+                Thread.interrupted();
+            }
+            applied.restore();
+        }
+    }
+
+    private void sample() {
+        long intervalNanos = TimeUnit.MICROSECONDS.toNanos(mIntervalMicros);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long start = System.nanoTime();
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+                mPauses.recordNanos(Math.max(0, System.nanoTime() - start - intervalNanos));
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
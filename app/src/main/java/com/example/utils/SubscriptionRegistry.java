@@ -0,0 +1,120 @@
+package com.example.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.Flowable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+
+/**
+ * Keeps telemetry subscriptions from piling up.
+ *
+ * {@link #share} turns a stream into one that has a single upstream subscription however many
+ * subscribe, replays the latest value to late subscribers and cancels upstream when the last
+ * one leaves. {@link #subscribe} is idempotent: a consumer subscribed to a stream stays
+ * subscribed once, however often it asks. Both are counted, so a leak shows up in
+ * {@link #toString()}.
+ */
+public class SubscriptionRegistry {
+
+    private final Map<String, AtomicInteger> mUpstream = new ConcurrentHashMap<>();
+    private final Map<String, Disposable> mSubscriptions = new HashMap<>(); // Synchronized by 'this'
+
+    /**
+     * @param name counts the upstream subscriptions, see {@link #getUpstreamCount(String)}
+     */
+    public <T> Flowable<T> share(String name, Flowable<T> source) {
+        AtomicInteger upstream = new AtomicInteger();
+        mUpstream.put(name, upstream);
+        return source
+                .doOnSubscribe(subscription -> upstream.incrementAndGet())
+                .doFinally(upstream::decrementAndGet)
+                .replay(1)
+                .refCount();
+    }
+
+    /**
+     * Subscribes consumer to stream unless it is subscribed already.
+     *
+     * @return false if the consumer already had a live subscription to the stream
+     */
+    public synchronized <T> boolean subscribe(String consumer, String stream, Flowable<T> flowable,
+                                              Consumer<? super T> onNext, Consumer<? super Throwable> onError) {
+        String key = key(consumer, stream);
+        Disposable existing = mSubscriptions.get(key);
+        // a stream that ended by error is disposed and may be subscribed again
+        if (existing != null && !existing.isDisposed()) {
+            return false;
+        }
+        mSubscriptions.put(key, flowable.subscribe(onNext, onError));
+        return true;
+    }
+
+    public synchronized void unsubscribe(String consumer, String stream) {
+        Disposable subscription = mSubscriptions.remove(key(consumer, stream));
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+
+    /**
+     * Ends every subscription of consumer.
+     */
+    public synchronized void unsubscribeAll(String consumer) {
+        String prefix = consumer + "/";
+        for (Iterator<Map.Entry<String, Disposable>> it = mSubscriptions.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Disposable> subscription = it.next();
+            if (subscription.getKey().startsWith(prefix)) {
+                subscription.getValue().dispose();
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        for (Disposable subscription : mSubscriptions.values()) {
+            subscription.dispose();
+        }
+        mSubscriptions.clear();
+    }
+
+    /**
+     * @return subscriptions made through {@link #subscribe} that are still live
+     */
+    public synchronized int getActiveCount() {
+        int count = 0;
+        for (Disposable subscription : mSubscriptions.values()) {
+            if (!subscription.isDisposed()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return upstream subscriptions of a shared stream, at most 1 unless something leaks
+     */
+    public int getUpstreamCount(String name) {
+        AtomicInteger upstream = mUpstream.get(name);
+        return upstream != null ? upstream.get() : 0;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(getActiveCount()).append(" subscriptions, upstream");
+        for (Map.Entry<String, AtomicInteger> upstream : new TreeMap<>(mUpstream).entrySet()) {
+            builder.append(' ').append(upstream.getKey()).append('=').append(upstream.getValue().get());
+        }
+        return builder.toString();
+    }
+
+    private static String key(String consumer, String stream) {
+        return consumer + "/" + stream;
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.utils;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Locale;
+
+/**
+ * Scheduling an io thread asks for: a name, an Android thread priority and optionally the CPUs
+ * it should run on.
+ *
+ * A runnable applies its profile on the thread it runs on, which may be a pooled one, reads the
+ * priority back to see what the system granted and restores the thread afterwards; see
+ * {@link #apply()}. The CPU mask is a hint only: Android has no Java API to pin threads, so it is
+ * carried in the {@link Applied} report, e.g. for a native helper or taskset on a Linux hub.
+ */
+public final class ThreadProfile {
+
+    private static final String TAG = "LOG_" + ThreadProfile.class.getSimpleName();
+
+    public static final int ANY_CPU = 0;
+
+    private final String mName;
+    private final int mPriority;
+    private final int mCpuMask;
+
+    /**
+     * @param name     thread name while running, null to keep the pool's name
+     * @param priority see {@link Process#setThreadPriority(int)}, THREAD_PRIORITY_DEFAULT to leave it
+     */
+    public ThreadProfile(String name, int priority) {
+        this(name, priority, ANY_CPU);
+    }
+
+    /**
+     * @param cpuMask bit n set for CPU n, {@link #ANY_CPU} for no preference
+     */
+    public ThreadProfile(String name, int priority, int cpuMask) {
+        mName = name;
+        mPriority = priority;
+        mCpuMask = cpuMask;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    public int getCpuMask() {
+        return mCpuMask;
+    }
+
+    public ThreadProfile withName(String name) {
+        return new ThreadProfile(name, mPriority, mCpuMask);
+    }
+
+    public ThreadProfile withPriority(int priority) {
+        return new ThreadProfile(mName, priority, mCpuMask);
+    }
+
+    /**
+     * Applies the profile to the current thread and verifies the priority. Call
+     * {@link Applied#restore()} before the thread returns to its pool.
+     */
+    public Applied apply() {
+        Thread thread = Thread.currentThread();
+        int tid = Process.myTid();
+        String previousName = thread.getName();
+        int previousPriority = Process.getThreadPriority(tid);
+        if (mName != null)
+            thread.setName(mName);
+        String error = null;
+        if (mPriority != Process.THREAD_PRIORITY_DEFAULT) {
+            try {
+                Process.setThreadPriority(mPriority);
+            } catch (IllegalArgumentException | SecurityException e) {
+                error = e.getMessage();
+            }
+        }
+        Applied applied = new Applied(this, thread.getName(), tid, Process.getThreadPriority(tid),
+                error, previousName, previousPriority);
+        if (!applied.isPriorityApplied())
+            Log.w(TAG, "Scheduling not applied: " + applied);
+        return applied;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s priority %d%s", mName, mPriority,
+                mCpuMask != ANY_CPU ? " cpus 0x" + Integer.toHexString(mCpuMask) : "");
+    }
+
+    /**
+     * What a thread got when it applied a profile.
+     */
+    public static final class Applied {
+        private final ThreadProfile mProfile;
+        private final String mThreadName;
+        private final int mTid;
+        private final int mPriority;
+        private final String mError;
+        private final String mPreviousName;
+        private final int mPreviousPriority;
+
+        Applied(ThreadProfile profile, String threadName, int tid, int priority, String error,
+                String previousName, int previousPriority) {
+            mProfile = profile;
+            mThreadName = threadName;
+            mTid = tid;
+            mPriority = priority;
+            mError = error;
+            mPreviousName = previousName;
+            mPreviousPriority = previousPriority;
+        }
+
+        public ThreadProfile getProfile() {
+            return mProfile;
+        }
+
+        public String getThreadName() {
+            return mThreadName;
+        }
+
+        public int getTid() {
+            return mTid;
+        }
+
+        /**
+         * @return the priority read back from the system after applying
+         */
+        public int getPriority() {
+            return mPriority;
+        }
+
+        /**
+         * @return why setting the priority failed, null if it didn't
+         */
+        public String getError() {
+            return mError;
+        }
+
+        /**
+         * @return true if the thread runs at the requested priority, or none was requested
+         */
+        public boolean isPriorityApplied() {
+            return mProfile.mPriority == Process.THREAD_PRIORITY_DEFAULT || mPriority == mProfile.mPriority;
+        }
+
+        /**
+         * Gives the thread its previous name and priority back.
+         */
+        public void restore() {
+            Thread.currentThread().setName(mPreviousName);
+            if (mPriority != mPreviousPriority) {
+                try {
+                    Process.setThreadPriority(mPreviousPriority);
+                } catch (IllegalArgumentException | SecurityException e) {
+                    Log.w(TAG, "Could not restore priority of " + mPreviousName + ": " + e.getMessage());
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s tid %d requested %d got %d%s%s", mThreadName, mTid,
+                    mProfile.mPriority, mPriority,
+                    mProfile.mCpuMask != ANY_CPU ? " cpus 0x" + Integer.toHexString(mProfile.mCpuMask) + " (hint)" : "",
+                    mError != null ? " (" + mError + ")" : "");
+        }
+    }
+}
@@ -9,10 +9,13 @@ package com.hoho.android.usbserial.util;
 import android.os.Process;
 import android.util.Log;
 
+import com.example.utils.LatencyHistogram;
+import com.example.utils.ThreadProfile;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 
 /**
  * Utility class which services a {@link UsbSerialPort} in its {@link #run()} method.
@@ -31,6 +34,10 @@ public class SerialInputOutputManager implements Runnable {
 
     private static final String TAG = SerialInputOutputManager.class.getSimpleName();
     private static final int BUFSIZ = 4096;
+    private static final int BULK_MAX_FRAMES = 64;
+    // Pacing lets at most this much of the rate out in one burst
+    private static final double PACING_BURST_SECONDS = 0.1;
+    private static final int PACING_MIN_BURST = 64;
 
     /**
      * default read timeout is infinite, to avoid data loss with bulkTransfer API
@@ -43,8 +50,31 @@ public class SerialInputOutputManager implements Runnable {
 
     private ByteBuffer mReadBuffer; // default size = getReadEndpoint().getMaxPacketSize()
     private ByteBuffer mWriteBuffer = ByteBuffer.allocate(BUFSIZ);
-
-    private int mThreadPriority = Process.THREAD_PRIORITY_URGENT_AUDIO;
+    private long mWritePendingSinceNanos; // origin of the oldest byte in mWriteBuffer, synchronized by mWriteBufferLock
+    private long mDroppedBytes; // synchronized by mWriteBufferLock
+    private volatile long mLastReadNanos;
+    private volatile long mLastActivityNanos;
+    private volatile LatencyHistogram mWriteLatency;
+
+    // Bulk lane: whole frames written after the regular buffer, synchronized by mWriteBufferLock
+    private ByteBuffer mBulkBuffer = ByteBuffer.allocate(BUFSIZ);
+    private final int[] mBulkFrameLengths = new int[BULK_MAX_FRAMES];
+    private final long[] mBulkFrameOrigins = new long[BULK_MAX_FRAMES];
+    private int mBulkFrameHead;
+    private int mBulkFrameCount;
+    private int mBulkChunkSize = 512;
+    private long mBulkDroppedBytes;
+    private volatile long mBulkWrittenBytes;
+    private volatile LatencyHistogram mBulkLatency;
+
+    private volatile int mWriteRateLimit; // bytes per second, 0 = unpaced
+    private volatile long mWrittenBytes;
+    // Loop thread only
+    private double mWriteTokens;
+    private long mWriteTokensNanos;
+
+    private ThreadProfile mThreadProfile = new ThreadProfile(null, Process.THREAD_PRIORITY_URGENT_AUDIO);
+    private volatile ThreadProfile.Applied mAppliedProfile;
     private State mState = State.STOPPED; // Synchronized by 'this'
     private Listener mListener; // Synchronized by 'this'
     private final UsbSerialPort mSerialPort;
@@ -63,13 +93,18 @@ public class SerialInputOutputManager implements Runnable {
 
     public SerialInputOutputManager(UsbSerialPort serialPort) {
         mSerialPort = serialPort;
-        mReadBuffer = ByteBuffer.allocate(serialPort.getReadEndpoint().getMaxPacketSize());
+        mReadBuffer = ByteBuffer.allocate(defaultReadBufferSize(serialPort));
     }
 
     public SerialInputOutputManager(UsbSerialPort serialPort, Listener listener) {
         mSerialPort = serialPort;
         mListener = listener;
-        mReadBuffer = ByteBuffer.allocate(serialPort.getReadEndpoint().getMaxPacketSize());
+        mReadBuffer = ByteBuffer.allocate(defaultReadBufferSize(serialPort));
+    }
+
+    private static int defaultReadBufferSize(UsbSerialPort serialPort) {
+        // ports that are not backed by a USB endpoint have no packet size to match
+        return serialPort.getReadEndpoint() != null ? serialPort.getReadEndpoint().getMaxPacketSize() : BUFSIZ;
     }
 
     public synchronized void setListener(Listener listener) {
@@ -86,9 +121,27 @@ public class SerialInputOutputManager implements Runnable {
      * @param threadPriority  see {@link Process#setThreadPriority(int)}
      * */
     public void setThreadPriority(int threadPriority) {
+        setThreadProfile(mThreadProfile.withPriority(threadPriority));
+    }
+
+    /**
+     * Name and priority the run() thread takes on while servicing, back to the previous ones afterwards
+     */
+    public void setThreadProfile(ThreadProfile profile) {
         if (mState != State.STOPPED)
-            throw new IllegalStateException("threadPriority only configurable before SerialInputOutputManager is started");
-        mThreadPriority = threadPriority;
+            throw new IllegalStateException("threadProfile only configurable before SerialInputOutputManager is started");
+        mThreadProfile = profile;
+    }
+
+    public ThreadProfile getThreadProfile() {
+        return mThreadProfile;
+    }
+
+    /**
+     * @return the scheduling the thread actually got, null before start
+     */
+    public ThreadProfile.Applied getAppliedProfile() {
+        return mAppliedProfile;
     }
 
     /**
@@ -148,18 +201,165 @@ public class SerialInputOutputManager implements Runnable {
      * else the write will be delayed until read data is available
      */
     public void writeAsync(byte[] data) {
+        writeAsync(data, System.nanoTime());
+    }
+
+    /**
+     * @param originNanos {@link System#nanoTime()} at which data entered the phone, used for
+     *                    the write latency histogram
+     */
+    public void writeAsync(byte[] data, long originNanos) {
         synchronized (mWriteBufferLock) {
+            if (mWriteBuffer.position() == 0)
+                mWritePendingSinceNanos = originNanos;
             mWriteBuffer.put(data);
         }
     }
 
+    /**
+     * Queues length bytes of data, or drops them all if the write buffer lacks room.
+     *
+     * @return false if the data was dropped
+     */
+    public boolean writeAsync(byte[] data, int offset, int length, long originNanos) {
+        synchronized (mWriteBufferLock) {
+            if (mWriteBuffer.remaining() < length) {
+                mDroppedBytes += length;
+                return false;
+            }
+            if (mWriteBuffer.position() == 0)
+                mWritePendingSinceNanos = originNanos;
+            mWriteBuffer.put(data, offset, length);
+        }
+        return true;
+    }
+
+    /**
+     * @return bytes discarded by {@link #writeAsync(byte[], int, int, long)} because the write buffer was full
+     */
+    public long getDroppedBytes() {
+        synchronized (mWriteBufferLock) {
+            return mDroppedBytes;
+        }
+    }
+
+    /**
+     * Queues one complete frame of bulk traffic, e.g. GPS corrections. Bulk frames are only
+     * written after the regular write buffer, at most {@link #setBulkChunkSize(int)} bytes per
+     * loop pass and never cut, so they delay regular data by one chunk at most and always end
+     * on a frame boundary.
+     *
+     * @return false if the frame was dropped because the bulk buffer is full
+     */
+    public boolean writeBulkAsync(byte[] frame, int offset, int length, long originNanos) {
+        synchronized (mWriteBufferLock) {
+            if (mBulkBuffer.remaining() < length || mBulkFrameCount == BULK_MAX_FRAMES) {
+                mBulkDroppedBytes += length;
+                return false;
+            }
+            int tail = (mBulkFrameHead + mBulkFrameCount) % BULK_MAX_FRAMES;
+            mBulkFrameLengths[tail] = length;
+            mBulkFrameOrigins[tail] = originNanos;
+            mBulkFrameCount++;
+            mBulkBuffer.put(frame, offset, length);
+        }
+        return true;
+    }
+
+    public void setBulkBufferSize(int bufferSize) {
+        synchronized (mWriteBufferLock) {
+            if (mBulkBuffer.capacity() == bufferSize)
+                return;
+            if (mBulkBuffer.position() > bufferSize)
+                throw new IllegalStateException("bulk buffer holds more than " + bufferSize + " bytes");
+            ByteBuffer newBulkBuffer = ByteBuffer.allocate(bufferSize);
+            newBulkBuffer.put(mBulkBuffer.array(), 0, mBulkBuffer.position());
+            mBulkBuffer = newBulkBuffer;
+        }
+    }
+
+    /**
+     * Bulk bytes written per loop pass, a single larger frame is still written whole.
+     */
+    public void setBulkChunkSize(int chunkSize) {
+        synchronized (mWriteBufferLock) {
+            mBulkChunkSize = chunkSize;
+        }
+    }
+
+    /**
+     * @return bytes discarded by {@link #writeBulkAsync} because the bulk buffer was full
+     */
+    public long getBulkDroppedBytes() {
+        synchronized (mWriteBufferLock) {
+            return mBulkDroppedBytes;
+        }
+    }
+
+    public long getBulkWrittenBytes() {
+        return mBulkWrittenBytes;
+    }
+
+    /**
+     * Paces all writes, bulk included, to bytesPerSecond on average, e.g. to keep a radio's
+     * transmit buffer from overflowing. Data waits in the write buffers meanwhile. A waiting
+     * write goes out on the next loop pass, so with a quiet downlink the read timeout bounds
+     * how smooth the pacing is.
+     *
+     * @param bytesPerSecond 0 to write as fast as the port takes it
+     */
+    public void setWriteRateLimit(int bytesPerSecond) {
+        mWriteRateLimit = Math.max(0, bytesPerSecond);
+    }
+
+    public int getWriteRateLimit() {
+        return mWriteRateLimit;
+    }
+
+    /**
+     * @return bytes written to the port, bulk included
+     */
+    public long getWrittenBytes() {
+        return mWrittenBytes;
+    }
+
+    /**
+     * Histogram receiving, for every bulk write, the age of the oldest frame it carries.
+     */
+    public void setBulkLatencyHistogram(LatencyHistogram histogram) {
+        mBulkLatency = histogram;
+    }
+
+    /**
+     * Histogram receiving, for every port write, the time the oldest written byte spent queued.
+     */
+    public void setWriteLatencyHistogram(LatencyHistogram histogram) {
+        mWriteLatency = histogram;
+    }
+
+    /**
+     * {@link System#nanoTime()} taken when the last {@link UsbSerialPort#read} returned data,
+     * 0 before the first. Read from {@link Listener#onNewData(byte[])} for the frame origin, and
+     * from other threads to tell whether the port delivers data at all.
+     */
+    public long getLastReadNanos() {
+        return mLastReadNanos;
+    }
+
     /**
      * start SerialInputOutputManager in separate thread
      */
     public void start() {
+        start(runnable -> new Thread(runnable, getClass().getSimpleName()).start());
+    }
+
+    /**
+     * start SerialInputOutputManager on a thread of executor, e.g. a pool shared by several ports
+     */
+    public void start(Executor executor) {
         if(mState != State.STOPPED)
             throw new IllegalStateException("already started");
-        new Thread(this, this.getClass().getSimpleName()).start();
+        executor.execute(this);
     }
 
     /**
@@ -179,6 +379,18 @@ public class SerialInputOutputManager implements Runnable {
         return mState;
     }
 
+    public UsbSerialPort getSerialPort() {
+        return mSerialPort;
+    }
+
+    /**
+     * {@link System#nanoTime()} of the last pass through the service loop, 0 before start.
+     * With a read timeout set, a value older than read + write timeout means the thread is stuck.
+     */
+    public long getLastActivityNanos() {
+        return mLastActivityNanos;
+    }
+
     /**
      * Continuously services the read and write buffers until {@link #stop()} is
      * called, or until a driver exception is raised.
@@ -191,15 +403,16 @@ public class SerialInputOutputManager implements Runnable {
             }
             mState = State.RUNNING;
         }
-        Log.i(TAG, "Running ...");
+        final ThreadProfile.Applied applied = mThreadProfile.apply();
+        mAppliedProfile = applied;
+        Log.i(TAG, "Running ... " + applied);
         try {
-            if(mThreadPriority != Process.THREAD_PRIORITY_DEFAULT)
-                Process.setThreadPriority(mThreadPriority);
             while (true) {
                 if (getState() != State.RUNNING) {
                     Log.i(TAG, "Stopping mState=" + getState());
                     break;
                 }
+                mLastActivityNanos = System.nanoTime();
                 step();
             }
         } catch (Exception e) {
@@ -213,6 +426,7 @@ public class SerialInputOutputManager implements Runnable {
                 mState = State.STOPPED;
                 Log.i(TAG, "Stopped");
             }
+            applied.restore();
         }
     }
 
@@ -224,6 +438,7 @@ public class SerialInputOutputManager implements Runnable {
         }
         int len = mSerialPort.read(buffer, mReadTimeout);
         if (len > 0) {
+            mLastReadNanos = System.nanoTime();
             if (DEBUG) {
                 Log.d(TAG, "Read data len=" + len);
             }
@@ -236,22 +451,92 @@ public class SerialInputOutputManager implements Runnable {
         }
 
         // Handle outgoing data.
+        int allowance = writeAllowance();
+        boolean writePending;
         buffer = null;
+        long pendingSinceNanos = 0;
         synchronized (mWriteBufferLock) {
-            len = mWriteBuffer.position();
+            len = Math.min(mWriteBuffer.position(), allowance);
             if (len > 0) {
+                pendingSinceNanos = mWritePendingSinceNanos;
                 buffer = new byte[len];
-                mWriteBuffer.rewind();
+                mWriteBuffer.flip();
                 mWriteBuffer.get(buffer, 0, len);
-                mWriteBuffer.clear();
+                // held back by pacing, the rest keeps the origin of the oldest byte
+                mWriteBuffer.compact();
             }
+            writePending = mWriteBuffer.position() > 0;
         }
         if (buffer != null) {
             if (DEBUG) {
                 Log.d(TAG, "Writing data len=" + len);
             }
             mSerialPort.write(buffer, mWriteTimeout);
+            mWrittenBytes += len;
+            allowance -= len;
+            consumeWriteTokens(len);
+            final LatencyHistogram writeLatency = mWriteLatency;
+            if (writeLatency != null) {
+                writeLatency.recordNanos(System.nanoTime() - pendingSinceNanos);
+            }
+        }
+
+        // Handle bulk data, whole frames only and behind the regular data.
+        buffer = null;
+        synchronized (mWriteBufferLock) {
+            len = 0;
+            int frames = 0;
+            // a paced frame may overdraw the allowance, the next passes make up for it
+            int chunkSize = Math.min(mBulkChunkSize, allowance);
+            while (!writePending && allowance > 0 && frames < mBulkFrameCount) {
+                int frameLength = mBulkFrameLengths[(mBulkFrameHead + frames) % BULK_MAX_FRAMES];
+                if (frames > 0 && len + frameLength > chunkSize)
+                    break;
+                len += frameLength;
+                frames++;
+            }
+            if (len > 0) {
+                pendingSinceNanos = mBulkFrameOrigins[mBulkFrameHead];
+                buffer = new byte[len];
+                mBulkBuffer.flip();
+                mBulkBuffer.get(buffer, 0, len);
+                mBulkBuffer.compact();
+                mBulkFrameHead = (mBulkFrameHead + frames) % BULK_MAX_FRAMES;
+                mBulkFrameCount -= frames;
+            }
+        }
+        if (buffer != null) {
+            if (DEBUG) {
+                Log.d(TAG, "Writing bulk data len=" + len);
+            }
+            mSerialPort.write(buffer, mWriteTimeout);
+            mWrittenBytes += len;
+            mBulkWrittenBytes += len;
+            consumeWriteTokens(len);
+            final LatencyHistogram bulkLatency = mBulkLatency;
+            if (bulkLatency != null) {
+                bulkLatency.recordNanos(System.nanoTime() - pendingSinceNanos);
+            }
         }
     }
 
+    /**
+     * @return bytes the write rate limit lets out now, {@link Integer#MAX_VALUE} if unpaced
+     */
+    private int writeAllowance() {
+        int rate = mWriteRateLimit;
+        if (rate == 0)
+            return Integer.MAX_VALUE;
+        long now = System.nanoTime();
+        double burst = Math.max(PACING_MIN_BURST, rate * PACING_BURST_SECONDS);
+        mWriteTokens = Math.min(burst, mWriteTokens + (now - mWriteTokensNanos) * rate / 1e9);
+        mWriteTokensNanos = now;
+        return mWriteTokens >= 1 ? (int) mWriteTokens : 0;
+    }
+
+    private void consumeWriteTokens(int len) {
+        if (mWriteRateLimit != 0)
+            mWriteTokens -= len;
+    }
+
 }
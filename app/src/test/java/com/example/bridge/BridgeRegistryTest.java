@@ -0,0 +1,162 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Several vehicles, each on its own TCP port, on one bounded set of threads.
+ */
+public class BridgeRegistryTest {
+
+    private BridgeRegistry mRegistry;
+
+    @After
+    public void tearDown() {
+        mRegistry.shutdown();
+    }
+
+    @Test
+    public void everyVehicleGetsItsOwnPortAndStream() throws Exception {
+        int basePort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            basePort = probe.getLocalPort();
+        }
+        mRegistry = new BridgeRegistry(basePort, 2, 8);
+        FakeSerialPort[] ports = {new FakeSerialPort(), new FakeSerialPort()};
+        BridgeRegistry.Vehicle[] vehicles = new BridgeRegistry.Vehicle[2];
+        for (int i = 0; i < 2; i++) {
+            FakeSerialPort port = ports[i];
+            vehicles[i] = mRegistry.add("vehicle" + i, () -> port);
+            vehicles[i].getBridge().setIoTimeout(100);
+            mRegistry.start(vehicles[i], null);
+        }
+
+        assertEquals(basePort, vehicles[0].getBridge().getTcpPort());
+        assertEquals(basePort + 1, vehicles[1].getBridge().getTcpPort());
+        // serial and tcp, each with a spare for rebuilding it
+        assertEquals(8, mRegistry.getReservedThreads());
+
+        for (int i = 0; i < 2; i++) {
+            try (Socket client = connect(vehicles[i].getBridge().getTcpPort())) {
+                // sysid tells the vehicles apart
+                assertEquals(i + 1, readSysId(client, ports[i], i + 1));
+            }
+        }
+        assertTrue(mRegistry.getIoPoolSize() <= mRegistry.getMaxThreads());
+
+        try {
+            mRegistry.add("vehicle2", FakeSerialPort::new);
+            fail("registry is full");
+        } catch (IllegalStateException expected) {
+        }
+
+        mRegistry.remove("vehicle0");
+        assertEquals(4, mRegistry.getReservedThreads());
+        assertFalse(ports[0].isOpen());
+        // the freed port is handed out again
+        BridgeRegistry.Vehicle replacement = mRegistry.add("vehicle2", FakeSerialPort::new);
+        assertEquals(basePort, replacement.getBridge().getTcpPort());
+    }
+
+    @Test
+    public void startBeyondTheThreadLimitFails() throws Exception {
+        int basePort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            basePort = probe.getLocalPort();
+        }
+        mRegistry = new BridgeRegistry(basePort, 4, 4);
+        mRegistry.start(mRegistry.add("vehicle0", FakeSerialPort::new), null);
+
+        BridgeRegistry.Vehicle second = mRegistry.add("vehicle1", FakeSerialPort::new);
+        try {
+            mRegistry.start(second, null);
+            fail("thread limit exceeded");
+        } catch (IOException expected) {
+        }
+        assertFalse(second.getBridge().isRunning());
+        assertEquals(4, mRegistry.getReservedThreads());
+    }
+
+    @Test
+    public void helpersHoldAThreadWhileTheyRun() throws Exception {
+        mRegistry = new BridgeRegistry(0, 1, 2);
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(1);
+        Runnable helper = () -> {
+            running.countDown();
+            try {
+                done.await();
+            } catch (InterruptedException ignored) {
+            }
+        };
+        mRegistry.getHelperExecutor().execute(helper);
+        mRegistry.getHelperExecutor().execute(helper);
+        // each got a thread of its own
+        assertTrue(running.await(1, TimeUnit.SECONDS));
+        assertEquals(2, mRegistry.getReservedThreads());
+        try {
+            mRegistry.getHelperExecutor().execute(helper);
+            fail("thread limit exceeded");
+        } catch (RejectedExecutionException expected) {
+        }
+
+        done.countDown();
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mRegistry.getReservedThreads() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, mRegistry.getReservedThreads());
+    }
+
+    private static Socket connect(int port) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", port);
+                socket.setSoTimeout(1000);
+                return socket;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("bridge not listening: " + e.getMessage());
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    /**
+     * Keeps the vehicle sending until a frame arrives, the bridge may not have accepted the client yet.
+     */
+    private static int readSysId(Socket client, FakeSerialPort vehicle, int vehicleSysId) throws IOException {
+        int[] sysId = {-1};
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> sysId[0] = frame.sysId());
+        InputStream in = client.getInputStream();
+        client.setSoTimeout(20);
+        byte[] buffer = new byte[256];
+        long deadline = System.currentTimeMillis() + 1000;
+        while (sysId[0] < 0 && System.currentTimeMillis() < deadline) {
+            vehicle.receive(TestFrames.frame(0, 7, vehicleSysId, 1, new byte[]{0, 0, 0, 0, 2, 12, 0, 4, 3}));
+            try {
+                int length = in.read(buffer);
+                if (length < 0)
+                    break;
+                parser.parse(buffer, 0, length);
+            } catch (SocketTimeoutException e) {
+                // not accepted yet, send again
+            }
+        }
+        return sysId[0];
+    }
+}
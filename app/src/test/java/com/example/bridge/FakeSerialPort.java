@@ -0,0 +1,184 @@
+package com.example.bridge;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+import com.hoho.android.usbserial.driver.UsbSerialDriver;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory serial port with fault injection.
+ */
+public class FakeSerialPort implements UsbSerialPort {
+
+    private final BlockingQueue<byte[]> mInbound = new LinkedBlockingQueue<>();
+    private final ByteArrayOutputStream mOutbound = new ByteArrayOutputStream();
+    private volatile boolean mOpen = true;
+    private volatile boolean mFailReads;
+    private volatile boolean mStallReads;
+
+    /**
+     * Queues bytes as if they came from the vehicle.
+     */
+    void receive(byte[] data) {
+        mInbound.add(data);
+    }
+
+    synchronized byte[] sent() {
+        return mOutbound.toByteArray();
+    }
+
+    void failReads() {
+        mFailReads = true;
+    }
+
+    void stallReads() {
+        mStallReads = true;
+    }
+
+    @Override
+    public int read(byte[] dest, int timeout) throws IOException {
+        if (!mOpen || mFailReads)
+            throw new IOException("injected read failure");
+        if (mStallReads) {
+            while (mOpen) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            throw new IOException("closed while stalled");
+        }
+        byte[] data;
+        try {
+            data = mInbound.poll(timeout == 0 ? Long.MAX_VALUE : timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            return 0;
+        }
+        if (data == null)
+            return 0;
+        System.arraycopy(data, 0, dest, 0, data.length);
+        return data.length;
+    }
+
+    @Override
+    public synchronized void write(byte[] src, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("closed");
+        mOutbound.write(src);
+    }
+
+    @Override
+    public void close() {
+        mOpen = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public void open(UsbDeviceConnection connection) {
+        mOpen = true;
+    }
+
+    @Override
+    public void setParameters(int baudRate, int dataBits, int stopBits, int parity) {
+    }
+
+    @Override
+    public UsbSerialDriver getDriver() {
+        return null;
+    }
+
+    @Override
+    public UsbDevice getDevice() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Override
+    public UsbEndpoint getWriteEndpoint() {
+        return null;
+    }
+
+    @Override
+    public UsbEndpoint getReadEndpoint() {
+        return null;
+    }
+
+    @Override
+    public String getSerial() {
+        return "fake";
+    }
+
+    @Override
+    public boolean getCD() {
+        return false;
+    }
+
+    @Override
+    public boolean getCTS() {
+        return false;
+    }
+
+    @Override
+    public boolean getDSR() {
+        return false;
+    }
+
+    @Override
+    public boolean getDTR() {
+        return false;
+    }
+
+    @Override
+    public void setDTR(boolean value) {
+    }
+
+    @Override
+    public boolean getRI() {
+        return false;
+    }
+
+    @Override
+    public boolean getRTS() {
+        return false;
+    }
+
+    @Override
+    public void setRTS(boolean value) {
+    }
+
+    @Override
+    public EnumSet<ControlLine> getControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public EnumSet<ControlLine> getSupportedControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public void purgeHwBuffers(boolean purgeWriteBuffers, boolean purgeReadBuffers) {
+    }
+
+    @Override
+    public void setBreak(boolean value) {
+    }
+}
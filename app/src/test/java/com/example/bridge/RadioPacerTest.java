@@ -0,0 +1,160 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+import com.example.mavlink.message.RadioStatus;
+import com.hoho.android.usbserial.util.SerialInputOutputManager;
+
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RadioPacerTest {
+
+    private static final long S = TimeUnit.SECONDS.toNanos(1);
+    private static final int MSG_ID_PARAM_SET = 23;
+    private static final int MSG_ID_COMMAND_LONG = 76;
+
+    @Test
+    public void rateFollowsTheRadioBuffer() {
+        SerialInputOutputManager manager = new SerialInputOutputManager(new FakeSerialPort());
+        RadioPacer pacer = new RadioPacer("radio");
+        pacer.setManager(manager);
+
+        // plenty of room, nothing to pace
+        pacer.onRadioStatus(95, S);
+        assertEquals(0, pacer.getRate());
+        pacer.onRadioStatus(30, 2 * S);
+        int slow = pacer.getRate();
+        assertTrue(slow > 0);
+        assertEquals(slow, manager.getWriteRateLimit());
+        pacer.onRadioStatus(10, 3 * S);
+        assertTrue(pacer.getRate() <= slow);
+        assertEquals(2, pacer.getSlowdowns());
+
+        // inside the band the rate holds, above it grows until pacing is off
+        int rate = pacer.getRate();
+        pacer.onRadioStatus(60, 4 * S);
+        assertEquals(rate, pacer.getRate());
+        long now = 5 * S;
+        while (pacer.getRate() != 0) {
+            assertTrue(pacer.getRate() >= rate);
+            rate = pacer.getRate();
+            pacer.onRadioStatus(90, now);
+            now += S;
+            assertTrue("never unpaced", now < 200 * S);
+        }
+        assertEquals(0, manager.getWriteRateLimit());
+
+        // a radio that stops reporting lets go of the link
+        pacer.onRadioStatus(20, now);
+        assertTrue(manager.getWriteRateLimit() > 0);
+        pacer.onTick(now + 6 * S);
+        assertEquals(0, manager.getWriteRateLimit());
+        assertEquals(-1, pacer.getTxBufFree());
+
+        pacer.setEnabled(false);
+        pacer.onRadioStatus(20, now + 7 * S);
+        assertEquals(0, manager.getWriteRateLimit());
+        assertEquals(20, pacer.getTxBufFree());
+    }
+
+    @Test
+    public void pacedWritesKeepTheirOrderAndBulkFramesStayWhole() throws Exception {
+        FakeSerialPort port = new FakeSerialPort();
+        SerialInputOutputManager manager = new SerialInputOutputManager(port);
+        manager.setReadTimeout(5);
+        manager.setWriteRateLimit(5000);
+        byte[] regular = new byte[1500];
+        for (int i = 0; i < regular.length; i++)
+            regular[i] = (byte) i;
+        byte[] bulk = TestFrames.frame(MSG_ID_PARAM_SET, 0, 1, 1, new byte[23]);
+        assertTrue(manager.writeAsync(regular, 0, regular.length, System.nanoTime()));
+        assertTrue(manager.writeBulkAsync(bulk, 0, bulk.length, System.nanoTime()));
+        assertTrue(manager.writeBulkAsync(bulk, 0, bulk.length, System.nanoTime()));
+
+        long start = System.nanoTime();
+        manager.start();
+        try {
+            long deadline = System.currentTimeMillis() + 2000;
+            while (port.sent().length < regular.length + 2 * bulk.length && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            long elapsed = System.nanoTime() - start;
+            byte[] sent = port.sent();
+            assertEquals(regular.length + 2 * bulk.length, sent.length);
+            // a 500 byte burst, the rest at 5 kB/s
+            assertTrue(elapsed / 1000000 + " ms", elapsed >= TimeUnit.MILLISECONDS.toNanos(150));
+            for (int i = 0; i < regular.length; i++)
+                assertEquals(regular[i], sent[i]);
+            List<Integer> bulkFrames = new ArrayList<>();
+            MavlinkFrameParser parser = new MavlinkFrameParser(frame -> bulkFrames.add(frame.msgId()));
+            parser.parse(sent, regular.length, 2 * bulk.length);
+            assertEquals(2, bulkFrames.size());
+            assertEquals(sent.length, manager.getWrittenBytes());
+        } finally {
+            manager.stop();
+            port.close();
+        }
+    }
+
+    @Test
+    public void retransmissionsAreCounted() {
+        UplinkRetryCounter retries = new UplinkRetryCounter();
+        MessageRouter uplink = new MessageRouter((data, offset, length, originNanos) -> { });
+        uplink.addFrameListener(retries);
+
+        byte[] paramSet = new byte[23];
+        paramSet[0] = 1;
+        route(uplink, TestFrames.frame(MSG_ID_PARAM_SET, 0, 245, 190, paramSet), S);
+        // the same parameter again, with a new sequence number
+        route(uplink, TestFrames.frame(MSG_ID_PARAM_SET, 1, 245, 190, paramSet), S + S / 2);
+        paramSet[0] = 2;
+        route(uplink, TestFrames.frame(MSG_ID_PARAM_SET, 2, 245, 190, paramSet), 2 * S);
+        // heartbeats repeat by design
+        route(uplink, TestFrames.heartbeat(3), 2 * S);
+        route(uplink, TestFrames.heartbeat(4), 3 * S);
+        byte[] command = new byte[33];
+        route(uplink, TestFrames.frame(MSG_ID_COMMAND_LONG, 5, 245, 190, command), 3 * S);
+        command[32] = 1;
+        route(uplink, TestFrames.frame(MSG_ID_COMMAND_LONG, 6, 245, 190, command), 3 * S);
+
+        assertEquals(2, retries.getRetries());
+        assertEquals(1, retries.getRetries(MSG_ID_PARAM_SET));
+        assertEquals(1, retries.getRetries(MSG_ID_COMMAND_LONG));
+        assertEquals(5, retries.getFrames());
+    }
+
+    @Test
+    public void bridgeReadsRadioStatusFromTheDownlink() throws Exception {
+        int tcpPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            tcpPort = probe.getLocalPort();
+        }
+        FakeSerialPort port = new FakeSerialPort();
+        SerialTcpBridge bridge = new SerialTcpBridge(() -> port, tcpPort);
+        bridge.setIoTimeout(100);
+        bridge.start();
+        try {
+            byte[] status = new byte[9];
+            status[6] = 25;
+            port.receive(TestFrames.frame(RadioStatus.MSG_ID, 0, '3', RadioStatus.COMP_ID_TELEMETRY_RADIO, status));
+            long deadline = System.currentTimeMillis() + 1000;
+            while (bridge.getLinkStats().get(0).getTxBufFree() < 0 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            SerialTcpBridge.LinkStats stats = bridge.getLinkStats().get(0);
+            assertEquals(25, stats.getTxBufFree());
+            assertTrue(stats.getUplinkRate() > 0);
+        } finally {
+            bridge.stop();
+        }
+    }
+
+    private static void route(MessageRouter router, byte[] frame, long originNanos) {
+        router.onNewData(frame, 0, frame.length, originNanos);
+    }
+}
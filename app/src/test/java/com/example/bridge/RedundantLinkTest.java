@@ -0,0 +1,148 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Two links carrying the same vehicle: the merged stream has every frame once and uplink
+ * fails over when the preferred link dies.
+ */
+public class RedundantLinkTest {
+
+    private final FakeSerialPort[] mPorts = {new FakeSerialPort(), new FakeSerialPort()};
+    private SerialTcpBridge mBridge;
+    private int mPort;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            mPort = probe.getLocalPort();
+        }
+        mBridge = new SerialTcpBridge(mPort);
+        mBridge.addLink("radio", () -> {
+            if (!mPorts[0].isOpen())
+                throw new IOException("unplugged");
+            return mPorts[0];
+        });
+        mBridge.addLink("lte", () -> mPorts[1]);
+        mBridge.setIoTimeout(100);
+        mBridge.setStallMillis(300);
+        mBridge.start();
+    }
+
+    @After
+    public void tearDown() {
+        mBridge.stop();
+    }
+
+    @Test
+    public void duplicatesFromTheSecondLinkAreDropped() throws Exception {
+        try (Socket client = connect()) {
+            for (int seq = 0; seq < 20; seq++) {
+                byte[] frame = TestFrames.heartbeat(seq);
+                mPorts[0].receive(frame);
+                mPorts[1].receive(frame);
+                // the slower path loses a frame now and then
+                if (seq % 5 == 4)
+                    mPorts[0].receive(TestFrames.heartbeat(100 + seq));
+            }
+
+            List<Integer> seqs = readFrames(client, 24);
+            assertEquals(24, seqs.size());
+            assertEquals(24, mBridge.getMessageRouter().getUniqueFrames());
+            assertEquals(20, mBridge.getMessageRouter().getDuplicateFrames());
+        }
+    }
+
+    @Test
+    public void uplinkFailsOverToTheLiveLink() throws Exception {
+        try (Socket client = connect()) {
+            for (int seq = 0; seq < 5; seq++) {
+                mPorts[0].receive(TestFrames.heartbeat(seq));
+                mPorts[1].receive(TestFrames.heartbeat(seq));
+            }
+            readFrames(client, 5);
+            assertEquals("radio", mBridge.getUplinkLink());
+
+            mPorts[0].failReads();
+            mPorts[0].close();
+            long deadline = System.currentTimeMillis() + 1000;
+            while (!"lte".equals(mBridge.getUplinkLink())) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("uplink stayed on " + mBridge.getUplinkLink());
+                mPorts[1].receive(TestFrames.heartbeat(0));
+                Thread.sleep(10);
+            }
+
+            client.getOutputStream().write(TestFrames.heartbeat(42));
+            deadline = System.currentTimeMillis() + 1000;
+            // the bridge's own frames go out in between
+            while (!sentSeqs(mPorts[1], 1).contains(42)) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("uplink not delivered");
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private Socket connect() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", mPort);
+                socket.setSoTimeout(1000);
+                return socket;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("bridge not listening: " + e.getMessage());
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private static List<Integer> sentSeqs(FakeSerialPort port, int sysId) {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (frame.sysId() == sysId)
+                seqs.add(frame.seq());
+        });
+        parser.parse(port.sent());
+        return seqs;
+    }
+
+    private static List<Integer> readFrames(Socket client, int count) throws IOException {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> seqs.add(frame.seq()));
+        InputStream in = client.getInputStream();
+        byte[] buffer = new byte[1024];
+        try {
+            while (seqs.size() < count) {
+                int length = in.read(buffer);
+                if (length < 0)
+                    break;
+                parser.parse(buffer, 0, length);
+            }
+            // nothing else may follow
+            client.setSoTimeout(200);
+            int length = in.read(buffer);
+            parser.parse(buffer, 0, Math.max(0, length));
+        } catch (SocketTimeoutException e) {
+            // expected once the stream is drained
+        }
+        return seqs;
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkTargets;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * An autopilot behind the radio and a camera and gimbal behind the companion computer's link:
+ * frames for the camera go to the companion link only, everything else stays on the radio.
+ */
+public class RoutingTableTest {
+
+    private static final int MSG_ID_PARAM_REQUEST_LIST = 21;
+    private static final int MSG_ID_COMMAND_LONG = 76;
+    private static final int COMP_ID_AUTOPILOT = 1;
+    private static final int COMP_ID_CAMERA = 100;
+    private static final int COMP_ID_GIMBAL = 154;
+
+    private final FakeSerialPort mRadio = new FakeSerialPort();
+    private final FakeSerialPort mCompanion = new FakeSerialPort();
+    private SerialTcpBridge mBridge;
+    private int mPort;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            mPort = probe.getLocalPort();
+        }
+        mBridge = new SerialTcpBridge(mPort);
+        mBridge.addLink("radio", () -> mRadio);
+        mBridge.addLink("companion", () -> mCompanion);
+        mBridge.setIoTimeout(100);
+        mBridge.setGcsEmitterEnabled(false);
+        mBridge.start();
+    }
+
+    @After
+    public void tearDown() {
+        mBridge.stop();
+    }
+
+    @Test
+    public void targetedFramesGoToTheLinkHostingTheTarget() throws Exception {
+        for (int seq = 0; seq < 4; seq++)
+            mRadio.receive(heartbeat(seq, COMP_ID_AUTOPILOT));
+        mCompanion.receive(heartbeat(0, COMP_ID_CAMERA));
+        mCompanion.receive(heartbeat(0, COMP_ID_GIMBAL));
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mBridge.getRoutingTable().getRoutes().size() < 3) {
+            if (System.currentTimeMillis() > deadline)
+                fail(mBridge.getRoutingTable().toString());
+            Thread.sleep(5);
+        }
+        List<RoutingTable.Route> routes = mBridge.getRoutingTable().getRoutes();
+        assertEquals(COMP_ID_AUTOPILOT, routes.get(0).getComponentId());
+        assertEquals("radio", routes.get(0).getLinks().get(0));
+        assertEquals(COMP_ID_CAMERA, routes.get(1).getComponentId());
+        assertEquals("companion", routes.get(1).getLinks().get(0));
+
+        try (Socket client = connect()) {
+            OutputStream out = client.getOutputStream();
+            out.write(command(1, 1, COMP_ID_CAMERA));
+            out.write(command(2, 1, COMP_ID_AUTOPILOT));
+            // any component of system 1, the uplink link hosts one
+            out.write(command(3, 1, 0));
+            // never heard of
+            out.write(command(4, 7, 1));
+            out.write(TestFrames.frame(MSG_ID_PARAM_REQUEST_LIST, 5, 245, 190, new byte[2]));
+            out.write(command(6, 1, COMP_ID_GIMBAL));
+
+            deadline = System.currentTimeMillis() + 1000;
+            while (sentSeqs(mRadio).size() + sentSeqs(mCompanion).size() < 6) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("radio " + sentSeqs(mRadio) + ", companion " + sentSeqs(mCompanion));
+                Thread.sleep(5);
+            }
+        }
+        assertEquals(listOf(1, 6), sentSeqs(mCompanion));
+        assertEquals(listOf(2, 3, 4, 5), sentSeqs(mRadio));
+        assertEquals(2, mBridge.getReroutedFrames());
+        assertEquals(1, mBridge.getRoutingTable().getMisses());
+    }
+
+    @Test
+    public void targetsAreReadInPlace() {
+        byte[] command = command(0, 1, COMP_ID_CAMERA);
+        assertEquals(1, MavlinkTargets.targetSystem(command, 0));
+        assertEquals(COMP_ID_CAMERA, MavlinkTargets.targetComponent(command, 0));
+        assertEquals(MavlinkTargets.NONE, MavlinkTargets.targetSystem(TestFrames.heartbeat(0), 0));
+        // both target fields cut off by payload truncation
+        byte[] truncated = TestFrames.frame(MSG_ID_PARAM_REQUEST_LIST, 0, 245, 190, new byte[0]);
+        assertEquals(MavlinkTargets.BROADCAST, MavlinkTargets.targetSystem(truncated, 0));
+    }
+
+    private static byte[] heartbeat(int seq, int compId) {
+        return TestFrames.frame(0, seq, 1, compId, new byte[]{0, 0, 0, 0, 2, 12, (byte) 0x81, 4, 3});
+    }
+
+    private static byte[] command(int seq, int targetSystem, int targetComponent) {
+        byte[] payload = new byte[33];
+        payload[30] = (byte) targetSystem;
+        payload[31] = (byte) targetComponent;
+        return TestFrames.frame(MSG_ID_COMMAND_LONG, seq, 245, 190, payload);
+    }
+
+    private static List<Integer> listOf(Integer... values) {
+        List<Integer> list = new ArrayList<>();
+        for (Integer value : values)
+            list.add(value);
+        return list;
+    }
+
+    private static List<Integer> sentSeqs(FakeSerialPort port) {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> seqs.add(frame.seq()));
+        parser.parse(port.sent());
+        return seqs;
+    }
+
+    private Socket connect() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (true) {
+            try {
+                return new Socket("127.0.0.1", mPort);
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("bridge not listening: " + e.getMessage());
+                Thread.sleep(5);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.bridge;
+
+import android.os.Process;
+
+import com.example.mavlink.TestFrames;
+import com.example.utils.ThreadProfile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fault injection against the bridge watchdog: every recovery has to finish within a second.
+ */
+public class SerialTcpBridgeTest {
+
+    private static final long MAX_RECOVERY_MILLIS = 1000;
+
+    private final List<FakeSerialPort> mPorts = new CopyOnWriteArrayList<>();
+    private SerialTcpBridge mBridge;
+    private Thread mVehicle;
+    private int mPort;
+
+    @Before
+    public void setUp() throws Exception {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            mPort = probe.getLocalPort();
+        }
+        mBridge = new SerialTcpBridge(() -> {
+            FakeSerialPort port = new FakeSerialPort();
+            mPorts.add(port);
+            return port;
+        }, mPort);
+        mBridge.setIoTimeout(100);
+        mBridge.setStallMillis(300);
+        mBridge.start();
+
+        mVehicle = new Thread(() -> {
+            int seq = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                mPorts.get(mPorts.size() - 1).receive(TestFrames.heartbeat(seq++));
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        mVehicle.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mVehicle.interrupt();
+        mVehicle.join();
+        mBridge.stop();
+    }
+
+    @Test
+    public void stageThreadsReportTheirScheduling() throws Exception {
+        try (Socket client = connect()) {
+            awaitData(client);
+
+            List<ThreadProfile.Applied> profiles = mBridge.getAppliedProfiles();
+            assertEquals(2, profiles.size());
+            assertEquals("bridge-serial-serial", profiles.get(0).getThreadName());
+            assertEquals("bridge-tcp-" + mPort, profiles.get(1).getThreadName());
+            for (ThreadProfile.Applied profile : profiles)
+                assertEquals(Process.THREAD_PRIORITY_URGENT_AUDIO, profile.getProfile().getPriority());
+        }
+    }
+
+    @Test
+    public void serialReadFailureIsRecoveredInPlace() throws Exception {
+        try (Socket client = connect()) {
+            awaitData(client);
+
+            long start = System.nanoTime();
+            mPorts.get(0).failReads();
+            awaitRecovery(1);
+            client.getInputStream().skip(client.getInputStream().available());
+            awaitData(client);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(2, mPorts.size());
+            assertTrue("recovered in " + elapsedMillis + " ms", elapsedMillis < MAX_RECOVERY_MILLIS);
+            assertTrue(mBridge.getLastRecoveryMillis() < MAX_RECOVERY_MILLIS);
+        }
+    }
+
+    @Test
+    public void stalledSerialReadIsDetected() throws Exception {
+        try (Socket client = connect()) {
+            awaitData(client);
+
+            mPorts.get(0).stallReads();
+            awaitRecovery(1);
+
+            assertEquals(2, mPorts.size());
+            assertFalse(mPorts.get(0).isOpen());
+        }
+    }
+
+    @Test
+    public void droppedTcpClientCanReconnectOnTheSamePort() throws Exception {
+        Socket client = connect();
+        awaitData(client);
+
+        long start = System.nanoTime();
+        client.close();
+        try (Socket reconnected = connect()) {
+            awaitData(reconnected);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+            assertEquals(1, mPorts.size());
+            assertTrue("recovered in " + elapsedMillis + " ms", elapsedMillis < MAX_RECOVERY_MILLIS);
+        }
+    }
+
+    @Test
+    public void tcpStageCountsAsRecoveredOnlyOnceItListens() throws Exception {
+        List<String> events = new CopyOnWriteArrayList<>();
+        mBridge.setListener(new SerialTcpBridge.Listener() {
+            @Override
+            public void onStageLost(SerialTcpBridge.Stage stage, String link, Exception e) {
+                events.add("lost " + link);
+            }
+
+            @Override
+            public void onStageRecovered(SerialTcpBridge.Stage stage, String link, long recoveryMillis) {
+                events.add("recovered " + link);
+            }
+
+            @Override
+            public void onUplinkChanged(String link) {
+            }
+        });
+        Socket client = connect();
+        awaitData(client);
+
+        // takes the port while the bridge serves its client, so the rebuilt stage can't bind
+        try (ServerSocket blocker = new ServerSocket()) {
+            blocker.setReuseAddress(true);
+            blocker.bind(new InetSocketAddress(mPort));
+            client.close();
+            Thread.sleep(MAX_RECOVERY_MILLIS);
+
+            assertEquals(0, mBridge.getRecoveryCount());
+            assertEquals(Collections.singletonList("lost tcp"), events);
+        }
+        try (Socket reconnected = connect()) {
+            awaitData(reconnected);
+        }
+        awaitRecovery(1);
+        assertEquals(Arrays.asList("lost tcp", "recovered tcp"), events);
+    }
+
+    private Socket connect() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + MAX_RECOVERY_MILLIS;
+        while (true) {
+            try {
+                Socket socket = new Socket("127.0.0.1", mPort);
+                socket.setSoTimeout((int) MAX_RECOVERY_MILLIS);
+                return socket;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("bridge not listening: " + e.getMessage());
+                Thread.sleep(5);
+            }
+        }
+    }
+
+    private void awaitData(Socket client) throws IOException {
+        InputStream in = client.getInputStream();
+        try {
+            assertTrue(in.read() >= 0);
+        } catch (SocketTimeoutException e) {
+            fail("no data within " + MAX_RECOVERY_MILLIS + " ms");
+        }
+    }
+
+    private void awaitRecovery(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2 * MAX_RECOVERY_MILLIS;
+        while (mBridge.getRecoveryCount() < count) {
+            if (System.currentTimeMillis() > deadline)
+                fail("no recovery");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.TestFrames;
+import com.example.mavlink.message.Heartbeat;
+import com.example.mavlink.message.Timesync;
+
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TimeSyncTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long OFFSET = 3_600_000 * MS;
+
+    @Test
+    public void offsetConvergesAndSlowSamplesAreRejected() {
+        TimeSync sync = new TimeSync();
+        long now = 1_000_000 * MS;
+        for (int i = 0; i < 50; i++) {
+            // 40 ms each way, the autopilot answers in the middle
+            long sent = now + i * 1000 * MS;
+            sync.onSample(sent, sent + 40 * MS + OFFSET, sent + 80 * MS);
+        }
+        assertTrue(sync.isSynced());
+        assertEquals(OFFSET, sync.getOffsetNanos(), MS);
+        assertEquals(80 * MS, sync.getRttNanos(), MS);
+
+        // queued behind a burst: slow in one direction only, would skew the offset by 200 ms
+        long sent = now + 60_000 * MS;
+        sync.onSample(sent, sent + 440 * MS + OFFSET, sent + 480 * MS);
+        assertEquals(OFFSET, sync.getOffsetNanos(), MS);
+        assertEquals(1, sync.getRejectedSamples());
+
+        long local = 5_000_000 * MS;
+        assertEquals(local, sync.toLocalNanos(sync.toVehicleNanos(local)));
+    }
+
+    @Test
+    public void rebootOfTheAutopilotRestartsTheEstimate() {
+        TimeSync sync = new TimeSync();
+        long sent = 1_000_000 * MS;
+        for (int i = 0; i < 20; i++, sent += 1000 * MS) {
+            sync.onSample(sent, sent + 20 * MS + OFFSET, sent + 40 * MS);
+        }
+        // the autopilot's clock starts over from zero
+        for (int i = 0; i < 3; i++, sent += 1000 * MS) {
+            sync.onSample(sent, 20 * MS + i * 1000 * MS, sent + 40 * MS);
+        }
+
+        assertEquals(1, sync.getResets());
+        assertEquals(1, sync.getSamples());
+        assertEquals(-(sent - 3000 * MS), sync.getOffsetNanos(), MS);
+    }
+
+    @Test
+    public void bridgeSendsHeartbeatAndTimesyncRequests() throws Exception {
+        int tcpPort;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            tcpPort = probe.getLocalPort();
+        }
+        FakeSerialPort port = new FakeSerialPort();
+        SerialTcpBridge bridge = new SerialTcpBridge(() -> port, tcpPort);
+        bridge.setIoTimeout(100);
+        bridge.start();
+        try {
+            // a vehicle answering every TIMESYNC request with its own clock
+            MavlinkFrameWriter vehicle = new MavlinkFrameWriter(1, 1);
+            Timesync timesync = new Timesync();
+            List<Integer> msgIds = new ArrayList<>();
+            MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+                msgIds.add(frame.msgId());
+                if (timesync.wrap(frame) && timesync.tc1() == 0) {
+                    int length = vehicle.begin(Timesync.MSG_ID)
+                            .putInt64(0, System.nanoTime() + OFFSET)
+                            .putInt64(8, timesync.ts1())
+                            .finish();
+                    byte[] response = new byte[length];
+                    System.arraycopy(vehicle.buffer(), 0, response, 0, length);
+                    port.receive(response);
+                }
+            });
+            int parsed = 0;
+            long deadline = System.currentTimeMillis() + 2000;
+            while (!bridge.getTimeSync().isSynced()) {
+                if (System.currentTimeMillis() > deadline)
+                    fail("not synced: " + bridge.getTimeSync());
+                byte[] sent = port.sent();
+                parser.parse(sent, parsed, sent.length - parsed);
+                parsed = sent.length;
+                port.receive(TestFrames.heartbeat(0));
+                Thread.sleep(10);
+            }
+
+            assertEquals(OFFSET, bridge.getTimeSync().getOffsetNanos(), 20 * MS);
+            assertTrue(msgIds.contains(Timesync.MSG_ID));
+            // no GCS heartbeat while MavsdkServer is not connected
+            assertFalse(msgIds.contains(Heartbeat.MSG_ID));
+        } finally {
+            bridge.stop();
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.bridge;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UdpRelayTest {
+
+    private static final int MSG_ID_ATTITUDE = 30;
+
+    private final List<DatagramSocket> mSockets = new ArrayList<>();
+    private UdpRelay mRelay;
+
+    @After
+    public void tearDown() {
+        if (mRelay != null)
+            mRelay.close();
+        for (DatagramSocket socket : mSockets)
+            socket.close();
+    }
+
+    @Test
+    public void everyEndpointGetsItsOwnFilterAndRate() throws Exception {
+        DatagramSocket all = open();
+        DatagramSocket heartbeatsOnly = open();
+        DatagramSocket capped = open();
+        mRelay = new UdpRelay(0);
+        mRelay.addEndpoint("all", address(all), MessageFilter.passAll(), 0, 256);
+        mRelay.addEndpoint("heartbeats", address(heartbeatsOnly),
+                new MessageFilter.Builder().defaultAction(MessageFilter.Action.DROP).pass(0).build(), 0, 256);
+        // the burst covers a few frames, the rest of the second is over the cap
+        mRelay.addEndpoint("capped", address(capped), MessageFilter.passAll(), 1000, 256);
+        mRelay.start();
+
+        ByteArrayOutputStream toMavsdk = new ByteArrayOutputStream();
+        MessageRouter downlink = new MessageRouter((data, offset, length, originNanos) -> toMavsdk.write(data, offset, length));
+        mRelay.attach(downlink, new MessageRouter((data, offset, length, originNanos) -> { }));
+
+        int sent = 0;
+        for (int seq = 0; seq < 50; seq++) {
+            byte[] frame = seq % 5 == 0 ? TestFrames.heartbeat(seq) : TestFrames.frame(MSG_ID_ATTITUDE, seq, 1, 1, new byte[28]);
+            downlink.onNewData(frame, 0, frame.length, System.nanoTime());
+            sent += frame.length;
+        }
+
+        // MavsdkServer's path is unaffected
+        assertEquals(sent, toMavsdk.size());
+        assertEquals(50, receive(all, 50).size());
+        List<Integer> heartbeats = receive(heartbeatsOnly, 10);
+        assertEquals(10, heartbeats.size());
+        for (int msgId : heartbeats)
+            assertEquals(0, msgId);
+        int cappedFrames = receive(capped, 50).size();
+        assertTrue(cappedFrames + " frames", cappedFrames > 0 && cappedFrames < 10);
+
+        UdpRelay.EndpointStats cappedStats = mRelay.getEndpointStats().get(2);
+        assertEquals(50 - cappedFrames, cappedStats.getRateLimited());
+        assertEquals(40, mRelay.getEndpointStats().get(1).getFiltered());
+    }
+
+    @Test
+    public void uplinkIsTakenFromTheDesignatedEndpointOnly() throws Exception {
+        DatagramSocket laptop = open();
+        mRelay = new UdpRelay(0);
+        mRelay.addEndpoint("laptop", address(laptop), MessageFilter.passAll(), 0, UdpRelay.DEFAULT_QUEUE_FRAMES);
+        mRelay.addEndpoint("screen", new InetSocketAddress(InetAddress.getByName("127.0.0.2"), 14550),
+                MessageFilter.passAll(), 0, UdpRelay.DEFAULT_QUEUE_FRAMES);
+        mRelay.setUplinkEndpoint("laptop");
+        mRelay.start();
+
+        ByteArrayOutputStream toVehicle = new ByteArrayOutputStream();
+        MessageRouter uplink = new MessageRouter((data, offset, length, originNanos) -> {
+            synchronized (toVehicle) {
+                toVehicle.write(data, offset, length);
+            }
+        });
+        mRelay.attach(new MessageRouter((data, offset, length, originNanos) -> { }), uplink);
+
+        // two frames in one datagram, then one cut in half across two
+        byte[] first = TestFrames.heartbeat(1);
+        byte[] second = TestFrames.heartbeat(2);
+        byte[] both = new byte[first.length + second.length];
+        System.arraycopy(first, 0, both, 0, first.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        InetSocketAddress relay = new InetSocketAddress(InetAddress.getLoopbackAddress(), mRelay.getLocalPort());
+        laptop.send(new DatagramPacket(both, both.length, relay));
+        byte[] third = TestFrames.heartbeat(3);
+        laptop.send(new DatagramPacket(third, 5, relay));
+        laptop.send(new DatagramPacket(third, 5, third.length - 5, relay));
+
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mRelay.getUplinkFrames() < 3 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(3, mRelay.getUplinkFrames());
+        synchronized (toVehicle) {
+            assertEquals(both.length + third.length, toVehicle.size());
+        }
+        assertTrue(mRelay.getEndpointStats().get(0).isUplink());
+
+        try {
+            mRelay.close();
+            mRelay = new UdpRelay(0);
+            mRelay.addEndpoint("group", new InetSocketAddress(InetAddress.getByName("239.255.14.55"), 14550),
+                    MessageFilter.passAll(), 0, UdpRelay.DEFAULT_QUEUE_FRAMES);
+            mRelay.setUplinkEndpoint("group");
+            fail("uplink from a multicast group");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private DatagramSocket open() throws Exception {
+        DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        socket.setSoTimeout(200);
+        mSockets.add(socket);
+        return socket;
+    }
+
+    private static InetSocketAddress address(DatagramSocket socket) {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+    }
+
+    /**
+     * @return msgids of the frames received until max arrived or nothing came for a while
+     */
+    private static List<Integer> receive(DatagramSocket socket, int max) throws Exception {
+        List<Integer> msgIds = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> msgIds.add(frame.msgId()));
+        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
+        while (msgIds.size() < max) {
+            try {
+                packet.setLength(2048);
+                socket.receive(packet);
+            } catch (SocketTimeoutException e) {
+                break;
+            }
+            parser.parse(packet.getData(), 0, packet.getLength());
+        }
+        return msgIds;
+    }
+}
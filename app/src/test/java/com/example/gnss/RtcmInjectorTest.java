@@ -0,0 +1,110 @@
+package com.example.gnss;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.message.GpsRtcmData;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RtcmInjectorTest {
+
+    private final List<int[]> mFragments = new ArrayList<>(); // flags, len
+    private final ByteArrayOutputStream mReassembled = new ByteArrayOutputStream();
+    private final GpsRtcmData mRtcmData = new GpsRtcmData();
+    private final MavlinkFrameParser mParser = new MavlinkFrameParser(frame -> {
+        assertTrue(mRtcmData.wrap(frame));
+        mFragments.add(new int[]{mRtcmData.flags(), mRtcmData.len()});
+        for (int i = 0; i < mRtcmData.len(); i++)
+            mReassembled.write(mRtcmData.data(i));
+    });
+    private boolean mAccept = true;
+    private final RtcmInjector mInjector = new RtcmInjector((frame, offset, length, originNanos) -> {
+        if (!mAccept)
+            return false;
+        mParser.parse(frame, offset, length);
+        return true;
+    }, 255, 240);
+
+    @Test
+    public void framesAreFragmentedTheWayTheAutopilotReassemblesThem() {
+        byte[] small = rtcm(20);
+        byte[] large = rtcm(394); // 400 byte frame, three fragments
+        byte[] exact = rtcm(354); // 360 byte frame, two full fragments and an empty one
+        byte[] stream = concat(new byte[]{0x00, (byte) 0xD3, 0x7F}, small, large, exact);
+        // arbitrary chunking from the source
+        for (int offset = 0; offset < stream.length; offset += 97) {
+            int length = Math.min(97, stream.length - offset);
+            byte[] chunk = new byte[length];
+            System.arraycopy(stream, offset, chunk, 0, length);
+            mInjector.onSourceData(chunk, length);
+        }
+
+        assertEquals(3, mInjector.getMessages());
+        assertEquals(1 + 3 + 3, mFragments.size());
+        assertEquals(1 + 3 + 3, mInjector.getSentFrames());
+        assertArrayEquals(concat(small, large, exact), mReassembled.toByteArray());
+
+        // unfragmented, sequence 0
+        assertEquals(0, mFragments.get(0)[0]);
+        assertEquals(small.length, mFragments.get(0)[1]);
+        // sequence 1, fragments 0-2
+        int[] lengths = {180, 180, 40};
+        for (int i = 0; i < 3; i++) {
+            assertEquals(GpsRtcmData.FLAG_FRAGMENTED | i << 1 | 1 << 3, mFragments.get(1 + i)[0]);
+            assertEquals(lengths[i], mFragments.get(1 + i)[1]);
+        }
+        // sequence 2, closed by an empty fragment
+        assertEquals(GpsRtcmData.FLAG_FRAGMENTED | 2 << 1 | 2 << 3, mFragments.get(6)[0]);
+        assertEquals(0, mFragments.get(6)[1]);
+        assertTrue(mInjector.getCorrectionAgeMillis() >= 0);
+    }
+
+    @Test
+    public void badAndOversizedFramesAreNotSent() {
+        byte[] corrupt = rtcm(30);
+        corrupt[10] ^= 0x01;
+        byte[] oversized = rtcm(800); // five fragments
+        byte[] stream = concat(corrupt, oversized, rtcm(30));
+        mInjector.onSourceData(stream, stream.length);
+
+        assertEquals(1, mInjector.getCrcErrors());
+        assertEquals(1, mInjector.getOversizedMessages());
+        assertEquals(1, mFragments.size());
+
+        mAccept = false;
+        byte[] refused = rtcm(30);
+        mInjector.onSourceData(refused, refused.length);
+        assertEquals(1, mInjector.getDroppedFrames());
+        assertEquals(1, mInjector.getSentFrames());
+    }
+
+    /**
+     * @return a frame with a messageLength byte message and a valid CRC
+     */
+    private static byte[] rtcm(int messageLength) {
+        byte[] frame = new byte[Rtcm3Parser.HEADER_LENGTH + messageLength + Rtcm3Parser.CRC_LENGTH];
+        frame[0] = (byte) Rtcm3Parser.PREAMBLE;
+        frame[1] = (byte) (messageLength >> 8);
+        frame[2] = (byte) messageLength;
+        for (int i = 0; i < messageLength; i++)
+            frame[Rtcm3Parser.HEADER_LENGTH + i] = (byte) (i * 7 + messageLength);
+        int end = Rtcm3Parser.HEADER_LENGTH + messageLength;
+        int crc = Rtcm3Parser.crc24q(frame, 0, end);
+        frame[end] = (byte) (crc >> 16);
+        frame[end + 1] = (byte) (crc >> 8);
+        frame[end + 2] = (byte) crc;
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts)
+            out.write(part, 0, part.length);
+        return out.toByteArray();
+    }
+}
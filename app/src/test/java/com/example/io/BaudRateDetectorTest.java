@@ -0,0 +1,44 @@
+package com.example.io;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BaudRateDetectorTest {
+
+    private static final int LISTEN_MILLIS = 100;
+
+    @Test
+    public void locksOnAtANonDefaultRate() throws Exception {
+        FakeRadioPort port = new FakeRadioPort(460800);
+        BaudRateDetector detector = new BaudRateDetector(port);
+        detector.setListenMillis(LISTEN_MILLIS);
+
+        BaudRateDetector.Result result = detector.detect(57600);
+
+        assertTrue(result.isDetected());
+        assertEquals(460800, result.getBaudRate());
+        // 57600, 115200, 921600, then 460800
+        assertEquals(4, result.getAttempts());
+        assertEquals(460800, port.getBaudRate());
+    }
+
+    @Test
+    public void fallsBackToThePreferredRateWithinTheBound() throws Exception {
+        FakeRadioPort port = new FakeRadioPort(0);
+        BaudRateDetector detector = new BaudRateDetector(port);
+        detector.setListenMillis(LISTEN_MILLIS);
+
+        long start = System.nanoTime();
+        BaudRateDetector.Result result = detector.detect(9600);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(result.isDetected());
+        assertEquals(-1, result.getBaudRate());
+        assertEquals(BaudRateDetector.DEFAULT_BAUD_RATES.length + 1, result.getAttempts());
+        assertEquals(9600, port.getBaudRate());
+        // every rate is listened to in full, give or take a millisecond, and no longer than that
+        assertTrue(elapsedMillis >= detector.getMaxDetectMillis() - result.getAttempts());
+        assertTrue(elapsedMillis < detector.getMaxDetectMillis() + 400);
+    }
+}
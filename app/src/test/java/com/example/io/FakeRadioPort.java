@@ -0,0 +1,55 @@
+package com.example.io;
+
+import com.example.bridge.FakeSerialPort;
+import com.example.mavlink.TestFrames;
+
+import java.util.Random;
+
+/**
+ * Serial port with a telemetry radio behind it: HEARTBEATs at the radio's baud rate, line noise
+ * at any other.
+ */
+class FakeRadioPort extends FakeSerialPort {
+
+    private static final long FRAME_INTERVAL_MILLIS = 5;
+
+    private final int mRadioBaudRate;
+    private final Random mNoise = new Random(42);
+    private volatile int mBaudRate;
+    private int mSeq;
+
+    /**
+     * @param radioBaudRate 0 for a radio that never sends MAVLink
+     */
+    FakeRadioPort(int radioBaudRate) {
+        mRadioBaudRate = radioBaudRate;
+    }
+
+    int getBaudRate() {
+        return mBaudRate;
+    }
+
+    @Override
+    public int read(byte[] dest, int timeout) {
+        try {
+            Thread.sleep(Math.min(timeout, FRAME_INTERVAL_MILLIS));
+        } catch (InterruptedException e) {
+            return 0;
+        }
+        if (mBaudRate == mRadioBaudRate) {
+            byte[] frame = TestFrames.heartbeat(mSeq++);
+            System.arraycopy(frame, 0, dest, 0, frame.length);
+            return frame.length;
+        }
+        int length = 16 + mNoise.nextInt(16);
+        for (int i = 0; i < length; i++) {
+            dest[i] = (byte) mNoise.nextInt(256);
+        }
+        return length;
+    }
+
+    @Override
+    public void setParameters(int baudRate, int dataBits, int stopBits, int parity) {
+        mBaudRate = baudRate;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.io;
+
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LinkBenchmarkTest {
+
+    private static final int MSG_ID_ATTITUDE = 30;
+    private static final long DURATION_MILLIS = 500;
+    // startVehicle() offers about 1000 frames/s; loopback must carry at least a quarter
+    private static final double MIN_FRAMES_PER_SECOND = 250;
+
+    private final List<Thread> mVehicles = new ArrayList<>();
+    private final List<AutoCloseable> mSockets = new ArrayList<>();
+
+    @After
+    public void tearDown() throws Exception {
+        for (Thread vehicle : mVehicles)
+            vehicle.interrupt();
+        for (AutoCloseable socket : mSockets)
+            socket.close();
+        for (Thread vehicle : mVehicles)
+            vehicle.join(1000);
+    }
+
+    @Test
+    public void udpAndTcpLinksDeliverTheVehicle() throws Exception {
+        int udpPort;
+        try (DatagramSocket probe = new DatagramSocket(0)) {
+            udpPort = probe.getLocalPort();
+        }
+        DatagramSocket udpVehicle = new DatagramSocket();
+        mSockets.add(udpVehicle);
+        startVehicle(frame -> udpVehicle.send(new DatagramPacket(frame, frame.length,
+                InetAddress.getLoopbackAddress(), udpPort)));
+        LinkBenchmark.Result udp = LinkBenchmark.run("udp",
+                InputLinks.opener("udp://127.0.0.1:" + udpPort), DURATION_MILLIS);
+
+        ServerSocket tcpVehicle = new ServerSocket(0);
+        mSockets.add(tcpVehicle);
+        OutputStream[] out = new OutputStream[1];
+        startVehicle(frame -> {
+            if (out[0] == null) {
+                Socket socket = tcpVehicle.accept();
+                mSockets.add(socket);
+                out[0] = socket.getOutputStream();
+            }
+            out[0].write(frame);
+        });
+        LinkBenchmark.Result tcp = LinkBenchmark.run("tcp",
+                InputLinks.opener("tcp://127.0.0.1:" + tcpVehicle.getLocalPort()), DURATION_MILLIS);
+
+        for (LinkBenchmark.Result result : new LinkBenchmark.Result[]{udp, tcp}) {
+            assertTrue(result.toString(), result.getFirstHeartbeatMicros() >= 0);
+            // the vehicle sends a heartbeat every 10 ms, half the run leaves room for start-up
+            assertTrue(result.toString(), result.getFirstHeartbeatMicros() < DURATION_MILLIS * 1000 / 2);
+            assertTrue(result.toString(), result.getFramesPerSecond() >= MIN_FRAMES_PER_SECOND);
+            assertEquals(result.toString(), 0, result.getCrcErrors());
+        }
+    }
+
+    @Test
+    public void parsesAddresses() {
+        assertNotNull(InputLinks.opener("udp://:14550"));
+        assertNotNull(InputLinks.opener("udpin://0.0.0.0:14550"));
+        assertNotNull(InputLinks.opener("udpout://192.168.4.1:14555"));
+        assertNotNull(InputLinks.opener("tcp://192.168.4.1:5760"));
+        for (String bad : new String[]{"14550", "udp://:port", "tcp://:5760", "serial://ttyUSB0:57600", "udp://:70000"}) {
+            try {
+                InputLinks.opener(bad);
+                fail(bad);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+
+    private interface FrameSink {
+        void send(byte[] frame) throws IOException;
+    }
+
+    /**
+     * Sends a heartbeat and nine attitude frames every 10 ms until interrupted.
+     */
+    private void startVehicle(FrameSink sink) {
+        Thread vehicle = new Thread(() -> {
+            int seq = 0;
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    sink.send(seq % 10 == 0 ? TestFrames.heartbeat(seq) : TestFrames.frame(MSG_ID_ATTITUDE, seq, 1, 1, new byte[28]));
+                    seq++;
+                    if (seq % 10 == 0)
+                        Thread.sleep(10);
+                }
+            } catch (IOException | InterruptedException ignored) {
+            }
+        });
+        mVehicles.add(vehicle);
+        vehicle.start();
+    }
+}
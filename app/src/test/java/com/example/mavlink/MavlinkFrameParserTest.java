@@ -0,0 +1,87 @@
+package com.example.mavlink;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MavlinkFrameParserTest {
+
+    @Test
+    public void framesSplitAcrossChunksAreReassembled() {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            assertTrue(frame.isCrcChecked());
+            assertEquals(0, frame.msgId());
+            seqs.add(frame.seq());
+        });
+
+        byte[] first = TestFrames.heartbeat(7);
+        byte[] second = TestFrames.heartbeat(8);
+        parser.parse(first, 0, 5);
+        parser.parse(first, 5, first.length - 5);
+        parser.parse(new byte[]{0x12, 0x34}, 0, 2);
+        parser.parse(second);
+
+        assertEquals(2, seqs.size());
+        assertEquals(7, (int) seqs.get(0));
+        assertEquals(8, (int) seqs.get(1));
+        assertEquals(2, parser.getDiscardedBytes());
+    }
+
+    @Test
+    public void corruptFrameIsSkippedAndParserResyncs() {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> seqs.add(frame.seq()));
+
+        byte[] corrupt = TestFrames.heartbeat(1);
+        corrupt[12] ^= 0x55;
+        parser.parse(corrupt);
+        parser.parse(TestFrames.heartbeat(2));
+
+        assertEquals(1, seqs.size());
+        assertEquals(2, (int) seqs.get(0));
+        assertEquals(1, parser.getCrcErrorCount());
+    }
+
+    @Test
+    public void strayMagicByteDoesNotSwallowTheFramesBehindIt() {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            assertTrue(frame.isCrcChecked());
+            seqs.add(frame.seq());
+        });
+
+        // a v2 header claiming 32 bytes of message 0xFFFF, which has no CRC_EXTRA
+        parser.parse(new byte[]{(byte) 0xFD, 32, 0, 0, 0, 1, 1, (byte) 0xFF, (byte) 0xFF, 0});
+        parser.parse(TestFrames.heartbeat(1));
+        parser.parse(TestFrames.heartbeat(2));
+        parser.parse(TestFrames.heartbeat(3));
+
+        assertEquals(3, seqs.size());
+        assertEquals(1, (int) seqs.get(0));
+        assertEquals(0, parser.getUncheckedFrameCount());
+        assertEquals(10, parser.getDiscardedBytes());
+    }
+
+    @Test
+    public void frameWithoutCrcExtraIsPassedOnUnchecked() {
+        List<Integer> msgIds = new ArrayList<>();
+        List<Boolean> checked = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            msgIds.add(frame.msgId());
+            checked.add(frame.isCrcChecked());
+        });
+
+        parser.parse(TestFrames.frame(0x1234, 1, 1, 1, new byte[]{1, 2, 3, 4}));
+        parser.parse(TestFrames.heartbeat(2));
+
+        assertEquals(2, msgIds.size());
+        assertEquals(0x1234, (int) msgIds.get(0));
+        assertFalse(checked.get(0));
+        assertTrue(checked.get(1));
+        assertEquals(1, parser.getUncheckedFrameCount());
+    }
+}
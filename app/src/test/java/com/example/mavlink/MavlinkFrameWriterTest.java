@@ -0,0 +1,64 @@
+package com.example.mavlink;
+
+import com.example.mavlink.message.Timesync;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MavlinkFrameWriterTest {
+
+    @Test
+    public void writtenFrameParsesWithValidCrc() {
+        MavlinkFrameWriter writer = new MavlinkFrameWriter(245, 241);
+        Timesync timesync = new Timesync();
+        List<Long> ts1 = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            assertTrue(frame.isCrcChecked());
+            assertEquals(245, frame.sysId());
+            assertEquals(241, frame.compId());
+            assertTrue(timesync.wrap(frame));
+            assertEquals(0, timesync.tc1());
+            ts1.add(timesync.ts1());
+        });
+
+        for (long time : new long[]{123456789012345L, -1L}) {
+            int length = writer.begin(Timesync.MSG_ID).putInt64(0, 0).putInt64(8, time).finish();
+            parser.parse(writer.buffer(), 0, length);
+        }
+
+        assertEquals(Arrays.asList(123456789012345L, -1L), ts1);
+        assertEquals(0, parser.getCrcErrorCount());
+    }
+
+    @Test
+    public void trailingZerosAreTruncated() {
+        MavlinkFrameWriter writer = new MavlinkFrameWriter(245, 241);
+        int[] seqs = new int[2];
+        int[] payloadLengths = new int[2];
+        int[] count = new int[1];
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            seqs[count[0]] = frame.seq();
+            payloadLengths[count[0]++] = frame.payloadLength();
+        });
+
+        // target_system and target_component stay 0 and are not sent
+        parser.parse(writer.buffer(), 0, writer.begin(Timesync.MSG_ID).putInt64(8, 1).finish());
+        // an all-zero payload keeps one byte
+        parser.parse(writer.buffer(), 0, writer.begin(0).finish());
+
+        assertEquals(2, count[0]);
+        assertEquals(9, payloadLengths[0]);
+        assertEquals(1, payloadLengths[1]);
+        assertEquals(seqs[0] + 1, seqs[1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownMessageIsRejected() {
+        new MavlinkFrameWriter(245, 241).begin(200);
+    }
+}
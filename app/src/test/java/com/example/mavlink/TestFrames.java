@@ -0,0 +1,32 @@
+package com.example.mavlink;
+
+/**
+ * Builds valid MAVLink v2 frames for tests.
+ */
+public final class TestFrames {
+
+    private TestFrames() {
+    }
+
+    public static byte[] frame(int msgId, int seq, int sysId, int compId, byte[] payload) {
+        byte[] frame = new byte[10 + payload.length + 2];
+        frame[0] = (byte) MavlinkFrameParser.MAGIC_V2;
+        frame[1] = (byte) payload.length;
+        frame[4] = (byte) seq;
+        frame[5] = (byte) sysId;
+        frame[6] = (byte) compId;
+        frame[7] = (byte) msgId;
+        frame[8] = (byte) (msgId >> 8);
+        frame[9] = (byte) (msgId >> 16);
+        System.arraycopy(payload, 0, frame, 10, payload.length);
+        int crc = MavlinkCrc.accumulate(frame, 1, 9 + payload.length, MavlinkCrc.CRC_INIT);
+        crc = MavlinkCrc.accumulate(MavlinkCrc.crcExtra(msgId), crc);
+        frame[frame.length - 2] = (byte) crc;
+        frame[frame.length - 1] = (byte) (crc >> 8);
+        return frame;
+    }
+
+    public static byte[] heartbeat(int seq) {
+        return frame(0, seq, 1, 1, new byte[]{0, 0, 0, 0, 2, 12, (byte) 0x81, 4, 3});
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.mavlink.message;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MessageFlyweightTest {
+
+    static byte[] globalPositionInt(int latE7, int lonE7, int relativeAltMm, int hdg) {
+        ByteBuffer payload = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(123456).putInt(latE7).putInt(lonE7).putInt(512000).putInt(relativeAltMm)
+                .putShort((short) -150).putShort((short) 20).putShort((short) 0).putShort((short) hdg);
+        return TestFrames.frame(GlobalPositionInt.MSG_ID, 0, 1, 1, payload.array());
+    }
+
+    @Test
+    public void globalPositionIntIsReadInPlace() {
+        GlobalPositionInt position = new GlobalPositionInt();
+        Attitude attitude = new Attitude();
+        boolean[] seen = new boolean[1];
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            assertFalse(attitude.wrap(frame));
+            assertTrue(position.wrap(frame));
+            assertEquals(-337000000, position.latE7());
+            assertEquals(1512000000, position.lonE7());
+            assertEquals(-33.7, position.latitudeDeg(), 1e-9);
+            assertEquals(512000, position.altMm());
+            assertEquals(42500, position.relativeAltMm());
+            assertEquals(-150, position.vx());
+            assertEquals(35999, position.hdg());
+            assertEquals(123456, position.timeBootMs());
+            seen[0] = true;
+        });
+
+        parser.parse(globalPositionInt(-337000000, 1512000000, 42500, 35999));
+
+        assertTrue(seen[0]);
+    }
+
+    @Test
+    public void truncatedTrailingFieldsReadAsZero() {
+        ByteBuffer payload = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(1000).putFloat(0.5f).putFloat(-0.25f).putFloat(3.0f);
+        // MAVLink 2 drops trailing zero bytes of the payload
+        byte[] truncated = Arrays.copyOf(payload.array(), 16);
+
+        Attitude attitude = new Attitude();
+        attitude.wrap(truncated, 0, truncated.length);
+
+        assertEquals(1000, attitude.timeBootMs());
+        assertEquals(0.5f, attitude.roll(), 0);
+        assertEquals(-0.25f, attitude.pitch(), 0);
+        assertEquals(3.0f, attitude.yaw(), 0);
+        assertEquals(0f, attitude.rollSpeed(), 0);
+        assertEquals(0f, attitude.yawSpeed(), 0);
+    }
+
+    @Test
+    public void heartbeatArmedFlag() {
+        Heartbeat heartbeat = new Heartbeat();
+        byte[] payload = {4, 0, 0, 0, 2, 12, (byte) 0x81, 4, 3};
+        heartbeat.wrap(payload, 0, payload.length);
+
+        assertEquals(4, heartbeat.customMode());
+        assertEquals(2, heartbeat.type());
+        assertEquals(12, heartbeat.autopilot());
+        assertTrue(heartbeat.isArmed());
+        assertEquals(4, heartbeat.systemStatus());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.models;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class VehicleStateTest {
+
+    @Test
+    public void readersNeverSeeHalfWrittenPosition() throws Exception {
+        VehicleState state = new VehicleState(Runnable::run);
+        Thread writer = new Thread(() -> {
+            for (int i = 1; i <= 200_000; i++) {
+                state.setPosition(i, -i, i, -i);
+            }
+        });
+        writer.start();
+
+        VehicleState.Snapshot snapshot = new VehicleState.Snapshot();
+        long last = 0;
+        while (writer.isAlive()) {
+            long sequence = state.read(snapshot);
+            assertEquals(0, sequence & 1);
+            assertTrue(sequence >= last);
+            last = sequence;
+            double value = snapshot.getLatitudeDeg();
+            assertEquals(-value, snapshot.getLongitudeDeg(), 0);
+            assertEquals((float) value, snapshot.getAbsoluteAltitudeM(), 0);
+            assertEquals((float) -value, snapshot.getRelativeAltitudeM(), 0);
+        }
+        writer.join();
+        assertEquals(2 * 200_000, state.read(snapshot));
+        assertEquals(200_000, snapshot.getLatitudeDeg(), 0);
+    }
+
+    @Test
+    public void coalescesNotificationsUntilDispatched() {
+        List<Runnable> posted = new ArrayList<>();
+        VehicleState state = new VehicleState(posted::add);
+        AtomicInteger notified = new AtomicInteger();
+        state.setListener(s -> notified.incrementAndGet());
+
+        state.setPosition(1, 2, 3, 4);
+        state.setBattery(0.5f, 12.6f);
+        state.setAttitude(1, 2, 3);
+        assertEquals(1, posted.size());
+
+        posted.remove(0).run();
+        assertEquals(1, notified.get());
+        state.setConnected(true);
+        assertEquals(1, posted.size());
+    }
+
+    @Test
+    public void tracksReceivedGroupsUntilCleared() {
+        VehicleState state = new VehicleState(Runnable::run);
+        VehicleState.Snapshot snapshot = new VehicleState.Snapshot();
+        state.setVelocity(3, 4, -1);
+        state.setMissionProgress(2, 5);
+        state.read(snapshot);
+        assertTrue(snapshot.has(VehicleState.SPEED | VehicleState.MISSION_PROGRESS));
+        assertFalse(snapshot.has(VehicleState.POSITION));
+        assertEquals(5, snapshot.getHorizontalSpeed(), 1e-6);
+        assertEquals(1, snapshot.getVerticalSpeed(), 0);
+
+        state.clear();
+        state.read(snapshot);
+        assertFalse(snapshot.has(VehicleState.SPEED));
+        assertNull(snapshot.getFlightMode());
+    }
+
+    @Test
+    public void clearForgetsThePreviousVehicle() {
+        VehicleState state = new VehicleState(Runnable::run);
+        VehicleState.Snapshot snapshot = new VehicleState.Snapshot();
+        state.setConnected(true);
+        state.setRcStatus(true, true, 80);
+        state.setMissionProgress(5, 5);
+        state.setMissionFinished(true);
+        state.setBattery(0.5f, 12.6f);
+
+        state.clear();
+        state.read(snapshot);
+        assertFalse(snapshot.has(VehicleState.CONNECTION));
+        assertFalse(snapshot.isConnected());
+        assertFalse(snapshot.isRcWasAvailableOnce());
+        assertFalse(snapshot.isRcAvailable());
+        assertEquals(0, snapshot.getRcSignalStrengthPercent(), 0);
+        assertEquals(0, snapshot.getMissionCurrent());
+        assertEquals(0, snapshot.getMissionTotal());
+        assertFalse(snapshot.isMissionFinished());
+        assertEquals(0, snapshot.getBatteryVoltageV(), 0);
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.telemetry;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.TestFrames;
+import com.example.mavlink.message.GlobalPositionInt;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+public class DirectTelemetryTest {
+
+    private static byte[] position(int seq, int latE7, int lonE7) {
+        ByteBuffer payload = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+        payload.putInt(seq).putInt(latE7).putInt(lonE7).putInt(0).putInt(10000);
+        return TestFrames.frame(GlobalPositionInt.MSG_ID, seq, 1, 1, payload.array());
+    }
+
+    @Test
+    public void positionReachesListenerAndBenchmark() {
+        DirectTelemetry telemetry = new DirectTelemetry();
+        PositionPathBenchmark benchmark = new PositionPathBenchmark();
+        telemetry.setListener(benchmark);
+        MessageRouter router = new MessageRouter((data, offset, length, originNanos) -> { });
+        router.addFrameListener(telemetry);
+
+        byte[] frame = position(1, 475000000, 85000000);
+        router.onNewData(frame, 0, frame.length, System.nanoTime());
+
+        assertEquals(47.5, telemetry.getLatitudeDeg(), 1e-9);
+        assertEquals(8.5, telemetry.getLongitudeDeg(), 1e-9);
+        assertEquals(10f, telemetry.getRelativeAltitudeM(), 0);
+        assertEquals(1, benchmark.getDirect().getCount());
+
+        // MAVSDK hands out degrees as double
+        benchmark.onGrpcPosition(475000000 * 1e-7, 85000000 * 1e-7);
+        benchmark.onGrpcPosition(1.0, 2.0);
+        assertEquals(1, benchmark.getGrpc().getCount());
+        assertEquals(1, benchmark.getUnmatched());
+    }
+
+    @Test
+    public void decodingDoesNotAllocate() {
+        DirectTelemetry telemetry = new DirectTelemetry();
+        long[] checksum = new long[1];
+        telemetry.setListener((t, msgId, originNanos) -> checksum[0] += t.getLatE7());
+        MessageRouter router = new MessageRouter((data, offset, length, originNanos) -> { });
+        router.addFrameListener(telemetry);
+        byte[] frame = position(1, 475000000, 85000000);
+
+        // warm up
+        for (int i = 0; i < 100_000; i++) {
+            router.onNewData(frame, 0, frame.length, i);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 100_000; i++) {
+            router.onNewData(frame, 0, frame.length, i);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(checksum[0] != 0);
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.telemetry;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.TestFrames;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LinkRateMeterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void reportsRateBeforeAndAfterTheProfile() {
+        LinkRateMeter meter = new LinkRateMeter();
+        MessageRouter router = new MessageRouter((data, offset, length, originNanos) -> { });
+        router.addFrameListener(meter);
+        assertEquals(-1, meter.getBeforeBytesPerSecond(), 0);
+        assertEquals(-1, meter.getAfterBytesPerSecond(SECOND), 0);
+
+        meter.start(SECOND);
+        int frameLength = 0;
+        for (int seq = 0; seq < 20; seq++) {
+            byte[] frame = TestFrames.heartbeat(seq);
+            frameLength = frame.length;
+            router.onNewData(frame, 0, frame.length, 0);
+        }
+        meter.markApplied(3 * SECOND);
+        for (int seq = 20; seq < 25; seq++) {
+            byte[] frame = TestFrames.heartbeat(seq);
+            router.onNewData(frame, 0, frame.length, 0);
+        }
+
+        assertEquals(25L * frameLength, meter.getBytes());
+        assertEquals(10.0 * frameLength, meter.getBeforeBytesPerSecond(), 1e-9);
+        assertEquals(1.0 * frameLength, meter.getAfterBytesPerSecond(8 * SECOND), 1e-9);
+
+        // a reconnect starts a new baseline
+        meter.start(9 * SECOND);
+        assertEquals(-1, meter.getAfterBytesPerSecond(10 * SECOND), 0);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.tlog;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TlogRecorderTest {
+
+    private File mDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tlog").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void framesAreWrittenInTlogLayoutAcrossSegments() throws Exception {
+        byte[] heartbeat = TestFrames.heartbeat(0);
+        int recordLength = TlogRecorder.TIMESTAMP_LENGTH + heartbeat.length;
+
+        TlogRecorder recorder = new TlogRecorder(mDirectory, "test");
+        recorder.setSegmentSize(4 * recordLength + 3);
+        recorder.setFlushMillis(5);
+        recorder.start();
+
+        long startMicros = System.currentTimeMillis() * 1000;
+        for (int seq = 0; seq < 20; seq++) {
+            byte[] frame = TestFrames.heartbeat(seq);
+            while (!recorder.record(frame, 0, frame.length, System.nanoTime())) {
+                Thread.sleep(1); // spare not mapped yet
+            }
+        }
+        recorder.close();
+
+        assertEquals(20, recorder.getRecordedFrames());
+        List<File> files = recorder.getFiles();
+        assertEquals(5, files.size());
+
+        List<Integer> seqs = new ArrayList<>();
+        long lastMicros = 0;
+        for (File file : files) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            assertEquals(4 * recordLength, buffer.remaining());
+            while (buffer.hasRemaining()) {
+                long micros = buffer.getLong();
+                assertTrue(micros >= startMicros - 1000 && micros >= lastMicros);
+                lastMicros = micros;
+                byte[] frame = new byte[heartbeat.length];
+                buffer.get(frame);
+                new MavlinkFrameParser(f -> seqs.add(f.seq())).parse(frame);
+            }
+        }
+        assertEquals(20, seqs.size());
+        for (int seq = 0; seq < 20; seq++) {
+            assertEquals(seq, (int) seqs.get(seq));
+        }
+    }
+
+    @Test
+    public void frameIsDroppedWhenNoSpareIsMapped() throws Exception {
+        byte[] frame = TestFrames.heartbeat(0);
+        TlogRecorder recorder = new TlogRecorder(mDirectory, "test");
+        recorder.setSegmentSize(TlogRecorder.TIMESTAMP_LENGTH + frame.length);
+        recorder.setFlushMillis(60_000);
+        recorder.start();
+
+        assertTrue(recorder.record(frame, 0, frame.length, System.nanoTime()));
+        assertTrue(recorder.record(frame, 0, frame.length, System.nanoTime()));
+        assertFalse(recorder.record(frame, 0, frame.length, System.nanoTime()));
+        recorder.close();
+
+        assertEquals(2, recorder.getRecordedFrames());
+        assertEquals(1, recorder.getDroppedFrames());
+        assertEquals(2, mDirectory.listFiles().length);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.tlog;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.TestFrames;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TlogReplayPortTest {
+
+    private static final int FRAMES = 50;
+    private static final long INTERVAL_MILLIS = 10;
+
+    private File mDirectory;
+    private File mTlog;
+
+    @Before
+    public void setUp() throws IOException {
+        mDirectory = Files.createTempDirectory("tlog").toFile();
+        TlogRecorder recorder = new TlogRecorder(mDirectory, "replay");
+        recorder.start();
+        long start = System.nanoTime();
+        for (int seq = 0; seq < FRAMES; seq++) {
+            byte[] frame = TestFrames.heartbeat(seq);
+            recorder.record(frame, 0, frame.length, start + TimeUnit.MILLISECONDS.toNanos(seq * INTERVAL_MILLIS));
+        }
+        recorder.close();
+        mTlog = recorder.getFiles().get(0);
+    }
+
+    @After
+    public void tearDown() {
+        for (File file : mDirectory.listFiles()) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void unpacedReplayDeliversAllFramesInOrder() throws Exception {
+        TlogReplayPort port = new TlogReplayPort(mTlog);
+        port.setSpeed(TlogReplayPort.AS_FAST_AS_POSSIBLE);
+
+        List<Integer> seqs = replay(port);
+
+        assertEquals(FRAMES, seqs.size());
+        for (int seq = 0; seq < FRAMES; seq++) {
+            assertEquals(seq, (int) seqs.get(seq));
+        }
+        assertTrue(port.isFinished());
+        assertEquals(0, port.getSkippedBytes());
+    }
+
+    @Test
+    public void pacedReplayFollowsRecordedTimestamps() throws Exception {
+        TlogReplayPort port = new TlogReplayPort(mTlog);
+        port.setSpeed(2);
+
+        long start = System.nanoTime();
+        List<Integer> seqs = replay(port);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(FRAMES, seqs.size());
+        long expectedMillis = (FRAMES - 1) * INTERVAL_MILLIS / 2;
+        assertTrue("replayed in " + elapsedMillis + " ms", elapsedMillis >= expectedMillis);
+        assertTrue("replayed in " + elapsedMillis + " ms", elapsedMillis < expectedMillis + 200);
+    }
+
+    @Test
+    public void loopingRestartsFromTheFirstFrame() throws Exception {
+        TlogReplayPort port = new TlogReplayPort(mTlog);
+        port.setSpeed(TlogReplayPort.AS_FAST_AS_POSSIBLE);
+        port.setLoop(true);
+
+        byte[] buffer = new byte[2048];
+        while (port.getReplayedFrames() < 3 * FRAMES) {
+            port.read(buffer, 100);
+        }
+
+        assertEquals(2, port.getLoops());
+        assertFalse(port.isFinished());
+    }
+
+    private static List<Integer> replay(TlogReplayPort port) throws IOException {
+        List<Integer> seqs = new ArrayList<>();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> seqs.add(frame.seq()));
+        byte[] buffer = new byte[2048];
+        while (!port.isFinished()) {
+            parser.parse(buffer, 0, port.read(buffer, 100));
+        }
+        return seqs;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 1000, 123_456, 9_999_999}) {
+            int index = LatencyHistogram.bucketIndex(value);
+            assertTrue(LatencyHistogram.bucketUpperBound(index) >= value);
+            if (index > 0) {
+                assertTrue(LatencyHistogram.bucketUpperBound(index - 1) < value);
+            }
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinBucketError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.recordMicros(i);
+        }
+        histogram.recordMicros(50_000);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1001, snapshot.getCount());
+        assertEquals(500, snapshot.getP50Micros(), 500 / 16.0);
+        assertEquals(990, snapshot.getP99Micros(), 990 / 16.0);
+        assertEquals(50_000, snapshot.getMaxMicros());
+        assertEquals(50_000, snapshot.getPercentileMicros(1.0));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MeteredExecutorTest {
+
+    @Test
+    public void queuesBehindItsThreadsAndMeasuresWaiting() throws Exception {
+        MeteredExecutor executor = new MeteredExecutor("test", 1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        String[] threadName = new String[1];
+        executor.execute(() -> {
+            threadName[0] = Thread.currentThread().getName();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            done.countDown();
+        });
+        for (int i = 0; i < 4; i++) {
+            executor.execute(done::countDown);
+        }
+        assertEquals(4, executor.getQueueDepth());
+        assertEquals(4, executor.getMaxQueueDepth());
+
+        Thread.sleep(20);
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(1, executor.getThreadCount());
+        executor.shutdown();
+
+        assertEquals("test-1", threadName[0]);
+        assertEquals(0, executor.getQueueDepth());
+        assertEquals(5, executor.getWaitSnapshot().getCount());
+        // the queued tasks waited for the first one to be released
+        assertTrue(executor.getWaitSnapshot().toString(), executor.getWaitSnapshot().getMaxMicros() >= 15_000);
+    }
+}
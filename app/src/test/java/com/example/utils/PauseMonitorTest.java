@@ -0,0 +1,23 @@
+package com.example.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PauseMonitorTest {
+
+    @Test
+    public void samplesUntilStopped() throws Exception {
+        PauseMonitor monitor = new PauseMonitor(1000);
+        monitor.start();
+        Thread.sleep(200);
+        monitor.stop();
+        Thread.sleep(20);
+
+        LatencyHistogram.Snapshot pauses = monitor.snapshot();
+        // a 1 ms sleep can't return more than 200 times in 200 ms
+        assertTrue(pauses.toString(), pauses.getCount() > 20 && pauses.getCount() <= 200);
+        assertEquals(pauses.getCount(), monitor.snapshot().getCount());
+        assertFalse(monitor.isRunning());
+    }
+}
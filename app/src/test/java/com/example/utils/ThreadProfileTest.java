@@ -0,0 +1,58 @@
+package com.example.utils;
+
+import android.os.Process;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ThreadProfileTest {
+
+    @Test
+    public void pooledThreadGetsItsNameBack() throws Exception {
+        AtomicReference<String> during = new AtomicReference<>();
+        AtomicReference<ThreadProfile.Applied> applied = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            applied.set(new ThreadProfile("bridge-tcp-5760", Process.THREAD_PRIORITY_DEFAULT).apply());
+            during.set(Thread.currentThread().getName());
+            applied.get().restore();
+        }, "bridge-io-1");
+        thread.start();
+        thread.join();
+
+        assertEquals("bridge-tcp-5760", during.get());
+        assertEquals("bridge-tcp-5760", applied.get().getThreadName());
+        assertEquals("bridge-io-1", thread.getName());
+        // nothing requested, nothing to verify
+        assertTrue(applied.get().isPriorityApplied());
+    }
+
+    @Test
+    public void priorityIsVerifiedByReadingItBack() {
+        // android.jar returns defaults in local tests: getThreadPriority() reads 0 whatever was set
+        ThreadProfile profile = new ThreadProfile(null, Process.THREAD_PRIORITY_URGENT_AUDIO, 0xF0);
+        ThreadProfile.Applied applied = profile.apply();
+        try {
+            assertEquals(Thread.currentThread().getName(), applied.getThreadName());
+            assertEquals(0, applied.getPriority());
+            assertFalse(applied.isPriorityApplied());
+            assertTrue(applied.toString(), applied.toString().contains("requested -19 got 0"));
+            assertTrue(applied.toString(), applied.toString().contains("cpus 0xf0 (hint)"));
+        } finally {
+            applied.restore();
+        }
+    }
+
+    @Test
+    public void priorityReadBackAsRequestedIsApplied() {
+        ThreadProfile profile = new ThreadProfile("bridge-tcp-5760", Process.THREAD_PRIORITY_URGENT_AUDIO);
+        ThreadProfile.Applied granted = new ThreadProfile.Applied(profile, "bridge-tcp-5760", 1,
+                Process.THREAD_PRIORITY_URGENT_AUDIO, null, "bridge-io-1", Process.THREAD_PRIORITY_DEFAULT);
+        ThreadProfile.Applied capped = new ThreadProfile.Applied(profile, "bridge-tcp-5760", 1,
+                Process.THREAD_PRIORITY_AUDIO, null, "bridge-io-1", Process.THREAD_PRIORITY_DEFAULT);
+        assertTrue(granted.isPriorityApplied());
+        assertFalse(capped.isPriorityApplied());
+    }
+}
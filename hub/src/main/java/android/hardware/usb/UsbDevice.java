@@ -0,0 +1,7 @@
+package android.hardware.usb;
+
+/**
+ * Only referenced by the shared serial port interfaces, never instantiated on the JVM.
+ */
+public class UsbDevice {
+}
@@ -0,0 +1,11 @@
+package android.hardware.usb;
+
+/**
+ * Only referenced by the shared serial port interfaces, never instantiated on the JVM.
+ */
+public class UsbEndpoint {
+
+    public int getMaxPacketSize() {
+        return 0;
+    }
+}
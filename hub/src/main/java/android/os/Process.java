@@ -0,0 +1,42 @@
+package android.os;
+
+/**
+ * Stand-in for the Android thread priorities on the JVM. Linux ignores Java thread priorities
+ * without extra privileges, so this is a hint at best.
+ */
+public final class Process {
+
+    public static final int THREAD_PRIORITY_DEFAULT = 0;
+    public static final int THREAD_PRIORITY_BACKGROUND = 10;
+    public static final int THREAD_PRIORITY_FOREGROUND = -2;
+    public static final int THREAD_PRIORITY_DISPLAY = -4;
+    public static final int THREAD_PRIORITY_URGENT_DISPLAY = -8;
+    public static final int THREAD_PRIORITY_AUDIO = -16;
+    public static final int THREAD_PRIORITY_URGENT_AUDIO = -19;
+
+    private Process() {
+    }
+
+    public static void setThreadPriority(int priority) {
+        // nice -20..19 onto Java 10..1
+        int javaPriority = Thread.NORM_PRIORITY - priority / 4;
+        Thread.currentThread().setPriority(Math.max(Thread.MIN_PRIORITY, Math.min(Thread.MAX_PRIORITY, javaPriority)));
+    }
+
+    /**
+     * @return the Java thread id, only the current thread can be looked up
+     */
+    public static int myTid() {
+        return (int) Thread.currentThread().getId();
+    }
+
+    /**
+     * @return the current thread's Java priority as the nearest Android one, which rarely matches
+     * the requested value exactly
+     */
+    public static int getThreadPriority(int tid) {
+        if (tid != myTid())
+            return THREAD_PRIORITY_DEFAULT;
+        return (Thread.NORM_PRIORITY - Thread.currentThread().getPriority()) * 4;
+    }
+}
@@ -0,0 +1,51 @@
+package android.util;
+
+/**
+ * Stand-in for the Android logger on the JVM, writes to stderr. Debug and verbose lines are
+ * only printed with -Dhub.debug=true.
+ */
+public final class Log {
+
+    private static final boolean DEBUG = Boolean.getBoolean("hub.debug");
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return DEBUG ? print("V", tag, msg, null) : 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return DEBUG ? print("D", tag, msg, null) : 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return print("I", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg) {
+        return print("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return print("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return print("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return print("E", tag, msg, tr);
+    }
+
+    private static int print(String level, String tag, String msg, Throwable tr) {
+        String line = level + "/" + tag + " [" + Thread.currentThread().getName() + "]: " + msg;
+        synchronized (System.err) {
+            System.err.println(line);
+            if (tr != null)
+                tr.printStackTrace();
+        }
+        return line.length();
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.hub;
+
+import android.util.Log;
+
+import com.example.bridge.MessageRouter;
+import com.example.utils.LatencyHistogram;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+import com.hoho.android.usbserial.util.SerialInputOutputManager;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless serial to TCP bridge for a Linux ground station, one radio shared by many clients.
+ *
+ * The downlink is the phone's path: {@link SerialInputOutputManager} reads the tty and a
+ * {@link MessageRouter} frames it into every client's buffer. The uplink is framed per client
+ * and written to the tty right away, under the uplink router's lock. Queueing it for the serial
+ * thread instead would hold it until the next read returns, up to a whole VTIME when the
+ * vehicle is quiet.
+ *
+ * A tty that fails, e.g. an unplugged radio, is reopened every second; clients stay connected.
+ *
+ * Usage: BridgeHub [hub.properties]
+ */
+public class BridgeHub {
+
+    private static final String TAG = "LOG_" + BridgeHub.class.getSimpleName();
+    private static final long REOPEN_INTERVAL_MS = 1000;
+
+    private final HubConfig mConfig;
+    private final MessageRouter mDownlinkRouter;
+    private final MessageRouter mUplinkRouter;
+    private final TcpClientHub mClients;
+    private final LatencyHistogram mDownlinkLatency = new LatencyHistogram();
+    private final LatencyHistogram mUplinkLatency = new LatencyHistogram();
+    private final ScheduledExecutorService mScheduler;
+
+    private volatile TtySerialPort mPort;
+    private SerialInputOutputManager mSerial; // Synchronized by 'this'
+    private boolean mRunning; // Synchronized by 'this'
+    private HubStats mLastStats; // Scheduler only
+
+    private volatile long mSerialReadBytes;
+    private volatile long mSerialWrittenBytes; // Written under mUplinkRouter only
+    private volatile long mSerialDroppedBytes; // Written under mUplinkRouter only
+    private volatile long mSerialReopens;
+
+    public BridgeHub(HubConfig config) {
+        mConfig = config;
+        mUplinkRouter = new MessageRouter(this::writeToSerial);
+        mClients = new TcpClientHub(mUplinkRouter, config.getMaxClients(), config.getClientBufferSize(), mDownlinkLatency);
+        mDownlinkRouter = new MessageRouter(mClients);
+        mScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hub-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public synchronized void start() throws IOException {
+        if (mRunning)
+            throw new IllegalStateException("already started");
+        mClients.start(mConfig.getBindAddress(), mConfig.getTcpPort());
+        mRunning = true;
+        try {
+            openSerial();
+        } catch (IOException e) {
+            // the radio may come later, keep the clients
+            Log.w(TAG, "Serial " + mConfig.getSerialDevice() + " not ready: " + e.getMessage());
+        }
+        mScheduler.scheduleWithFixedDelay(this::checkSerial, REOPEN_INTERVAL_MS, REOPEN_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        int statsInterval = mConfig.getStatsIntervalSeconds();
+        if (statsInterval > 0)
+            mScheduler.scheduleAtFixedRate(this::logStats, statsInterval, statsInterval, TimeUnit.SECONDS);
+        Log.i(TAG, "Started " + mConfig);
+    }
+
+    public void stop() {
+        synchronized (this) {
+            if (!mRunning)
+                return;
+            mRunning = false;
+            closeSerial();
+        }
+        mScheduler.shutdownNow();
+        mClients.stop();
+        Log.i(TAG, "Stopped " + getStats());
+    }
+
+    public HubConfig getConfig() {
+        return mConfig;
+    }
+
+    /**
+     * @return the TCP port clients connect to, useful with tcp.port=0
+     */
+    public int getTcpPort() {
+        return mClients.getLocalPort();
+    }
+
+    public synchronized boolean isSerialOpen() {
+        return mSerial != null && mSerial.getState() == SerialInputOutputManager.State.RUNNING;
+    }
+
+    public MessageRouter getDownlinkRouter() {
+        return mDownlinkRouter;
+    }
+
+    public MessageRouter getUplinkRouter() {
+        return mUplinkRouter;
+    }
+
+    public HubStats getStats() {
+        return new HubStats(System.nanoTime(), mSerialReadBytes, mSerialWrittenBytes,
+                mDownlinkRouter.getForwardedFrames(), mUplinkRouter.getForwardedFrames(),
+                mDownlinkRouter.getCrcErrors() + mUplinkRouter.getCrcErrors(),
+                mSerialDroppedBytes, mClients.getDroppedFrames(), mClients.getClientCount(),
+                mClients.getAcceptedClients(), mClients.getRejectedClients(), mSerialReopens,
+                mDownlinkLatency.snapshot(), mUplinkLatency.snapshot());
+    }
+
+    // Synchronized by 'this'
+    private void openSerial() throws IOException {
+        TtySerialPort port = new TtySerialPort(mConfig.getSerialDevice(), mConfig.getReadTimeoutMillis());
+        port.open();
+        try {
+            port.setParameters(mConfig.getBaudRate(), UsbSerialPort.DATABITS_8, UsbSerialPort.STOPBITS_1, UsbSerialPort.PARITY_NONE);
+        } catch (IOException | RuntimeException e) {
+            port.close();
+            throw e;
+        }
+        SerialInputOutputManager serial = new SerialInputOutputManager(port);
+        serial.setReadTimeout(mConfig.getReadTimeoutMillis());
+        serial.setListener(new SerialInputOutputManager.Listener() {
+            @Override
+            public void onNewData(byte[] data) {
+                mSerialReadBytes += data.length;
+                mDownlinkRouter.onNewData(data, 0, data.length, serial.getLastReadNanos());
+            }
+
+            @Override
+            public void onRunError(Exception e) {
+                Log.w(TAG, "Serial " + port + " failed: " + e.getMessage());
+            }
+        });
+        mPort = port;
+        mSerial = serial;
+        serial.start();
+        Log.i(TAG, "Serial " + port + " open at " + mConfig.getBaudRate() + " baud");
+    }
+
+    // Synchronized by 'this'
+    private void closeSerial() {
+        if (mSerial == null)
+            return;
+        mSerial.stop();
+        try {
+            mSerial.getSerialPort().close();
+        } catch (IOException ignored) {
+            // already closed after a failure
+        }
+        mSerial = null;
+        mPort = null;
+    }
+
+    private synchronized void checkSerial() {
+        if (!mRunning || isSerialOpen())
+            return;
+        closeSerial();
+        try {
+            openSerial();
+            mSerialReopens++;
+        } catch (IOException e) {
+            Log.d(TAG, "Serial " + mConfig.getSerialDevice() + " still unavailable: " + e.getMessage());
+        }
+    }
+
+    // Under mUplinkRouter, so frames of different clients are written whole
+    private void writeToSerial(byte[] data, int offset, int length, long originNanos) {
+        TtySerialPort port = mPort;
+        if (port == null) {
+            mSerialDroppedBytes += length;
+            return;
+        }
+        try {
+            port.write(data, offset, length);
+            mSerialWrittenBytes += length;
+            mUplinkLatency.recordNanos(System.nanoTime() - originNanos);
+        } catch (IOException e) {
+            // the serial thread sees the failure too and the port is reopened
+            mSerialDroppedBytes += length;
+        }
+    }
+
+    private void logStats() {
+        HubStats stats = getStats();
+        Log.i(TAG, stats.toString(mLastStats));
+        mLastStats = stats;
+    }
+
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : "hub.properties";
+        HubConfig config;
+        try {
+            config = HubConfig.load(path);
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println(path + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        BridgeHub hub = new BridgeHub(config);
+        hub.start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            hub.stop();
+            stopped.countDown();
+        }, "hub-shutdown"));
+        stopped.await();
+    }
+}
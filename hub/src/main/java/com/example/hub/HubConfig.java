@@ -0,0 +1,118 @@
+package com.example.hub;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Settings of a {@link BridgeHub}, read from a properties file, see hub.properties.
+ */
+public final class HubConfig {
+
+    public static final int DEFAULT_BAUD_RATE = 57600;
+    public static final int DEFAULT_TCP_PORT = 5760;
+    public static final int DEFAULT_MAX_CLIENTS = 8;
+    public static final int DEFAULT_CLIENT_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 100;
+    public static final int DEFAULT_STATS_INTERVAL_S = 10;
+
+    private final String mSerialDevice;
+    private final int mBaudRate;
+    private final int mReadTimeoutMillis;
+    private final String mBindAddress;
+    private final int mTcpPort;
+    private final int mMaxClients;
+    private final int mClientBufferSize;
+    private final int mStatsIntervalSeconds;
+
+    private HubConfig(Properties properties) {
+        mSerialDevice = properties.getProperty("serial.device", "").trim();
+        if (mSerialDevice.isEmpty())
+            throw new IllegalArgumentException("serial.device is required");
+        mBaudRate = getInt(properties, "serial.baud", DEFAULT_BAUD_RATE, 50);
+        mReadTimeoutMillis = getInt(properties, "serial.read_timeout_ms", DEFAULT_READ_TIMEOUT_MS, 1);
+        mBindAddress = properties.getProperty("tcp.bind", "0.0.0.0").trim();
+        mTcpPort = getInt(properties, "tcp.port", DEFAULT_TCP_PORT, 0);
+        mMaxClients = getInt(properties, "tcp.max_clients", DEFAULT_MAX_CLIENTS, 1);
+        mClientBufferSize = getInt(properties, "tcp.client_buffer", DEFAULT_CLIENT_BUFFER_SIZE, 280);
+        mStatsIntervalSeconds = getInt(properties, "stats.interval_s", DEFAULT_STATS_INTERVAL_S, 0);
+    }
+
+    public static HubConfig load(String path) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(path)) {
+            properties.load(in);
+        }
+        return from(properties);
+    }
+
+    /**
+     * @throws IllegalArgumentException if a value is missing or out of range
+     */
+    public static HubConfig from(Properties properties) {
+        return new HubConfig(properties);
+    }
+
+    private static int getInt(Properties properties, String key, int defaultValue, int min) {
+        String value = properties.getProperty(key);
+        if (value == null)
+            return defaultValue;
+        int result;
+        try {
+            result = Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value);
+        }
+        if (result < min)
+            throw new IllegalArgumentException(key + " must be at least " + min + ": " + value);
+        return result;
+    }
+
+    public String getSerialDevice() {
+        return mSerialDevice;
+    }
+
+    public int getBaudRate() {
+        return mBaudRate;
+    }
+
+    public int getReadTimeoutMillis() {
+        return mReadTimeoutMillis;
+    }
+
+    public String getBindAddress() {
+        return mBindAddress;
+    }
+
+    /**
+     * @return 0 for any free port
+     */
+    public int getTcpPort() {
+        return mTcpPort;
+    }
+
+    public int getMaxClients() {
+        return mMaxClients;
+    }
+
+    /**
+     * @return bytes queued per client before downlink frames to that client are dropped
+     */
+    public int getClientBufferSize() {
+        return mClientBufferSize;
+    }
+
+    /**
+     * @return 0 to never log statistics
+     */
+    public int getStatsIntervalSeconds() {
+        return mStatsIntervalSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return mSerialDevice + "@" + mBaudRate + " <-> " + mBindAddress + ":" + mTcpPort
+                + " (max " + mMaxClients + " clients)";
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.hub;
+
+import com.example.utils.LatencyHistogram;
+
+import java.util.Locale;
+
+/**
+ * Counters of a {@link BridgeHub} at one instant. Rates come from the difference of two
+ * snapshots, see {@link #toString(HubStats)}.
+ */
+public final class HubStats {
+
+    private final long mTimeNanos;
+    private final long mSerialReadBytes;
+    private final long mSerialWrittenBytes;
+    private final long mDownlinkFrames;
+    private final long mUplinkFrames;
+    private final long mCrcErrors;
+    private final long mSerialDroppedBytes;
+    private final long mClientDroppedFrames;
+    private final int mClients;
+    private final long mAcceptedClients;
+    private final long mRejectedClients;
+    private final long mSerialReopens;
+    private final LatencyHistogram.Snapshot mDownlinkLatency;
+    private final LatencyHistogram.Snapshot mUplinkLatency;
+
+    HubStats(long timeNanos, long serialReadBytes, long serialWrittenBytes, long downlinkFrames,
+             long uplinkFrames, long crcErrors, long serialDroppedBytes, long clientDroppedFrames,
+             int clients, long acceptedClients, long rejectedClients, long serialReopens,
+             LatencyHistogram.Snapshot downlinkLatency, LatencyHistogram.Snapshot uplinkLatency) {
+        mTimeNanos = timeNanos;
+        mSerialReadBytes = serialReadBytes;
+        mSerialWrittenBytes = serialWrittenBytes;
+        mDownlinkFrames = downlinkFrames;
+        mUplinkFrames = uplinkFrames;
+        mCrcErrors = crcErrors;
+        mSerialDroppedBytes = serialDroppedBytes;
+        mClientDroppedFrames = clientDroppedFrames;
+        mClients = clients;
+        mAcceptedClients = acceptedClients;
+        mRejectedClients = rejectedClients;
+        mSerialReopens = serialReopens;
+        mDownlinkLatency = downlinkLatency;
+        mUplinkLatency = uplinkLatency;
+    }
+
+    public long getTimeNanos() {
+        return mTimeNanos;
+    }
+
+    public long getSerialReadBytes() {
+        return mSerialReadBytes;
+    }
+
+    public long getSerialWrittenBytes() {
+        return mSerialWrittenBytes;
+    }
+
+    public long getDownlinkFrames() {
+        return mDownlinkFrames;
+    }
+
+    public long getUplinkFrames() {
+        return mUplinkFrames;
+    }
+
+    public long getCrcErrors() {
+        return mCrcErrors;
+    }
+
+    /**
+     * @return uplink bytes dropped because the serial write buffer was full
+     */
+    public long getSerialDroppedBytes() {
+        return mSerialDroppedBytes;
+    }
+
+    /**
+     * @return downlink frames dropped for slow clients, summed over all clients
+     */
+    public long getClientDroppedFrames() {
+        return mClientDroppedFrames;
+    }
+
+    public int getClients() {
+        return mClients;
+    }
+
+    public long getAcceptedClients() {
+        return mAcceptedClients;
+    }
+
+    public long getRejectedClients() {
+        return mRejectedClients;
+    }
+
+    public long getSerialReopens() {
+        return mSerialReopens;
+    }
+
+    /**
+     * @return serial read until written to a client socket
+     */
+    public LatencyHistogram.Snapshot getDownlinkLatency() {
+        return mDownlinkLatency;
+    }
+
+    /**
+     * @return client socket read until written to the serial port
+     */
+    public LatencyHistogram.Snapshot getUplinkLatency() {
+        return mUplinkLatency;
+    }
+
+    /**
+     * @param previous earlier snapshot to compute rates against, null for totals only
+     */
+    public String toString(HubStats previous) {
+        double seconds = previous != null ? (mTimeNanos - previous.mTimeNanos) / 1e9 : 0;
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.US, "clients=%d (accepted %d, rejected %d)",
+                mClients, mAcceptedClients, mRejectedClients));
+        if (seconds > 0) {
+            builder.append(String.format(Locale.US,
+                    " down=%.0fB/s %.0ffr/s up=%.0fB/s %.0ffr/s",
+                    (mSerialReadBytes - previous.mSerialReadBytes) / seconds,
+                    (mDownlinkFrames - previous.mDownlinkFrames) / seconds,
+                    (mSerialWrittenBytes - previous.mSerialWrittenBytes) / seconds,
+                    (mUplinkFrames - previous.mUplinkFrames) / seconds));
+        }
+        builder.append(String.format(Locale.US,
+                " total down=%dB/%dfr up=%dB/%dfr crc=%d dropped serial=%dB clients=%dfr reopens=%d",
+                mSerialReadBytes, mDownlinkFrames, mSerialWrittenBytes, mUplinkFrames, mCrcErrors,
+                mSerialDroppedBytes, mClientDroppedFrames, mSerialReopens));
+        builder.append(" | down ").append(mDownlinkLatency).append(" | up ").append(mUplinkLatency);
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toString(null);
+    }
+}
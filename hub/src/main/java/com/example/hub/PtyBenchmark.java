@@ -0,0 +1,255 @@
+package com.example.hub;
+
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.message.Timesync;
+import com.example.utils.LatencyHistogram;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the hub between two ends of a pseudo-terminal pair instead of a radio.
+ *
+ * A simulated vehicle writes TIMESYNC frames into one end at a fixed rate, the hub serves the
+ * other end to N TCP clients, and each client sends TIMESYNC frames back at a tenth of that
+ * rate. Every frame carries its send time in ts1, so one-way latency is measured end to end in
+ * this process without any bookkeeping.
+ *
+ * Usage: PtyBenchmark [--clients N] [--rate FRAMES_PER_S] [--seconds S]
+ *                     [--vehicle PTY --hub PTY]
+ * Without the two pty paths a pair is created with socat.
+ */
+public class PtyBenchmark {
+
+    private static final int MS_PER_S = 1000;
+
+    private int mClients = 4;
+    private int mRate = 500;
+    private int mSeconds = 10;
+    private String mVehiclePath;
+    private String mHubPath;
+
+    private final LatencyHistogram mDownlink = new LatencyHistogram();
+    private final LatencyHistogram mUplink = new LatencyHistogram();
+    private final AtomicLong mDownlinkReceived = new AtomicLong();
+    private final AtomicLong mUplinkReceived = new AtomicLong();
+    private volatile boolean mRunning = true;
+
+    public static void main(String[] args) throws Exception {
+        PtyBenchmark benchmark = new PtyBenchmark();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--clients":
+                    benchmark.mClients = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    benchmark.mRate = Integer.parseInt(value);
+                    break;
+                case "--seconds":
+                    benchmark.mSeconds = Integer.parseInt(value);
+                    break;
+                case "--vehicle":
+                    benchmark.mVehiclePath = value;
+                    break;
+                case "--hub":
+                    benchmark.mHubPath = value;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(2);
+            }
+        }
+        benchmark.run();
+    }
+
+    private void run() throws Exception {
+        Process socat = null;
+        if (mVehiclePath == null || mHubPath == null) {
+            File dir = Files.createTempDirectory("pty-benchmark").toFile();
+            mVehiclePath = new File(dir, "vehicle").getPath();
+            mHubPath = new File(dir, "hub").getPath();
+            socat = startSocat(mVehiclePath, mHubPath);
+        }
+        try {
+            benchmark();
+        } finally {
+            if (socat != null)
+                socat.destroy();
+        }
+    }
+
+    private void benchmark() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("serial.device", mHubPath);
+        properties.setProperty("serial.baud", "115200");
+        properties.setProperty("tcp.bind", "127.0.0.1");
+        properties.setProperty("tcp.port", "0");
+        properties.setProperty("tcp.max_clients", Integer.toString(mClients));
+        properties.setProperty("stats.interval_s", "0");
+        BridgeHub hub = new BridgeHub(HubConfig.from(properties));
+        hub.start();
+
+        TtySerialPort vehicle = new TtySerialPort(mVehiclePath, 100);
+        vehicle.open();
+        List<Socket> sockets = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            threads.add(daemon("vehicle-rx", () -> readVehicle(vehicle)));
+            for (int i = 0; i < mClients; i++) {
+                Socket socket = new Socket("127.0.0.1", hub.getTcpPort());
+                socket.setTcpNoDelay(true);
+                sockets.add(socket);
+                threads.add(daemon("client-" + i + "-rx", () -> readClient(socket)));
+                int sysId = 200 + i;
+                threads.add(daemon("client-" + i + "-tx", () -> writeClient(socket, sysId)));
+            }
+            while (hub.getStats().getClients() < mClients)
+                Thread.sleep(10);
+
+            long start = System.nanoTime();
+            long sent = writeVehicle(vehicle, start + TimeUnit.SECONDS.toNanos(mSeconds));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            // let the last frames arrive
+            Thread.sleep(200);
+            mRunning = false;
+
+            HubStats stats = hub.getStats();
+            System.out.printf(Locale.US, "%d clients, %.1f s, %d frames/s from the vehicle%n", mClients, seconds, mRate);
+            System.out.printf(Locale.US, "downlink: sent %d, received %d of %d (%.2f%% lost), %.0f B/s into the hub%n",
+                    sent, mDownlinkReceived.get(), sent * mClients,
+                    100.0 * (sent * mClients - mDownlinkReceived.get()) / Math.max(1, sent * mClients),
+                    stats.getSerialReadBytes() / seconds);
+            System.out.println("  vehicle -> client " + mDownlink.snapshot());
+            System.out.println("  hub serial -> socket " + stats.getDownlinkLatency());
+            System.out.printf(Locale.US, "uplink: received %d, %.0f B/s out of the hub%n",
+                    mUplinkReceived.get(), stats.getSerialWrittenBytes() / seconds);
+            System.out.println("  client -> vehicle " + mUplink.snapshot());
+            System.out.println("  hub socket -> serial " + stats.getUplinkLatency());
+            System.out.println(stats);
+        } finally {
+            mRunning = false;
+            for (Socket socket : sockets)
+                socket.close();
+            hub.stop();
+            vehicle.close();
+            for (Thread thread : threads)
+                thread.join(1000);
+        }
+    }
+
+    private long writeVehicle(TtySerialPort vehicle, long endNanos) throws IOException, InterruptedException {
+        MavlinkFrameWriter writer = new MavlinkFrameWriter(1, 1);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / mRate;
+        long next = System.nanoTime();
+        long sent = 0;
+        while (next < endNanos) {
+            long wait = next - System.nanoTime();
+            if (wait > 0)
+                TimeUnit.NANOSECONDS.sleep(wait);
+            int length = writer.begin(Timesync.MSG_ID).putInt64(8, System.nanoTime()).finish();
+            vehicle.write(writer.buffer(), 0, length);
+            sent++;
+            next += intervalNanos;
+        }
+        return sent;
+    }
+
+    private void readVehicle(TtySerialPort vehicle) {
+        Timesync timesync = new Timesync();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (timesync.wrap(frame)) {
+                mUplink.recordNanos(System.nanoTime() - timesync.ts1());
+                mUplinkReceived.incrementAndGet();
+            }
+        });
+        byte[] buffer = new byte[4096];
+        try {
+            while (mRunning) {
+                int length = vehicle.read(buffer, 0);
+                parser.parse(buffer, 0, length);
+            }
+        } catch (IOException e) {
+            if (mRunning)
+                System.err.println("vehicle read failed: " + e.getMessage());
+        }
+    }
+
+    private void readClient(Socket socket) {
+        Timesync timesync = new Timesync();
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (timesync.wrap(frame)) {
+                mDownlink.recordNanos(System.nanoTime() - timesync.ts1());
+                mDownlinkReceived.incrementAndGet();
+            }
+        });
+        byte[] buffer = new byte[4096];
+        try {
+            InputStream in = socket.getInputStream();
+            int length;
+            while ((length = in.read(buffer)) > 0)
+                parser.parse(buffer, 0, length);
+        } catch (IOException e) {
+            if (mRunning)
+                System.err.println("client read failed: " + e.getMessage());
+        }
+    }
+
+    private void writeClient(Socket socket, int sysId) {
+        MavlinkFrameWriter writer = new MavlinkFrameWriter(sysId, 190);
+        long intervalMillis = Math.max(1, 10L * MS_PER_S / mRate);
+        try {
+            OutputStream out = socket.getOutputStream();
+            while (mRunning) {
+                int length = writer.begin(Timesync.MSG_ID).putInt64(8, System.nanoTime()).finish();
+                out.write(writer.buffer(), 0, length);
+                Thread.sleep(intervalMillis);
+            }
+        } catch (IOException e) {
+            if (mRunning)
+                System.err.println("client write failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Thread daemon(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static Process startSocat(String vehiclePath, String hubPath) throws IOException, InterruptedException {
+        Process socat;
+        try {
+            socat = new ProcessBuilder("socat",
+                    "pty,raw,echo=0,link=" + vehiclePath,
+                    "pty,raw,echo=0,link=" + hubPath)
+                    .redirectErrorStream(true)
+                    .start();
+        } catch (IOException e) {
+            throw new IOException("socat is needed to create the pty pair, or pass --vehicle and --hub", e);
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!new File(vehiclePath).exists() || !new File(hubPath).exists()) {
+            if (!socat.isAlive() || System.currentTimeMillis() > deadline) {
+                socat.destroy();
+                throw new IOException("socat did not create " + vehiclePath + " and " + hubPath);
+            }
+            Thread.sleep(10);
+        }
+        return socat;
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.hub;
+
+import android.util.Log;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.utils.LatencyHistogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * TCP side of the hub, serving many ground control clients at once.
+ *
+ * Every client has a reader thread, which frames what the client sends and routes only whole
+ * frames into the uplink router, so frames of different clients never interleave on the serial
+ * line. The downlink is written to a bounded buffer per client and drained by that client's
+ * writer thread; a slow client loses frames, counted, instead of delaying the others.
+ */
+public class TcpClientHub implements MessageRouter.Sink {
+
+    private static final String TAG = "LOG_" + TcpClientHub.class.getSimpleName();
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final Client[] NO_CLIENTS = new Client[0];
+
+    private final MessageRouter mUplink;
+    private final int mMaxClients;
+    private final int mClientBufferSize;
+    private final LatencyHistogram mDownlinkLatency;
+
+    private ServerSocket mServerSocket; // Synchronized by 'this'
+    // Copied on write, so the serial thread fans out without locking the client list
+    private volatile Client[] mClients = NO_CLIENTS;
+    private int mNextClientId; // Synchronized by 'this'
+
+    // Totals of clients that are gone, synchronized by 'this'
+    private long mClosedSentBytes;
+    private long mClosedReceivedBytes;
+    private long mClosedDroppedBytes;
+    private long mClosedDroppedFrames;
+    private volatile long mAcceptedClients;
+    private volatile long mRejectedClients;
+
+    /**
+     * @param uplink           receives every frame of every client
+     * @param downlinkLatency  time from serial read until a frame was written to a client socket
+     */
+    public TcpClientHub(MessageRouter uplink, int maxClients, int clientBufferSize, LatencyHistogram downlinkLatency) {
+        mUplink = uplink;
+        mMaxClients = maxClients;
+        mClientBufferSize = clientBufferSize;
+        mDownlinkLatency = downlinkLatency;
+    }
+
+    public synchronized void start(String bindAddress, int port) throws IOException {
+        if (mServerSocket != null)
+            throw new IllegalStateException("already started");
+        ServerSocket serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        mServerSocket = serverSocket;
+        Thread acceptThread = new Thread(() -> acceptLoop(serverSocket), "hub-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+        Log.i(TAG, "Listening on " + serverSocket.getLocalSocketAddress());
+    }
+
+    public void stop() {
+        synchronized (this) {
+            if (mServerSocket == null)
+                return;
+            closeQuietly(mServerSocket);
+            mServerSocket = null;
+        }
+        for (Client client : mClients)
+            client.close();
+    }
+
+    /**
+     * @return the bound port, -1 if not started
+     */
+    public synchronized int getLocalPort() {
+        return mServerSocket != null ? mServerSocket.getLocalPort() : -1;
+    }
+
+    /**
+     * Downlink: queues a frame for every connected client. Called on the serial thread.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length, long originNanos) {
+        for (Client client : mClients)
+            client.offer(data, offset, length, originNanos);
+    }
+
+    public int getClientCount() {
+        return mClients.length;
+    }
+
+    public long getAcceptedClients() {
+        return mAcceptedClients;
+    }
+
+    /**
+     * @return connections closed right away because {@link HubConfig#getMaxClients()} were connected
+     */
+    public long getRejectedClients() {
+        return mRejectedClients;
+    }
+
+    public synchronized long getSentBytes() {
+        long bytes = mClosedSentBytes;
+        for (Client client : mClients)
+            bytes += client.mSentBytes;
+        return bytes;
+    }
+
+    public synchronized long getReceivedBytes() {
+        long bytes = mClosedReceivedBytes;
+        for (Client client : mClients)
+            bytes += client.mReceivedBytes;
+        return bytes;
+    }
+
+    public synchronized long getDroppedBytes() {
+        long bytes = mClosedDroppedBytes;
+        for (Client client : mClients)
+            bytes += client.getDroppedBytes();
+        return bytes;
+    }
+
+    public synchronized long getDroppedFrames() {
+        long frames = mClosedDroppedFrames;
+        for (Client client : mClients)
+            frames += client.getDroppedFrames();
+        return frames;
+    }
+
+    private void acceptLoop(ServerSocket serverSocket) {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    Log.w(TAG, "Accept failed: " + e.getMessage());
+                break;
+            }
+            synchronized (this) {
+                if (mServerSocket != serverSocket) {
+                    closeQuietly(socket);
+                    break;
+                }
+                if (mClients.length >= mMaxClients) {
+                    mRejectedClients++;
+                    Log.w(TAG, "Rejecting " + socket.getRemoteSocketAddress() + ", " + mMaxClients + " clients connected");
+                    closeQuietly(socket);
+                    continue;
+                }
+                try {
+                    socket.setTcpNoDelay(true);
+                } catch (SocketException e) {
+                    Log.w(TAG, "No TCP_NODELAY: " + e.getMessage());
+                }
+                Client client = new Client(++mNextClientId, socket);
+                Client[] clients = Arrays.copyOf(mClients, mClients.length + 1);
+                clients[clients.length - 1] = client;
+                mClients = clients;
+                mAcceptedClients++;
+                client.start();
+                Log.i(TAG, "Client " + client + " connected, " + clients.length + " now");
+            }
+        }
+    }
+
+    private synchronized void remove(Client client) {
+        List<Client> clients = new ArrayList<>(Arrays.asList(mClients));
+        if (!clients.remove(client))
+            return;
+        mClients = clients.toArray(NO_CLIENTS);
+        mClosedSentBytes += client.mSentBytes;
+        mClosedReceivedBytes += client.mReceivedBytes;
+        mClosedDroppedBytes += client.getDroppedBytes();
+        mClosedDroppedFrames += client.getDroppedFrames();
+        Log.i(TAG, "Client " + client + " gone, " + mClients.length + " left");
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private final class Client implements MavlinkFrameParser.Listener {
+
+        private final int mId;
+        private final Socket mSocket;
+        private final MavlinkFrameParser mParser = new MavlinkFrameParser(this);
+        private long mReadNanos;
+
+        // Filled by the serial thread, swapped out by the writer; synchronized by mLock
+        private final Object mLock = new Object();
+        private byte[] mPending = new byte[mClientBufferSize];
+        private byte[] mSpare = new byte[mClientBufferSize];
+        private int mPendingLength;
+        private long mPendingSinceNanos;
+        private long mDroppedBytes;
+        private long mDroppedFrames;
+        private boolean mClosed;
+
+        private volatile long mSentBytes;
+        private volatile long mReceivedBytes;
+
+        Client(int id, Socket socket) {
+            mId = id;
+            mSocket = socket;
+        }
+
+        void start() {
+            Thread reader = new Thread(this::readLoop, "hub-client-" + mId + "-rx");
+            Thread writer = new Thread(this::writeLoop, "hub-client-" + mId + "-tx");
+            reader.setDaemon(true);
+            writer.setDaemon(true);
+            reader.start();
+            writer.start();
+        }
+
+        void offer(byte[] data, int offset, int length, long originNanos) {
+            synchronized (mLock) {
+                if (mClosed)
+                    return;
+                if (mPending.length - mPendingLength < length) {
+                    mDroppedBytes += length;
+                    mDroppedFrames++;
+                    return;
+                }
+                if (mPendingLength == 0) {
+                    mPendingSinceNanos = originNanos;
+                    mLock.notify();
+                }
+                System.arraycopy(data, offset, mPending, mPendingLength, length);
+                mPendingLength += length;
+            }
+        }
+
+        long getDroppedBytes() {
+            synchronized (mLock) {
+                return mDroppedBytes;
+            }
+        }
+
+        long getDroppedFrames() {
+            synchronized (mLock) {
+                return mDroppedFrames;
+            }
+        }
+
+        private void writeLoop() {
+            try {
+                OutputStream out = mSocket.getOutputStream();
+                while (true) {
+                    byte[] buffer;
+                    int length;
+                    long pendingSinceNanos;
+                    synchronized (mLock) {
+                        while (mPendingLength == 0 && !mClosed)
+                            mLock.wait();
+                        if (mClosed)
+                            break;
+                        buffer = mPending;
+                        length = mPendingLength;
+                        pendingSinceNanos = mPendingSinceNanos;
+                        mPending = mSpare;
+                        mPendingLength = 0;
+                    }
+                    out.write(buffer, 0, length);
+                    mSentBytes += length;
+                    mDownlinkLatency.recordNanos(System.nanoTime() - pendingSinceNanos);
+                    synchronized (mLock) {
+                        mSpare = buffer;
+                    }
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Client " + this + " write failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                close();
+            }
+        }
+
+        private void readLoop() {
+            byte[] buffer = new byte[READ_BUFFER_SIZE];
+            try {
+                InputStream in = mSocket.getInputStream();
+                int length;
+                while ((length = in.read(buffer)) > 0) {
+                    mReadNanos = System.nanoTime();
+                    mReceivedBytes += length;
+                    mParser.parse(buffer, 0, length);
+                }
+            } catch (IOException e) {
+                if (!mSocket.isClosed())
+                    Log.w(TAG, "Client " + this + " read failed: " + e.getMessage());
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void onFrame(MavlinkFrameParser frame) {
+            mUplink.route(frame, mReadNanos);
+        }
+
+        void close() {
+            synchronized (mLock) {
+                if (mClosed)
+                    return;
+                mClosed = true;
+                mLock.notify();
+            }
+            closeQuietly(mSocket);
+            remove(this);
+        }
+
+        @Override
+        public String toString() {
+            return mId + " " + mSocket.getRemoteSocketAddress();
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.hub;
+
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+
+import com.hoho.android.usbserial.driver.UsbSerialDriver;
+import com.hoho.android.usbserial.driver.UsbSerialPort;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+/**
+ * {@link UsbSerialPort} on a Linux tty or pty, e.g. /dev/ttyUSB0 or the slave of a socat pair,
+ * so {@link com.hoho.android.usbserial.util.SerialInputOutputManager} runs unchanged off the
+ * phone.
+ *
+ * The line is configured with stty. Reads wait at most the read timeout given here, via VTIME,
+ * since a tty can't change it per call; the timeout passed to {@link #read(byte[], int)} is
+ * ignored. Writes block until the kernel took the data. Control lines are left alone, as on
+ * the app's network ports: they read as off, and setting them, purging and breaks do nothing.
+ */
+public class TtySerialPort implements UsbSerialPort {
+
+    private final String mPath;
+    private final int mReadTimeoutMillis;
+    private FileInputStream mInput;
+    private FileOutputStream mOutput;
+    private volatile boolean mOpen;
+
+    /**
+     * @param readTimeoutMillis upper bound of a read without data, rounded up to 100 ms; 0 blocks
+     */
+    public TtySerialPort(String path, int readTimeoutMillis) {
+        mPath = path;
+        mReadTimeoutMillis = readTimeoutMillis;
+    }
+
+    public String getPath() {
+        return mPath;
+    }
+
+    public void open() throws IOException {
+        if (mOpen)
+            throw new IOException("Already open");
+        int deciseconds = (mReadTimeoutMillis + 99) / 100;
+        // raw: no line editing, no CR/LF mapping, no signals; min 0 time N bounds every read
+        stty("raw", "-echo", "min", deciseconds == 0 ? "1" : "0", "time", Integer.toString(Math.min(255, deciseconds)));
+        mInput = new FileInputStream(mPath);
+        mOutput = new FileOutputStream(mPath);
+        mOpen = true;
+    }
+
+    @Override
+    public void open(UsbDeviceConnection connection) throws IOException {
+        open();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!mOpen)
+            throw new IOException("Already closed");
+        mOpen = false;
+        try {
+            mInput.close();
+        } finally {
+            mOutput.close();
+        }
+    }
+
+    @Override
+    public int read(byte[] dest, int timeout) throws IOException {
+        if (!mOpen)
+            throw new IOException("Connection closed");
+        int length = mInput.read(dest);
+        // an empty read after VTIME is reported as end of stream
+        return Math.max(length, 0);
+    }
+
+    @Override
+    public void write(byte[] src, int timeout) throws IOException {
+        write(src, 0, src.length);
+    }
+
+    /**
+     * Writes part of src without copying it first.
+     */
+    public void write(byte[] src, int offset, int length) throws IOException {
+        if (!mOpen)
+            throw new IOException("Connection closed");
+        mOutput.write(src, offset, length);
+    }
+
+    @Override
+    public void setParameters(int baudRate, int dataBits, int stopBits, @Parity int parity) throws IOException {
+        List<String> args = new ArrayList<>();
+        args.add(Integer.toString(baudRate));
+        if (dataBits < DATABITS_5 || dataBits > DATABITS_8)
+            throw new IllegalArgumentException("Invalid data bits: " + dataBits);
+        args.add("cs" + dataBits);
+        switch (stopBits) {
+            case STOPBITS_1:
+                args.add("-cstopb");
+                break;
+            case STOPBITS_2:
+                args.add("cstopb");
+                break;
+            case STOPBITS_1_5:
+                throw new UnsupportedOperationException("Unsupported stop bits: 1.5");
+            default:
+                throw new IllegalArgumentException("Invalid stop bits: " + stopBits);
+        }
+        switch (parity) {
+            case PARITY_NONE:
+                args.addAll(Arrays.asList("-parenb", "-cmspar"));
+                break;
+            case PARITY_ODD:
+                args.addAll(Arrays.asList("parenb", "parodd", "-cmspar"));
+                break;
+            case PARITY_EVEN:
+                args.addAll(Arrays.asList("parenb", "-parodd", "-cmspar"));
+                break;
+            case PARITY_MARK:
+                args.addAll(Arrays.asList("parenb", "parodd", "cmspar"));
+                break;
+            case PARITY_SPACE:
+                args.addAll(Arrays.asList("parenb", "-parodd", "cmspar"));
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid parity: " + parity);
+        }
+        stty(args.toArray(new String[0]));
+    }
+
+    private void stty(String... settings) throws IOException {
+        List<String> command = new ArrayList<>(Arrays.asList("stty", "-F", mPath));
+        command.addAll(Arrays.asList(settings));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (InputStream in = process.getInputStream()) {
+            byte[] buffer = new byte[256];
+            int length;
+            while ((length = in.read(buffer)) > 0)
+                output.write(buffer, 0, length);
+            if (process.waitFor() != 0)
+                throw new IOException(String.join(" ", command) + ": " + output.toString().trim());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("stty interrupted", e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mOpen;
+    }
+
+    @Override
+    public UsbSerialDriver getDriver() {
+        return null;
+    }
+
+    @Override
+    public UsbDevice getDevice() {
+        return null;
+    }
+
+    @Override
+    public int getPortNumber() {
+        return 0;
+    }
+
+    @Override
+    public UsbEndpoint getWriteEndpoint() {
+        return null;
+    }
+
+    @Override
+    public UsbEndpoint getReadEndpoint() {
+        return null;
+    }
+
+    @Override
+    public String getSerial() {
+        return mPath;
+    }
+
+    @Override
+    public boolean getCD() {
+        return false;
+    }
+
+    @Override
+    public boolean getCTS() {
+        return false;
+    }
+
+    @Override
+    public boolean getDSR() {
+        return false;
+    }
+
+    @Override
+    public boolean getDTR() {
+        return false;
+    }
+
+    @Override
+    public void setDTR(boolean value) {
+    }
+
+    @Override
+    public boolean getRI() {
+        return false;
+    }
+
+    @Override
+    public boolean getRTS() {
+        return false;
+    }
+
+    @Override
+    public void setRTS(boolean value) {
+    }
+
+    @Override
+    public EnumSet<ControlLine> getControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public EnumSet<ControlLine> getSupportedControlLines() {
+        return EnumSet.noneOf(ControlLine.class);
+    }
+
+    @Override
+    public void purgeHwBuffers(boolean purgeWriteBuffers, boolean purgeReadBuffers) {
+    }
+
+    @Override
+    public void setBreak(boolean value) {
+    }
+
+    @Override
+    public String toString() {
+        return mPath;
+    }
+}
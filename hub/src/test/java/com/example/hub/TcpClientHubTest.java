@@ -0,0 +1,170 @@
+package com.example.hub;
+
+import com.example.bridge.MessageRouter;
+import com.example.mavlink.MavlinkFrameParser;
+import com.example.mavlink.MavlinkFrameWriter;
+import com.example.mavlink.message.Timesync;
+import com.example.utils.LatencyHistogram;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class TcpClientHubTest {
+
+    private final ByteArrayOutputStream mUplink = new ByteArrayOutputStream();
+    private final MessageRouter mUplinkRouter = new MessageRouter((data, offset, length, originNanos) -> {
+        synchronized (mUplink) {
+            mUplink.write(data, offset, length);
+        }
+    });
+    private final TcpClientHub mHub = new TcpClientHub(mUplinkRouter, 2, 4096, new LatencyHistogram());
+
+    @After
+    public void tearDown() {
+        mHub.stop();
+    }
+
+    @Test
+    public void everyClientGetsTheDownlinkAndUplinkFramesStayWhole() throws Exception {
+        mHub.start("127.0.0.1", 0);
+        try (Socket first = connect(); Socket second = connect()) {
+            awaitClients(2);
+
+            byte[] frame = timesync(1, 42);
+            mHub.write(frame, 0, frame.length, System.nanoTime());
+            assertEquals(42, readTs1(first));
+            assertEquals(42, readTs1(second));
+
+            // both clients send byte by byte at the same time, the serial side must see whole frames
+            Thread[] writers = new Thread[2];
+            Socket[] sockets = {first, second};
+            for (int i = 0; i < 2; i++) {
+                OutputStream out = sockets[i].getOutputStream();
+                int sysId = 200 + i;
+                writers[i] = new Thread(() -> {
+                    try {
+                        for (int n = 0; n < 20; n++) {
+                            for (byte b : timesync(sysId, n)) {
+                                out.write(b);
+                                out.flush();
+                            }
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                writers[i].start();
+            }
+            for (Thread writer : writers)
+                writer.join();
+
+            List<Integer> sysIds = new ArrayList<>();
+            MavlinkFrameParser parser = new MavlinkFrameParser(parsed -> sysIds.add(parsed.sysId()));
+            long deadline = System.currentTimeMillis() + 2000;
+            while (mUplinkRouter.getForwardedFrames() < 40 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            synchronized (mUplink) {
+                parser.parse(mUplink.toByteArray());
+            }
+            assertEquals(40, sysIds.size());
+            assertEquals(0, parser.getCrcErrorCount());
+            assertEquals(0, parser.getDiscardedBytes());
+        }
+    }
+
+    @Test
+    public void clientsBeyondTheLimitAreRejected() throws Exception {
+        mHub.start("127.0.0.1", 0);
+        try (Socket first = connect(); Socket second = connect(); Socket third = connect()) {
+            third.setSoTimeout(1000);
+            // closed by the hub without a byte
+            assertEquals(-1, third.getInputStream().read());
+            assertEquals(2, mHub.getClientCount());
+            assertEquals(1, mHub.getRejectedClients());
+            assertTrue(first.isConnected());
+            assertTrue(second.isConnected());
+        }
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mHub.getClientCount() > 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        assertEquals(0, mHub.getClientCount());
+    }
+
+    @Test
+    public void configDefaultsAndValidation() {
+        Properties properties = new Properties();
+        properties.setProperty("serial.device", " /dev/ttyUSB0 ");
+        HubConfig config = HubConfig.from(properties);
+        assertEquals("/dev/ttyUSB0", config.getSerialDevice());
+        assertEquals(HubConfig.DEFAULT_TCP_PORT, config.getTcpPort());
+        assertEquals(HubConfig.DEFAULT_MAX_CLIENTS, config.getMaxClients());
+
+        properties.setProperty("tcp.max_clients", "0");
+        try {
+            HubConfig.from(properties);
+            fail("no client allowed");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            HubConfig.from(new Properties());
+            fail("serial.device missing");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private Socket connect() throws IOException {
+        return new Socket("127.0.0.1", mHub.getLocalPort());
+    }
+
+    private void awaitClients(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (mHub.getClientCount() < count) {
+            if (System.currentTimeMillis() > deadline)
+                fail(mHub.getClientCount() + " clients connected");
+            Thread.sleep(5);
+        }
+    }
+
+    private static byte[] timesync(int sysId, long ts1) {
+        MavlinkFrameWriter writer = new MavlinkFrameWriter(sysId, 190);
+        int length = writer.begin(Timesync.MSG_ID).putInt64(8, ts1).finish();
+        byte[] frame = new byte[length];
+        System.arraycopy(writer.buffer(), 0, frame, 0, length);
+        return frame;
+    }
+
+    private static long readTs1(Socket socket) throws IOException {
+        Timesync timesync = new Timesync();
+        long[] ts1 = {-1};
+        MavlinkFrameParser parser = new MavlinkFrameParser(frame -> {
+            if (timesync.wrap(frame))
+                ts1[0] = timesync.ts1();
+        });
+        socket.setSoTimeout(1000);
+        InputStream in = socket.getInputStream();
+        byte[] buffer = new byte[256];
+        try {
+            while (ts1[0] < 0) {
+                int length = in.read(buffer);
+                if (length < 0)
+                    break;
+                parser.parse(buffer, 0, length);
+            }
+        } catch (SocketTimeoutException e) {
+            fail("no frame");
+        }
+        return ts1[0];
+    }
+}